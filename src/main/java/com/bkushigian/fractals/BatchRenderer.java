@@ -0,0 +1,425 @@
+package com.bkushigian.fractals;
+
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renders a batch of images headless, as listed in a job file.
+ *
+ * Each line of the job file is one render, given as {@code key=value} pairs separated by
+ * whitespace; blank lines and lines starting with {@code #} are skipped. The keys are
+ * {@code fractal} (a scene as understood by {@link RenderWorker#createFractal(String)}),
+ * {@code center=re,im}, {@code span} (the width of the view in the complex plane),
+ * {@code size=width,height}, {@code iterations}, {@code colors} (the six arguments of
+ * {@link ColorScheme}, or {@code bw}) and {@code out}, the PNG to write. Only {@code out}
+ * is required.
+ *
+ * Jobs showing the same view of the same scene, say in different colors, share one render.
+ * Each render goes through its fractal's own tile kernel, just like the view on screen, so
+ * batches get the same symmetry, staged iteration caps and batched tracing. Every render's
+ * tiles go through one {@link RenderScheduler}, which shares its workers between the renders
+ * in progress, so the CPUs stay busy across job boundaries. Renders start biggest first, and
+ * a render only starts once its memory fits in the budget alongside the renders already going.
+ *
+ * Each render is checkpointed to a {@link RenderJournal} next to its first job's image,
+ * {@code out + ".jrnl"}, which is deleted once every image is written. Running a batch
+ * again after it was stopped only renders the tiles that hadn't been checkpointed.
+ */
+public class BatchRenderer {
+
+    /**
+     * Memory needed per pixel of a render: its values, plus one image being written out
+     */
+    private static final int BYTES_PER_PIXEL = 8;
+
+    public static final class Job {
+        public final int line;
+        public final String scene;
+        public final double centerRe, centerIm, span;
+        public final int width, height, maxIterations;
+        public final String colors;
+        public final File out;
+
+        /**
+         * How long the job waited for its render to start, the render itself (shared with
+         * any jobs of the same view), and writing this job's image
+         */
+        long queuedNanos, renderNanos, writeNanos;
+        boolean shared;
+
+        /**
+         * Tiles of the render picked up from an interrupted run rather than rendered
+         */
+        int resumedTiles;
+        String error;
+
+        Job(int line, String scene, double centerRe, double centerIm, double span, int width, int height,
+            int maxIterations, String colors, File out) {
+            this.line = line;
+            this.scene = scene;
+            this.centerRe = centerRe;
+            this.centerIm = centerIm;
+            this.span = span;
+            this.width = width;
+            this.height = height;
+            this.maxIterations = maxIterations;
+            this.colors = colors;
+            this.out = out;
+        }
+
+        public Viewport view() {
+            return Viewport.centered(centerRe, centerIm, span, width, height, maxIterations, null);
+        }
+
+        /**
+         * @return what determines the values of this job's pixels; jobs with the same key
+         * share a render
+         */
+        String renderKey() {
+            final Viewport v = view();
+            return scene + " " + v.xMin + " " + v.yMax + " " + v.delta + " " + width + " " + height + " " + maxIterations;
+        }
+
+        public String error() {
+            return error;
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if the line is not a valid job
+     */
+    static Job parse(String line, int lineNumber) {
+        String scene = "mandelbrot", colors = null;
+        double centerRe = -0.75, centerIm = 0, span = 3;
+        int width = 800, height = 800, iterations = 256;
+        File out = null;
+        try {
+            for (String field : line.trim().split("\\s+")) {
+                final int eq = field.indexOf('=');
+                if (eq < 0) throw new IllegalArgumentException("expected key=value, got " + field);
+                final String key = field.substring(0, eq), value = field.substring(eq + 1);
+                switch (key) {
+                    case "fractal": scene = value; break;
+                    case "center": {
+                        final String[] parts = value.split(",");
+                        centerRe = Double.parseDouble(parts[0]);
+                        centerIm = Double.parseDouble(parts[1]);
+                        break;
+                    }
+                    case "span": span = Double.parseDouble(value); break;
+                    case "size": {
+                        final String[] parts = value.split(",");
+                        width = Integer.parseInt(parts[0]);
+                        height = Integer.parseInt(parts[1]);
+                        break;
+                    }
+                    case "iterations": iterations = Integer.parseInt(value); break;
+                    case "colors": colors = value; break;
+                    case "out": out = new File(value); break;
+                    default: throw new IllegalArgumentException("unknown key " + key);
+                }
+            }
+            if (out == null) throw new IllegalArgumentException("no out");
+            if (width <= 0 || height <= 0 || iterations <= 0 || !(span > 0)) {
+                throw new IllegalArgumentException("size, span and iterations must be positive");
+            }
+            colorScheme(colors);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Job on line " + lineNumber + ": " + e.getMessage(), e);
+        }
+        return new Job(lineNumber, scene, centerRe, centerIm, span, width, height, iterations, colors, out);
+    }
+
+    public static List<Job> readJobs(File file) throws IOException {
+        final List<Job> jobs = new ArrayList<>();
+        final List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        for (int i = 0; i < lines.size(); ++i) {
+            final String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            jobs.add(parse(line, i + 1));
+        }
+        return jobs;
+    }
+
+    /**
+     * @return the scheme described by {@code spec}, or null for the fractal's own
+     */
+    static ColorScheme colorScheme(String spec) {
+        if (spec == null) return null;
+        if (spec.equals("bw")) return new ColorScheme.BWColorScheme();
+        final String[] parts = spec.split(",");
+        if (parts.length != 6) throw new IllegalArgumentException("colors needs 6 values, or bw");
+        final int[] v = new int[6];
+        for (int i = 0; i < 6; ++i) v[i] = Integer.parseInt(parts[i]);
+        return new ColorScheme(v[0], v[1], v[2], v[3], v[4], v[5]);
+    }
+
+    /**
+     * The jobs sharing one set of values
+     */
+    private static final class Render {
+        final List<Job> jobs = new ArrayList<>();
+        final Viewport view;
+        final long bytes;
+        ComplexFractal fractal;
+        ColorScheme ownColors;
+
+        TileGrid grid;
+        RenderJournal journal;
+        volatile long start;
+
+        Render(Job first) {
+            view = first.view();
+            bytes = (long) BYTES_PER_PIXEL * view.width * view.height;
+        }
+
+        long cost() {
+            return (long) view.width * view.height * view.maxIterations;
+        }
+    }
+
+    private final int threads;
+    private final long memoryBytes;
+
+    /**
+     * Memory taken by the renders in progress; guarded by {@code this}
+     */
+    private long reserved;
+    private int running;
+    private long batchStart;
+
+    public BatchRenderer(int threads, long memoryBytes) {
+        this.threads = threads;
+        this.memoryBytes = memoryBytes;
+    }
+
+    /**
+     * Render every job, blocking until all are written. A job that fails records its
+     * {@link Job#error()} without holding up the others.
+     * @return the number of distinct renders it took
+     */
+    public int run(List<Job> jobs) throws InterruptedException {
+        final Map<String, Render> byKey = new LinkedHashMap<>();
+        for (Job job : jobs) {
+            final Render r = byKey.computeIfAbsent(job.renderKey(), k -> new Render(job));
+            job.shared = !r.jobs.isEmpty();
+            if (job.shared) r.jobs.get(0).shared = true;
+            r.jobs.add(job);
+        }
+        // Longest first, so the last renders to finish are short ones
+        final List<Render> renders = new ArrayList<>(byKey.values());
+        renders.sort((a, b) -> Long.compare(b.cost(), a.cost()));
+
+        batchStart = System.nanoTime();
+        final RenderScheduler scheduler = new RenderScheduler(threads);
+        // Each render in progress waits on one of these for its tiles to be done
+        final ExecutorService renderers = Executors.newCachedThreadPool(RenderPipeline.daemonThreads("batch"));
+        for (Render r : renders) {
+            reserve(r.bytes);
+            try {
+                r.fractal = RenderWorker.createFractal(r.jobs.get(0).scene);
+                r.ownColors = r.fractal.colorScheme;
+                final Job first = r.jobs.get(0);
+                r.journal = RenderJournal.open(prepare(journalFile(first)), first.scene, r.view, r.fractal.tileSize());
+            } catch (IllegalArgumentException e) {
+                fail(r, e.getMessage());
+                continue;
+            } catch (IOException e) {
+                fail(r, e.toString());
+                continue;
+            } catch (OutOfMemoryError e) {
+                fail(r, "out of memory");
+                continue;
+            }
+            for (Job job : r.jobs) job.resumedTiles = r.journal.resumedTiles();
+            renderers.execute(() -> render(r, scheduler));
+        }
+        renderers.shutdown();
+        renderers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        scheduler.shutdown();
+        return renders.size();
+    }
+
+    private synchronized void reserve(long bytes) throws InterruptedException {
+        // Something bigger than the whole budget gets the machine to itself
+        while (running > 0 && reserved + bytes > memoryBytes) wait();
+        reserved += bytes;
+        ++running;
+    }
+
+    private synchronized void release(long bytes) {
+        reserved -= bytes;
+        --running;
+        notifyAll();
+    }
+
+    /**
+     * @return where the render of {@code job} (and any jobs sharing it) is checkpointed
+     */
+    static File journalFile(Job job) {
+        return new File(job.out.getPath() + ".jrnl");
+    }
+
+    private void render(Render r, RenderScheduler scheduler) {
+        r.start = System.nanoTime();
+        try {
+            r.grid = r.fractal.renderNow(r.view, scheduler, r.journal);
+        } catch (RuntimeException e) {
+            for (Job job : r.jobs) job.error = e.toString();
+        }
+        finish(r);
+    }
+
+    /**
+     * Write out every job of a finished render, then give back its memory
+     */
+    private void finish(Render r) {
+        final long rendered = System.nanoTime();
+        try {
+            for (Job job : r.jobs) {
+                job.queuedNanos = r.start - batchStart;
+                job.renderNanos = rendered - r.start;
+                if (job.error != null) continue;
+                final long start = System.nanoTime();
+                try {
+                    write(r, job);
+                } catch (IOException | RuntimeException e) {
+                    job.error = e.toString();
+                }
+                job.writeNanos = System.nanoTime() - start;
+            }
+        } finally {
+            closeJournal(r);
+            r.grid = null;
+            r.fractal.pipeline.shutdown();
+            release(r.bytes);
+        }
+    }
+
+    /**
+     * Close the render's journal, deleting it if every job is done with it
+     */
+    private static void closeJournal(Render r) {
+        if (r.journal == null) return;
+        boolean done = true;
+        for (Job job : r.jobs) done &= job.error == null;
+        try {
+            r.journal.close();
+            if (done) Files.deleteIfExists(journalFile(r.jobs.get(0)).toPath());
+        } catch (IOException e) {
+            for (Job job : r.jobs) if (job.error == null) job.error = e.toString();
+        }
+    }
+
+    private void fail(Render r, String error) {
+        for (Job job : r.jobs) job.error = error;
+        closeJournal(r);
+        if (r.fractal != null) r.fractal.pipeline.shutdown();
+        release(r.bytes);
+    }
+
+    private static void write(Render r, Job job) throws IOException {
+        final ColorScheme scheme = colorScheme(job.colors);
+        r.fractal.colorScheme = scheme == null ? r.ownColors : scheme;
+        PngEncoder.shared().write(createBufferedImage(r.grid.values, r.fractal, job.maxIterations), prepare(job.out));
+    }
+
+    /**
+     * @return {@code values} colored by {@code colors}, with pixels that hit the iteration
+     * limit in black
+     */
+    static BufferedImage createBufferedImage(IterationBuffer values, ComplexFractal colors, int maxIterations) {
+        colors.maxIterations = maxIterations;
+        colors.colors = null;
+        colors.updateColors();
+        final int unresolved = colors.unresolvedValue(maxIterations);
+        final BufferedImage image = new BufferedImage(values.width, values.height, BufferedImage.TYPE_INT_RGB);
+        final int[] line = new int[values.width];
+        for (int y = 0; y < values.height; ++y) {
+            values.getRow(y, 0, line, 0, line.length);
+            for (int x = 0; x < line.length; ++x) {
+                line[x] = line[x] == unresolved ? 0 : colors.getColorInt(line[x]);
+            }
+            image.setRGB(0, y, line.length, 1, line, 0, line.length);
+        }
+        return image;
+    }
+
+    private static File prepare(File file) throws IOException {
+        final File dir = file.getAbsoluteFile().getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) throw new IOException("Could not create " + dir);
+        return file;
+    }
+
+    static String quote(String s) {
+        return "\"" + s.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    /**
+     * Write the timings of every job as JSON
+     */
+    static void writeSummary(File file, List<Job> jobs, int renders, long wallNanos) throws IOException {
+        final StringBuilder json = new StringBuilder("{\n");
+        json.append(String.format(Locale.ROOT, "  \"jobs\": %d,\n  \"renders\": %d,\n  \"wallMillis\": %d,\n  \"results\": [\n",
+                jobs.size(), renders, wallNanos / 1_000_000));
+        for (int i = 0; i < jobs.size(); ++i) {
+            final Job j = jobs.get(i);
+            json.append(String.format(Locale.ROOT, "    {\"line\": %d, \"out\": %s, \"shared\": %b, \"queuedMillis\": %d, "
+                            + "\"renderMillis\": %d, \"writeMillis\": %d, \"resumedTiles\": %d, \"error\": %s}%s%n",
+                    j.line, quote(j.out.getPath()), j.shared, j.queuedNanos / 1_000_000, j.renderNanos / 1_000_000,
+                    j.writeNanos / 1_000_000, j.resumedTiles, j.error == null ? "null" : quote(j.error),
+                    i + 1 < jobs.size() ? "," : ""));
+        }
+        json.append("  ]\n}\n");
+        Files.write(prepare(file).toPath(), json.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Usage: {@code BatchRenderer jobfile [--threads n] [--memory megabytes] [--summary file]}
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        File jobFile = null, summary = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long memory = Runtime.getRuntime().maxMemory() / 2;
+        for (int i = 0; i < args.length; ++i) {
+            switch (args[i]) {
+                case "--threads": threads = Integer.parseInt(args[++i]); break;
+                case "--memory": memory = Long.parseLong(args[++i]) << 20; break;
+                case "--summary": summary = new File(args[++i]); break;
+                default:
+                    if (args[i].startsWith("--") || jobFile != null) {
+                        System.err.println("Unknown argument " + args[i]);
+                        System.exit(2);
+                    }
+                    jobFile = new File(args[i]);
+            }
+        }
+        if (jobFile == null) {
+            System.err.println("Usage: BatchRenderer jobfile [--threads n] [--memory megabytes] [--summary file]");
+            System.exit(2);
+        }
+        if (summary == null) summary = new File(jobFile.getPath() + ".summary.json");
+
+        final List<Job> jobs = readJobs(jobFile);
+        final long start = System.nanoTime();
+        final int renders = new BatchRenderer(threads, memory).run(jobs);
+        final long wall = System.nanoTime() - start;
+        int failed = 0;
+        for (Job j : jobs) {
+            System.out.printf("%-40s %6d ms queued %6d ms render %6d ms write%s%s%n", j.out, j.queuedNanos / 1_000_000,
+                    j.renderNanos / 1_000_000, j.writeNanos / 1_000_000,
+                    j.resumedTiles == 0 ? "" : "  (" + j.resumedTiles + " tiles resumed)",
+                    j.error == null ? "" : "  FAILED " + j.error);
+            if (j.error != null) ++failed;
+        }
+        writeSummary(summary, jobs, renders, wall);
+        System.out.printf("%d jobs in %d renders, %d ms; wrote %s%n", jobs.size(), renders, wall / 1_000_000, summary);
+        System.exit(failed == 0 ? 0 : 1);
+    }
+}
@@ -0,0 +1,501 @@
+package com.bkushigian.fractals;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The Buddhabrot: the density of the orbits of points c that escape the Mandelbrot set.
+ * Rather than computing each pixel, we sample random values of c, iterate
+ * {@code z -> z^2 + c} from 0, and for orbits that escape add every iterate to a histogram
+ * over the view. The image sharpens as more samples come in, so a render never really
+ * finishes; it keeps sampling until the view changes.
+ *
+ * Sampling runs on the shared {@link RenderScheduler} as background work, in short passes
+ * which each queue the next, so the Buddhabrot takes its fair share of the workers alongside
+ * the other views and gives way while they have tiles to render. Each sampler accumulates
+ * into its own buffer and merges it into the shared {@link OrbitHistogram} a few times a
+ * second, so the hot loop never contends on a lock.
+ * Points in the main cardioid and period-2 bulb never escape and are rejected without
+ * iterating. Samples are drawn from a coarse importance map built by a pilot pass, so that
+ * most of the effort goes to c values near the boundary whose orbits actually land in the
+ * view; each hit is weighted by the inverse of its sampling density, so the histogram is
+ * still an unbiased estimate of the uniform one.
+ */
+public class Buddhabrot extends ComplexFractal {
+
+    /**
+     * c values are drawn from the square [-SAMPLE_RADIUS, SAMPLE_RADIUS]^2
+     */
+    static final double SAMPLE_RADIUS = 2.0;
+
+    /**
+     * The importance map divides the sample square into IMPORTANCE_GRID^2 cells
+     */
+    static final int IMPORTANCE_GRID = 64;
+    static final int PILOT_SAMPLES = 16;
+
+    /**
+     * How often samplers merge into the shared histogram, and so how often the screen updates
+     */
+    static final long MERGE_INTERVAL_MILLIS = 250;
+
+    /**
+     * How long one pass of a sampler runs before it goes to the back of the queue
+     */
+    static final long PASS_MILLIS = 20;
+
+    /**
+     * Orbits shorter than this are ignored; raising it brings out the finer filaments
+     */
+    protected int minIterations = 0;
+
+    private final RenderScheduler.Queue samplers = RenderScheduler.shared().newQueue();
+    private final AtomicInteger generation = new AtomicInteger();
+    private volatile OrbitHistogram histogram;
+
+    /**
+     * A loaded checkpoint waiting to be resumed on the next render
+     */
+    private OrbitHistogram resumeFrom;
+
+    /**
+     * Where to periodically save the histogram, or null
+     */
+    private volatile File checkpointFile;
+    private volatile long checkpointIntervalMillis;
+    private final AtomicLong lastCheckpoint = new AtomicLong();
+
+    private final BufferedImage frame;
+
+    public Buddhabrot() {
+        this(700, 700);
+    }
+
+    public Buddhabrot(int width, int height) {
+        super(width, height, null);
+        maxIterations = 1000;
+        updateColors();
+        frame = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    }
+
+    @Override
+    public String getFractalName() {
+        return "buddhabrot";
+    }
+
+    /**
+     * Samples are accumulated by {@link Sampler}s rather than rendered tile by tile
+     */
+    @Override
+    protected boolean rendersTiles() {
+        return false;
+    }
+
+    /**
+     * @return the escape time of c, as for the Mandelbrot set
+     */
+    @Override
+    public int calculateIterations(Complex c, int max) {
+        if (inMainBulbs(c.re, c.im)) return max;
+        double re = 0.0, im = 0.0;
+        int iterations = 0;
+        while (re * re + im * im < 4 && iterations < max) {
+            final double t = re * re - im * im + c.re;
+            im = 2 * re * im + c.im;
+            re = t;
+            ++iterations;
+        }
+        return iterations;
+    }
+
+    @Override
+    protected Object renderParameters() {
+        return minIterations;
+    }
+
+    @Override
+    protected Symmetry getSymmetry() {
+        return Symmetry.CONJUGATE;
+    }
+
+    /**
+     * @return true if c lies in the main cardioid or the period-2 bulb, whose orbits never
+     * escape
+     */
+    static boolean inMainBulbs(double re, double im) {
+        final double x = re - 0.25;
+        final double y2 = im * im;
+        final double q = x * x + y2;
+        if (q * (q + x) <= 0.25 * y2) return true;
+        final double r = re + 1.0;
+        return r * r + y2 <= 1.0 / 16;
+    }
+
+    /**
+     * @return the shared histogram of the current render, or null before the first render
+     */
+    public OrbitHistogram getHistogram() {
+        return histogram;
+    }
+
+    /**
+     * Periodically save the histogram to {@code file} while rendering, and on exit
+     */
+    public void checkpointEvery(File file, long intervalMillis) {
+        checkpointIntervalMillis = intervalMillis;
+        lastCheckpoint.set(System.currentTimeMillis());
+        checkpointFile = file;
+    }
+
+    /**
+     * Continue a render from a saved histogram. This moves the view to the one the
+     * histogram was rendered with.
+     */
+    public void resume(File file) throws IOException {
+        final OrbitHistogram h = OrbitHistogram.load(file);
+        if (h.view.width != width || h.view.height != height) {
+            throw new IOException(String.format("%s is %dx%d, not %dx%d",
+                    file, h.view.width, h.view.height, width, height));
+        }
+        resumeFrom = h;
+        xMin = h.view.xMin;
+        xMax = h.view.xMax();
+        yCenter = h.view.yMax - h.view.delta * height / 2;
+        maxIterations = h.view.maxIterations;
+        minIterations = h.minIterations;
+        updateColors();
+        calculateDeltas();
+        updated = true;
+        repaint();
+    }
+
+    /**
+     * Start sampling {@code view} from scratch, abandoning whatever was being sampled
+     */
+    private void restart(Viewport view) {
+        final int gen = generation.incrementAndGet();
+        samplers.purge();
+        OrbitHistogram h = resumeFrom;
+        resumeFrom = null;
+        if (h == null || h.view.maxIterations != view.maxIterations || h.minIterations != minIterations) {
+            h = new OrbitHistogram(view, minIterations);
+        }
+        histogram = h;
+        final OrbitHistogram target = h;
+        samplers.execute(new RenderScheduler.Task(0, true) {
+            @Override
+            public void run() {
+                final ImportanceMap map = new ImportanceMap(target.view, target.minIterations, gen);
+                for (int i = 0; i < numWorkers; ++i) {
+                    samplers.execute(new Sampler(target, map, gen, System.nanoTime() * 31 + i));
+                }
+            }
+
+            @Override
+            protected boolean isCancelled() {
+                return generation.get() != gen;
+            }
+        });
+    }
+
+    /**
+     * One stream of samples of {@code target}. Each run is a single pass, after which the
+     * sampler queues itself again until the render becomes stale.
+     */
+    private final class Sampler extends RenderScheduler.Task {
+        final OrbitHistogram target;
+        final ImportanceMap map;
+        final int gen;
+        final SplittableRandom random;
+        final float[] local;
+        final double[] orbit;
+        long samples;
+        long lastMerge = System.currentTimeMillis();
+
+        Sampler(OrbitHistogram target, ImportanceMap map, int gen, long seed) {
+            super(0, true);
+            this.target = target;
+            this.map = map;
+            this.gen = gen;
+            this.random = new SplittableRandom(seed);
+            this.local = new float[target.view.width * target.view.height];
+            this.orbit = new double[2 * target.view.maxIterations];
+        }
+
+        @Override
+        protected boolean isCancelled() {
+            return generation.get() != gen;
+        }
+
+        /**
+         * Sample for up to {@link #PASS_MILLIS}, or until a tile is waiting, merging into
+         * {@code target} if it is time to
+         */
+        @Override
+        public void run() {
+            final Viewport view = target.view;
+            final double cellSize = 2 * SAMPLE_RADIUS / IMPORTANCE_GRID;
+            final long end = System.currentTimeMillis() + PASS_MILLIS;
+            final AtomicInteger waiting = RenderScheduler.shared().waiting();
+            long now;
+            do {
+                if (isCancelled()) return;
+                for (int n = 0; n < 1024; ++n) {
+                    ++samples;
+                    final int cell = map.pick(random.nextDouble());
+                    final double cRe = -SAMPLE_RADIUS + cellSize * (cell % IMPORTANCE_GRID + random.nextDouble());
+                    final double cIm = -SAMPLE_RADIUS + cellSize * (cell / IMPORTANCE_GRID + random.nextDouble());
+                    if (inMainBulbs(cRe, cIm)) continue;
+                    final int length = escapingOrbit(cRe, cIm, view.maxIterations, orbit);
+                    if (length < 0 || length < target.minIterations) continue;
+                    // The density is symmetric about the real axis, so each orbit counts for its
+                    // mirror image as well
+                    final float w = (float) (0.5 * map.weight(cell));
+                    for (int i = 0; i < length; ++i) {
+                        accumulate(view, local, orbit[2 * i], orbit[2 * i + 1], w);
+                        accumulate(view, local, orbit[2 * i], -orbit[2 * i + 1], w);
+                    }
+                }
+                now = System.currentTimeMillis();
+            } while (now < end && waiting.get() == 0);
+
+            if (now - lastMerge >= MERGE_INTERVAL_MILLIS) {
+                if (isCancelled()) return;
+                target.merge(local, samples);
+                samples = 0;
+                lastMerge = now;
+                repaint();
+                // Whichever sampler notices first that a checkpoint is due writes it
+                final File file = checkpointFile;
+                final long last = lastCheckpoint.get();
+                if (file != null && now - last >= checkpointIntervalMillis && lastCheckpoint.compareAndSet(last, now)) {
+                    saveCheckpoint(target, file);
+                }
+            }
+            samplers.execute(this);
+        }
+    }
+
+    private static void saveCheckpoint(OrbitHistogram h, File file) {
+        try {
+            h.save(file);
+        } catch (IOException e) {
+            System.err.println("Failed to save checkpoint " + file);
+            e.printStackTrace();
+        }
+    }
+
+    private static void accumulate(Viewport view, float[] local, double re, double im, float w) {
+        final int x = (int) Math.floor((re - view.xMin) / view.delta);
+        final int y = (int) Math.floor((view.yMax - im) / view.delta);
+        if (x >= 0 && x < view.width && y >= 0 && y < view.height) {
+            local[y * view.width + x] += w;
+        }
+    }
+
+    /**
+     * Iterate {@code z -> z^2 + c} from 0, recording the iterates in {@code orbit}
+     * @return the number of iterates recorded if the orbit escaped, or -1 if it didn't
+     * escape within {@code max} iterations
+     */
+    static int escapingOrbit(double cRe, double cIm, int max, double[] orbit) {
+        double re = 0.0, im = 0.0;
+        for (int i = 0; i < max; ++i) {
+            final double t = re * re - im * im + cRe;
+            im = re * im + im * re + cIm;
+            re = t;
+            orbit[2 * i] = re;
+            orbit[2 * i + 1] = im;
+            if (re * re + im * im > 4) return i + 1;
+        }
+        return -1;
+    }
+
+    /**
+     * A piecewise constant sampling density over the sample square. A pilot pass estimates
+     * how much orbit mass each cell contributes to the view, and cells are then sampled in
+     * proportion to that (with a floor, so no cell that could contribute is ever ruled out).
+     */
+    static final class ImportanceMap {
+        private final double[] cdf;
+        private final double[] weights;
+
+        ImportanceMap(Viewport view, int minIterations, int seed) {
+            final int cells = IMPORTANCE_GRID * IMPORTANCE_GRID;
+            final double cellSize = 2 * SAMPLE_RADIUS / IMPORTANCE_GRID;
+            final SplittableRandom random = new SplittableRandom(seed);
+            final double[] orbit = new double[2 * view.maxIterations];
+            final double[] mass = new double[cells];
+            double total = 0.0;
+            for (int cell = 0; cell < cells; ++cell) {
+                for (int n = 0; n < PILOT_SAMPLES; ++n) {
+                    final double cRe = -SAMPLE_RADIUS + cellSize * (cell % IMPORTANCE_GRID + random.nextDouble());
+                    final double cIm = -SAMPLE_RADIUS + cellSize * (cell / IMPORTANCE_GRID + random.nextDouble());
+                    if (inMainBulbs(cRe, cIm)) continue;
+                    final int length = escapingOrbit(cRe, cIm, view.maxIterations, orbit);
+                    if (length < minIterations) continue;
+                    for (int i = 0; i < length; ++i) {
+                        if (inView(view, orbit[2 * i], orbit[2 * i + 1])
+                                || inView(view, orbit[2 * i], -orbit[2 * i + 1])) {
+                            mass[cell] += 1.0;
+                        }
+                    }
+                }
+                total += mass[cell];
+            }
+
+            final double floor = Math.max(total, 1.0) / cells * 0.05;
+            cdf = new double[cells];
+            weights = new double[cells];
+            double sum = 0.0;
+            for (int cell = 0; cell < cells; ++cell) {
+                mass[cell] += floor;
+                sum += mass[cell];
+                cdf[cell] = sum;
+            }
+            for (int cell = 0; cell < cells; ++cell) {
+                cdf[cell] /= sum;
+                // uniform density over sampling density
+                weights[cell] = sum / (cells * mass[cell]);
+            }
+        }
+
+        private static boolean inView(Viewport view, double re, double im) {
+            return re >= view.xMin && re < view.xMax() && im <= view.yMax && im > view.yMin();
+        }
+
+        /**
+         * @param u uniform in [0, 1)
+         * @return a cell, chosen with probability proportional to its importance
+         */
+        int pick(double u) {
+            int lo = 0, hi = cdf.length - 1;
+            while (lo < hi) {
+                final int mid = (lo + hi) >>> 1;
+                if (cdf[mid] <= u) lo = mid + 1;
+                else hi = mid;
+            }
+            return lo;
+        }
+
+        /**
+         * @return how much a sample from {@code cell} counts for, relative to uniform sampling
+         */
+        double weight(int cell) {
+            return weights[cell];
+        }
+    }
+
+    /**
+     * Sample in the background if the view has changed, then draw the histogram so far
+     */
+    @Override
+    public void paintComponent(final Graphics g) {
+        if (updated) {
+            updated = false;
+            restart(viewport());
+        }
+        final OrbitHistogram h = histogram;
+        if (h != null) drawHistogram(h, frame);
+        g.drawImage(frame, 0, 0, null);
+        drawKey(g);
+    }
+
+    /**
+     * Tone map the histogram into {@code image}: brightness is the square root of the
+     * density, normalized to the densest pixel
+     */
+    private static void drawHistogram(OrbitHistogram h, BufferedImage image) {
+        final int w = h.view.width;
+        final double max = h.max();
+        final double[] counts = new double[w];
+        final int[] rgb = new int[w];
+        for (int y = 0; y < h.view.height; ++y) {
+            h.getRow(y, counts);
+            for (int x = 0; x < w; ++x) {
+                final int v = max == 0.0 ? 0 : (int) Math.min(255, 255 * Math.sqrt(counts[x] / max));
+                rgb[x] = (v << 16) | (v << 8) | v;
+            }
+            image.setRGB(0, y, w, 1, rgb, 0, w);
+        }
+    }
+
+    /**
+     * Sample the current view until {@code samples} c values have been drawn, blocking the
+     * calling thread. Meant for headless rendering.
+     */
+    @Override
+    public void compute() {
+        // Long enough for the samplers to start making progress; headless users call
+        // computeSamples with an explicit budget
+        computeSamples(100L * width * height);
+    }
+
+    public void computeSamples(long samples) {
+        updated = false;
+        restart(viewport());
+        final OrbitHistogram h = histogram;
+        while (h.samples() < samples && histogram == h) {
+            try {
+                Thread.sleep(MERGE_INTERVAL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        generation.incrementAndGet();
+        samplers.purge();
+    }
+
+    @Override
+    public BufferedImage createBufferedImage() {
+        final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        final OrbitHistogram h = histogram;
+        if (h != null) drawHistogram(h, image);
+        return image;
+    }
+
+    @Override
+    public void writeToImage(String name, String ext) throws IOException {
+        final File file = checkpointFile;
+        final OrbitHistogram h = histogram;
+        if (file != null && h != null) h.save(file);
+        super.writeToImage(name, ext);
+    }
+
+    @Override
+    protected void drawKey(Graphics g) {
+        if (showKey) {
+            final OrbitHistogram h = histogram;
+            final String[] toDraw = new String[]{
+                    "maxIters: " + maxIterations,
+                    "minIters: " + minIterations,
+                    String.format("samples: %,d", h == null ? 0 : h.samples()),
+                    String.format("x-range: %.6f, %.6f", xMin, xMax),
+                    String.format("y-range: %.6f, %.6f", yMin, yMax),
+            };
+            drawKey(g, toDraw);
+        }
+    }
+
+    /**
+     * Usage: {@code Buddhabrot [checkpoint-file]}. If the checkpoint exists the render picks
+     * up where it left off; either way the histogram is saved to it every minute.
+     */
+    public static void main(String[] args) throws IOException {
+        final Buddhabrot buddha = new Buddhabrot(1000, 1000);
+        if (args.length > 0) {
+            final File checkpoint = new File(args[0]);
+            if (checkpoint.exists()) buddha.resume(checkpoint);
+            buddha.checkpointEvery(checkpoint, 60_000);
+        }
+        DisplayWindow window = new DisplayWindow();
+        window.addPanel(buddha);
+        window.showFrame();
+    }
+}
@@ -96,7 +96,8 @@ public class Complex extends Number {
      * @return this divided by z
      */
     Complex divide(Complex z) {
-        return times(z.conj()).times(1.0 / z.argSquared());
+        final double den = z.argSquared();
+        return new Complex((re * z.re + im * z.im) / den, (im * z.re - re * z.im) / den);
     }
 
     /**
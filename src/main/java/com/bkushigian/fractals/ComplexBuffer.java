@@ -0,0 +1,170 @@
+package com.bkushigian.fractals;
+
+/**
+ * A fixed size array of complex numbers, stored as parallel arrays of real and imaginary
+ * parts. All operations work in place over an index range {@code [from, to)} and never
+ * allocate, so a kernel can carry a whole row of pixels through each step of an iteration
+ * in lockstep. The loops are kept to simple counted loops over primitive arrays so that the
+ * JIT can vectorize them.
+ */
+public class ComplexBuffer {
+
+    public final double[] re;
+    public final double[] im;
+
+    public ComplexBuffer(int size) {
+        re = new double[size];
+        im = new double[size];
+    }
+
+    public int size() {
+        return re.length;
+    }
+
+    public Complex get(int i) {
+        return new Complex(re[i], im[i]);
+    }
+
+    public void set(int i, double re, double im) {
+        this.re[i] = re;
+        this.im[i] = im;
+    }
+
+    public void set(int i, Complex z) {
+        set(i, z.re, z.im);
+    }
+
+    /**
+     * this := z
+     */
+    public void fill(double zRe, double zIm, int from, int to) {
+        for (int i = from; i < to; ++i) {
+            re[i] = zRe;
+            im[i] = zIm;
+        }
+    }
+
+    /**
+     * this := b
+     */
+    public void copy(ComplexBuffer b, int from, int to) {
+        System.arraycopy(b.re, from, re, from, to - from);
+        System.arraycopy(b.im, from, im, from, to - from);
+    }
+
+    /**
+     * this := this + b
+     */
+    public void add(ComplexBuffer b, int from, int to) {
+        final double[] re = this.re, im = this.im, bRe = b.re, bIm = b.im;
+        for (int i = from; i < to; ++i) {
+            re[i] += bRe[i];
+            im[i] += bIm[i];
+        }
+    }
+
+    /**
+     * this := this + z
+     */
+    public void add(double zRe, double zIm, int from, int to) {
+        final double[] re = this.re, im = this.im;
+        for (int i = from; i < to; ++i) {
+            re[i] += zRe;
+            im[i] += zIm;
+        }
+    }
+
+    /**
+     * this := this - b
+     */
+    public void subtract(ComplexBuffer b, int from, int to) {
+        final double[] re = this.re, im = this.im, bRe = b.re, bIm = b.im;
+        for (int i = from; i < to; ++i) {
+            re[i] -= bRe[i];
+            im[i] -= bIm[i];
+        }
+    }
+
+    /**
+     * this := this * b
+     */
+    public void multiply(ComplexBuffer b, int from, int to) {
+        final double[] re = this.re, im = this.im, bRe = b.re, bIm = b.im;
+        for (int i = from; i < to; ++i) {
+            final double r = re[i], m = im[i];
+            re[i] = r * bRe[i] - m * bIm[i];
+            im[i] = r * bIm[i] + m * bRe[i];
+        }
+    }
+
+    /**
+     * this := this * z
+     */
+    public void multiply(double zRe, double zIm, int from, int to) {
+        final double[] re = this.re, im = this.im;
+        for (int i = from; i < to; ++i) {
+            final double r = re[i], m = im[i];
+            re[i] = r * zRe - m * zIm;
+            im[i] = r * zIm + m * zRe;
+        }
+    }
+
+    /**
+     * this := this * m + a. This is one step of Horner's rule.
+     */
+    public void multiplyAdd(ComplexBuffer m, ComplexBuffer a, int from, int to) {
+        final double[] re = this.re, im = this.im, mRe = m.re, mIm = m.im, aRe = a.re, aIm = a.im;
+        for (int i = from; i < to; ++i) {
+            final double r = re[i], q = im[i];
+            re[i] = r * mRe[i] - q * mIm[i] + aRe[i];
+            im[i] = r * mIm[i] + q * mRe[i] + aIm[i];
+        }
+    }
+
+    /**
+     * this := this * m + a, for a constant a
+     */
+    public void multiplyAdd(ComplexBuffer m, double aRe, double aIm, int from, int to) {
+        final double[] re = this.re, im = this.im, mRe = m.re, mIm = m.im;
+        for (int i = from; i < to; ++i) {
+            final double r = re[i], q = im[i];
+            re[i] = r * mRe[i] - q * mIm[i] + aRe;
+            im[i] = r * mIm[i] + q * mRe[i] + aIm;
+        }
+    }
+
+    /**
+     * this := this^2
+     */
+    public void square(int from, int to) {
+        final double[] re = this.re, im = this.im;
+        for (int i = from; i < to; ++i) {
+            final double r = re[i], m = im[i];
+            re[i] = r * r - m * m;
+            im[i] = r * m + m * r;
+        }
+    }
+
+    /**
+     * this := this / b. Entries where b is zero come out as NaN or infinite.
+     */
+    public void divide(ComplexBuffer b, int from, int to) {
+        final double[] re = this.re, im = this.im, bRe = b.re, bIm = b.im;
+        for (int i = from; i < to; ++i) {
+            final double r = re[i], m = im[i], br = bRe[i], bi = bIm[i];
+            final double den = br * br + bi * bi;
+            re[i] = (r * br + m * bi) / den;
+            im[i] = (m * br - r * bi) / den;
+        }
+    }
+
+    /**
+     * out[i] := |this[i]|^2
+     */
+    public void normSquared(double[] out, int from, int to) {
+        final double[] re = this.re, im = this.im;
+        for (int i = from; i < to; ++i) {
+            out[i] = re[i] * re[i] + im[i] * im[i];
+        }
+    }
+}
@@ -1,14 +1,21 @@
 package com.bkushigian.fractals;
 
 import java.awt.*;
-import javax.imageio.ImageIO;
 import javax.swing.*;
 import java.awt.event.*;
 import java.awt.image.BufferedImage;
+import java.beans.PropertyChangeListener;
 import java.io.File;
 import java.io.IOException;
-import java.text.SimpleDateFormat;
-import java.util.*;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * An iterative fractal in the complex plane, this takes care of most of the work
@@ -18,25 +25,138 @@ import java.util.*;
  */
 public abstract class ComplexFractal extends Fractal {
 
-    private final static int NOT_SHIFTED = 0,
-                             SHIFTED_DOWN = 1,
-                             SHIFTED_UP = 2,
-                             SHIFTED_LEFT = 3,
-                             SHIFTED_RIGHT = 4;
+    /**
+     * height x width, with origin (0,0) in to left corner
+     */
+    private IterationBuffer iterations;
+
+    /**
+     * Is {@code iterations} the buffer of a finished {@link TileGrid}, which the render
+     * workers may still read from, rather than a copy of our own? Finished frames are shown
+     * as they are instead of being copied; the buffer is copied before it is written to.
+     * Only touched from the EDT, as is {@code iterations}.
+     */
+    private boolean iterationsShared;
 
+    /**
+     * The most recent fully rendered frame, kept so that raising maxIterations can resume
+     * its unresolved orbits
+     */
+    private volatile TileGrid lastFrame;
 
     /**
-     * How much have we shifted since the last compute()? This makes moving up/down/left/right
-     * more efficient.
+     * Speculatively rendered frames of views the user might move to next, newest last.
+     * Their pixels are reused just like those of {@code lastFrame}. Guarded by itself;
+     * workers read it through {@link #prefetchedFrames()}.
      */
-    private int shiftedStatus = NOT_SHIFTED;
-    private int shiftedAmount = 0;
+    private final ArrayDeque<TileGrid> prefetched = new ArrayDeque<>();
+    private static final int MAX_PREFETCHED = 8;
 
+    /**
+     * Checkpoint of the render in progress in {@link #compute(File)}, or of the startup view
+     * after {@link #resumeJournal(File)}, or null. Only renders of its view use it.
+     */
+    private volatile RenderJournal journal;
+    private File journalFile;
 
     /**
-     * height x width, with origin (0,0) in to left corner
+     * Picks a reduced resolution for frames rendered while the user is navigating, so that
+     * clicking through the buttons stays responsive
+     */
+    protected final FrameBudget budget = new FrameBudget();
+
+    /**
+     * Input counts as idle once no button has been pressed for this long, at which point a
+     * reduced frame is replaced by a full quality one
+     */
+    static final int IDLE_MILLIS = 300;
+
+    /**
+     * Is the user clicking through the buttons? Only touched from the EDT, as are the scale
+     * and iteration cap of the frame last submitted.
+     */
+    private boolean navigating;
+    private boolean reduced;
+    private int renderScale = 1;
+    private int renderIterations;
+    private final Timer idle = new Timer(IDLE_MILLIS, e -> {
+        navigating = false;
+        if (reduced) {
+            updated = true;
+            repaint();
+        }
+    });
+
+    /**
+     * The view last submitted to the pipeline and when, for timing frames
+     */
+    private volatile Viewport submitted;
+    private volatile long submittedAt;
+
+    /**
+     * Every view renders on the shared {@link RenderScheduler}. The view holding the keyboard
+     * focus (as its buttons do once clicked) gets this many times the share of the workers of
+     * any other view, and views which aren't showing, or whose window is minimized, get none.
+     */
+    static final double FOCUSED_WEIGHT = 4;
+    private final PropertyChangeListener focusTracker = e -> updateWeight();
+    private final WindowAdapter windowTracker = new WindowAdapter() {
+        @Override
+        public void windowIconified(WindowEvent e) {
+            suspend();
+        }
+
+        @Override
+        public void windowDeiconified(WindowEvent e) {
+            repaint();
+        }
+    };
+    private Window window;
+
+    /**
+     * Should idle render workers pre-render the views one button press away?
+     */
+    protected boolean prefetch = true;
+
+    /**
+     * Should resumable fractals render in stages of increasing iteration caps? The first
+     * stage iterates every pixel up to {@link #FIRST_CAP} and shows the frame; the pixels
+     * still going are left blank and finished by later stages, working only from the list
+     * of their saved orbits.
+     */
+    protected boolean deferExpensivePixels = true;
+    static final int FIRST_CAP = 64;
+    private static final int CAP_GROWTH = 8;
+
+    /**
+     * The view that {@code iterations} and {@code frame} currently show, and which of their
+     * pixels are provisional: resampled from an earlier view rather than rendered for this one.
+     * Only touched from the EDT.
+     */
+    private Viewport shownView;
+    private final BitSet provisional = new BitSet();
+
+    /**
+     * The colored frame shown on screen, filled in tile by tile as renders complete. It is
+     * only allocated once the view is painted, so headless renders never hold it.
+     */
+    private BufferedImage frame;
+
+    /**
+     * Renders tiles in the background, or null if the fractal doesn't render tile by tile
+     * (see {@link #rendersTiles()}); only touched from the EDT
      */
-    private int[][] iterMatrix;
+    protected final RenderPipeline pipeline;
+    private final RenderPipeline.Kernel kernel;
+
+    /**
+     * Diagnostic mode: record what each frame costs (see {@link CostMap}) and draw it over
+     * the frame. Turning it on drops the frames kept for reuse, so the next frame is
+     * rendered from scratch.
+     */
+    protected boolean showCosts = false;
+    private volatile CostMap costs;
+    private final JButton toggleCosts;
 
     protected int maxIterations = 256;
 
@@ -64,19 +184,85 @@ public abstract class ComplexFractal extends Fractal {
             colorScheme = new ColorScheme(2,155, 0, 0, 24, 0);
         }
         this.colorScheme = colorScheme;
-        iterMatrix = new int[height][width];
+        iterations = IterationBuffer.allocate(width, height, maxIterations);
+        kernel = new RenderPipeline.Kernel() {
+            @Override
+            public void render(Viewport view, Tile tile, int pass) {
+                final CostMap costs = costsFor(view);
+                if (costs == null) {
+                    renderTile(view, tile, pass);
+                    return;
+                }
+                final long start = System.nanoTime();
+                renderTile(view, tile, pass);
+                costs.addTileTime(tile, System.nanoTime() - start);
+            }
+
+            @Override
+            public int passes(Viewport view) {
+                return (getSymmetry().isTrivial() ? 1 : 2) * iterationCaps(view).length;
+            }
+
+            @Override
+            public int maxValue(Viewport view) {
+                return Math.max(ComplexFractal.this.maxValue(), view.maxIterations);
+            }
+        };
+        final RenderPipeline.Listener listener = new RenderPipeline.Listener() {
+            @Override
+            public void tileReady(Tile tile) {
+                repaint();
+            }
+
+            @Override
+            public void frameComplete(TileGrid frame) {
+                lastFrame = frame;
+                if (journalFile != null && journalFor(frame.view) != null) finishJournal();
+                final CostMap costs = costsFor(frame.view);
+                if (costs != null) costs.finish(System.nanoTime() - submittedAt);
+                if (frame.view == submitted) budget.record(frame.view, System.nanoTime() - submittedAt);
+            }
+
+            @Override
+            public void prefetched(TileGrid frame) {
+                addPrefetched(frame);
+            }
+        };
+        pipeline = rendersTiles() ? new RenderPipeline(RenderScheduler.shared(), tileSize(), kernel, listener) : null;
         xMin = xmin;
         xMax = xmax;
 
         increaseMaxIter = registerButton("▩", "increaseMaxIter");
         decreaseMaxIter = registerButton("□", "decreaseMaxIter");
+        toggleCosts = registerButton("cost", "toggle-costs");
         setPreferredSize(new Dimension(this.width, this.height));
         calculateDeltas();
+        idle.setRepeats(false);
+        addHierarchyListener(e -> {
+            if ((e.getChangeFlags() & HierarchyEvent.SHOWING_CHANGED) != 0 && !isShowing()) suspend();
+        });
 
         updateColors();
     }
 
 
+    /**
+     * @return the edge length of the tiles the frame is split into. This is called from the
+     * constructor, so it must not depend on subclass fields.
+     */
+    protected int tileSize() {
+        return RenderPipeline.DEFAULT_TILE_SIZE;
+    }
+
+    /**
+     * @return false for fractals which render some other way than tile by tile, which are
+     * then left without a {@link #pipeline}. This is called from the constructor, so it must
+     * not depend on subclass fields.
+     */
+    protected boolean rendersTiles() {
+        return true;
+    }
+
     /**
      * Get a point in the complex plane from a pixel position.
      */
@@ -97,42 +283,882 @@ public abstract class ComplexFractal extends Fractal {
     }
 
 
+    /**
+     * @return a snapshot of the current view for the render workers
+     */
+    protected Viewport viewport() {
+        return new Viewport(xMin, yMax, delta, width, height, maxIterations, renderParameters());
+    }
+
+    /**
+     * @return the views that each of the navigation buttons would move to
+     */
+    protected List<Viewport> predictedViewports() {
+        final double x0 = xMin, x1 = xMax, y0 = yMin, y1 = yMax, yc = yCenter, depth = zoomDepth, d = delta;
+        final List<Viewport> result = new ArrayList<>();
+        for (Move m : Move.values()) {
+            move(m);
+            calculateDeltas();
+            result.add(viewport());
+            xMin = x0;
+            xMax = x1;
+            yMin = y0;
+            yMax = y1;
+            yCenter = yc;
+            zoomDepth = depth;
+            delta = d;
+        }
+        return result;
+    }
+
+    /**
+     * @return any parameters besides the viewport that determine the rendered values (for
+     * example, the c of a Julia set), or null if there are none
+     */
+    protected Object renderParameters() {
+        return null;
+    }
+
+    /**
+     * Can this fractal continue an orbit from a saved state? Resumable fractals implement
+     * {@link #continueOrbit(double, double, double[], int, int)}.
+     */
+    protected boolean isResumable() {
+        return false;
+    }
+
+    /**
+     * Continue the orbit of the point {@code (re, im)}.
+     * @param z the orbit state, {@code {re, im}}, which is updated in place. A fresh orbit
+     *          starts out at the point itself.
+     *          If it has a third element, implementations whose value doesn't count the
+     *          iterations run (say because a trap ended the orbit early) store that count
+     *          there, for {@link CostMap}.
+     * @param from the number of iterations already performed to reach {@code z}
+     * @param max the total iteration limit
+     * @return the pixel value, which is {@link #unresolvedValue(int)} if the orbit hit
+     * {@code max} without resolving
+     */
+    protected int continueOrbit(double re, double im, double[] z, int from, int max) {
+        throw new UnsupportedOperationException(getFractalName() + " orbits are not resumable");
+    }
+
+    /**
+     * Continue the orbit of the point {@code (re, im)} of {@code view}. Fractals whose orbits
+     * depend on the scale of the view, say to stop once they are resolved to a pixel,
+     * override this instead.
+     */
+    protected int continueOrbit(Viewport view, double re, double im, double[] z, int from, int max) {
+        return continueOrbit(re, im, z, from, max);
+    }
+
+    /**
+     * Start the orbits of a row of points of {@code view} together, as
+     * {@link #continueOrbit(Viewport, double, double, double[], int, int)} does one at a time.
+     * Fractals which can step many orbits at once faster than one after another override this.
+     * @param z the points, in {@code [0, count)}, which receive the final orbit states
+     * @param values receives the pixel value of each point
+     * @param iterations receives the number of iterations run from each point
+     * @return false if the orbits weren't traced, and should be one at a time instead
+     */
+    protected boolean continueOrbits(Viewport view, ComplexBuffer z, int count, int max, int[] values,
+                                     int[] iterations) {
+        return false;
+    }
+
+    /**
+     * @return the value of a pixel whose orbit hit the iteration limit {@code max}
+     */
+    protected int unresolvedValue(int max) {
+        return max;
+    }
+
+    /**
+     * Get a point in the complex plane from a pixel position in {@code view}.
+     */
+    protected Complex pointFromPixel(Viewport view, int x, int y) {
+        return new Complex(view.re(x), view.im(y));
+    }
+
+    /**
+     * @return the symmetry group this fractal is invariant under. Pixels outside of the
+     * group's fundamental region are copied rather than computed where possible.
+     */
+    protected Symmetry getSymmetry() {
+        return Symmetry.NONE;
+    }
+
+    /**
+     * Translate the value of a pixel onto its symmetric image. If {@code element} maps pixel
+     * p onto pixel q, this is given q's value and must return p's value. Fractals whose
+     * values encode something that moves under the symmetry (like Newton basins) override this.
+     */
+    protected int mapSymmetricValue(int value, Symmetry symmetry, int element) {
+        return value;
+    }
+
+    /**
+     * @return the iteration cap of each stage of rendering {@code view}, ending with
+     * {@code view.maxIterations}
+     */
+    protected int[] iterationCaps(Viewport view) {
+        if (!deferExpensivePixels || !isResumable() || view.maxIterations <= FIRST_CAP) {
+            return new int[]{view.maxIterations};
+        }
+        final List<Integer> caps = new ArrayList<>();
+        for (long cap = FIRST_CAP; cap < view.maxIterations; cap *= CAP_GROWTH) caps.add((int) cap);
+        caps.add(view.maxIterations);
+        final int[] result = new int[caps.size()];
+        for (int i = 0; i < result.length; ++i) result[i] = caps.get(i);
+        return result;
+    }
+
+    /**
+     * Fill in the values of a single tile. This runs on the render workers.
+     *
+     * Rendering goes in stages of increasing iteration caps (see {@link #iterationCaps(Viewport)}).
+     * With a non-trivial symmetry every stage takes two passes: the first only computes pixels
+     * that can't be copied from another pixel of the frame, and the second copies the rest.
+     */
+    protected void renderTile(Viewport view, Tile tile, int pass) {
+        final Symmetry symmetry = getSymmetry();
+        final int[] caps = iterationCaps(view);
+        final int stage = symmetry.isTrivial() ? pass : pass / 2;
+        // The caps can only have changed under a render that is stale anyway
+        if (stage >= caps.length) return;
+        if (!symmetry.isTrivial() && pass % 2 == 1) {
+            copySymmetricPixels(view, tile, symmetry);
+            return;
+        }
+        final RenderJournal j = journalFor(view);
+        if (stage > 0) {
+            continueDeferred(view, tile, caps[stage]);
+            // Later passes only copy pixels within the frame, so the last stage is all a
+            // resumed render needs
+            if (stage == caps.length - 1 && j != null && tile.orbits != null && !tile.isStale()) j.record(tile);
+            return;
+        }
+
+        final double[] scratch = new double[3];
+        final CostMap costs = costsFor(view);
+        final boolean resumable = isResumable();
+        if (j != null && j.restore(tile)) return;
+        if (resumable && resumeTile(view, tile)) {
+            if (caps.length == 1 && j != null && !tile.isStale()) j.record(tile);
+            return;
+        }
+        if (resumable) tile.orbits = new OrbitStore();
+        // Pixels to copy from their symmetric images in the next pass. They are found once
+        // per tile, since mapping a pixel into the fundamental region isn't cheap.
+        boolean[] mirrored = null;
+        if (!symmetry.isTrivial()) {
+            if (tile.mirrors == null) tile.mirrors = findMirrors(view, tile, symmetry);
+            mirrored = new boolean[tile.size()];
+            for (int i = 0; i < tile.mirrors.length; i += 3) mirrored[tile.mirrors[i]] = true;
+        }
+        final int cap = caps[0];
+        final int unresolved = unresolvedValue(view.maxIterations);
+        final int capped = unresolvedValue(cap);
+
+        // Pixels landing exactly on a pixel of the last frame, or of a prefetched frame, can
+        // be reused as is
+        final TileGrid[] sources = reuseSources(view, tile);
+        final int[][] reuseX = new int[sources.length][];
+        final int[] reuseY = new int[sources.length];
+        for (int s = 0; s < sources.length; ++s) {
+            final Viewport from = sources[s].view;
+            reuseX[s] = exactPixels(view.xMin, view.delta, from.xMin, from.delta, tile.x, tile.width, from.width);
+        }
+
+        // The points of each row still to trace, packed together, and the orbits of the row
+        // reused from other frames. Both are added to the tile's orbits once the row is done,
+        // so that they go in in pixel order.
+        final ComplexBuffer rowZ = resumable ? new ComplexBuffer(tile.width) : null;
+        final OrbitStore reused = resumable ? new OrbitStore() : null;
+        final double[] moved = new double[2];
+        final int[] laneCol = new int[tile.width];
+        final int[] rowValues = new int[tile.width];
+        final int[] rowIterations = new int[tile.width];
+
+        for (int row = 0; row < tile.height; ++row) {
+            if (tile.isStale()) return;
+            final int y = tile.y + row;
+            int lanes = 0;
+            if (resumable) reused.clear();
+            for (int s = 0; s < sources.length; ++s) {
+                final Viewport from = sources[s].view;
+                reuseY[s] = exactPixel(view.im(y), from.yMax, -from.delta, from.height);
+            }
+            pixels:
+            for (int col = 0; col < tile.width; ++col) {
+                final int x = tile.x + col;
+                if (mirrored != null && mirrored[row * tile.width + col]) {
+                    tile.set(col, row, Tile.EMPTY);
+                    continue;
+                }
+                for (int s = 0; s < sources.length; ++s) {
+                    if (reuseY[s] >= 0 && reuseX[s][col] >= 0 && reusePixel(sources[s], reuseX[s][col], reuseY[s],
+                            tile, col, row, unresolved, reused, scratch)) {
+                        continue pixels;
+                    }
+                }
+                if (resumable) {
+                    // Traced below, once the whole row is known
+                    rowZ.set(lanes, view.re(x), view.im(y));
+                    laneCol[lanes++] = col;
+                } else {
+                    final int value = calculateIterations(pointFromPixel(view, x, y), view.maxIterations);
+                    tile.set(col, row, value);
+                    // The value is all we have to go on
+                    if (costs != null) costs.addWork(x, y, Math.max(0, Math.min(value, view.maxIterations)));
+                }
+            }
+            if (lanes == 0) {
+                if (resumable) addOrbits(reused, 0, Integer.MAX_VALUE, tile.orbits, moved);
+                continue;
+            }
+            final boolean traced = continueOrbits(view, rowZ, lanes, cap, rowValues, rowIterations);
+            int next = 0;
+            for (int i = 0; i < lanes; ++i) {
+                final int col = laneCol[i], x = tile.x + col;
+                next = addOrbits(reused, next, row * tile.width + col, tile.orbits, moved);
+                scratch[0] = rowZ.re[i];
+                scratch[1] = rowZ.im[i];
+                final int value;
+                if (traced) {
+                    value = rowValues[i];
+                    if (costs != null) costs.addWork(x, y, rowIterations[i]);
+                } else {
+                    value = traceOrbit(view, costs, x, y, scratch, 0, cap);
+                }
+                if (value == capped) {
+                    tile.orbits.add(row * tile.width + col, scratch, cap);
+                    tile.set(col, row, cap < view.maxIterations ? Tile.EMPTY : unresolved);
+                } else {
+                    tile.set(col, row, value);
+                }
+            }
+            addOrbits(reused, next, Integer.MAX_VALUE, tile.orbits, moved);
+        }
+        if (caps.length == 1 && j != null) j.record(tile);
+    }
+
+    /**
+     * Add the orbits of {@code from}, starting at the {@code next}-th, to {@code to} until
+     * reaching one of pixel {@code before} or later
+     * @return the index of the first orbit not added
+     */
+    private static int addOrbits(OrbitStore from, int next, int before, OrbitStore to, double[] z) {
+        for (; next < from.size() && from.pixel(next) < before; ++next) {
+            from.get(next, z);
+            to.add(from.pixel(next), z, from.iterations(next));
+        }
+        return next;
+    }
+
+    /**
+     * {@link #continueOrbit(Viewport, double, double, double[], int, int)} for pixel
+     * {@code (x, y)} of {@code view}, adding the iterations it runs to {@code costs} if we
+     * are profiling
+     * @param z the orbit state, with room for the count of iterations run
+     */
+    private int traceOrbit(Viewport view, CostMap costs, int x, int y, double[] z, int from, int cap) {
+        if (costs == null) return continueOrbit(view, view.re(x), view.im(y), z, from, cap);
+        z[2] = Double.NaN;
+        final int value = continueOrbit(view, view.re(x), view.im(y), z, from, cap);
+        if (!Double.isNaN(z[2])) {
+            costs.addWork(x, y, (int) z[2]);
+        } else {
+            // An escape time orbit's value is the number of iterations it has run
+            costs.addWork(x, y, Math.max(0, (value == unresolvedValue(cap) ? cap : value) - from));
+        }
+        return value;
+    }
+
+    /**
+     * @return the journal checkpointing the render of {@code view}, or null if it isn't
+     * being checkpointed
+     */
+    private RenderJournal journalFor(Viewport view) {
+        final RenderJournal j = journal;
+        return j != null && j.view.sameScene(view) && j.view.maxIterations == view.maxIterations ? j : null;
+    }
+
+    /**
+     * @return the cost map recording the render of {@code view}, or null if it isn't being
+     * profiled
+     */
+    private CostMap costsFor(Viewport view) {
+        final CostMap c = costs;
+        return c != null && c.view == view ? c : null;
+    }
+
+    /**
+     * Render {@code view} from scratch, recording what it costs, and wait for it to finish.
+     * This does not show the frame.
+     * @param tileSize the edge length of the tiles to split the frame into
+     */
+    public CostMap profile(Viewport view, int tileSize) {
+        final RenderPipeline p = tileSize == tileSize() ? pipeline
+                : new RenderPipeline(RenderScheduler.shared(), tileSize, kernel, tile -> {});
+        final CostMap c = new CostMap(view, getFractalName(), tileSize, p.threads());
+        costs = c;
+        lastFrame = null;
+        clearPrefetched();
+        try {
+            final long start = System.nanoTime();
+            p.renderNow(view);
+            c.finish(System.nanoTime() - start);
+        } finally {
+            costs = null;
+            if (p != pipeline) p.shutdown();
+        }
+        return c;
+    }
+
+    /**
+     * Render {@code view} on {@code scheduler}'s workers and wait for it to finish, the same
+     * way as the view on screen is rendered. This does not show the frame.
+     * @param journal where to checkpoint finished tiles, and restore those already finished
+     *                from; may be null
+     * @throws RuntimeException the first failure of any tile
+     */
+    TileGrid renderNow(Viewport view, RenderScheduler scheduler, RenderJournal journal) {
+        final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        final RenderPipeline p = new RenderPipeline(scheduler, tileSize(), new RenderPipeline.Kernel() {
+            @Override
+            public void render(Viewport view, Tile tile, int pass) {
+                try {
+                    kernel.render(view, tile, pass);
+                } catch (RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                }
+            }
+
+            @Override
+            public int passes(Viewport view) {
+                return kernel.passes(view);
+            }
+
+            @Override
+            public int maxValue(Viewport view) {
+                return kernel.maxValue(view);
+            }
+        }, tile -> {});
+        this.journal = journal;
+        try {
+            final TileGrid grid = p.renderNow(view);
+            if (failure.get() != null) throw failure.get();
+            return grid;
+        } finally {
+            this.journal = null;
+            p.shutdown();
+        }
+    }
+
+    /**
+     * Carry on the orbits of {@code tile} that stopped short of {@code cap}. Pixels that
+     * are still going are left blank until the last stage, whose cap is the view's limit.
+     */
+    private void continueDeferred(Viewport view, Tile tile, int cap) {
+        final OrbitStore old = tile.orbits;
+        if (old == null) return;
+        final OrbitStore orbits = new OrbitStore(Math.max(16, old.size()));
+        final int capped = unresolvedValue(cap);
+        final int unresolved = unresolvedValue(view.maxIterations);
+        final double[] z = new double[3];
+        final CostMap costs = costsFor(view);
+        for (int i = 0; i < old.size(); ++i) {
+            if ((i & 0xFF) == 0 && tile.isStale()) return;
+            final int pixel = old.pixel(i);
+            final int from = old.iterations(i);
+            old.get(i, z);
+            if (from >= cap) {
+                orbits.add(pixel, z, from);
+                continue;
+            }
+            final int value = traceOrbit(view, costs, tile.x + pixel % tile.width, tile.y + pixel / tile.width,
+                    z, from, cap);
+            if (value == capped) {
+                orbits.add(pixel, z, cap);
+                tile.set(pixel, cap < view.maxIterations ? Tile.EMPTY : unresolved);
+            } else {
+                tile.set(pixel, value);
+            }
+        }
+        tile.orbits = orbits;
+    }
+
+    /**
+     * Fill in the pixels of {@code tile} that are symmetric images of pixels rendered in the
+     * previous pass. Pixels already filled in by an earlier stage are final.
+     */
+    private void copySymmetricPixels(Viewport view, Tile tile, Symmetry symmetry) {
+        if (tile.mirrors == null) tile.mirrors = findMirrors(view, tile, symmetry);
+        final int[] mirrors = tile.mirrors;
+        for (int i = 0; i < mirrors.length; i += 3) {
+            if ((i & 0xFFF) == 0 && tile.isStale()) return;
+            final int pixel = mirrors[i];
+            if (tile.get(pixel) != Tile.EMPTY) continue;
+            final int value = tile.grid.get(mirrors[i + 1] % view.width, mirrors[i + 1] / view.width);
+            if (value != Tile.EMPTY) tile.set(pixel, mapSymmetricValue(value, symmetry, mirrors[i + 2]));
+        }
+    }
+
+    /**
+     * @return the pixels of {@code tile} to copy from symmetric pixels, see {@link Tile#mirrors}
+     */
+    private int[] findMirrors(Viewport view, Tile tile, Symmetry symmetry) {
+        final int[] source = new int[2];
+        final double[] scratch = new double[2];
+        final int[] mirrors = new int[3 * tile.size()];
+        int mirrored = 0;
+        for (int row = 0; row < tile.height; ++row) {
+            for (int col = 0; col < tile.width; ++col) {
+                final int element = symmetricSource(view, symmetry, tile.x + col, tile.y + row, source, scratch);
+                if (element == 0) continue;
+                mirrors[mirrored++] = row * tile.width + col;
+                mirrors[mirrored++] = source[1] * view.width + source[0];
+                mirrors[mirrored++] = element;
+            }
+        }
+        return Arrays.copyOf(mirrors, mirrored);
+    }
+
+    /**
+     * Keep a speculatively rendered frame for reuse, dropping the oldest past {@link #MAX_PREFETCHED}
+     */
+    void addPrefetched(TileGrid frame) {
+        synchronized (prefetched) {
+            prefetched.addLast(frame);
+            if (prefetched.size() > MAX_PREFETCHED) prefetched.removeFirst();
+        }
+    }
+
+    /**
+     * @return a snapshot of the prefetched frames, newest last
+     */
+    TileGrid[] prefetchedFrames() {
+        synchronized (prefetched) {
+            return prefetched.toArray(new TileGrid[0]);
+        }
+    }
+
+    private void clearPrefetched() {
+        synchronized (prefetched) {
+            prefetched.clear();
+        }
+    }
+
+    /**
+     * @return the finished frames of the same scene that overlap {@code tile}, most likely
+     * to line up with {@code view} first
+     */
+    private TileGrid[] reuseSources(Viewport view, Tile tile) {
+        final List<TileGrid> sources = new ArrayList<>();
+        final TileGrid[] frames = prefetchedFrames();
+        for (int i = frames.length - 1; i >= 0; --i) {
+            final TileGrid g = frames[i];
+            if (g.view.sameRegion(view)) sources.add(0, g);
+            else sources.add(g);
+        }
+        final TileGrid last = lastFrame;
+        if (last != null) sources.add(last);
+        final double re0 = view.re(tile.x), re1 = view.re(tile.x + tile.width);
+        final double im0 = view.im(tile.y + tile.height), im1 = view.im(tile.y);
+        sources.removeIf(g -> g.view.maxIterations != view.maxIterations
+                || !Objects.equals(g.view.parameters, view.parameters)
+                || g.view.xMin > re1 || g.view.xMax() < re0 || g.view.yMin() > im1 || g.view.yMax < im0);
+        return sources.toArray(new TileGrid[0]);
+    }
+
+    /**
+     * If the last complete frame showed the same scene with a lower iteration limit, fill
+     * in {@code tile} from it, continuing only the orbits that hit the old limit.
+     * @return false if there is nothing to resume from
+     */
+    private boolean resumeTile(Viewport view, Tile tile) {
+        final TileGrid last = lastFrame;
+        if (last == null || !last.view.sameScene(view) || last.tileSize != tile.grid.tileSize) return false;
+        if (last.view.maxIterations > view.maxIterations) return false;
+        final Tile old = last.tileAt(tile.x, tile.y);
+        if (old.orbits == null) return false;
+
+        final int[] values = new int[tile.size()];
+        old.getValues(values);
+        tile.setValues(values);
+        final Symmetry symmetry = getSymmetry();
+        if (!symmetry.isTrivial()) {
+            // Mirrored pixels have no orbits of their own, so blank them for the copy pass to
+            // fill in again from their resumed sources
+            if (tile.mirrors == null) tile.mirrors = findMirrors(view, tile, symmetry);
+            for (int i = 0; i < tile.mirrors.length; i += 3) tile.set(tile.mirrors[i], Tile.EMPTY);
+        }
+        final OrbitStore orbits = new OrbitStore(Math.max(16, old.orbits.size()));
+        final int unresolved = unresolvedValue(view.maxIterations);
+        final double[] z = new double[3];
+        final CostMap costs = costsFor(view);
+        for (int i = 0; i < old.orbits.size(); ++i) {
+            if ((i & 0xFF) == 0 && tile.isStale()) return true;
+            final int pixel = old.orbits.pixel(i);
+            old.orbits.get(i, z);
+            final int value = traceOrbit(view, costs, tile.x + pixel % tile.width, tile.y + pixel / tile.width,
+                    z, old.orbits.iterations(i), view.maxIterations);
+            tile.set(pixel, value);
+            if (value == unresolved) orbits.add(pixel, z, view.maxIterations);
+        }
+        tile.orbits = orbits;
+        return true;
+    }
+
+    /**
+     * Map a run of pixel columns of one view onto another.
+     * @return for each of the {@code count} pixels starting at {@code start} in the new view,
+     * the pixel of the old view at exactly the same position, or -1 if there is none
+     */
+    static int[] exactPixels(double min, double delta, double oldMin, double oldDelta,
+                             int start, int count, int oldCount) {
+        final int[] result = new int[count];
+        for (int i = 0; i < count; ++i) {
+            result[i] = exactPixel(min + delta * (start + i), oldMin, oldDelta, oldCount);
+        }
+        return result;
+    }
+
+    /**
+     * @return the index of the old pixel lying exactly at {@code position}, or -1
+     */
+    static int exactPixel(double position, double oldMin, double oldDelta, int oldCount) {
+        final double p = (position - oldMin) / oldDelta;
+        final long q = Math.round(p);
+        return Math.abs(p - q) <= SYMMETRY_EPSILON && q >= 0 && q < oldCount ? (int) q : -1;
+    }
+
+    /**
+     * Copy pixel {@code (x, y)} of {@code last} into {@code tile}, and its orbit state into
+     * {@code orbits} if it didn't resolve.
+     * @param orbits where to keep the orbits of unresolved pixels, or null if we don't
+     * @return false if the pixel has to be computed after all
+     */
+    private boolean reusePixel(TileGrid last, int x, int y, Tile tile, int col, int row, int unresolved,
+                               OrbitStore orbits, double[] z) {
+        final int value = last.get(x, y);
+        if (orbits != null && value == unresolved) {
+            // Resuming this pixel later needs its orbit, which copied pixels don't have
+            final Tile old = last.tileAt(x, y);
+            final int i = old.orbits == null ? -1 : old.orbits.indexOf((y - old.y) * old.width + x - old.x);
+            if (i < 0) return false;
+            old.orbits.get(i, z);
+            orbits.add(row * tile.width + col, z, old.orbits.iterations(i));
+        }
+        tile.set(col, row, value);
+        return true;
+    }
+
+    /**
+     * Tolerance, in pixels, for a symmetric image to count as landing on a pixel
+     */
+    private static final double SYMMETRY_EPSILON = 1e-6;
+
+    /**
+     * Find the pixel that pixel {@code (x, y)} can be copied from.
+     * @param source receives the source pixel
+     * @return the symmetry element mapping {@code (x, y)} onto the source, or 0 if the pixel
+     * must be computed: either it is in the fundamental region, or its image in the region
+     * doesn't land exactly on a pixel of the frame
+     */
+    private int symmetricSource(Viewport view, Symmetry symmetry, int x, int y, int[] source, double[] scratch) {
+        final int element = symmetry.reduce(view.re(x), view.im(y), scratch);
+        if (element == 0) return 0;
+        final double sx = (scratch[0] - view.xMin) / view.delta;
+        final double sy = (view.yMax - scratch[1]) / view.delta;
+        final long qx = Math.round(sx), qy = Math.round(sy);
+        if (Math.abs(sx - qx) > SYMMETRY_EPSILON || Math.abs(sy - qy) > SYMMETRY_EPSILON) return 0;
+        if (qx < 0 || qx >= view.width || qy < 0 || qy >= view.height) return 0;
+        // Only copy from pixels that are themselves computed directly
+        if (symmetry.reduce(view.re((int) qx), view.im((int) qy), scratch) != 0) return 0;
+        source[0] = (int) qx;
+        source[1] = (int) qy;
+        return element;
+    }
+
+    /**
+     * Render the current view synchronously, blocking until every pixel is computed. The
+     * GUI never calls this; it is meant for headless rendering and exporting.
+     */
     public void compute() {
         System.out.println("compute: updated="+updated);
         if (!updated) return;
         updated = false;
-        final java.util.List<Thread> threads = new ArrayList<>(numWorkers);
-
-        final int delta = height / numWorkers;
-        for (int w = 0; w < numWorkers; ++w) {
-            int start = w*delta;
-            int end = Math.min((w+1)*delta, height);
-            final IterWorker worker = new IterWorker(0, width, start, end);
-            final Thread t = new Thread(worker);
-            System.out.println("Spawned worker: " + worker);
-            threads.add(t);
-            t.start();
-        }
-        for (Thread t: threads) {
+        show(pipeline.renderNow(viewport()));
+    }
+
+    /**
+     * Like {@link #compute()}, but checkpoint finished tiles to {@code journalFile} as the
+     * render goes. If the file already holds a checkpoint of this same render, only the tiles
+     * that weren't finished yet are rendered.
+     */
+    public void compute(File journalFile) throws IOException {
+        if (!updated) return;
+        updated = false;
+        final Viewport view = viewport();
+        try (RenderJournal j = RenderJournal.open(journalFile, getClass().getName(), view, tileSize())) {
+            journal = j;
             try {
-                t.join();
-            } catch (InterruptedException e) {
-                System.err.println("Uncaught interruption of thread");
+                show(pipeline.renderNow(view));
+            } finally {
+                journal = null;
             }
         }
     }
 
+    /**
+     * Checkpoint the render of the current view to {@code file} as it goes, so that if the
+     * application is stopped before the view is finished, calling this again on the next
+     * start picks up where it left off. The file is deleted once the view is complete;
+     * renders of any other view aren't checkpointed.
+     * @return the number of tiles picked up from an earlier run
+     */
+    public int resumeJournal(File file) throws IOException {
+        final RenderJournal j = RenderJournal.open(file, getClass().getName(), viewport(), tileSize());
+        journalFile = file;
+        journal = j;
+        updated = true;
+        return j.resumedTiles();
+    }
+
+    private synchronized void finishJournal() {
+        final RenderJournal j = journal;
+        if (j == null) return;
+        journal = null;
+        try {
+            j.close();
+            Files.deleteIfExists(journalFile.toPath());
+        } catch (IOException e) {
+            System.err.println("Could not finish render journal " + journalFile + ": " + e);
+        }
+    }
+
+    /**
+     * Show a finished frame by taking over its buffer, rather than copying it
+     */
+    private void show(TileGrid grid) {
+        shownView = grid.view;
+        iterations = grid.values;
+        iterationsShared = true;
+        provisional.clear();
+        lastFrame = grid;
+        if (frame != null) redraw();
+    }
+
+    /**
+     * @return {@code iterations}, after copying it if it is shared with a finished frame, and
+     * widening it if it can't hold {@link #maxValue()}
+     */
+    private IterationBuffer writableIterations() {
+        if (iterationsShared) {
+            iterations = iterations.copy(maxValue());
+            iterationsShared = false;
+        } else {
+            iterations = iterations.widen(maxValue());
+        }
+        return iterations;
+    }
+
+    /**
+     * Color the whole on-screen frame from {@code iterations}
+     */
+    private void redraw() {
+        final int[] row = new int[width];
+        for (int y = 0; y < height; ++y) {
+            iterations.getRow(y, 0, row, 0, width);
+            for (int x = 0; x < width; ++x) row[x] = row[x] == Tile.EMPTY ? 0 : getColor(row[x]).getRGB();
+            frame.setRGB(0, y, width, 1, row, 0, width);
+        }
+    }
+
+    /**
+     * Copy a finished tile into {@code iterations} and the on-screen frame
+     */
+    private void storeTile(Tile t) {
+        final int scale = (int) Math.round(t.grid.view.delta / shownView.delta);
+        if (scale != 1 || t.grid.view.maxIterations != maxIterations) {
+            storeReducedTile(t, scale);
+            return;
+        }
+        final IterationBuffer values = writableIterations();
+        final int[] rgb = new int[t.size()];
+        for (int row = 0; row < t.height; ++row) {
+            final int offset = row * t.width;
+            for (int col = 0; col < t.width; ++col) {
+                final int value = t.get(col, row);
+                if (value == Tile.EMPTY) {
+                    rgb[offset + col] = frame.getRGB(t.x + col, t.y + row);
+                } else {
+                    values.set(t.x + col, t.y + row, value);
+                    provisional.clear((t.y + row) * width + t.x + col);
+                    rgb[offset + col] = getColor(value).getRGB();
+                }
+            }
+        }
+        frame.setRGB(t.x, t.y, t.width, t.height, rgb, 0, t.width);
+    }
+
+    /**
+     * Copy a tile of a reduced frame into {@code iterations} and the on-screen frame, blown
+     * up to fill a {@code scale} by {@code scale} block per pixel. The blocks are provisional,
+     * except for the pixel each one was sampled at if the iteration cap wasn't reduced.
+     */
+    private void storeReducedTile(Tile t, int scale) {
+        final int cap = t.grid.view.maxIterations;
+        final boolean capped = cap != maxIterations;
+        final int unresolved = unresolvedValue(cap);
+        final int x0 = t.x * scale, y0 = t.y * scale;
+        final int w = Math.min(t.width * scale, width - x0), h = Math.min(t.height * scale, height - y0);
+        final IterationBuffer values = writableIterations();
+        final int[] rgb = new int[w * h];
+        for (int row = 0; row < h; ++row) {
+            for (int col = 0; col < w; ++col) {
+                int value = t.get(col / scale, row / scale);
+                final int x = x0 + col, y = y0 + row;
+                if (value == Tile.EMPTY) {
+                    rgb[row * w + col] = frame.getRGB(x, y);
+                    continue;
+                }
+                if (capped && value == unresolved) value = unresolvedValue(maxIterations);
+                values.set(x, y, value);
+                if (!capped && row % scale == 0 && col % scale == 0) provisional.clear(y * width + x);
+                else provisional.set(y * width + x);
+                rgb[row * w + col] = getColor(value).getRGB();
+            }
+        }
+        frame.setRGB(x0, y0, w, h, rgb, 0, w);
+    }
+
+    /**
+     * Resample what is currently shown into {@code view} as a placeholder until the real
+     * render arrives. Pixels landing exactly on a rendered pixel of the same scene keep its
+     * value for good; everything else is marked provisional.
+     */
+    void reproject(Viewport view) {
+        final Viewport from = shownView;
+        shownView = view;
+        if (from == null) return;
+        final boolean sameValues = from.maxIterations == view.maxIterations
+                && Objects.equals(from.parameters, view.parameters);
+        if (from.sameRegion(view)) {
+            if (!sameValues) provisional.set(0, width * height);
+            return;
+        }
+
+        // Nearest old pixel for each new column, and whether it lands exactly on it
+        final int[] nearestX = new int[width];
+        final boolean[] exactX = new boolean[width];
+        for (int x = 0; x < width; ++x) {
+            final double p = (view.re(x) - from.xMin) / from.delta;
+            nearestX[x] = (int) Math.round(p);
+            exactX[x] = Math.abs(p - nearestX[x]) <= SYMMETRY_EPSILON;
+        }
+
+        final IterationBuffer old = iterations;
+        final BitSet oldProvisional = (BitSet) provisional.clone();
+        iterations = IterationBuffer.allocate(width, height, Math.max(maxValue(), old.maxValue()));
+        iterationsShared = false;
+        provisional.clear();
+        final int[] rgb = new int[width];
+        for (int y = 0; y < height; ++y) {
+            final double p = (from.yMax - view.im(y)) / from.delta;
+            final int oy = (int) Math.round(p);
+            final boolean exactY = Math.abs(p - oy) <= SYMMETRY_EPSILON;
+            for (int x = 0; x < width; ++x) {
+                final int ox = nearestX[x];
+                if (ox < 0 || ox >= width || oy < 0 || oy >= height) {
+                    provisional.set(y * width + x);
+                    rgb[x] = 0;
+                    continue;
+                }
+                final int value = old.get(ox, oy);
+                if (value == Tile.EMPTY) {
+                    provisional.set(y * width + x);
+                    rgb[x] = 0;
+                    continue;
+                }
+                iterations.set(x, y, value);
+                rgb[x] = getColor(value).getRGB();
+                if (!(sameValues && exactX[x] && exactY) || oldProvisional.get(oy * width + ox)) {
+                    provisional.set(y * width + x);
+                }
+            }
+            frame.setRGB(0, y, width, 1, rgb, 0, width);
+        }
+    }
+
+    /**
+     * @return the fraction of the shown pixels which are provisional placeholders
+     */
+    public double provisionalFraction() {
+        return (double) provisional.cardinality() / (width * height);
+    }
+
+    /**
+     * @return true if pixel {@code (x, y)} is a provisional placeholder
+     */
+    boolean isProvisional(int x, int y) {
+        return provisional.get(y * width + x);
+    }
+
+    /**
+     * @return the largest value {@link #calculateIterations(Complex, int)} can return, used
+     * to pick how many bytes per pixel to store
+     */
+    protected int maxValue() {
+        return maxIterations;
+    }
+
+    /**
+     * @return the values of the most recently rendered frame
+     */
+    public IterationBuffer getIterations() {
+        return iterations;
+    }
+
+    /**
+     * Kick off a background render if the view has changed, then draw whatever tiles have
+     * arrived so far. This never waits on the render workers.
+     */
     public void paintComponent(final Graphics g) {
-        if (!updated) return;
         super.paintComponent(g);
-        compute();
-        for (int i = 0; i < width; ++i) {
-            for (int j = 0; j < height; ++j) {
-                final Color c = getColor(iterMatrix[j][i]);
-                g.setColor(c);
-                g.fillRect(i,j,1,1);    // A super dumb way to draw a pixel
-            }
+        if (frame == null) {
+            frame = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            if (shownView != null) redraw();
+        }
+        if (updated) {
+            updated = false;
+            final Viewport view = viewport();
+            reproject(view);
+            final Viewport render = navigating ? budget.reduce(view) : view;
+            reduced = render != view;
+            renderScale = (int) Math.round(render.delta / view.delta);
+            renderIterations = render.maxIterations;
+            submitted = render;
+            submittedAt = System.nanoTime();
+            costs = showCosts ? new CostMap(render, getFractalName(), tileSize(), pipeline.threads()) : null;
+            pipeline.submit(render, prefetch && !reduced ? predictedViewports() : Collections.emptyList());
         }
+        // Read before draining, since every tile of a frame is queued before it completes
+        final TileGrid done = lastFrame;
+        Tile t;
+        while ((t = pipeline.poll()) != null) {
+            if (!t.isStale()) storeTile(t);
+        }
+        if (done != null && done.view == submitted && !reduced && done.values != iterations) {
+            // Every tile has been copied in; keep the frame's own buffer rather than the copy
+            iterations = done.values;
+            iterationsShared = true;
+        }
+        g.drawImage(frame, 0, 0, null);
+        final CostMap c = costs;
+        if (c != null) c.drawOverlay(this, g, width, height);
         drawKey(g);
     }
 
@@ -146,6 +1172,14 @@ public abstract class ComplexFractal extends Fractal {
         return colors[c];
     }
 
+    /**
+     * @param colorNumber a value produced by {@link #calculateIterations(Complex, int)}
+     * @return the RGB color used when exporting {@code colorNumber} to an image
+     */
+    protected int getColorInt(int colorNumber) {
+        return colorScheme.getColorInt(colorNumber);
+    }
+
     protected void drawKey(Graphics g) {
         System.out.println("drawKey(Graphics): showKey = " + showKey);
 
@@ -154,7 +1188,9 @@ public abstract class ComplexFractal extends Fractal {
                     "maxIters: " + maxIterations,
                     String.format("zoom:    %.6f", zoomDepth),
                     String.format("x-range: %.6f, %.6f", xMin, xMax),
-                    String.format("y-range: %.6f, %.6f", yMin, yMax)
+                    String.format("y-range: %.6f, %.6f", yMin, yMax),
+                    String.format("preview: %.1f%%", 100 * provisionalFraction()),
+                    budgetLine()
             };
 
             drawKey(g, toDraw);
@@ -162,6 +1198,15 @@ public abstract class ComplexFractal extends Fractal {
     }
 
 
+    /**
+     * @return a line for the key with the frame time target and the resolution of the
+     * current frame
+     */
+    protected String budgetLine() {
+        final String line = String.format("budget:  %d ms, scale 1/%d", budget.targetMillis(), renderScale);
+        return reduced && renderIterations != maxIterations ? line + ", " + renderIterations + " iters" : line;
+    }
+
     protected void drawKey(Graphics g, String[] lines) {
         System.out.println("drawKey(Graphics, String[]): showKey = " + showKey);
 
@@ -215,48 +1260,14 @@ public abstract class ComplexFractal extends Fractal {
     }
 
 
-    class IterWorker implements Runnable {
-
-        private int widthStart;
-        private int widthEnd;
-        private int heightStart;
-        private int heightEnd;
-
-        IterWorker(int widthStart, int widthEnd, int heightStart, int heightEnd) {
-            this.widthStart = widthStart;
-            this.widthEnd = widthEnd;
-            this.heightStart = heightStart;
-            this.heightEnd = heightEnd;
-        }
-
-        @Override
-        public void run() {
-            for (int j = heightStart; j < heightEnd; ++j) {
-                for (int i = widthStart; i < widthEnd; ++i ) {
-                    final Complex z = pointFromPixel(i,j);
-                    final int iters = calculateIterations(z);
-                    iterMatrix[j][i] = iters;
-                }
-            }
-        }
-
-        @Override
-        public String toString() {
-            return "IterWorker{" +
-                    "widthStart=" + widthStart +
-                    ", widthEnd=" + widthEnd +
-                    ", heightStart=" + heightStart +
-                    ", heightEnd=" + heightEnd +
-                    '}';
-        }
-    }
-
     @Override
     public void actionPerformed(ActionEvent e) {
         System.out.println("ActionEvent: " + e.getActionCommand());
         System.out.println(">>> updated = " + updated);
 
         final Object source = e.getSource();
+        navigating = true;
+        idle.restart();
 
         if (source instanceof JButton) {
             System.out.println("Button: " + getButtonName((JButton) source));
@@ -269,25 +1280,66 @@ public abstract class ComplexFractal extends Fractal {
         else if (source == decreaseMaxIter) {
             maxIterations = maxIterations < 64 ? 128: maxIterations - 64;
         }
+        else if (source == toggleCosts) {
+            showCosts = !showCosts;
+            costs = null;
+            if (showCosts) {
+                lastFrame = null;
+                clearPrefetched();
+            }
+            updated = true;
+        }
         super.actionPerformed(e);
     }
 
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        KeyboardFocusManager.getCurrentKeyboardFocusManager().addPropertyChangeListener("focusOwner", focusTracker);
+        window = SwingUtilities.getWindowAncestor(this);
+        if (window != null) window.addWindowListener(windowTracker);
+        updateWeight();
+    }
+
+    @Override
+    public void removeNotify() {
+        KeyboardFocusManager.getCurrentKeyboardFocusManager().removePropertyChangeListener("focusOwner", focusTracker);
+        if (window != null) window.removeWindowListener(windowTracker);
+        window = null;
+        super.removeNotify();
+    }
+
+    private void updateWeight() {
+        final Component owner = KeyboardFocusManager.getCurrentKeyboardFocusManager().getFocusOwner();
+        final boolean focused = owner != null && SwingUtilities.isDescendingFrom(owner, this);
+        if (pipeline != null) pipeline.setWeight(focused ? FOCUSED_WEIGHT : 1);
+    }
+
+    /**
+     * Stop rendering while nobody can see the view; it is rendered afresh when next painted
+     */
+    private void suspend() {
+        if (pipeline != null) pipeline.cancel();
+        updated = true;
+    }
+
     public BufferedImage createBufferedImage() {
         BufferedImage bi = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-        int[] rgbData = new int[width * height];
+        final int[] row = new int[width];
         for (int i = 0; i < height; ++i) {
+            iterations.getRow(i, 0, row, 0, width);
             for (int j = 0; j < width; ++j) {
-                final int iters = iterMatrix[i][j];
-                final int colorInt = colorScheme.getColorInt(iters);
-                rgbData[i * width + j] = colorInt;
+                row[j] = getColorInt(row[j]);
             }
+            bi.setRGB(0, i, width, 1, row, 0, width);
         }
-        bi.setRGB(0, 0, width, height, rgbData, 0, width);
         return bi;
     }
 
     public void writeToImage(String name, String ext) throws IOException {
         File fileName = new File(String.format("%s.%s", name, ext));
-        ImageIO.write(createBufferedImage(), ext, fileName);
+        PngEncoder.write(createBufferedImage(), ext, fileName);
+        final CostMap c = costs;
+        if (c != null) c.write(new File(name + "-cost"));
     }
 }
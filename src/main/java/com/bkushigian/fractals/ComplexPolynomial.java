@@ -33,6 +33,175 @@ public class ComplexPolynomial {
         return result;
     }
 
+    /**
+     * Evaluate this polynomial at every point of {@code z} in {@code [from, to)} with Horner's
+     * rule: {@code out[i] := p(z[i])}. {@code out} must not be {@code z}.
+     */
+    public void at(ComplexBuffer z, ComplexBuffer out, int from, int to) {
+        final int n = order();
+        if (n < 0) {
+            out.fill(0.0, 0.0, from, to);
+            return;
+        }
+        out.fill(coefficients[n].re, coefficients[n].im, from, to);
+        for (int d = n - 1; d >= 0; --d) {
+            out.multiplyAdd(z, coefficients[d].re, coefficients[d].im, from, to);
+        }
+    }
+
+    /**
+     * Evaluate this polynomial and its derivative together at every point of {@code z} in
+     * {@code [from, to)}: {@code value[i] := p(z[i])} and {@code derivative[i] := p'(z[i])}.
+     * The three buffers must be distinct.
+     */
+    public void at(ComplexBuffer z, ComplexBuffer value, ComplexBuffer derivative, int from, int to) {
+        final int n = order();
+        derivative.fill(0.0, 0.0, from, to);
+        if (n < 0) {
+            value.fill(0.0, 0.0, from, to);
+            return;
+        }
+        value.fill(coefficients[n].re, coefficients[n].im, from, to);
+        for (int d = n - 1; d >= 0; --d) {
+            derivative.multiplyAdd(z, value, from, to);
+            value.multiplyAdd(z, coefficients[d].re, coefficients[d].im, from, to);
+        }
+    }
+
+    /**
+     * @return the index of the highest non-zero coefficient, or -1 for the zero polynomial
+     */
+    public int order() {
+        for (int d = degree - 1; d >= 0; --d) {
+            final Complex coef = coefficients[d];
+            if (coef.re != 0.0 || coef.im != 0.0) return d;
+        }
+        return -1;
+    }
+
+    /**
+     * Find all roots of this polynomial simultaneously with the Aberth-Ehrlich method. Roots
+     * are returned with multiplicity, so a polynomial of order n always yields n roots.
+     * @return the roots of this polynomial; empty for constant polynomials
+     */
+    public Complex[] findRoots() {
+        return findRoots(1e-14, 500);
+    }
+
+    /**
+     * @param tolerance stop once every correction step is smaller than this
+     * @param maxIters upper bound on the number of sweeps over all roots
+     */
+    public Complex[] findRoots(final double tolerance, final int maxIters) {
+        final int n = order();
+        if (n < 1) return new Complex[0];
+
+        // Work with the monic polynomial, coefficients as primitive doubles
+        final Complex lead = coefficients[n];
+        final double[] aRe = new double[n + 1];
+        final double[] aIm = new double[n + 1];
+        final double leadSq = lead.argSquared();
+        for (int d = 0; d <= n; ++d) {
+            final Complex c = coefficients[d];
+            aRe[d] = (c.re * lead.re + c.im * lead.im) / leadSq;
+            aIm[d] = (c.im * lead.re - c.re * lead.im) / leadSq;
+        }
+
+        // Cauchy bound on the root moduli; spread the initial guesses on a circle of that radius,
+        // slightly rotated off the real axis so conjugate-symmetric inputs don't stall.
+        double radius = 0.0;
+        for (int d = 0; d < n; ++d) {
+            radius = Math.max(radius, Math.sqrt(aRe[d] * aRe[d] + aIm[d] * aIm[d]));
+        }
+        radius = Math.min(1.0 + radius, 1e6);
+        final double[] zRe = new double[n];
+        final double[] zIm = new double[n];
+        for (int k = 0; k < n; ++k) {
+            final double theta = 2 * Math.PI * k / n + 0.4;
+            zRe[k] = radius * Math.cos(theta);
+            zIm[k] = radius * Math.sin(theta);
+        }
+
+        final double tolSq = tolerance * tolerance;
+        for (int iter = 0; iter < maxIters; ++iter) {
+            double maxStepSq = 0.0;
+            for (int k = 0; k < n; ++k) {
+                // Horner evaluation of p and p' at z_k
+                double pRe = 1.0, pIm = 0.0, dRe = 0.0, dIm = 0.0;
+                final double xr = zRe[k], xi = zIm[k];
+                for (int d = n - 1; d >= 0; --d) {
+                    double t = dRe * xr - dIm * xi + pRe;
+                    dIm = dRe * xi + dIm * xr + pIm;
+                    dRe = t;
+                    t = pRe * xr - pIm * xi + aRe[d];
+                    pIm = pRe * xi + pIm * xr + aIm[d];
+                    pRe = t;
+                }
+                if (pRe == 0.0 && pIm == 0.0) continue;
+
+                // ratio = p / p'
+                double den = dRe * dRe + dIm * dIm;
+                final double rRe = (pRe * dRe + pIm * dIm) / den;
+                final double rIm = (pIm * dRe - pRe * dIm) / den;
+
+                // sum over j != k of 1 / (z_k - z_j)
+                double sRe = 0.0, sIm = 0.0;
+                for (int j = 0; j < n; ++j) {
+                    if (j == k) continue;
+                    final double ur = xr - zRe[j], ui = xi - zIm[j];
+                    final double u = ur * ur + ui * ui;
+                    if (u == 0.0) continue;
+                    sRe += ur / u;
+                    sIm -= ui / u;
+                }
+
+                // w = ratio / (1 - ratio * sum)
+                final double qRe = 1.0 - (rRe * sRe - rIm * sIm);
+                final double qIm = -(rRe * sIm + rIm * sRe);
+                den = qRe * qRe + qIm * qIm;
+                final double wRe = (rRe * qRe + rIm * qIm) / den;
+                final double wIm = (rIm * qRe - rRe * qIm) / den;
+                if (Double.isNaN(wRe) || Double.isNaN(wIm)) continue;
+
+                zRe[k] = xr - wRe;
+                zIm[k] = xi - wIm;
+                maxStepSq = Math.max(maxStepSq, wRe * wRe + wIm * wIm);
+            }
+            if (maxStepSq < tolSq) break;
+        }
+
+        final Complex[] roots = new Complex[n];
+        for (int k = 0; k < n; ++k) {
+            roots[k] = new Complex(zRe[k], zIm[k]);
+        }
+        return roots;
+    }
+
+    /**
+     * Compute the Taylor coefficients of this polynomial around {@code z}, that is
+     * {@code result[k] := p^(k)(z) / k!}.
+     */
+    public Complex[] taylorCoefficients(final Complex z) {
+        final int n = degree;
+        final double[] re = new double[n];
+        final double[] im = new double[n];
+        for (int d = 0; d < n; ++d) {
+            re[d] = coefficients[d].re;
+            im[d] = coefficients[d].im;
+        }
+        // Repeated synthetic division by (x - z)
+        final Complex[] result = new Complex[n];
+        for (int k = 0; k < n; ++k) {
+            for (int d = n - 2; d >= k; --d) {
+                final double t = re[d + 1] * z.re - im[d + 1] * z.im;
+                im[d] += re[d + 1] * z.im + im[d + 1] * z.re;
+                re[d] += t;
+            }
+            result[k] = new Complex(re[k], im[k]);
+        }
+        return result;
+    }
+
     public ComplexPolynomial computeDerivative() {
         if (degree < 2) {
             return zero;
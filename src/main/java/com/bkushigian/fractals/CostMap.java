@@ -0,0 +1,299 @@
+package com.bkushigian.fractals;
+
+import javax.swing.Timer;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Where the time went in rendering one frame: the wall time of every tile, summed over its
+ * passes, and the iterations actually run for every pixel. Pixels copied from a symmetric
+ * pixel or reused from an earlier frame cost nothing, and orbits stopped early by a trap
+ * only count the iterations they ran, so the map shows what the optimizations save.
+ *
+ * Filled in by the render workers while {@link ComplexFractal} profiles a frame; each pixel
+ * and tile is only written by the worker rendering its tile.
+ */
+public class CostMap {
+
+    public final Viewport view;
+    public final String fractal;
+    public final int tileSize;
+    public final int threads;
+    private final int cols, rows;
+
+    private final int[] work;
+    private final long[] tileNanos;
+    private volatile long wallNanos;
+
+    /**
+     * The overlay's heatmap is rebuilt at most this often while the frame renders
+     */
+    static final int OVERLAY_MILLIS = 250;
+
+    /**
+     * Bumped as tiles finish, so the overlay knows when to redraw
+     */
+    private volatile int version;
+
+    /**
+     * The heatmap the overlay draws, the version it was built from, and the timer which
+     * rebuilds it once it is out of date. Only touched from the EDT.
+     */
+    private int drawnVersion = -1;
+    private BufferedImage heatmap;
+    private Timer rebuild;
+
+    /**
+     * Black through purple, red and yellow to white
+     */
+    private static final int[] PALETTE = palette(0x000000, 0x3B0F70, 0xB5367A, 0xFB8861, 0xFCFDBF);
+
+    public CostMap(Viewport view, String fractal, int tileSize, int threads) {
+        this.view = view;
+        this.fractal = fractal;
+        this.tileSize = tileSize;
+        this.threads = threads;
+        this.cols = (view.width + tileSize - 1) / tileSize;
+        this.rows = (view.height + tileSize - 1) / tileSize;
+        this.work = new int[view.width * view.height];
+        this.tileNanos = new long[cols * rows];
+    }
+
+    void addWork(int x, int y, int iterations) {
+        work[y * view.width + x] += iterations;
+    }
+
+    void addTileTime(Tile tile, long nanos) {
+        tileNanos[tile.y / tileSize * cols + tile.x / tileSize] += nanos;
+        ++version;
+    }
+
+    void finish(long wallNanos) {
+        this.wallNanos = wallNanos;
+        ++version;
+    }
+
+    /**
+     * @return the iterations run for pixel {@code (x, y)}
+     */
+    public int work(int x, int y) {
+        return work[y * view.width + x];
+    }
+
+    /**
+     * @return the wall time spent on the tile at column {@code col} and row {@code row} of
+     * the tile grid
+     */
+    public long tileNanos(int col, int row) {
+        return tileNanos[row * cols + col];
+    }
+
+    public int tileColumns() {
+        return cols;
+    }
+
+    public int tileRows() {
+        return rows;
+    }
+
+    /**
+     * @return the wall time of the whole frame, or 0 if it hasn't finished
+     */
+    public long wallNanos() {
+        return wallNanos;
+    }
+
+    public long totalWork() {
+        long total = 0;
+        for (int w : work) total += w;
+        return total;
+    }
+
+    public int maxWork() {
+        int max = 0;
+        for (int w : work) max = Math.max(max, w);
+        return max;
+    }
+
+    /**
+     * @param q between 0 and 1
+     * @return the {@code q} quantile of the tile times
+     */
+    public long tileNanosQuantile(double q) {
+        final long[] sorted = tileNanos.clone();
+        Arrays.sort(sorted);
+        return sorted[Math.min(sorted.length - 1, (int) (q * sorted.length))];
+    }
+
+    /**
+     * @return the work of each pixel on a log scale, from black for none to white for the
+     * most expensive pixel
+     */
+    public BufferedImage heatmap() {
+        final BufferedImage image = new BufferedImage(view.width, view.height, BufferedImage.TYPE_INT_RGB);
+        final double scale = (PALETTE.length - 1) / Math.log1p(Math.max(1, maxWork()));
+        final int[] row = new int[view.width];
+        for (int y = 0; y < view.height; ++y) {
+            for (int x = 0; x < view.width; ++x) {
+                row[x] = PALETTE[(int) (Math.log1p(work[y * view.width + x]) * scale)];
+            }
+            image.setRGB(0, y, view.width, 1, row, 0, view.width);
+        }
+        return image;
+    }
+
+    /**
+     * Draw the heatmap translucently over {@code owner}, a {@code width} by {@code height}
+     * panel, with the tiles outlined brighter the longer they took and a summary in the top
+     * left corner. Call from the EDT.
+     */
+    void drawOverlay(Component owner, Graphics g, int width, int height) {
+        if (heatmap == null) {
+            drawnVersion = version;
+            heatmap = heatmap();
+        } else if (version != drawnVersion) {
+            // Every tile bumps the version, so rather than rebuild on every repaint, draw the
+            // heatmap we have and rebuild it once after a while, however many tiles finish
+            if (rebuild == null) {
+                rebuild = new Timer(OVERLAY_MILLIS, e -> {
+                    drawnVersion = version;
+                    heatmap = heatmap();
+                    owner.repaint();
+                });
+                rebuild.setRepeats(false);
+            }
+            if (!rebuild.isRunning()) rebuild.start();
+        }
+        final Graphics2D g2 = (Graphics2D) g.create();
+        g2.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 0.7f));
+        g2.drawImage(heatmap, 0, 0, width, height, null);
+        g2.setComposite(AlphaComposite.SrcOver);
+
+        final double sx = (double) width / view.width, sy = (double) height / view.height;
+        final long slowest = Math.max(1, tileNanosQuantile(1));
+        for (int r = 0; r < rows; ++r) {
+            for (int c = 0; c < cols; ++c) {
+                final float share = (float) tileNanos(c, r) / slowest;
+                g2.setColor(new Color(0.2f + 0.8f * share, 1f - 0.8f * share, 0.2f, 0.3f + 0.7f * share));
+                g2.drawRect((int) (c * tileSize * sx), (int) (r * tileSize * sy),
+                        (int) (tileSize * sx), (int) (tileSize * sy));
+            }
+        }
+
+        final String[] lines = {
+                String.format(Locale.ROOT, "iterations: %,d, max %,d/px", totalWork(), maxWork()),
+                String.format(Locale.ROOT, "tiles: median %.1f ms, slowest %.1f ms", tileNanosQuantile(0.5) / 1e6, slowest / 1e6),
+                wallNanos == 0 ? "frame: rendering" : String.format(Locale.ROOT, "frame: %.1f ms on %d threads", wallNanos / 1e6, threads),
+        };
+        g2.setFont(new Font("default", Font.BOLD, 13));
+        final int lineHeight = g2.getFontMetrics().getHeight();
+        int boxWidth = 0;
+        for (String s : lines) boxWidth = Math.max(boxWidth, g2.getFontMetrics().stringWidth(s));
+        g2.setColor(new Color(0, 0, 0, 160));
+        g2.fillRect(4, 4, boxWidth + 12, lineHeight * lines.length + 8);
+        g2.setColor(Color.WHITE);
+        for (int i = 0; i < lines.length; ++i) g2.drawString(lines[i], 10, 8 + lineHeight * (i + 1) - 3);
+        g2.dispose();
+    }
+
+    /**
+     * Write the heatmap to {@code base.png} and the tile times and render metadata to
+     * {@code base.json}
+     */
+    public void write(File base) throws IOException {
+        final File parent = base.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) throw new IOException("Could not create " + parent);
+        PngEncoder.shared().write(heatmap(), new File(base.getPath() + ".png"));
+
+        final StringBuilder json = new StringBuilder("{\n");
+        json.append(String.format(Locale.ROOT, "  \"fractal\": %s,\n  \"parameters\": %s,\n", BatchRenderer.quote(fractal),
+                view.parameters == null ? "null" : BatchRenderer.quote(String.valueOf(view.parameters))));
+        json.append(String.format(Locale.ROOT, "  \"view\": {\"xMin\": %s, \"yMax\": %s, \"delta\": %s, \"width\": %d, "
+                        + "\"height\": %d, \"maxIterations\": %d},\n",
+                view.xMin, view.yMax, view.delta, view.width, view.height, view.maxIterations));
+        json.append(String.format(Locale.ROOT, "  \"tileSize\": %d,\n  \"threads\": %d,\n  \"wallMillis\": %.3f,\n",
+                tileSize, threads, wallNanos / 1e6));
+        json.append(String.format(Locale.ROOT, "  \"totalIterations\": %d,\n  \"maxPixelIterations\": %d,\n",
+                totalWork(), maxWork()));
+        json.append(String.format(Locale.ROOT, "  \"tileMillisMedian\": %.3f,\n  \"tileMillisP90\": %.3f,\n  \"tileMillisMax\": %.3f,\n",
+                tileNanosQuantile(0.5) / 1e6, tileNanosQuantile(0.9) / 1e6, tileNanosQuantile(1) / 1e6));
+        json.append("  \"tileMillis\": [\n");
+        for (int r = 0; r < rows; ++r) {
+            json.append("    [");
+            for (int c = 0; c < cols; ++c) {
+                json.append(String.format(Locale.ROOT, c == 0 ? "%.3f" : ", %.3f", tileNanos(c, r) / 1e6));
+            }
+            json.append(r + 1 < rows ? "],\n" : "]\n");
+        }
+        json.append("  ]\n}\n");
+        Files.write(new File(base.getPath() + ".json").toPath(), json.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static int[] palette(int... anchors) {
+        final int[] palette = new int[256];
+        final int segments = anchors.length - 1;
+        for (int i = 0; i < palette.length; ++i) {
+            final double t = (double) i / (palette.length - 1) * segments;
+            final int s = Math.min(segments - 1, (int) t);
+            final double f = t - s;
+            int rgb = 0;
+            for (int shift = 16; shift >= 0; shift -= 8) {
+                final int a = (anchors[s] >> shift) & 0xFF, b = (anchors[s + 1] >> shift) & 0xFF;
+                rgb |= (int) Math.round(a + (b - a) * f) << shift;
+            }
+            palette[i] = rgb;
+        }
+        return palette;
+    }
+
+    /**
+     * Usage: {@code CostMap [--scene s] [--center re,im] [--span s] [--size w,h]
+     * [--iterations n] [--tile n] [--out base]}, with scenes as for
+     * {@link RenderWorker#createFractal(String)}. Profiles one frame and writes its cost map.
+     */
+    public static void main(String[] args) throws IOException {
+        String scene = "mandelbrot";
+        double centerRe = -0.75, centerIm = 0, span = 3.5;
+        int width = 1024, height = 768, iterations = 1000, tile = RenderPipeline.DEFAULT_TILE_SIZE;
+        File out = new File("cost");
+        for (int i = 0; i < args.length; ++i) {
+            switch (args[i]) {
+                case "--scene": scene = args[++i]; break;
+                case "--center": {
+                    final String[] c = args[++i].split(",");
+                    centerRe = Double.parseDouble(c[0]);
+                    centerIm = Double.parseDouble(c[1]);
+                    break;
+                }
+                case "--span": span = Double.parseDouble(args[++i]); break;
+                case "--size": {
+                    final String[] s = args[++i].split(",");
+                    width = Integer.parseInt(s[0]);
+                    height = Integer.parseInt(s[1]);
+                    break;
+                }
+                case "--iterations": iterations = Integer.parseInt(args[++i]); break;
+                case "--tile": tile = Integer.parseInt(args[++i]); break;
+                case "--out": out = new File(args[++i]); break;
+                default:
+                    System.err.println("Unknown argument " + args[i]);
+                    System.exit(2);
+            }
+        }
+        final ComplexFractal fractal = RenderWorker.createFractal(scene);
+        final Viewport view = Viewport.centered(centerRe, centerIm, span, width, height, iterations,
+                fractal.renderParameters());
+        final CostMap costs = fractal.profile(view, tile);
+        fractal.pipeline.shutdown();
+        costs.write(out);
+        System.out.printf(Locale.ROOT, "%s: %.1f ms, %,d iterations, tiles median %.1f ms, slowest %.1f ms; wrote %s.{png,json}%n",
+                scene, costs.wallNanos() / 1e6, costs.totalWork(), costs.tileNanosQuantile(0.5) / 1e6,
+                costs.tileNanosQuantile(1) / 1e6, out);
+    }
+}
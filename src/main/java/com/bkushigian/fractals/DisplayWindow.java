@@ -10,6 +10,8 @@ public  class DisplayWindow extends JFrame {
   public DisplayWindow(){
     super("Display");
     c = this.getContentPane();
+    // Side by side, so that several panels (say a Mandelbrot and a Julia) can share a window
+    c.setLayout(new FlowLayout(FlowLayout.CENTER, 0, 0));
   }
 
   public void addPanel(JPanel p){
@@ -0,0 +1,265 @@
+package com.bkushigian.fractals;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An exponential map of a fractal around a zoom target, for rendering zoom videos.
+ *
+ * Consecutive frames of a zoom overlap almost entirely, so rendering each of them from
+ * scratch computes most pixels many times over. Instead we render a single tall strip in
+ * log-polar coordinates: column {@code j} is the angle {@code 2 pi j / columns} and row
+ * {@code k} is the radius {@code outerRadius * exp(-2 pi k / columns)}, so every row is one
+ * step deeper into the zoom and samples are square. Each point of the zoom is iterated
+ * once, however many frames it appears in.
+ *
+ * A frame is then a lookup into the strip. In a frame of half diagonal {@code R}, the pixel
+ * at distance {@code rho} from the center lands on row
+ * {@code columns / 2 pi * (ln(outerRadius / R) + ln(R / rho))}. The second term, and the
+ * column, only depend on where the pixel is in the frame, so a {@link Resampler} works them
+ * out once and every frame after that is a row shift and a table lookup per pixel.
+ */
+public class ExponentialMap {
+
+    public final ComplexFractal fractal;
+    public final double centerRe, centerIm;
+
+    /**
+     * Radius of the first row; the strip goes down to {@code innerRadius}
+     */
+    public final double outerRadius, innerRadius;
+    public final int columns, rows, maxIterations;
+
+    private final double[] cos, sin;
+    private final IterationBuffer strip;
+
+    /**
+     * @param columns samples around each circle. A frame whose half diagonal is {@code d}
+     *                pixels needs {@code 2 pi d} columns to be fully resolved at its corners.
+     */
+    public ExponentialMap(ComplexFractal fractal, double centerRe, double centerIm,
+                          double outerRadius, double innerRadius, int columns) {
+        this.fractal = fractal;
+        this.centerRe = centerRe;
+        this.centerIm = centerIm;
+        this.outerRadius = outerRadius;
+        this.innerRadius = innerRadius;
+        this.columns = columns;
+        this.rows = (int) Math.ceil(columns / (2 * Math.PI) * Math.log(outerRadius / innerRadius)) + 1;
+        this.maxIterations = fractal.maxIterations;
+        this.cos = new double[columns];
+        this.sin = new double[columns];
+        for (int j = 0; j < columns; ++j) {
+            cos[j] = Math.cos(2 * Math.PI * j / columns);
+            sin[j] = Math.sin(2 * Math.PI * j / columns);
+        }
+        this.strip = IterationBuffer.allocate(columns, rows, fractal.maxValue());
+    }
+
+    /**
+     * Map for a zoom by a factor of {@code zoom} into {@code (centerRe, centerIm)}, starting
+     * from a view {@code span} wide, shown in frames of {@code width} by {@code height}
+     */
+    public static ExponentialMap forZoom(ComplexFractal fractal, double centerRe, double centerIm,
+                                         double span, double zoom, int width, int height) {
+        final double diagonal = Math.hypot(width, height) / 2;
+        final double outer = span / width * diagonal;
+        // Go down to a pixel of the last frame, inside of which we just repeat the last row
+        final double inner = outer / zoom / diagonal;
+        return new ExponentialMap(fractal, centerRe, centerIm, outer, inner, (int) Math.ceil(2 * Math.PI * diagonal));
+    }
+
+    public double radius(int row) {
+        return outerRadius * Math.exp(-2 * Math.PI * row / columns);
+    }
+
+    /**
+     * @return the point sampled by column {@code col} of row {@code row}
+     */
+    public Complex point(int col, int row) {
+        final double r = radius(row);
+        return new Complex(centerRe + r * cos[col], centerIm + r * sin[col]);
+    }
+
+    /**
+     * Render the whole strip, blocking until done
+     */
+    public void render(int threads) {
+        final AtomicInteger next = new AtomicInteger();
+        final ExecutorService pool = Executors.newFixedThreadPool(threads, RenderPipeline.daemonThreads("exp-map"));
+        for (int t = 0; t < threads; ++t) {
+            pool.execute(() -> {
+                final int[] line = new int[columns];
+                int row;
+                while ((row = next.getAndIncrement()) < rows) {
+                    final double r = radius(row);
+                    for (int j = 0; j < columns; ++j) {
+                        line[j] = fractal.calculateIterations(
+                                new Complex(centerRe + r * cos[j], centerIm + r * sin[j]), maxIterations);
+                    }
+                    strip.setRow(row, 0, line, 0, columns);
+                }
+            });
+        }
+        pool.shutdown();
+        try {
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return the rendered strip, {@code columns} wide and {@code rows} tall
+     */
+    public IterationBuffer strip() {
+        return strip;
+    }
+
+    /**
+     * @return the view of the frame with half diagonal {@code radius}, which
+     * {@link Resampler#frame(double, int[])} approximates
+     */
+    public Viewport frameView(double radius, int width, int height) {
+        final double delta = radius / (Math.hypot(width, height) / 2);
+        return new Viewport(centerRe - delta * (width - 1) / 2, centerIm + delta * (height - 1) / 2, delta,
+                width, height, maxIterations, fractal.renderParameters());
+    }
+
+    public Resampler resampler(int width, int height) {
+        return new Resampler(width, height);
+    }
+
+    /**
+     * Cuts frames of one size out of the strip
+     */
+    public final class Resampler {
+        public final int width, height;
+
+        /**
+         * Strip column of each pixel
+         */
+        private final int[] column;
+
+        /**
+         * Row of each pixel, relative to the row of the frame's corners
+         */
+        private final float[] offset;
+
+        private Resampler(int width, int height) {
+            this.width = width;
+            this.height = height;
+            this.column = new int[width * height];
+            this.offset = new float[width * height];
+            final double diagonal = Math.hypot(width, height) / 2;
+            final double rowsPerE = columns / (2 * Math.PI);
+            for (int y = 0, i = 0; y < height; ++y) {
+                final double dy = (height - 1) / 2.0 - y;
+                for (int x = 0; x < width; ++x, ++i) {
+                    final double dx = x - (width - 1) / 2.0;
+                    final double rho = Math.hypot(dx, dy);
+                    final double angle = Math.atan2(dy, dx) * rowsPerE;
+                    column[i] = ((int) Math.floor(angle + 0.5) % columns + columns) % columns;
+                    offset[i] = rho == 0 ? Float.POSITIVE_INFINITY : (float) (rowsPerE * Math.log(diagonal / rho));
+                }
+            }
+        }
+
+        /**
+         * Fill in {@code values} with the frame whose half diagonal is {@code radius}.
+         * Pixels deeper than the strip take the value of its last row.
+         */
+        public void frame(double radius, int[] values) {
+            final double shift = columns / (2 * Math.PI) * Math.log(outerRadius / radius);
+            final int last = rows - 1;
+            for (int i = 0; i < values.length; ++i) {
+                final double k = shift + offset[i];
+                final int row = k >= last ? last : k <= 0 ? 0 : (int) (k + 0.5);
+                values[i] = strip.get(column[i], row);
+            }
+        }
+
+        public BufferedImage createBufferedImage(double radius) {
+            final int[] values = new int[width * height];
+            frame(radius, values);
+            for (int i = 0; i < values.length; ++i) values[i] = fractal.getColorInt(values[i]);
+            final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            image.setRGB(0, 0, width, height, values, 0, width);
+            return image;
+        }
+    }
+
+    /**
+     * @return the half diagonal of frame {@code f} of {@code frames}, zooming at a steady
+     * rate from {@code outerRadius} down to {@code finalRadius}
+     */
+    public double frameRadius(int f, int frames, double finalRadius) {
+        if (frames == 1) return outerRadius;
+        return outerRadius * Math.pow(finalRadius / outerRadius, (double) f / (frames - 1));
+    }
+
+    /**
+     * Write {@code frames} frames of a zoom down to {@code finalRadius} to
+     * {@code dir/frame-<n>.png}, ready for a video encoder
+     */
+    public void writeFrames(File dir, int width, int height, int frames, double finalRadius) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("Could not create " + dir);
+        final Resampler resampler = resampler(width, height);
+        for (int f = 0; f < frames; ++f) {
+            PngEncoder.shared().write(resampler.createBufferedImage(frameRadius(f, frames, finalRadius)),
+                    new File(dir, String.format("frame-%05d.png", f)));
+        }
+    }
+
+    /**
+     * Usage: {@code ExponentialMap [--center re,im] [--span s] [--zoom factor] [--size w,h]
+     * [--frames n] [--iterations n] [--threads n] [--out dir]}
+     */
+    public static void main(String[] args) throws IOException {
+        double centerRe = -0.743643887037151, centerIm = 0.131825904205330, span = 3, zoom = 1e6;
+        int width = 640, height = 360, frames = 300, iterations = 1000;
+        int threads = Runtime.getRuntime().availableProcessors();
+        File out = new File("zoom");
+        for (int i = 0; i < args.length; ++i) {
+            switch (args[i]) {
+                case "--center": {
+                    final String[] parts = args[++i].split(",");
+                    centerRe = Double.parseDouble(parts[0]);
+                    centerIm = Double.parseDouble(parts[1]);
+                    break;
+                }
+                case "--span": span = Double.parseDouble(args[++i]); break;
+                case "--zoom": zoom = Double.parseDouble(args[++i]); break;
+                case "--size": {
+                    final String[] parts = args[++i].split(",");
+                    width = Integer.parseInt(parts[0]);
+                    height = Integer.parseInt(parts[1]);
+                    break;
+                }
+                case "--frames": frames = Integer.parseInt(args[++i]); break;
+                case "--iterations": iterations = Integer.parseInt(args[++i]); break;
+                case "--threads": threads = Integer.parseInt(args[++i]); break;
+                case "--out": out = new File(args[++i]); break;
+                default:
+                    System.err.println("Unknown argument " + args[i]);
+                    System.exit(2);
+            }
+        }
+        final Mandelbrot mandel = new Mandelbrot(width, height, new ColorScheme(2, 155, 0, 0, 24, 0));
+        mandel.maxIterations = iterations;
+        final ExponentialMap map = forZoom(mandel, centerRe, centerIm, span, zoom, width, height);
+        long start = System.nanoTime();
+        map.render(threads);
+        System.out.printf("Rendered a %d x %d strip in %d ms%n", map.columns, map.rows,
+                (System.nanoTime() - start) / 1_000_000);
+        start = System.nanoTime();
+        map.writeFrames(out, width, height, frames, map.outerRadius / zoom);
+        System.out.printf("Wrote %d frames to %s in %d ms%n", frames, out, (System.nanoTime() - start) / 1_000_000);
+        mandel.pipeline.shutdown();
+    }
+}
@@ -0,0 +1,896 @@
+package com.bkushigian.fractals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An escape-time iteration formula {@code z <- f(z, c)}, parsed from a small expression
+ * language and compiled into a kernel over primitive doubles.
+ *
+ * The language has the variables {@code z} and {@code c}, the imaginary unit {@code i},
+ * real number literals, {@code + - * /}, integer powers {@code ^n}, the modulus
+ * {@code |x|}, and the functions {@code re}, {@code im}, {@code conj} and {@code abs}.
+ * {@code Re z} may be written without parentheses, and juxtaposition means multiplication,
+ * so the Burning Ship can be written exactly as {@code (|Re z| + i|Im z|)^2 + c}.
+ *
+ * Formulas are never parsed or walked as a tree per iteration. Well known families (Multibrot
+ * {@code z^d + c}, Tricorn {@code conj(z)^d + c}, Burning Ship) compile to dedicated loops.
+ * Any other polynomial in z (or in conj z) is expanded once, its coefficients evaluated at c
+ * once per pixel, and iterated with Horner's rule. Anything else compiles to a flat sequence
+ * of register operations, still dispatched one by one every iteration, so such formulas are
+ * the slowest to render.
+ */
+public class Formula {
+
+    /**
+     * Iterates a compiled formula
+     */
+    public interface Kernel {
+        /**
+         * Iterate {@code z <- f(z, c)} until {@code |z|^2 >= bailout} or {@code max} iterations.
+         * @param z the orbit state {@code {re, im}}, updated in place
+         * @param from number of iterations already performed to reach {@code z}
+         * @return the number of iterations performed in total
+         */
+        int iterate(double cRe, double cIm, double[] z, int from, int max);
+    }
+
+    public final String source;
+    final Expr expr;
+    private final double bailout;
+
+    private Formula(String source, Expr expr, double bailout) {
+        this.source = source;
+        this.expr = expr;
+        this.bailout = bailout;
+    }
+
+    public static Formula parse(String source) {
+        return parse(source, 4.0);
+    }
+
+    /**
+     * @param bailout orbits escape once {@code |z|^2} reaches this
+     */
+    public static Formula parse(String source, double bailout) {
+        return new Formula(source, new Parser(source).parse(), bailout);
+    }
+
+    public static Formula multibrot(int d) {
+        return parse("z^" + d + " + c");
+    }
+
+    public static Formula tricorn() {
+        return parse("conj(z)^2 + c");
+    }
+
+    public static Formula burningShip() {
+        return parse("(|Re z| + i|Im z|)^2 + c");
+    }
+
+    /**
+     * @return true if {@code f(conj z, conj c) = conj f(z, c)}, in which case the fractal is
+     * symmetric about the real axis
+     */
+    public boolean commutesWithConjugation() {
+        return expr.commutesWithConjugation();
+    }
+
+    public Kernel compile() {
+        for (boolean conjugate : new boolean[]{false, true}) {
+            final Poly poly = expr.toPoly(conjugate);
+            if (poly == null) continue;
+            // z^d + c and conj(z)^d + c
+            final int d = poly.monicMonomialPlusC();
+            if (d == 2) return conjugate ? new Tricorn(bailout) : new Quadratic(bailout);
+            if (d > 0) return new Multibrot(d, bailout, conjugate);
+            return new Polynomial(poly, bailout, conjugate);
+        }
+        if (expr instanceof Add && ((Add) expr).b instanceof Var && ((Var) ((Add) expr).b).name == 'c') {
+            final Expr step = ((Add) expr).a;
+            if (step instanceof Pow && ((Pow) step).n == 2 && isBurningShipBase(((Pow) step).base)) {
+                return new BurningShip(bailout);
+            }
+        }
+        return new Compiled(expr, bailout);
+    }
+
+    /**
+     * Matches {@code |Re z| + i|Im z|} in either order of the product
+     */
+    private static boolean isBurningShipBase(Expr e) {
+        if (!(e instanceof Add)) return false;
+        final Add add = (Add) e;
+        if (!isAbsPart(add.a, 'r')) return false;
+        if (!(add.b instanceof Mul)) return false;
+        final Mul mul = (Mul) add.b;
+        return isImaginaryUnit(mul.a) && isAbsPart(mul.b, 'i')
+                || isImaginaryUnit(mul.b) && isAbsPart(mul.a, 'i');
+    }
+
+    private static boolean isAbsPart(Expr e, char part) {
+        if (!(e instanceof Abs)) return false;
+        final Expr inner = ((Abs) e).a;
+        return inner instanceof Part && ((Part) inner).part == part
+                && ((Part) inner).a instanceof Var && ((Var) ((Part) inner).a).name == 'z';
+    }
+
+    private static boolean isImaginaryUnit(Expr e) {
+        return e instanceof Const && ((Const) e).re == 0.0 && ((Const) e).im == 1.0;
+    }
+
+    @Override
+    public String toString() {
+        return source;
+    }
+
+    // ---------------------------------------------------------------------------------------
+    // Dedicated kernels
+    // ---------------------------------------------------------------------------------------
+
+    /**
+     * z^2 + c
+     */
+    static final class Quadratic implements Kernel {
+        private final double bailout;
+
+        Quadratic(double bailout) {
+            this.bailout = bailout;
+        }
+
+        @Override
+        public int iterate(double cRe, double cIm, double[] z, int from, int max) {
+            double re = z[0], im = z[1];
+            int iterations = from;
+            while (re * re + im * im < bailout && iterations < max) {
+                final double t = re * re - im * im + cRe;
+                im = re * im + im * re + cIm;
+                re = t;
+                ++iterations;
+            }
+            z[0] = re;
+            z[1] = im;
+            return iterations;
+        }
+    }
+
+    /**
+     * conj(z)^2 + c
+     */
+    static final class Tricorn implements Kernel {
+        private final double bailout;
+
+        Tricorn(double bailout) {
+            this.bailout = bailout;
+        }
+
+        @Override
+        public int iterate(double cRe, double cIm, double[] z, int from, int max) {
+            double re = z[0], im = z[1];
+            int iterations = from;
+            while (re * re + im * im < bailout && iterations < max) {
+                final double t = re * re - im * im + cRe;
+                im = cIm - (re * im + im * re);
+                re = t;
+                ++iterations;
+            }
+            z[0] = re;
+            z[1] = im;
+            return iterations;
+        }
+    }
+
+    /**
+     * A general polynomial in z (or conj z) whose coefficients are polynomials in c. The
+     * coefficients only depend on c, so they are evaluated once per pixel and the iteration
+     * itself is a plain Horner loop.
+     */
+    static final class Polynomial implements Kernel {
+        private final Poly poly;
+        private final double bailout;
+        private final boolean conjugate;
+
+        Polynomial(Poly poly, double bailout, boolean conjugate) {
+            this.poly = poly;
+            this.bailout = bailout;
+            this.conjugate = conjugate;
+        }
+
+        @Override
+        public int iterate(double cRe, double cIm, double[] z, int from, int max) {
+            final int n = poly.zDegree();
+            final double[] ar = new double[n + 1];
+            final double[] ai = new double[n + 1];
+            poly.coefficientsAt(cRe, cIm, ar, ai);
+            final double sign = conjugate ? -1.0 : 1.0;
+
+            double re = z[0], im = z[1];
+            int iterations = from;
+            while (re * re + im * im < bailout && iterations < max) {
+                final double wr = re, wi = sign * im;
+                double pr = ar[n], pi = ai[n];
+                for (int j = n - 1; j >= 0; --j) {
+                    final double t = pr * wr - pi * wi + ar[j];
+                    pi = pr * wi + pi * wr + ai[j];
+                    pr = t;
+                }
+                re = pr;
+                im = pi;
+                ++iterations;
+            }
+            z[0] = re;
+            z[1] = im;
+            return iterations;
+        }
+    }
+
+    /**
+     * z^d + c, or conj(z)^d + c, by repeated squaring
+     */
+    static final class Multibrot implements Kernel {
+        private final int d;
+        private final double bailout;
+        private final double sign;
+
+        Multibrot(int d, double bailout, boolean conjugate) {
+            this.d = d;
+            this.bailout = bailout;
+            this.sign = conjugate ? -1.0 : 1.0;
+        }
+
+        @Override
+        public int iterate(double cRe, double cIm, double[] z, int from, int max) {
+            double re = z[0], im = z[1];
+            int iterations = from;
+            while (re * re + im * im < bailout && iterations < max) {
+                double br = re, bi = sign * im;
+                double pr = 1.0, pi = 0.0;
+                for (int n = d; n > 0; n >>= 1) {
+                    if ((n & 1) != 0) {
+                        final double t = pr * br - pi * bi;
+                        pi = pr * bi + pi * br;
+                        pr = t;
+                    }
+                    final double t = br * br - bi * bi;
+                    bi = 2 * br * bi;
+                    br = t;
+                }
+                re = pr + cRe;
+                im = pi + cIm;
+                ++iterations;
+            }
+            z[0] = re;
+            z[1] = im;
+            return iterations;
+        }
+    }
+
+    /**
+     * (|Re z| + i|Im z|)^2 + c
+     */
+    static final class BurningShip implements Kernel {
+        private final double bailout;
+
+        BurningShip(double bailout) {
+            this.bailout = bailout;
+        }
+
+        @Override
+        public int iterate(double cRe, double cIm, double[] z, int from, int max) {
+            double re = z[0], im = z[1];
+            int iterations = from;
+            while (re * re + im * im < bailout && iterations < max) {
+                final double ar = Math.abs(re), ai = Math.abs(im);
+                re = ar * ar - ai * ai + cRe;
+                im = 2 * ar * ai + cIm;
+                ++iterations;
+            }
+            z[0] = re;
+            z[1] = im;
+            return iterations;
+        }
+    }
+
+    /**
+     * Any other formula, compiled to a flat list of register operations. Registers 0-3 hold
+     * z and c; every operation writes one complex value into a fresh pair of registers.
+     */
+    static final class Compiled implements Kernel {
+        private final Op[] ops;
+        private final int registers;
+        private final int result;
+        private final double bailout;
+
+        /**
+         * Each render thread's register file, so iterating a pixel allocates nothing
+         */
+        private final ThreadLocal<double[]> file = ThreadLocal.withInitial(this::newFile);
+
+        Compiled(Expr expr, double bailout) {
+            final List<Op> code = new ArrayList<>();
+            final int[] next = {4};
+            result = expr.compile(code, next);
+            ops = code.toArray(new Op[0]);
+            registers = next[0];
+            this.bailout = bailout;
+        }
+
+        private double[] newFile() {
+            return new double[registers];
+        }
+
+        @Override
+        public int iterate(double cRe, double cIm, double[] z, int from, int max) {
+            final double[] r = file.get();
+            final Op[] ops = this.ops;
+            r[0] = z[0];
+            r[1] = z[1];
+            r[2] = cRe;
+            r[3] = cIm;
+            int iterations = from;
+            while (r[0] * r[0] + r[1] * r[1] < bailout && iterations < max) {
+                for (Op op : ops) op.run(r);
+                r[0] = r[result];
+                r[1] = r[result + 1];
+                ++iterations;
+            }
+            z[0] = r[0];
+            z[1] = r[1];
+            return iterations;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------
+    // Register operations. Each writes the complex value at registers (dst, dst + 1).
+    // ---------------------------------------------------------------------------------------
+
+    interface Op {
+        void run(double[] r);
+    }
+
+    static final class AddOp implements Op {
+        final int a, b, dst;
+        AddOp(int a, int b, int dst) { this.a = a; this.b = b; this.dst = dst; }
+        public void run(double[] r) {
+            r[dst] = r[a] + r[b];
+            r[dst + 1] = r[a + 1] + r[b + 1];
+        }
+    }
+
+    static final class SubOp implements Op {
+        final int a, b, dst;
+        SubOp(int a, int b, int dst) { this.a = a; this.b = b; this.dst = dst; }
+        public void run(double[] r) {
+            r[dst] = r[a] - r[b];
+            r[dst + 1] = r[a + 1] - r[b + 1];
+        }
+    }
+
+    static final class MulOp implements Op {
+        final int a, b, dst;
+        MulOp(int a, int b, int dst) { this.a = a; this.b = b; this.dst = dst; }
+        public void run(double[] r) {
+            final double re = r[a] * r[b] - r[a + 1] * r[b + 1];
+            r[dst + 1] = r[a] * r[b + 1] + r[a + 1] * r[b];
+            r[dst] = re;
+        }
+    }
+
+    static final class DivOp implements Op {
+        final int a, b, dst;
+        DivOp(int a, int b, int dst) { this.a = a; this.b = b; this.dst = dst; }
+        public void run(double[] r) {
+            final double den = r[b] * r[b] + r[b + 1] * r[b + 1];
+            final double re = (r[a] * r[b] + r[a + 1] * r[b + 1]) / den;
+            r[dst + 1] = (r[a + 1] * r[b] - r[a] * r[b + 1]) / den;
+            r[dst] = re;
+        }
+    }
+
+    static final class SquareOp implements Op {
+        final int a, dst;
+        SquareOp(int a, int dst) { this.a = a; this.dst = dst; }
+        public void run(double[] r) {
+            final double re = r[a] * r[a] - r[a + 1] * r[a + 1];
+            r[dst + 1] = 2 * r[a] * r[a + 1];
+            r[dst] = re;
+        }
+    }
+
+    static final class ConstOp implements Op {
+        final double re, im;
+        final int dst;
+        ConstOp(double re, double im, int dst) { this.re = re; this.im = im; this.dst = dst; }
+        public void run(double[] r) {
+            r[dst] = re;
+            r[dst + 1] = im;
+        }
+    }
+
+    /**
+     * Unary real-valued and conjugating functions, selected by {@code kind}
+     */
+    static final class UnaryOp implements Op {
+        static final int NEG = 0, CONJ = 1, RE = 2, IM = 3, MODULUS = 4;
+        final int kind, a, dst;
+        UnaryOp(int kind, int a, int dst) { this.kind = kind; this.a = a; this.dst = dst; }
+        public void run(double[] r) {
+            final double re = r[a], im = r[a + 1];
+            switch (kind) {
+                case NEG: r[dst] = -re; r[dst + 1] = -im; break;
+                case CONJ: r[dst] = re; r[dst + 1] = -im; break;
+                case RE: r[dst] = re; r[dst + 1] = 0.0; break;
+                case IM: r[dst] = im; r[dst + 1] = 0.0; break;
+                default: r[dst] = Math.sqrt(re * re + im * im); r[dst + 1] = 0.0;
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------
+    // Syntax tree
+    // ---------------------------------------------------------------------------------------
+
+    abstract static class Expr {
+        /**
+         * Emit code computing this expression
+         * @param next the next free register
+         * @return the register holding the result
+         */
+        abstract int compile(List<Op> code, int[] next);
+
+        abstract boolean commutesWithConjugation();
+
+        /**
+         * @param conjugate expand in conj(z) rather than z
+         * @return this expression as a polynomial in z (or conj z) and c, or null if it isn't one
+         */
+        abstract Poly toPoly(boolean conjugate);
+
+        static int allocate(int[] next) {
+            final int r = next[0];
+            next[0] += 2;
+            return r;
+        }
+    }
+
+    static final class Var extends Expr {
+        final char name;
+        Var(char name) { this.name = name; }
+        int compile(List<Op> code, int[] next) { return name == 'z' ? 0 : 2; }
+        boolean commutesWithConjugation() { return true; }
+        Poly toPoly(boolean conjugate) {
+            if (name == 'c') return Poly.monomial(0, 1, 1.0, 0.0);
+            return conjugate ? null : Poly.monomial(1, 0, 1.0, 0.0);
+        }
+    }
+
+    static final class Const extends Expr {
+        final double re, im;
+        Const(double re, double im) { this.re = re; this.im = im; }
+        int compile(List<Op> code, int[] next) {
+            final int dst = allocate(next);
+            code.add(0, new ConstOp(re, im, dst));
+            return dst;
+        }
+        boolean commutesWithConjugation() { return im == 0.0; }
+        Poly toPoly(boolean conjugate) { return Poly.monomial(0, 0, re, im); }
+    }
+
+    abstract static class Binary extends Expr {
+        final Expr a, b;
+        Binary(Expr a, Expr b) { this.a = a; this.b = b; }
+        boolean commutesWithConjugation() { return a.commutesWithConjugation() && b.commutesWithConjugation(); }
+    }
+
+    static final class Add extends Binary {
+        Add(Expr a, Expr b) { super(a, b); }
+        Poly toPoly(boolean conjugate) { return Poly.add(a.toPoly(conjugate), b.toPoly(conjugate), 1.0); }
+        int compile(List<Op> code, int[] next) {
+            final int ra = a.compile(code, next), rb = b.compile(code, next), dst = allocate(next);
+            code.add(new AddOp(ra, rb, dst));
+            return dst;
+        }
+    }
+
+    static final class Sub extends Binary {
+        Sub(Expr a, Expr b) { super(a, b); }
+        Poly toPoly(boolean conjugate) { return Poly.add(a.toPoly(conjugate), b.toPoly(conjugate), -1.0); }
+        int compile(List<Op> code, int[] next) {
+            final int ra = a.compile(code, next), rb = b.compile(code, next), dst = allocate(next);
+            code.add(new SubOp(ra, rb, dst));
+            return dst;
+        }
+    }
+
+    static final class Mul extends Binary {
+        Mul(Expr a, Expr b) { super(a, b); }
+        Poly toPoly(boolean conjugate) { return Poly.multiply(a.toPoly(conjugate), b.toPoly(conjugate)); }
+        int compile(List<Op> code, int[] next) {
+            final int ra = a.compile(code, next), rb = b.compile(code, next), dst = allocate(next);
+            code.add(new MulOp(ra, rb, dst));
+            return dst;
+        }
+    }
+
+    static final class Div extends Binary {
+        Div(Expr a, Expr b) { super(a, b); }
+        Poly toPoly(boolean conjugate) {
+            final Poly num = a.toPoly(conjugate), den = b.toPoly(conjugate);
+            return num == null || den == null ? null : num.divideByConstant(den);
+        }
+        int compile(List<Op> code, int[] next) {
+            final int ra = a.compile(code, next), rb = b.compile(code, next), dst = allocate(next);
+            code.add(new DivOp(ra, rb, dst));
+            return dst;
+        }
+    }
+
+    static final class Pow extends Expr {
+        final Expr base;
+        final int n;
+        Pow(Expr base, int n) { this.base = base; this.n = n; }
+
+        /**
+         * Exponentiation by squaring, unrolled at compile time
+         */
+        int compile(List<Op> code, int[] next) {
+            int square = base.compile(code, next);
+            int result = -1;
+            for (int k = n; k > 0; k >>= 1) {
+                if ((k & 1) != 0) {
+                    if (result < 0) {
+                        result = square;
+                    } else {
+                        final int dst = allocate(next);
+                        code.add(new MulOp(result, square, dst));
+                        result = dst;
+                    }
+                }
+                if (k > 1) {
+                    final int dst = allocate(next);
+                    code.add(new SquareOp(square, dst));
+                    square = dst;
+                }
+            }
+            if (result < 0) {
+                result = allocate(next);
+                code.add(new ConstOp(1.0, 0.0, result));
+            }
+            return result;
+        }
+
+        boolean commutesWithConjugation() { return base.commutesWithConjugation(); }
+
+        Poly toPoly(boolean conjugate) {
+            final Poly p = base.toPoly(conjugate);
+            if (p == null) return null;
+            Poly result = Poly.monomial(0, 0, 1.0, 0.0);
+            for (int k = 0; k < n && result != null; ++k) result = Poly.multiply(result, p);
+            return result;
+        }
+    }
+
+    abstract static class Unary extends Expr {
+        final Expr a;
+        final int kind;
+        Unary(Expr a, int kind) { this.a = a; this.kind = kind; }
+        int compile(List<Op> code, int[] next) {
+            final int ra = a.compile(code, next), dst = allocate(next);
+            code.add(new UnaryOp(kind, ra, dst));
+            return dst;
+        }
+        boolean commutesWithConjugation() { return a.commutesWithConjugation(); }
+        Poly toPoly(boolean conjugate) { return null; }
+    }
+
+    static final class Neg extends Unary {
+        Neg(Expr a) { super(a, UnaryOp.NEG); }
+        @Override
+        Poly toPoly(boolean conjugate) { return Poly.add(Poly.monomial(0, 0, 0.0, 0.0), a.toPoly(conjugate), -1.0); }
+    }
+
+    static final class Conj extends Unary {
+        Conj(Expr a) { super(a, UnaryOp.CONJ); }
+        @Override
+        Poly toPoly(boolean conjugate) {
+            final boolean ofZ = a instanceof Var && ((Var) a).name == 'z';
+            return conjugate && ofZ ? Poly.monomial(1, 0, 1.0, 0.0) : null;
+        }
+    }
+
+    static final class Abs extends Unary {
+        Abs(Expr a) { super(a, UnaryOp.MODULUS); }
+    }
+
+    /**
+     * Real ({@code part == 'r'}) or imaginary ({@code part == 'i'}) part
+     */
+    static final class Part extends Unary {
+        final char part;
+        Part(Expr a, char part) {
+            super(a, part == 'r' ? UnaryOp.RE : UnaryOp.IM);
+            this.part = part;
+        }
+        @Override
+        boolean commutesWithConjugation() { return part == 'r' && a.commutesWithConjugation(); }
+    }
+
+    /**
+     * A polynomial in two variables, z (or conj z) and c, with complex coefficients:
+     * {@code sum re[j][k] + i im[j][k]) z^j c^k}
+     */
+    static final class Poly {
+        /**
+         * Larger expansions aren't worth it; fall back to register code
+         */
+        static final int MAX_DEGREE = 64;
+
+        final double[][] re, im;
+
+        private Poly(int zDegree, int cDegree) {
+            re = new double[zDegree + 1][cDegree + 1];
+            im = new double[zDegree + 1][cDegree + 1];
+        }
+
+        static Poly monomial(int j, int k, double re, double im) {
+            final Poly p = new Poly(j, k);
+            p.re[j][k] = re;
+            p.im[j][k] = im;
+            return p;
+        }
+
+        int zDegree() {
+            return re.length - 1;
+        }
+
+        int cDegree() {
+            return re[0].length - 1;
+        }
+
+        /**
+         * @return a + sign * b
+         */
+        static Poly add(Poly a, Poly b, double sign) {
+            if (a == null || b == null) return null;
+            final Poly p = new Poly(Math.max(a.zDegree(), b.zDegree()), Math.max(a.cDegree(), b.cDegree()));
+            for (int j = 0; j <= a.zDegree(); ++j) {
+                for (int k = 0; k <= a.cDegree(); ++k) {
+                    p.re[j][k] += a.re[j][k];
+                    p.im[j][k] += a.im[j][k];
+                }
+            }
+            for (int j = 0; j <= b.zDegree(); ++j) {
+                for (int k = 0; k <= b.cDegree(); ++k) {
+                    p.re[j][k] += sign * b.re[j][k];
+                    p.im[j][k] += sign * b.im[j][k];
+                }
+            }
+            return p;
+        }
+
+        static Poly multiply(Poly a, Poly b) {
+            if (a == null || b == null) return null;
+            final int zDegree = a.zDegree() + b.zDegree(), cDegree = a.cDegree() + b.cDegree();
+            if (zDegree > MAX_DEGREE || cDegree > MAX_DEGREE) return null;
+            final Poly p = new Poly(zDegree, cDegree);
+            for (int j1 = 0; j1 <= a.zDegree(); ++j1) {
+                for (int k1 = 0; k1 <= a.cDegree(); ++k1) {
+                    final double ar = a.re[j1][k1], ai = a.im[j1][k1];
+                    if (ar == 0.0 && ai == 0.0) continue;
+                    for (int j2 = 0; j2 <= b.zDegree(); ++j2) {
+                        for (int k2 = 0; k2 <= b.cDegree(); ++k2) {
+                            final double br = b.re[j2][k2], bi = b.im[j2][k2];
+                            p.re[j1 + j2][k1 + k2] += ar * br - ai * bi;
+                            p.im[j1 + j2][k1 + k2] += ar * bi + ai * br;
+                        }
+                    }
+                }
+            }
+            return p;
+        }
+
+        /**
+         * @return this / d if d is a non-zero constant, otherwise null
+         */
+        Poly divideByConstant(Poly d) {
+            for (int j = 0; j <= d.zDegree(); ++j) {
+                for (int k = 0; k <= d.cDegree(); ++k) {
+                    if ((j != 0 || k != 0) && (d.re[j][k] != 0.0 || d.im[j][k] != 0.0)) return null;
+                }
+            }
+            final double dr = d.re[0][0], di = d.im[0][0], den = dr * dr + di * di;
+            if (den == 0.0) return null;
+            final Poly p = new Poly(zDegree(), cDegree());
+            for (int j = 0; j <= zDegree(); ++j) {
+                for (int k = 0; k <= cDegree(); ++k) {
+                    p.re[j][k] = (re[j][k] * dr + im[j][k] * di) / den;
+                    p.im[j][k] = (im[j][k] * dr - re[j][k] * di) / den;
+                }
+            }
+            return p;
+        }
+
+        /**
+         * @return d if this is exactly {@code z^d + c} with d > 1, otherwise -1
+         */
+        int monicMonomialPlusC() {
+            int d = -1;
+            for (int j = 0; j <= zDegree(); ++j) {
+                for (int k = 0; k <= cDegree(); ++k) {
+                    final double r = re[j][k], i = im[j][k];
+                    if (r == 0.0 && i == 0.0) continue;
+                    if (j == 0 && k == 1 && r == 1.0 && i == 0.0) continue;
+                    if (k == 0 && j > 1 && r == 1.0 && i == 0.0 && d < 0) {
+                        d = j;
+                        continue;
+                    }
+                    return -1;
+                }
+            }
+            final boolean hasC = cDegree() >= 1 && re[0][1] == 1.0 && im[0][1] == 0.0;
+            return hasC ? d : -1;
+        }
+
+        /**
+         * Evaluate the coefficient of each power of z at c
+         */
+        void coefficientsAt(double cRe, double cIm, double[] ar, double[] ai) {
+            for (int j = 0; j <= zDegree(); ++j) {
+                double pr = 0.0, pi = 0.0;
+                for (int k = cDegree(); k >= 0; --k) {
+                    final double t = pr * cRe - pi * cIm + re[j][k];
+                    pi = pr * cIm + pi * cRe + im[j][k];
+                    pr = t;
+                }
+                ar[j] = pr;
+                ai[j] = pi;
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------
+    // Parser
+    // ---------------------------------------------------------------------------------------
+
+    /**
+     * Recursive descent over
+     * <pre>
+     *   expr    := term (('+' | '-') term)*
+     *   term    := factor (('*' | '/')? factor)*      juxtaposition multiplies
+     *   factor  := '-' factor | power
+     *   power   := primary ('^' integer)?
+     *   primary := number | 'i' | 'z' | 'c' | '(' expr ')' | '|' expr '|'
+     *            | ('re' | 'im') primary | ('conj' | 'abs') primary
+     * </pre>
+     */
+    static class Parser {
+        private final String src;
+        private int pos = 0;
+        private int absDepth = 0;
+
+        Parser(String src) {
+            this.src = src;
+        }
+
+        Expr parse() {
+            final Expr e = expr();
+            skipSpace();
+            if (pos != src.length()) throw error("unexpected '" + src.charAt(pos) + "'");
+            return e;
+        }
+
+        private Expr expr() {
+            Expr e = term();
+            while (true) {
+                skipSpace();
+                if (eat('+')) e = new Add(e, term());
+                else if (eat('-')) e = new Sub(e, term());
+                else return e;
+            }
+        }
+
+        private Expr term() {
+            Expr e = factor();
+            while (true) {
+                skipSpace();
+                if (eat('*')) e = new Mul(e, factor());
+                else if (eat('/')) e = new Div(e, factor());
+                else if (startsPrimary()) e = new Mul(e, factor());
+                else return e;
+            }
+        }
+
+        private Expr factor() {
+            skipSpace();
+            if (eat('-')) return new Neg(factor());
+            return power();
+        }
+
+        private Expr power() {
+            final Expr base = primary();
+            skipSpace();
+            if (!eat('^')) return base;
+            skipSpace();
+            final int start = pos;
+            while (pos < src.length() && Character.isDigit(src.charAt(pos))) ++pos;
+            if (start == pos) throw error("expected a non-negative integer exponent");
+            return new Pow(base, Integer.parseInt(src.substring(start, pos)));
+        }
+
+        private Expr primary() {
+            skipSpace();
+            if (pos >= src.length()) throw error("unexpected end of formula");
+            final char ch = src.charAt(pos);
+            if (eat('(')) {
+                final int depth = absDepth;
+                absDepth = 0;
+                final Expr e = expr();
+                absDepth = depth;
+                expect(')');
+                return e;
+            }
+            if (eat('|')) {
+                ++absDepth;
+                final Expr e = expr();
+                --absDepth;
+                expect('|');
+                return new Abs(e);
+            }
+            if (Character.isDigit(ch) || ch == '.') {
+                final int start = pos;
+                while (pos < src.length() && (Character.isDigit(src.charAt(pos)) || src.charAt(pos) == '.')) ++pos;
+                return new Const(Double.parseDouble(src.substring(start, pos)), 0.0);
+            }
+            if (Character.isLetter(ch)) {
+                final int start = pos;
+                while (pos < src.length() && Character.isLetter(src.charAt(pos))) ++pos;
+                final String name = src.substring(start, pos).toLowerCase();
+                switch (name) {
+                    case "z": return new Var('z');
+                    case "c": return new Var('c');
+                    case "i": return new Const(0.0, 1.0);
+                    case "re": return new Part(primary(), 'r');
+                    case "im": return new Part(primary(), 'i');
+                    case "conj": return new Conj(primary());
+                    case "abs": return new Abs(primary());
+                    default:
+                        pos = start;
+                        throw error("unknown name '" + name + "'");
+                }
+            }
+            throw error("unexpected '" + ch + "'");
+        }
+
+        /**
+         * Can the next token start an implicitly multiplied factor? A '|' only opens a new
+         * modulus when we aren't waiting to close one.
+         */
+        private boolean startsPrimary() {
+            if (pos >= src.length()) return false;
+            final char ch = src.charAt(pos);
+            if (ch == '|') return absDepth == 0;
+            return ch == '(' || Character.isLetterOrDigit(ch) || ch == '.';
+        }
+
+        private void skipSpace() {
+            while (pos < src.length() && Character.isWhitespace(src.charAt(pos))) ++pos;
+        }
+
+        private boolean eat(char ch) {
+            if (pos < src.length() && src.charAt(pos) == ch) {
+                ++pos;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(char ch) {
+            skipSpace();
+            if (!eat(ch)) throw error("expected '" + ch + "'");
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(String.format("%s at position %d in formula \"%s\"", message, pos, src));
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.bkushigian.fractals;
+
+import java.awt.*;
+
+/**
+ * An escape-time fractal defined by a {@link Formula}, such as the Burning Ship
+ * {@code (|Re z| + i|Im z|)^2 + c}.
+ *
+ * In the default parameter-plane mode each pixel is a value of c and orbits start at
+ * {@code z = c}, just like {@link Mandelbrot}. Given a fixed c instead, each pixel is a
+ * starting z, just like {@link Julia}.
+ */
+public class FormulaFractal extends ComplexFractal {
+
+    protected final Formula formula;
+    private final Formula.Kernel kernel;
+
+    /**
+     * Fixed c for a Julia-style rendering, or null to iterate over c
+     */
+    protected final Complex juliaC;
+
+    public FormulaFractal(String formula) {
+        this(1000, 700, null, Formula.parse(formula), null);
+    }
+
+    public FormulaFractal(int width, int height, ColorScheme colorScheme, Formula formula) {
+        this(width, height, colorScheme, formula, null);
+    }
+
+    public FormulaFractal(int width, int height, ColorScheme colorScheme, Formula formula, Complex juliaC) {
+        super(width, height, colorScheme, -2.1, 1.2, 1.1, 1.1);
+        this.formula = formula;
+        this.kernel = formula.compile();
+        this.juliaC = juliaC;
+    }
+
+    @Override
+    public String getFractalName() {
+        return "formula";
+    }
+
+    @Override
+    public int calculateIterations(Complex z, int max) {
+        return continueOrbit(z.re, z.im, new double[]{z.re, z.im}, 0, max);
+    }
+
+    @Override
+    protected boolean isResumable() {
+        return true;
+    }
+
+    @Override
+    protected int continueOrbit(double re, double im, double[] z, int from, int max) {
+        if (juliaC != null) {
+            return kernel.iterate(juliaC.re, juliaC.im, z, from, max);
+        }
+        return kernel.iterate(re, im, z, from, max);
+    }
+
+    @Override
+    protected Object renderParameters() {
+        return formula.source + (juliaC == null ? "" : " @ " + juliaC);
+    }
+
+    @Override
+    protected Symmetry getSymmetry() {
+        if (!formula.commutesWithConjugation()) return Symmetry.NONE;
+        if (juliaC != null && juliaC.im != 0.0) return Symmetry.NONE;
+        return Symmetry.CONJUGATE;
+    }
+
+    /**
+     * Draw the key in the bottom left hand corner detailing relevant data.
+     */
+    @Override
+    protected void drawKey(Graphics g) {
+        String[] toDraw = new String[] {
+                "z <- " + formula,
+                "maxIters: " + maxIterations,
+                String.format("zoom:    %.6f", zoomDepth),
+                String.format("x-range: %.6f, %.6f", xMin, xMax),
+                String.format("y-range: %.6f, %.6f", yMin, yMax),
+                budgetLine(),
+        };
+        drawKey(g, toDraw);
+    }
+
+    public static void main(String[] args) {
+        final String formula = args.length > 0 ? String.join(" ", args) : "(|Re z| + i|Im z|)^2 + c";
+        DisplayWindow window = new DisplayWindow();
+        window.addPanel(new FormulaFractal(1200, 1200, new ColorScheme.BWColorScheme(), Formula.parse(formula)));
+        window.showFrame();
+    }
+}
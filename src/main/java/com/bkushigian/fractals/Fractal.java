@@ -106,7 +106,7 @@ public abstract class Fractal  extends JPanel implements ActionListener {
         return b;
     }
 
-    // has this been updated since the last time iterMatrix was computed?
+    // has this been updated since the last time the iterations were computed?
     protected boolean updated = true;
 
     public void actionPerformed(ActionEvent e){
@@ -117,49 +117,22 @@ public abstract class Fractal  extends JPanel implements ActionListener {
             System.out.println("Button: " + getButtonName((JButton) source));
         }
         if (source == left) {
-            double shift = delta * shiftAmount;
-            xMax -= shift;
-            xMin -= shift;
+            move(Move.LEFT);
             updated = true;
-
         } else if (source == right) {
-            double shift = delta * shiftAmount;
-            xMax += shift;
-            xMin += shift;
+            move(Move.RIGHT);
             updated = true;
-
         } else if (source == up) {
-            double shift = delta * shiftAmount;
-            yCenter += shift;
+            move(Move.UP);
             updated = true;
-
         } else if (source == down) {
-            double shift = delta * shiftAmount;
-            yCenter -= shift;
+            move(Move.DOWN);
             updated = true;
         } else if (source == in) {
-            double center = (xMin + xMax) / 2;
-            double diff = xMax - center;
-            xMin = center - zoomInFactor * diff ;
-            xMax = center + zoomInFactor * diff ;
-
-            center = (yMin + yMax) / 2;
-            diff = yMax - center;
-            yMin = center - zoomInFactor * diff ;
-            yMax = center + zoomInFactor * diff ;
-            zoomDepth *= zoomOutFactor;
+            move(Move.IN);
             updated = true;
         } else if (source == out) {
-            double center = (xMin + xMax) / 2;
-            double diff = xMax - center;
-            xMin = center - zoomOutFactor * diff ;
-            xMax = center + zoomOutFactor * diff ;
-
-            center = (yMin + yMax) / 2;
-            diff = yMax - center;
-            yMin = center - zoomOutFactor * diff ;
-            yMax = center + zoomOutFactor * diff ;
-            zoomDepth *= zoomInFactor;
+            move(Move.OUT);
             updated = true;
         } else if (source == exit) {
             final String d = (new SimpleDateFormat("-dd-MM-yyyy_HH-mm-ss")).format(new Date());
@@ -174,7 +147,7 @@ public abstract class Fractal  extends JPanel implements ActionListener {
         else if (source == toggleKey) {
             showKey = ! showKey;
             System.out.println("showKey = " + showKey);
-            updated = true;
+            repaint();      // the key is drawn over the last frame, no need to recompute
         }
 
         System.out.println("<<< updated = " + updated);
@@ -182,6 +155,55 @@ public abstract class Fractal  extends JPanel implements ActionListener {
         if(updated) repaint();
     }
 
+    /**
+     * The ways the navigation buttons move the view
+     */
+    protected enum Move { LEFT, RIGHT, UP, DOWN, IN, OUT }
+
+    /**
+     * Move the view as the corresponding button does. Callers are responsible for
+     * {@link #calculateDeltas()} afterwards.
+     */
+    protected void move(Move m) {
+        final double shift = delta * shiftAmount;
+        switch (m) {
+            case LEFT:
+                xMax -= shift;
+                xMin -= shift;
+                break;
+            case RIGHT:
+                xMax += shift;
+                xMin += shift;
+                break;
+            case UP:
+                yCenter += shift;
+                break;
+            case DOWN:
+                yCenter -= shift;
+                break;
+            case IN:
+                zoom(zoomInFactor);
+                zoomDepth *= zoomOutFactor;
+                break;
+            case OUT:
+                zoom(zoomOutFactor);
+                zoomDepth *= zoomInFactor;
+                break;
+        }
+    }
+
+    private void zoom(double factor) {
+        double center = (xMin + xMax) / 2;
+        double diff = xMax - center;
+        xMin = center - factor * diff ;
+        xMax = center + factor * diff ;
+
+        center = (yMin + yMax) / 2;
+        diff = yMax - center;
+        yMin = center - factor * diff ;
+        yMax = center + factor * diff ;
+    }
+
     /**
      * The difference in x/y values between adjacent pixels.
      *
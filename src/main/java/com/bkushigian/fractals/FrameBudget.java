@@ -0,0 +1,97 @@
+package com.bkushigian.fractals;
+
+/**
+ * Picks the resolution and iteration cap for frames rendered while the user is navigating,
+ * so that each one comes in under a target frame time.
+ *
+ * Frame cost is modelled as proportional to pixels times iteration cap. Every completed
+ * frame updates a running estimate of the cost per pixel-iteration, and the next frame uses
+ * the finest scale (and, failing that, the highest iteration cap) predicted to fit in the
+ * target.
+ */
+public class FrameBudget {
+
+    public static final long DEFAULT_TARGET_MILLIS = 50;
+    public static final int MAX_SCALE = 8;
+
+    /**
+     * Navigation frames never drop below this many iterations
+     */
+    public static final int MIN_ITERATIONS = 32;
+
+    /**
+     * Weight of the newest frame in the running cost estimate
+     */
+    private static final double SMOOTHING = 0.5;
+
+    private volatile long targetNanos = DEFAULT_TARGET_MILLIS * 1_000_000;
+
+    /**
+     * Estimated nanoseconds per pixel per iteration of the cap, or 0 before the first frame
+     */
+    private double cost;
+
+    private int scale = 1;
+    private int iterations;
+
+    public long targetMillis() {
+        return targetNanos / 1_000_000;
+    }
+
+    public void setTargetMillis(long millis) {
+        targetNanos = millis * 1_000_000;
+    }
+
+    /**
+     * Fold in the time it took to render a frame
+     */
+    public synchronized void record(Viewport view, long nanos) {
+        final double sample = (double) nanos / ((double) view.width * view.height * Math.max(1, view.maxIterations));
+        cost = cost == 0 ? sample : SMOOTHING * sample + (1 - SMOOTHING) * cost;
+    }
+
+    /**
+     * @return {@code view} reduced so that it should render within the target time
+     */
+    public synchronized Viewport reduce(Viewport view) {
+        scale = 1;
+        iterations = view.maxIterations;
+        if (cost == 0) return view;
+        final long target = targetNanos;
+        while (scale < MAX_SCALE && predict(view, scale, iterations) > target) ++scale;
+        if (predict(view, scale, iterations) > target) {
+            final double perIteration = predict(view, scale, 1);
+            iterations = (int) Math.max(MIN_ITERATIONS, Math.min(view.maxIterations, target / perIteration));
+        }
+        if (scale == 1 && iterations == view.maxIterations) return view;
+        return scaled(view, scale, iterations);
+    }
+
+    /**
+     * @return {@code view} sampled every {@code scale} pixels, so that the pixels of the result
+     * land exactly on every {@code scale}-th pixel of {@code view}
+     */
+    static Viewport scaled(Viewport view, int scale, int maxIterations) {
+        return new Viewport(view.xMin, view.yMax, view.delta * scale,
+                (view.width + scale - 1) / scale, (view.height + scale - 1) / scale, maxIterations, view.parameters);
+    }
+
+    private double predict(Viewport view, int scale, int maxIterations) {
+        final double pixels = (double) ((view.width + scale - 1) / scale) * ((view.height + scale - 1) / scale);
+        return cost * pixels * maxIterations;
+    }
+
+    /**
+     * @return the scale of the last frame from {@link #reduce(Viewport)}, 1 for full resolution
+     */
+    public synchronized int scale() {
+        return scale;
+    }
+
+    /**
+     * @return the iteration cap of the last frame from {@link #reduce(Viewport)}
+     */
+    public synchronized int iterations() {
+        return iterations;
+    }
+}
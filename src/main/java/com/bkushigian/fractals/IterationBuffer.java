@@ -0,0 +1,306 @@
+package com.bkushigian.fractals;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A width x height grid of per-pixel values (usually iteration counts), stored in one flat
+ * row-major block rather than as an array of row arrays.
+ *
+ * Values are non-negative, except that -1 (Newton uses it for "did not converge") and
+ * {@link Tile#EMPTY} are always representable. Narrow buffers reserve their all-ones bit
+ * pattern for -1 and the pattern below it for {@code EMPTY}, so a byte buffer holds 0..253
+ * and a short buffer holds 0..65533.
+ */
+public abstract class IterationBuffer {
+
+    /**
+     * Largest number of elements we put in a single Java array or direct ByteBuffer
+     */
+    static final long MAX_CHUNK = Integer.MAX_VALUE - 8;
+
+    public final int width;
+    public final int height;
+
+    protected IterationBuffer(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Allocate the narrowest buffer that can hold values up to {@code maxValue}. Buffers too
+     * large for a single Java array are allocated off-heap.
+     */
+    public static IterationBuffer allocate(int width, int height, int maxValue) {
+        final int bytes = bytesFor(maxValue);
+        if ((long) width * height > MAX_CHUNK) {
+            return new Direct(width, height, bytes);
+        }
+        switch (bytes) {
+            case 1: return new Bytes(width, height);
+            case 2: return new Shorts(width, height);
+            default: return new Ints(width, height);
+        }
+    }
+
+    /**
+     * Allocate the narrowest off-heap buffer that can hold values up to {@code maxValue}
+     */
+    public static IterationBuffer allocateDirect(int width, int height, int maxValue) {
+        return new Direct(width, height, bytesFor(maxValue));
+    }
+
+    /**
+     * @return bytes per pixel needed to store values in {@code [-1, maxValue]}
+     */
+    static int bytesFor(int maxValue) {
+        if (maxValue < 0xFE) return 1;
+        if (maxValue < 0xFFFE) return 2;
+        return 4;
+    }
+
+    public abstract int get(int x, int y);
+
+    public abstract void set(int x, int y, int value);
+
+    /**
+     * @return the largest value this buffer can hold
+     */
+    public abstract int maxValue();
+
+    /**
+     * @return number of bytes used per pixel
+     */
+    public abstract int bytesPerPixel();
+
+    public boolean isDirect() {
+        return false;
+    }
+
+    /**
+     * Copy {@code len} values of row {@code y}, starting at column {@code x}, into {@code dst}
+     */
+    public void getRow(int y, int x, int[] dst, int offset, int len) {
+        for (int i = 0; i < len; ++i) dst[offset + i] = get(x + i, y);
+    }
+
+    /**
+     * Copy {@code len} values from {@code src} into row {@code y}, starting at column {@code x}
+     */
+    public void setRow(int y, int x, int[] src, int offset, int len) {
+        for (int i = 0; i < len; ++i) set(x + i, y, src[offset + i]);
+    }
+
+    /**
+     * @return this buffer if it can already hold {@code maxValue}, otherwise a wider copy
+     */
+    public IterationBuffer widen(int maxValue) {
+        if (maxValue <= maxValue()) return this;
+        return copy(maxValue);
+    }
+
+    /**
+     * @return a copy of this buffer which can hold values up to {@code maxValue} as well as
+     * those it already holds
+     */
+    public IterationBuffer copy(int maxValue) {
+        maxValue = Math.max(maxValue, maxValue());
+        final IterationBuffer copy = isDirect()
+                ? allocateDirect(width, height, maxValue)
+                : allocate(width, height, maxValue);
+        final int[] row = new int[width];
+        for (int y = 0; y < height; ++y) {
+            getRow(y, 0, row, 0, width);
+            copy.setRow(y, 0, row, 0, width);
+        }
+        return copy;
+    }
+
+    /**
+     * Decode a narrow value with {@code bits} bits
+     */
+    private static int decode(int v, int bits) {
+        final int ones = (1 << bits) - 1;
+        return v == ones ? -1 : v == ones - 1 ? Tile.EMPTY : v;
+    }
+
+    /**
+     * Encode a value as {@code bits} bits; only the low bits of the result are kept
+     */
+    private static int encode(int value, int bits) {
+        return value == Tile.EMPTY ? (1 << bits) - 2 : value;
+    }
+
+    /**
+     * @return total bytes used to store the values
+     */
+    public long sizeInBytes() {
+        return (long) width * height * bytesPerPixel();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{" + width + "x" + height + ", " + bytesPerPixel() + " bytes/pixel}";
+    }
+
+    static class Ints extends IterationBuffer {
+        private final int[] data;
+
+        Ints(int width, int height) {
+            super(width, height);
+            data = new int[width * height];
+        }
+
+        @Override
+        public int get(int x, int y) {
+            return data[y * width + x];
+        }
+
+        @Override
+        public void set(int x, int y, int value) {
+            data[y * width + x] = value;
+        }
+
+        @Override
+        public void getRow(int y, int x, int[] dst, int offset, int len) {
+            System.arraycopy(data, y * width + x, dst, offset, len);
+        }
+
+        @Override
+        public void setRow(int y, int x, int[] src, int offset, int len) {
+            System.arraycopy(src, offset, data, y * width + x, len);
+        }
+
+        @Override
+        public int maxValue() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        public int bytesPerPixel() {
+            return 4;
+        }
+    }
+
+    static class Shorts extends IterationBuffer {
+        private final short[] data;
+
+        Shorts(int width, int height) {
+            super(width, height);
+            data = new short[width * height];
+        }
+
+        @Override
+        public int get(int x, int y) {
+            return decode(data[y * width + x] & 0xFFFF, 16);
+        }
+
+        @Override
+        public void set(int x, int y, int value) {
+            data[y * width + x] = (short) encode(value, 16);
+        }
+
+        @Override
+        public int maxValue() {
+            return 0xFFFF - 2;
+        }
+
+        @Override
+        public int bytesPerPixel() {
+            return 2;
+        }
+    }
+
+    static class Bytes extends IterationBuffer {
+        private final byte[] data;
+
+        Bytes(int width, int height) {
+            super(width, height);
+            data = new byte[width * height];
+        }
+
+        @Override
+        public int get(int x, int y) {
+            return decode(data[y * width + x] & 0xFF, 8);
+        }
+
+        @Override
+        public void set(int x, int y, int value) {
+            data[y * width + x] = (byte) encode(value, 8);
+        }
+
+        @Override
+        public int maxValue() {
+            return 0xFF - 2;
+        }
+
+        @Override
+        public int bytesPerPixel() {
+            return 1;
+        }
+    }
+
+    /**
+     * Off-heap storage in direct ByteBuffers, so image size isn't capped by the Java heap.
+     * Rows are split across as many buffers as needed to stay under the 2GB ByteBuffer limit.
+     */
+    static class Direct extends IterationBuffer {
+        private final int bytes;
+        private final int rowsPerChunk;
+        private final ByteBuffer[] chunks;
+
+        Direct(int width, int height, int bytes) {
+            super(width, height);
+            this.bytes = bytes;
+            final long rowBytes = (long) width * bytes;
+            rowsPerChunk = (int) Math.max(1, Math.min(height, MAX_CHUNK / rowBytes));
+            chunks = new ByteBuffer[(height + rowsPerChunk - 1) / rowsPerChunk];
+            for (int i = 0; i < chunks.length; ++i) {
+                final int rows = Math.min(rowsPerChunk, height - i * rowsPerChunk);
+                chunks[i] = ByteBuffer.allocateDirect((int) (rows * rowBytes)).order(ByteOrder.nativeOrder());
+            }
+        }
+
+        @Override
+        public int get(int x, int y) {
+            final ByteBuffer chunk = chunks[y / rowsPerChunk];
+            final int index = ((y % rowsPerChunk) * width + x) * bytes;
+            switch (bytes) {
+                case 1: return decode(chunk.get(index) & 0xFF, 8);
+                case 2: return decode(chunk.getShort(index) & 0xFFFF, 16);
+                default:
+                    return chunk.getInt(index);
+            }
+        }
+
+        @Override
+        public void set(int x, int y, int value) {
+            final ByteBuffer chunk = chunks[y / rowsPerChunk];
+            final int index = ((y % rowsPerChunk) * width + x) * bytes;
+            switch (bytes) {
+                case 1: chunk.put(index, (byte) encode(value, 8)); break;
+                case 2: chunk.putShort(index, (short) encode(value, 16)); break;
+                default: chunk.putInt(index, value);
+            }
+        }
+
+        @Override
+        public int maxValue() {
+            switch (bytes) {
+                case 1: return 0xFF - 2;
+                case 2: return 0xFFFF - 2;
+                default: return Integer.MAX_VALUE;
+            }
+        }
+
+        @Override
+        public int bytesPerPixel() {
+            return bytes;
+        }
+
+        @Override
+        public boolean isDirect() {
+            return true;
+        }
+    }
+}
@@ -3,10 +3,16 @@ package com.bkushigian.fractals;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
 
 public class Julia extends ComplexFractal {
 
-    Complex c;
+    /**
+     * Read by the render workers, so writes must be visible across threads
+     */
+    volatile Complex c;
     double cDelta = 1.0/ 128.0;
     JButton moveCLeft;
     JButton moveCRight;
@@ -14,9 +20,41 @@ public class Julia extends ComplexFractal {
     JButton moveCDown;
     JButton increaseCDelta;
     JButton decreaseCDelta;
+    JButton toggleOutline;
     protected double xMin = -2.0;
     protected double xMax = 2.0;
 
+    /**
+     * While c is being adjusted, show a quick outline of the Julia set drawn by inverse
+     * iteration instead of rendering every change in full. The full render starts once c
+     * has been left alone for {@link #SETTLE_MILLIS}.
+     */
+    protected boolean outlinePreview = true;
+    static final int SETTLE_MILLIS = 400;
+
+    /**
+     * Inverse iteration stops expanding a branch once it lands on a pixel this many times
+     */
+    static final int MAX_HITS = 4;
+    static final int MAX_DEPTH = 256;
+
+    /**
+     * The outline currently shown in place of the full render, or null. Only touched from
+     * the EDT.
+     */
+    private BufferedImage outline;
+
+    /**
+     * The attracting cycle of {@code c}, found once per c and shared by the render workers
+     */
+    private volatile Attractor attractor;
+
+    private final Timer settle = new Timer(SETTLE_MILLIS, e -> {
+        outline = null;
+        updated = true;
+        repaint();
+    });
+
     /**
      * the simplest constructor that handles default arguments
      */
@@ -43,23 +81,36 @@ public class Julia extends ComplexFractal {
         moveCRight = registerButton("C→", "move-C-right");
         increaseCDelta = registerButton("++ΔC", "increase-delta");
         decreaseCDelta = registerButton("--ΔC", "decreaseDelta");
+        toggleOutline = registerButton("IIM", "toggle-outline-preview");
+        settle.setRepeats(false);
     }
 
     @Override
     public void actionPerformed(ActionEvent e) {
+        boolean movedC = true;
         if (e.getSource() == moveCUp) {
-            updated = true;
             c = new Complex(c.re, c.im + cDelta);
         } else if (e.getSource() == moveCDown) {
-            updated = true;
             c = new Complex(c.re, c.im - cDelta);
         }
         else if (e.getSource() == moveCLeft) {
-            updated = true;
             c = new Complex(c.re - cDelta, c.im);
         } else if (e.getSource() == moveCRight) {
-            updated = true;
             c = new Complex(c.re + cDelta, c.im);
+        } else {
+            movedC = false;
+        }
+        if (movedC) {
+            if (outlinePreview) {
+                super.actionPerformed(e);
+                showOutline();
+                return;
+            }
+            updated = true;
+        }
+
+        if (e.getSource() == toggleOutline) {
+            outlinePreview = !outlinePreview;
         } else if (e.getSource() == increaseCDelta) {
             cDelta *= 2;
         } else if (e.getSource() == decreaseCDelta) {
@@ -68,6 +119,116 @@ public class Julia extends ComplexFractal {
             cDelta = newCDelta <= minDelta ? minDelta : newCDelta;
         }
         super.actionPerformed(e);
+        if (updated && outline != null) {
+            // Moving the view while previewing skips straight to the full render
+            settle.stop();
+            outline = null;
+        }
+    }
+
+    /**
+     * Draw the outline of the current Julia set and hold off the full render until c has
+     * settled
+     */
+    private void showOutline() {
+        pipeline.cancel();
+        final Viewport view = viewport();
+        final int[] hits = new int[view.width * view.height];
+        inverseIteration(view, c.re, c.im, MAX_HITS, hits);
+        if (outline == null) outline = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        final int[] rgb = new int[width];
+        final int ink = colorScheme.getColorInt(maxIterations / 2);
+        for (int y = 0; y < height; ++y) {
+            for (int x = 0; x < width; ++x) {
+                rgb[x] = hits[y * width + x] > 0 ? ink : 0;
+            }
+            outline.setRGB(0, y, width, 1, rgb, 0, width);
+        }
+        settle.restart();
+        repaint();
+    }
+
+    /**
+     * Draw the Julia set of {@code z^2 + c} by the modified inverse iteration method: starting
+     * from the repelling fixed point, which lies on the Julia set, walk the tree of preimages
+     * {@code z -> +-sqrt(z - c)} depth first. The preimages accumulate on the whole Julia set,
+     * but very unevenly, so a branch is pruned once it lands on a pixel that has already been
+     * hit {@code maxHits} times. Branches that leave the view are pruned the same way on a
+     * coarse grid covering the whole set.
+     * @param hits receives the number of times each pixel of {@code view} was hit
+     * @return the number of points visited
+     */
+    static long inverseIteration(Viewport view, double cRe, double cIm, int maxHits, int[] hits) {
+        // Everything outside of radius 1/2 + sqrt(1/4 + |c|) escapes, so the Julia set lies
+        // inside of it. The repelling fixed point can sit right on that circle.
+        final double r = 1.01 * (0.5 + Math.sqrt(0.25 + Math.hypot(cRe, cIm)));
+        final int grid = 256;
+        final double cell = 2 * r / grid;
+        final int[] coarse = new int[grid * grid];
+
+        final double[] stackRe = new double[MAX_DEPTH + 2], stackIm = new double[MAX_DEPTH + 2];
+        final int[] stackDepth = new int[MAX_DEPTH + 2];
+        // Fixed points solve z^2 - z + c = 0; the repelling one is the larger
+        final double[] s = new double[2];
+        sqrt(0.25 - cRe, -cIm, s);
+        stackRe[0] = 0.5 + s[0];
+        stackIm[0] = s[1];
+        stackDepth[0] = 0;
+        int top = 1;
+        long visited = 0;
+
+        while (top > 0) {
+            --top;
+            final double re = stackRe[top], im = stackIm[top];
+            final int depth = stackDepth[top];
+            ++visited;
+
+            final double px = (re - view.xMin) / view.delta, py = (view.yMax - im) / view.delta;
+            if (px >= 0 && px < view.width && py >= 0 && py < view.height) {
+                final int p = (int) py * view.width + (int) px;
+                if (hits[p] >= maxHits) continue;
+                ++hits[p];
+            } else {
+                final int gx = (int) Math.floor((re + r) / cell), gy = (int) Math.floor((im + r) / cell);
+                if (gx < 0 || gx >= grid || gy < 0 || gy >= grid) continue;
+                if (coarse[gy * grid + gx] >= maxHits) continue;
+                ++coarse[gy * grid + gx];
+            }
+            if (depth >= MAX_DEPTH) continue;
+
+            sqrt(re - cRe, im - cIm, s);
+            stackRe[top] = s[0];
+            stackIm[top] = s[1];
+            stackDepth[top++] = depth + 1;
+            stackRe[top] = -s[0];
+            stackIm[top] = -s[1];
+            stackDepth[top++] = depth + 1;
+        }
+        return visited;
+    }
+
+    /**
+     * Principal square root of {@code re + i im}, written to {@code out}
+     */
+    private static void sqrt(double re, double im, double[] out) {
+        final double m = Math.hypot(re, im);
+        final double a = Math.sqrt(0.5 * (m + re));
+        final double b = Math.sqrt(0.5 * (m - re));
+        out[0] = a;
+        out[1] = im < 0 ? -b : b;
+    }
+
+    /**
+     * Show the outline preview while c is being adjusted, and the full render otherwise
+     */
+    @Override
+    public void paintComponent(Graphics g) {
+        if (outline == null) {
+            super.paintComponent(g);
+            return;
+        }
+        g.drawImage(outline, 0, 0, null);
+        drawKey(g);
     }
 
     @Override
@@ -86,11 +247,21 @@ public class Julia extends ComplexFractal {
                 String.format("x-range: %.6f, %.6f", xMin, xMax),
                 String.format("y-range: %.6f, %.6f", yMin, yMax),
                 "C: " + c,
-                "ΔC: " + cDelta
+                "ΔC: " + cDelta,
+                budgetLine()
         };
         drawKey(g, toDraw);
     }
 
+    /**
+     * Since -z and z have the same orbit after one step every Julia set is symmetric under
+     * rotation by 180 degrees. When c is real the set is also symmetric about the real axis.
+     */
+    @Override
+    protected Symmetry getSymmetry() {
+        return c.im == 0.0 ? Symmetry.dihedral(2) : Symmetry.cyclic(2);
+    }
+
     /**
      * Compute the mandelbrot number of a point. This is defined to be the number
      * of iterations needed to break out of the circle of radius 2, where a
@@ -98,16 +269,213 @@ public class Julia extends ComplexFractal {
      */
     @Override
     public int calculateIterations(Complex z, int max) {
-        int iterations = 0;
-        while (z.argSquared() < 4 && iterations < maxIterations) {
-            z = c.plus(z.times(z));    // z = z^2 + c
-            ++iterations;
+        return continueOrbit(z.re, z.im, new double[]{z.re, z.im}, 0, max);
+    }
+
+    @Override
+    protected Object renderParameters() {
+        return c;
+    }
+
+    @Override
+    protected boolean isResumable() {
+        return true;
+    }
+
+    /**
+     * Orbits that fall into the trap around the attracting cycle never escape, so they are
+     * reported as interior ({@code max}) straight away instead of running out the clock
+     */
+    @Override
+    protected int continueOrbit(double ptRe, double ptIm, double[] z, int from, int max) {
+        final Complex c = this.c;
+        final double cRe = c.re, cIm = c.im;
+        double re = z[0], im = z[1];
+        int iterations = from;
+        final Attractor a = attractor(c);
+        if (a == null) {
+            while (re * re + im * im < 4 && iterations < max) {
+                final double t = re * re - im * im + cRe;    // z = z^2 + c
+                im = re * im + im * re + cIm;
+                re = t;
+                ++iterations;
+            }
+        } else {
+            final double trapRe = a.trapRe, trapIm = a.trapIm, trapRadiusSquared = a.trapRadius * a.trapRadius;
+            while (re * re + im * im < 4 && iterations < max) {
+                final double dr = re - trapRe, di = im - trapIm;
+                if (dr * dr + di * di < trapRadiusSquared) {
+                    if (z.length > 2) z[2] = iterations - from;
+                    iterations = max;
+                    break;
+                }
+                final double t = re * re - im * im + cRe;
+                im = re * im + im * re + cIm;
+                re = t;
+                ++iterations;
+            }
         }
+        z[0] = re;
+        z[1] = im;
         return iterations;
     }
 
-    public static void main(String[] args) {
+    /**
+     * @return the attracting cycle of {@code c}, or null if there isn't one
+     */
+    private Attractor attractor(Complex c) {
+        Attractor a = attractor;
+        if (a == null || !a.c.equals(c)) {
+            a = Attractor.find(c);
+            attractor = a == null ? new Attractor(c) : a;
+        }
+        return a == null || a.period == 0 ? null : a;
+    }
+
+    /**
+     * The attracting cycle of {@code z^2 + c}, if it has one, along with a trapping disk:
+     * a disk around one of the cycle points which every orbit that enters it stays
+     * trapped near the cycle, and so never escapes.
+     *
+     * An attracting cycle attracts the critical point 0, so it is found by running the
+     * critical orbit until it settles, reading off the period, and polishing the cycle with
+     * Newton's method on {@code f^p(z) - z}.
+     *
+     * For the trap, {@code f(z_i + h) = z_(i+1) + 2 z_i h + h^2} so a disk of radius
+     * {@code r_i} around {@code z_i} maps into the disk of radius
+     * {@code r_(i+1) = r_i (2 |z_i| + r_i)} around {@code z_(i+1)}. If going once around the
+     * cycle brings {@code r_0} back smaller than it started, the disks map into each other
+     * and nothing in them can escape. Since every orbit converging to the cycle passes
+     * through each disk, only the largest one needs to be checked.
+     */
+    static final class Attractor {
+        static final int SETTLE_ITERATIONS = 20000;
+        static final int MAX_PERIOD = 1024;
+
+        final Complex c;
+
+        /**
+         * 0 marks a c without an attracting cycle
+         */
+        final int period;
+        final double[] re, im;
+        final double multiplierRe, multiplierIm;
+        final double trapRe, trapIm, trapRadius;
+
+        /**
+         * No attracting cycle for {@code c}
+         */
+        Attractor(Complex c) {
+            this(c, 0, new double[0], new double[0], 0, 0, 0, 0, 0);
+        }
+
+        private Attractor(Complex c, int period, double[] re, double[] im, double multiplierRe, double multiplierIm,
+                          double trapRe, double trapIm, double trapRadius) {
+            this.c = c;
+            this.period = period;
+            this.re = re;
+            this.im = im;
+            this.multiplierRe = multiplierRe;
+            this.multiplierIm = multiplierIm;
+            this.trapRe = trapRe;
+            this.trapIm = trapIm;
+            this.trapRadius = trapRadius;
+        }
+
+        /**
+         * @return the attracting cycle of {@code z^2 + c}, or null if none was found
+         */
+        static Attractor find(Complex c) {
+            final double cRe = c.re, cIm = c.im;
+            double re = 0, im = 0;
+            for (int i = 0; i < SETTLE_ITERATIONS; ++i) {
+                final double t = re * re - im * im + cRe;
+                im = 2 * re * im + cIm;
+                re = t;
+                if (re * re + im * im >= 4) return null;
+            }
+
+            // The period is the first return close to where we started
+            int period = 0;
+            double wr = re, wi = im;
+            for (int p = 1; p <= MAX_PERIOD && period == 0; ++p) {
+                final double t = wr * wr - wi * wi + cRe;
+                wi = 2 * wr * wi + cIm;
+                wr = t;
+                final double dr = wr - re, di = wi - im;
+                if (dr * dr + di * di < 1e-12) period = p;
+            }
+            if (period == 0) return null;
+
+            // Newton's method on g(z) = f^p(z) - z, g'(z) = prod 2 z_i - 1
+            for (int step = 0; step < 64; ++step) {
+                double fr = re, fi = im, dr = 1, di = 0;
+                for (int i = 0; i < period; ++i) {
+                    final double t = 2 * (dr * fr - di * fi);
+                    di = 2 * (dr * fi + di * fr);
+                    dr = t;
+                    final double u = fr * fr - fi * fi + cRe;
+                    fi = 2 * fr * fi + cIm;
+                    fr = u;
+                }
+                final double gr = fr - re, gi = fi - im, hr = dr - 1, hi = di;
+                final double den = hr * hr + hi * hi;
+                if (den == 0) break;
+                final double sr = (gr * hr + gi * hi) / den, si = (gi * hr - gr * hi) / den;
+                re -= sr;
+                im -= si;
+                if (sr * sr + si * si < 1e-30) break;
+            }
+
+            final double[] zr = new double[period], zi = new double[period];
+            double mr = 1, mi = 0;
+            for (int i = 0; i < period; ++i) {
+                zr[i] = re;
+                zi[i] = im;
+                final double t = 2 * (mr * re - mi * im);
+                mi = 2 * (mr * im + mi * re);
+                mr = t;
+                final double u = re * re - im * im + cRe;
+                im = 2 * re * im + cIm;
+                re = u;
+            }
+            if (mr * mr + mi * mi >= 1) return null;
+
+            // Shrink the disk until it provably maps into itself
+            final double[] radii = new double[period];
+            for (double r0 = 1; r0 > 1e-300; r0 /= 2) {
+                double r = r0;
+                for (int i = 0; i < period; ++i) {
+                    radii[i] = r;
+                    r *= 2 * Math.hypot(zr[i], zi[i]) + r;
+                }
+                if (r < r0) {
+                    int best = 0;
+                    for (int i = 1; i < period; ++i) {
+                        if (radii[i] > radii[best]) best = i;
+                    }
+                    return new Attractor(c, period, zr, zi, mr, mi, zr[best], zi[best], radii[best]);
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Usage: {@code Julia [--journal file]}. With a journal, the first view is checkpointed to
+     * {@code file} as it renders, and picked up from there if a previous run was stopped
+     * before it finished.
+     */
+    public static void main(String[] args) throws IOException {
         Julia julia = new Julia(1000, 750);
+        for (int i = 0; i < args.length; ++i) {
+            switch (args[i]) {
+                case "--journal": julia.resumeJournal(new File(args[++i])); break;
+                default:
+                    System.err.println("Unknown argument " + args[i]);
+                    System.exit(2);
+            }
+        }
         DisplayWindow window = new DisplayWindow();
         window.addPanel(julia);
         window.showFrame();
@@ -0,0 +1,327 @@
+package com.bkushigian.fractals;
+
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A grid of small Julia sets, one for each c on a lattice, for browsing parameter space.
+ *
+ * Every cell shows the same window of the z plane. All cells are rendered in one go into a
+ * single shared buffer: the work is split into rows of cells, handed out to the workers
+ * from one counter, interleaved so that expensive cells near the boundary of the
+ * Mandelbrot set are spread over the whole run instead of piling up at the end.
+ *
+ * With {@code batch > 1} each unit of work is a pixel row of {@code batch} neighbouring
+ * cells, iterated in lockstep in a single loop over primitive arrays. Escaped pixels are
+ * compacted out of the loop every step, so cells with different c don't hold each other up.
+ */
+public class JuliaAtlas {
+
+    private static final int MAGIC = 0x4A43454C;   // "JCEL"
+    private static final int VERSION = 1;
+
+    /**
+     * c of the top left and bottom right cells; the cells in between are evenly spaced
+     */
+    public final double cReMin, cImMax, cReMax, cImMin;
+    public final int cols, rows, cellSize, maxIterations;
+
+    /**
+     * The window of the z plane each cell shows, centered on the origin
+     */
+    public final double span;
+
+    /**
+     * Number of cells iterated together in one row loop
+     */
+    public int batch = 1;
+
+    private final IterationBuffer composite;
+
+    public JuliaAtlas(double cReMin, double cImMax, double cReMax, double cImMin,
+                      int cols, int rows, int cellSize, int maxIterations) {
+        this(cReMin, cImMax, cReMax, cImMin, cols, rows, cellSize, maxIterations, 3.2);
+    }
+
+    public JuliaAtlas(double cReMin, double cImMax, double cReMax, double cImMin,
+                      int cols, int rows, int cellSize, int maxIterations, double span) {
+        this.cReMin = cReMin;
+        this.cImMax = cImMax;
+        this.cReMax = cReMax;
+        this.cImMin = cImMin;
+        this.cols = cols;
+        this.rows = rows;
+        this.cellSize = cellSize;
+        this.maxIterations = maxIterations;
+        this.span = span;
+        this.composite = IterationBuffer.allocate(cols * cellSize, rows * cellSize, maxIterations);
+    }
+
+    /**
+     * @return the c of the cell in column {@code col} and row {@code row}
+     */
+    public Complex c(int col, int row) {
+        final double re = cols == 1 ? cReMin : cReMin + (cReMax - cReMin) * col / (cols - 1);
+        final double im = rows == 1 ? cImMax : cImMax - (cImMax - cImMin) * row / (rows - 1);
+        return new Complex(re, im);
+    }
+
+    /**
+     * @return the view that each cell renders
+     */
+    public Viewport cellView(int col, int row) {
+        return new Viewport(-span / 2, span / 2, span / cellSize, cellSize, cellSize, maxIterations, c(col, row));
+    }
+
+    /**
+     * Render every cell, blocking until done
+     */
+    public void render(int threads) {
+        final int cells = cols * rows;
+        final int groups = (cells + batch - 1) / batch;
+        final int units = groups * cellSize;
+        final AtomicInteger next = new AtomicInteger();
+        final ExecutorService pool = Executors.newFixedThreadPool(threads, RenderPipeline.daemonThreads("atlas"));
+        for (int t = 0; t < threads; ++t) {
+            pool.execute(() -> {
+                final Lanes lanes = new Lanes(batch * cellSize);
+                int u;
+                while ((u = next.getAndIncrement()) < units) {
+                    // Consecutive units are the same pixel row of different cells
+                    renderRow((u % groups) * batch, u / groups, lanes);
+                }
+            });
+        }
+        pool.shutdown();
+        try {
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Per-worker scratch space for one unit of work
+     */
+    private static final class Lanes {
+        final double[] zRe, zIm, cRe, cIm;
+        final int[] lane, values;
+
+        Lanes(int size) {
+            zRe = new double[size];
+            zIm = new double[size];
+            cRe = new double[size];
+            cIm = new double[size];
+            lane = new int[size];
+            values = new int[size];
+        }
+    }
+
+    /**
+     * Render pixel row {@code y} of cells {@code first} up to {@code first + batch}
+     */
+    private void renderRow(int first, int y, Lanes lanes) {
+        final int count = Math.min(batch, cols * rows - first);
+        final double delta = span / cellSize;
+        final double im = span / 2 - delta * y;
+        int n = 0;
+        for (int k = 0; k < count; ++k) {
+            final Complex c = c((first + k) % cols, (first + k) / cols);
+            for (int x = 0; x < cellSize; ++x, ++n) {
+                lanes.zRe[n] = -span / 2 + delta * x;
+                lanes.zIm[n] = im;
+                lanes.cRe[n] = c.re;
+                lanes.cIm[n] = c.im;
+            }
+        }
+        if (count == 1) {
+            iterate(lanes, n, maxIterations);
+        } else {
+            iterateLockstep(lanes, n, maxIterations);
+        }
+        for (int k = 0; k < count; ++k) {
+            final int cell = first + k;
+            composite.setRow((cell / cols) * cellSize + y, (cell % cols) * cellSize, lanes.values, k * cellSize, cellSize);
+        }
+    }
+
+    /**
+     * Escape time of each of the first {@code n} lanes, one pixel at a time. This matches
+     * {@link Julia#calculateIterations(Complex, int)}.
+     */
+    static void iterate(Lanes lanes, int n, int max) {
+        for (int i = 0; i < n; ++i) {
+            final double cRe = lanes.cRe[i], cIm = lanes.cIm[i];
+            double re = lanes.zRe[i], im = lanes.zIm[i];
+            int iterations = 0;
+            while (re * re + im * im < 4 && iterations < max) {
+                final double t = re * re - im * im + cRe;
+                im = re * im + im * re + cIm;
+                re = t;
+                ++iterations;
+            }
+            lanes.values[i] = iterations;
+        }
+    }
+
+    /**
+     * Escape time of each of the first {@code n} lanes, all stepped together. Gives the same
+     * values as {@link #iterate(Lanes, int, int)}.
+     */
+    static void iterateLockstep(Lanes lanes, int n, int max) {
+        final double[] zRe = lanes.zRe, zIm = lanes.zIm, cRe = lanes.cRe, cIm = lanes.cIm;
+        final int[] lane = lanes.lane, values = lanes.values;
+        for (int i = 0; i < n; ++i) lane[i] = i;
+        int live = n;
+        for (int iterations = 0; live > 0 && iterations < max; ++iterations) {
+            // Step every live lane, then slide the ones still going down over the escaped
+            // ones so the live lanes stay contiguous
+            int kept = 0;
+            for (int i = 0; i < live; ++i) {
+                final double re = zRe[i], im = zIm[i];
+                if (re * re + im * im >= 4) {
+                    values[lane[i]] = iterations;
+                    continue;
+                }
+                zRe[kept] = re * re - im * im + cRe[i];
+                zIm[kept] = re * im + im * re + cIm[i];
+                cRe[kept] = cRe[i];
+                cIm[kept] = cIm[i];
+                lane[kept++] = lane[i];
+            }
+            live = kept;
+        }
+        for (int i = 0; i < live; ++i) values[lane[i]] = max;
+    }
+
+    /**
+     * @return all cells side by side, {@code cols * cellSize} by {@code rows * cellSize}
+     */
+    public IterationBuffer composite() {
+        return composite;
+    }
+
+    /**
+     * @return a copy of the values of a single cell
+     */
+    public IterationBuffer cell(int col, int row) {
+        final IterationBuffer result = IterationBuffer.allocate(cellSize, cellSize, maxIterations);
+        final int[] line = new int[cellSize];
+        for (int y = 0; y < cellSize; ++y) {
+            composite.getRow(row * cellSize + y, col * cellSize, line, 0, cellSize);
+            result.setRow(y, 0, line, 0, cellSize);
+        }
+        return result;
+    }
+
+    public BufferedImage createBufferedImage(ColorScheme colorScheme) {
+        final BufferedImage image = new BufferedImage(composite.width, composite.height, BufferedImage.TYPE_INT_RGB);
+        final int[] line = new int[composite.width];
+        for (int y = 0; y < composite.height; ++y) {
+            composite.getRow(y, 0, line, 0, line.length);
+            for (int x = 0; x < line.length; ++x) {
+                line[x] = line[x] == maxIterations ? 0 : colorScheme.getColorInt(line[x]);
+            }
+            image.setRGB(0, y, line.length, 1, line, 0, line.length);
+        }
+        return image;
+    }
+
+    /**
+     * Write the composite image to {@code dir/atlas.png} and the values of each cell to
+     * {@code dir/cell-<row>-<col>.bin}
+     */
+    public void write(File dir, ColorScheme colorScheme) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("Could not create " + dir);
+        PngEncoder.shared().write(createBufferedImage(colorScheme), new File(dir, "atlas.png"));
+        for (int row = 0; row < rows; ++row) {
+            for (int col = 0; col < cols; ++col) {
+                writeCell(new File(dir, String.format("cell-%03d-%03d.bin", row, col)), col, row);
+            }
+        }
+    }
+
+    private void writeCell(File file, int col, int row) throws IOException {
+        final Complex c = c(col, row);
+        final IterationBuffer cell = cell(col, row);
+        final int[] line = new int[cellSize];
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeDouble(c.re);
+            out.writeDouble(c.im);
+            out.writeDouble(span);
+            out.writeInt(cellSize);
+            out.writeInt(maxIterations);
+            for (int y = 0; y < cellSize; ++y) {
+                cell.getRow(y, 0, line, 0, cellSize);
+                for (int v : line) out.writeInt(v);
+            }
+        }
+    }
+
+    /**
+     * Read the values of a cell written by {@link #write(File, ColorScheme)}
+     */
+    public static IterationBuffer readCell(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) throw new IOException(file + " is not an atlas cell");
+            final int version = in.readInt();
+            if (version != VERSION) throw new IOException("Unsupported atlas cell version " + version);
+            in.readDouble();
+            in.readDouble();
+            in.readDouble();
+            final int size = in.readInt(), maxIterations = in.readInt();
+            final IterationBuffer cell = IterationBuffer.allocate(size, size, maxIterations);
+            for (int y = 0; y < size; ++y) {
+                for (int x = 0; x < size; ++x) cell.set(x, y, in.readInt());
+            }
+            return cell;
+        }
+    }
+
+    /**
+     * Usage: {@code JuliaAtlas [--c reMin,imMax,reMax,imMin] [--grid cols,rows] [--cell px]
+     * [--iterations n] [--batch n] [--threads n] [--out dir]}
+     */
+    public static void main(String[] args) throws IOException {
+        double[] c = {-2, 1.5, 1, -1.5};
+        int cols = 16, rows = 16, cellSize = 96, iterations = 256, batch = 1;
+        int threads = Runtime.getRuntime().availableProcessors();
+        File out = new File("atlas");
+        for (int i = 0; i < args.length; ++i) {
+            switch (args[i]) {
+                case "--c": {
+                    final String[] parts = args[++i].split(",");
+                    for (int k = 0; k < 4; ++k) c[k] = Double.parseDouble(parts[k]);
+                    break;
+                }
+                case "--grid": {
+                    final String[] parts = args[++i].split(",");
+                    cols = Integer.parseInt(parts[0]);
+                    rows = Integer.parseInt(parts[1]);
+                    break;
+                }
+                case "--cell": cellSize = Integer.parseInt(args[++i]); break;
+                case "--iterations": iterations = Integer.parseInt(args[++i]); break;
+                case "--batch": batch = Integer.parseInt(args[++i]); break;
+                case "--threads": threads = Integer.parseInt(args[++i]); break;
+                case "--out": out = new File(args[++i]); break;
+                default:
+                    System.err.println("Unknown argument " + args[i]);
+                    System.exit(2);
+            }
+        }
+        final JuliaAtlas atlas = new JuliaAtlas(c[0], c[1], c[2], c[3], cols, rows, cellSize, iterations);
+        atlas.batch = batch;
+        final long start = System.nanoTime();
+        atlas.render(threads);
+        System.out.printf("Rendered %d cells in %d ms%n", cols * rows, (System.nanoTime() - start) / 1_000_000);
+        atlas.write(out, new ColorScheme(2, 155, 0, 0, 24, 0));
+        System.out.println("Wrote " + out);
+    }
+}
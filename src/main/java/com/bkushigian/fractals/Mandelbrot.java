@@ -1,5 +1,8 @@
 package com.bkushigian.fractals;
 
+import java.io.File;
+import java.io.IOException;
+
 public class Mandelbrot extends ComplexFractal {
 
 
@@ -21,6 +24,14 @@ public class Mandelbrot extends ComplexFractal {
         return "mandelbrot";
     }
 
+    /**
+     * The Mandelbrot set is symmetric about the real axis
+     */
+    @Override
+    protected Symmetry getSymmetry() {
+        return Symmetry.CONJUGATE;
+    }
+
     /**
      * Compute the mandelbrot number of a point. This is defined to be the number
      * of iterations needed to break out of the circle of radius 2, where a
@@ -28,17 +39,44 @@ public class Mandelbrot extends ComplexFractal {
      */
     @Override
     public int calculateIterations(Complex z, int max) {
-        Complex c = z;
-        int iterations = 0;
-        while (z.argSquared() < 4 && iterations < maxIterations) {
-            z = c.plus(z.times(z));    // z = z^2 + c
+        return continueOrbit(z.re, z.im, new double[]{z.re, z.im}, 0, max);
+    }
+
+    @Override
+    protected boolean isResumable() {
+        return true;
+    }
+
+    @Override
+    protected int continueOrbit(double cRe, double cIm, double[] z, int from, int max) {
+        double re = z[0], im = z[1];
+        int iterations = from;
+        while (re * re + im * im < 4 && iterations < max) {
+            final double t = re * re - im * im + cRe;    // z = z^2 + c
+            im = re * im + im * re + cIm;
+            re = t;
             ++iterations;
         }
+        z[0] = re;
+        z[1] = im;
         return iterations;
     }
 
-    public static void main(String[] args) {
+    /**
+     * Usage: {@code Mandelbrot [--journal file]}. With a journal, the first view is checkpointed to
+     * {@code file} as it renders, and picked up from there if a previous run was stopped
+     * before it finished.
+     */
+    public static void main(String[] args) throws IOException {
         Mandelbrot mandel = new Mandelbrot(1200, 1200);
+        for (int i = 0; i < args.length; ++i) {
+            switch (args[i]) {
+                case "--journal": mandel.resumeJournal(new File(args[++i])); break;
+                default:
+                    System.err.println("Unknown argument " + args[i]);
+                    System.exit(2);
+            }
+        }
         DisplayWindow window = new DisplayWindow();
         window.addPanel(mandel);
         window.showFrame();
@@ -1,8 +1,10 @@
 package com.bkushigian.fractals;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.awt.*;
+import java.awt.event.ActionEvent;
+import javax.swing.*;
 
 public class Newton extends ComplexFractal {
 
@@ -14,9 +16,43 @@ public class Newton extends ComplexFractal {
     private final NewtonApproximator newton;
 
     /**
-     * Roots of polynomial, as they are discovered.
+     * Roots of polynomial, precomputed by the approximator
      */
     protected final List<Complex> roots;
+
+    /**
+     * Color each pixel by the basin of the root it converges to, shaded by iteration count.
+     * When false pixels are colored by iteration count alone.
+     */
+    protected boolean basinColoring = true;
+
+    /**
+     * The root finding iteration to run. The higher order methods stop once a pixel's root
+     * is resolved to within a pixel.
+     */
+    protected volatile NewtonApproximator.Method method = NewtonApproximator.Method.NEWTON;
+
+    /**
+     * Run Newton's method a row of pixels at a time, with
+     * {@link NewtonApproximator#findRoots(ComplexBuffer, int, int, int[], int[], NewtonApproximator.Rows)},
+     * rather than a pixel at a time. Both give the same values.
+     */
+    protected boolean batchRows = true;
+
+    /**
+     * Each render worker's scratch space for {@link #batchRows}
+     */
+    private final ThreadLocal<NewtonApproximator.Rows> rows =
+            ThreadLocal.withInitial(() -> new NewtonApproximator.Rows(RenderPipeline.DEFAULT_TILE_SIZE));
+
+    private final JButton cycleMethod;
+
+    /**
+     * Symmetry group of the polynomial, and for each group element {@code g} the permutation
+     * {@code rootPermutation[g][r] := the root g^-1 maps root r onto}
+     */
+    private final Symmetry symmetry;
+    private final int[][] rootPermutation;
     protected double xMin = -2.0;
     protected double xMax = 2.0;
     protected double minDelta = 0.001;
@@ -49,8 +85,21 @@ public class Newton extends ComplexFractal {
         this.colorScheme = colorScheme;
         this.p = p;
         this.newton = new NewtonApproximator(p);
-        this.roots = new ArrayList<>(this.p.degree);
+        this.roots = Arrays.asList(newton.getRoots());
+        this.symmetry = findSymmetry(p);
+        this.rootPermutation = permuteRoots(symmetry, newton);
         showKey = false;
+        cycleMethod = registerButton("N/H", "cycle-method");
+    }
+
+    @Override
+    public void actionPerformed(ActionEvent e) {
+        if (e.getSource() == cycleMethod) {
+            final NewtonApproximator.Method[] methods = NewtonApproximator.Method.values();
+            method = methods[(method.ordinal() + 1) % methods.length];
+            updated = true;
+        }
+        super.actionPerformed(e);
     }
 
     /**
@@ -62,16 +111,136 @@ public class Newton extends ComplexFractal {
                 String.format("zoom:    %.6f", zoomDepth),
                 String.format("x-range: %.6f, %.6f", xMin, xMax),
                 String.format("y-range: %.6f, %.6f", yMin, yMax),
+                "method:  " + method.name().toLowerCase(),
+                budgetLine(),
         };
         drawKey(g, toDraw);
     }
 
+    /**
+     * @return the packed root index and iteration count from
+     * {@link NewtonApproximator#findRoot(double, double, int)}, or -1 if no root was reached
+     */
     @Override
     public int calculateIterations(Complex z, int max) {
-        Complex attractor = newton.findAttractor(z);
-        if (attractor == null) return -1;
-        return newton.iterations;
+        return newton.findRoot(z.re, z.im, method, delta, max, null);
+    }
+
+    @Override
+    protected Object renderParameters() {
+        return Arrays.asList(p, method.name());
+    }
 
+    @Override
+    protected boolean isResumable() {
+        return true;
+    }
+
+    /**
+     * The orbit state is simply the current Newton iterate
+     */
+    @Override
+    protected int continueOrbit(double re, double im, double[] z, int from, int max) {
+        return continueOrbit(null, re, im, z, from, max);
+    }
+
+    @Override
+    protected int continueOrbit(Viewport view, double re, double im, double[] z, int from, int max) {
+        final NewtonApproximator.Method m = method;
+        final int result = newton.findRoot(z[0], z[1], m, view == null ? delta : view.delta, max - from, z);
+        if (result < 0) return result;
+        return result + Math.min(from, NewtonApproximator.ITER_MASK - NewtonApproximator.iterationsOf(result));
+    }
+
+    /**
+     * Newton's method steps a whole row together; the higher order methods go a pixel at a time
+     */
+    @Override
+    protected boolean continueOrbits(Viewport view, ComplexBuffer z, int count, int max, int[] values,
+                                     int[] iterations) {
+        if (!batchRows || method != NewtonApproximator.Method.NEWTON) return false;
+        NewtonApproximator.Rows scratch = rows.get();
+        if (scratch.capacity() < count) {
+            scratch = new NewtonApproximator.Rows(count);
+            rows.set(scratch);
+        }
+        newton.findRoots(z, count, max, values, iterations, scratch);
+        return true;
+    }
+
+    /**
+     * The higher order methods judge convergence from the last step as well as the current
+     * iterate, which a saved orbit doesn't carry, so they can't stop and pick up again
+     * without changing the result
+     */
+    @Override
+    protected int[] iterationCaps(Viewport view) {
+        if (method != NewtonApproximator.Method.NEWTON) return new int[]{view.maxIterations};
+        return super.iterationCaps(view);
+    }
+
+    @Override
+    protected int unresolvedValue(int max) {
+        return -1;
+    }
+
+    /**
+     * Newton's method commutes with any rotation or reflection that fixes the polynomial.
+     * {@code z^n + a} is invariant under rotation by {@code 2 pi / n} (this covers
+     * {@link ComplexPolynomial#nthRootsOfUnity(int)}), and any polynomial with real
+     * coefficients is invariant under conjugation.
+     */
+    static Symmetry findSymmetry(ComplexPolynomial p) {
+        final int n = p.order();
+        if (n < 1) return Symmetry.NONE;
+        boolean real = true;
+        boolean binomial = true;
+        for (int d = 0; d <= n; ++d) {
+            final Complex coef = p.coefficients[d];
+            if (coef.im != 0.0) real = false;
+            if (d != 0 && d != n && (coef.re != 0.0 || coef.im != 0.0)) binomial = false;
+        }
+        if (binomial && n > 1) {
+            return real ? Symmetry.dihedral(n) : Symmetry.cyclic(n);
+        }
+        return real ? Symmetry.CONJUGATE : Symmetry.NONE;
+    }
+
+    private static int[][] permuteRoots(Symmetry symmetry, NewtonApproximator newton) {
+        final int[][] perm = new int[symmetry.order()][newton.roots.length];
+        final double[] image = new double[2];
+        for (int g = 0; g < perm.length; ++g) {
+            final int inverse = symmetry.inverse(g);
+            for (int r = 0; r < newton.roots.length; ++r) {
+                symmetry.apply(inverse, newton.roots[r].re, newton.roots[r].im, image);
+                perm[g][r] = newton.rootIndex.nearest(image[0], image[1]);
+            }
+        }
+        return perm;
+    }
+
+    /**
+     * Values pack a root index above the iteration count, so they need the full int range
+     */
+    @Override
+    protected int maxValue() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    protected Symmetry getSymmetry() {
+        return symmetry;
+    }
+
+    /**
+     * If g maps pixel p onto pixel q, then p converges to g^-1 of q's root in the same number
+     * of steps.
+     */
+    @Override
+    protected int mapSymmetricValue(int value, Symmetry symmetry, int element) {
+        if (value < 0) return value;
+        final int root = rootPermutation[element][NewtonApproximator.rootOf(value)];
+        return (root << NewtonApproximator.ITER_BITS) | NewtonApproximator.iterationsOf(value);
     }
 
     @Override
@@ -79,7 +248,19 @@ public class Newton extends ComplexFractal {
         if (colorNumber < 0) {
             return Color.BLACK;
         }
-        return super.getColor(colorNumber);
+        final int iters = NewtonApproximator.iterationsOf(colorNumber);
+        if (!basinColoring || roots.isEmpty()) {
+            return super.getColor(iters);
+        }
+        final int root = NewtonApproximator.rootOf(colorNumber);
+        final float hue = (float) root / roots.size();
+        final float brightness = 1.0f - 0.75f * Math.min(iters, 24) / 24.0f;
+        return Color.getHSBColor(hue, 0.8f, brightness);
+    }
+
+    @Override
+    protected int getColorInt(int colorNumber) {
+        return getColor(colorNumber).getRGB() & 0xFFFFFF;
     }
 
     public static void main(String[] args) {
@@ -1,37 +1,407 @@
 package com.bkushigian.fractals;
 
 public class NewtonApproximator {
+
+    /**
+     * Root finding iterations. With {@code u = p / p'} and {@code L = p p'' / p'^2}:
+     * Newton steps by {@code u}, Halley by {@code u / (1 - L / 2)} and Chebyshev by
+     * {@code u (1 + L / 2)}. The latter two converge cubically instead of quadratically, at
+     * the cost of evaluating p'' as well.
+     */
+    public enum Method {
+        NEWTON(2), HALLEY(3), CHEBYSHEV(3);
+
+        /**
+         * Order of convergence near a simple root
+         */
+        public final int order;
+
+        Method(int order) {
+            this.order = order;
+        }
+    }
+
     final ComplexPolynomial p;
     final ComplexPolynomial dp;
+    final ComplexPolynomial ddp;
     int iterations = -1;
 
+    /**
+     * All roots of {@code p}, computed once up front
+     */
+    final Complex[] roots;
+
+    /**
+     * Trapping disks around {@code roots}: once an iterate lands in one of these, Newton's
+     * method is certified to converge to that root and we can stop.
+     */
+    final RootIndex rootIndex;
+
+    /**
+     * Coefficients of p, p' and p'' as primitive doubles for allocation-free evaluation
+     */
+    private final double[] pRe, pIm, dpRe, dpIm, ddpRe, ddpIm;
+
+    private final double[] scratch = new double[2];
+
+    /**
+     * Packed results from {@link #findRoot(double, double, int)}: the low bits hold the
+     * iteration count, the high bits the root index.
+     */
+    static final int ITER_BITS = 16;
+    static final int ITER_MASK = (1 << ITER_BITS) - 1;
+
+    /**
+     * Step size below which {@link #findRoot(double, double, int)} gives up on reaching a
+     * trapping disk and settles for the nearest root
+     */
+    static final double DEFAULT_MIN_DELTA = 1e-3;
+
     public NewtonApproximator(ComplexPolynomial p) {
         this.p = p;
         dp = p.computeDerivative();
+        ddp = dp.computeDerivative();
+        pRe = re(p);
+        pIm = im(p);
+        dpRe = re(dp);
+        dpIm = im(dp);
+        ddpRe = re(ddp);
+        ddpIm = im(ddp);
+        roots = p.findRoots();
+        rootIndex = new RootIndex(roots, certifiedRadii(p, roots));
     }
 
+    private static double[] re(ComplexPolynomial q) {
+        final double[] result = new double[q.degree];
+        for (int i = 0; i < q.degree; ++i) result[i] = q.coefficients[i].re;
+        return result;
+    }
+
+    private static double[] im(ComplexPolynomial q) {
+        final double[] result = new double[q.degree];
+        for (int i = 0; i < q.degree; ++i) result[i] = q.coefficients[i].im;
+        return result;
+    }
+
+    /**
+     * Compute a radius around each root inside of which Newton's method converges to it.
+     * By Smale's gamma theorem any starting point within {@code (3 - sqrt(7)) / (2 gamma)}
+     * of a simple root converges quadratically to that root, where
+     * {@code gamma = max_k |p^(k)(r) / (k! p'(r))|^(1/(k-1))}. We additionally cap the
+     * radius at a third of the distance to the nearest other root so disks never overlap.
+     * Multiple roots (where p' vanishes) get no disk at all.
+     */
+    static double[] certifiedRadii(ComplexPolynomial p, Complex[] roots) {
+        final double[] radii = new double[roots.length];
+        for (int i = 0; i < roots.length; ++i) {
+            final Complex[] taylor = p.taylorCoefficients(roots[i]);
+            final double d1 = taylor.length > 1 ? taylor[1].arg() : 0.0;
+
+            double separation = Double.POSITIVE_INFINITY;
+            for (int j = 0; j < roots.length; ++j) {
+                if (j != i) separation = Math.min(separation, roots[i].minus(roots[j]).arg());
+            }
+            if (d1 < 1e-9 || separation < 1e-6) continue;
+
+            double gamma = 0.0;
+            for (int k = 2; k < taylor.length; ++k) {
+                gamma = Math.max(gamma, Math.pow(taylor[k].arg() / d1, 1.0 / (k - 1)));
+            }
+            double radius = gamma == 0.0 ? Double.POSITIVE_INFINITY : (3 - Math.sqrt(7)) / (2 * gamma);
+            radii[i] = Math.min(radius, separation / 3);
+            if (Double.isInfinite(radii[i])) radii[i] = 1.0;
+        }
+        return radii;
+    }
 
     public Complex findAttractor(Complex z) {
         return findAttractor(z, 0.01, 100);
     }
 
     public Complex findAttractor(final Complex z, final double minDelta, final int maxIters) {
+        final int result = findRoot(z.re, z.im, minDelta, maxIters, scratch);
+        iterations = result < 0 ? maxIters : iterationsOf(result);
+        if (result < 0) return null;     // never reached a stable point
+        final int root = rootOf(result);
+        return root < roots.length ? roots[root] : Complex.of(scratch[0], scratch[1]);
+    }
+
+    /**
+     * Run Newton's method from {@code (re, im)} until the iterate enters the trapping disk
+     * of a known root.
+     * @return the packed root index and iteration count (see {@link #rootOf(int)} and
+     * {@link #iterationsOf(int)}), or -1 if no root was reached within {@code maxIters}
+     */
+    public int findRoot(final double re, final double im, final int maxIters) {
+        return findRoot(re, im, DEFAULT_MIN_DELTA, maxIters, null);
+    }
+
+    /**
+     * @param minDelta fall back to stopping once successive iterates are this close; this
+     *                 only matters near multiple roots, which have no trapping disk
+     * @param out if non-null, receives the final iterate, and then the number of iterations
+     *            run if there is room for it
+     */
+    int findRoot(double re, double im, final double minDelta, final int maxIters, double[] out) {
+        final double minDeltaSquared = minDelta * minDelta;
+        final int n = pRe.length;
+        final int dn = dpRe.length;
         int iters = 0;
-        double delta = 0.0;
-        Complex last;
-        Complex root = z;
-        do {
+        int root = rootIndex.find(re, im);
+        while (root < 0 && iters < maxIters) {
             ++iters;
-            last = root;
-            // z <- z - p(z)/p'(z)
-            root = root.minus(p.at(root).divide(dp.at(root)));
-            delta = root.minus(last).arg();
-        } while (delta > minDelta && iters < maxIters);
-        iterations = iters;
+            // Horner evaluation of p(z) and p'(z)
+            double vr = 0.0, vi = 0.0;
+            for (int d = n - 1; d >= 0; --d) {
+                final double t = vr * re - vi * im + pRe[d];
+                vi = vr * im + vi * re + pIm[d];
+                vr = t;
+            }
+            double wr = 0.0, wi = 0.0;
+            for (int d = dn - 1; d >= 0; --d) {
+                final double t = wr * re - wi * im + dpRe[d];
+                wi = wr * im + wi * re + dpIm[d];
+                wr = t;
+            }
+            final double den = wr * wr + wi * wi;
+            if (den == 0.0) break;
+            // step = p(z) / p'(z)
+            final double sr = (vr * wr + vi * wi) / den;
+            final double si = (vi * wr - vr * wi) / den;
+            re -= sr;
+            im -= si;
 
-        if (iters == maxIters) return null;     // never reached a stable point
+            root = rootIndex.find(re, im);
+            if (root < 0 && sr * sr + si * si <= minDeltaSquared) {
+                // Converged outside of every disk, e.g. onto a multiple root
+                root = roots.length == 0 ? 0 : rootIndex.nearest(re, im);
+                break;
+            }
+        }
+        if (out != null) {
+            out[0] = re;
+            out[1] = im;
+            if (out.length > 2) out[2] = iters;
+        }
+        if (root < 0) return -1;
+        return (root << ITER_BITS) | Math.min(iters, ITER_MASK);
+    }
+
+    /**
+     * Scratch buffers for {@link #findRoots(ComplexBuffer, int, int, int[], int[], Rows)},
+     * which each render worker keeps one of
+     */
+    static final class Rows {
+        final ComplexBuffer z, value, derivative;
+        final double[] den;
+
+        /**
+         * The point each slot of {@code z} is working on
+         */
+        final int[] lane;
+
+        Rows(int capacity) {
+            z = new ComplexBuffer(capacity);
+            value = new ComplexBuffer(capacity);
+            derivative = new ComplexBuffer(capacity);
+            den = new double[capacity];
+            lane = new int[capacity];
+        }
+
+        int capacity() {
+            return lane.length;
+        }
+
+        /**
+         * Move slot {@code from} into slot {@code to}, dropping what was there
+         */
+        void move(int from, int to) {
+            z.re[to] = z.re[from];
+            z.im[to] = z.im[from];
+            value.re[to] = value.re[from];
+            value.im[to] = value.im[from];
+            derivative.re[to] = derivative.re[from];
+            derivative.im[to] = derivative.im[from];
+            den[to] = den[from];
+            lane[to] = lane[from];
+        }
+    }
+
+    /**
+     * Run Newton's method from a whole row of points at once, as
+     * {@link #findRoot(double, double, int)} does from one. Each step evaluates p and p' at
+     * every point still going with {@link ComplexBuffer} loops, in the same order of
+     * operations as findRoot, so the results are bit for bit the same. Points drop out as they
+     * reach a root, and the ones left are packed to the front.
+     * @param z the starting points in {@code [0, count)}, which receive the final iterates
+     * @param results receives the packed result of each point, as from findRoot
+     * @param iterations receives the number of iterations run from each point
+     * @param rows scratch space for at least {@code count} points
+     */
+    void findRoots(ComplexBuffer z, int count, int maxIters, int[] results, int[] iterations, Rows rows) {
+        final double minDeltaSquared = DEFAULT_MIN_DELTA * DEFAULT_MIN_DELTA;
+        final ComplexBuffer w = rows.z, v = rows.value, d = rows.derivative;
+        final double[] den = rows.den;
+        final int[] lane = rows.lane;
+        int live = 0;
+        for (int i = 0; i < count; ++i) {
+            final int root = rootIndex.find(z.re[i], z.im[i]);
+            if (root >= 0) {
+                results[i] = root << ITER_BITS;
+                iterations[i] = 0;
+                continue;
+            }
+            w.set(live, z.re[i], z.im[i]);
+            lane[live++] = i;
+        }
+        int iters = 0;
+        while (live > 0 && iters < maxIters) {
+            ++iters;
+            // Horner evaluation of p(z) and p'(z)
+            v.fill(0.0, 0.0, 0, live);
+            for (int k = pRe.length - 1; k >= 0; --k) v.multiplyAdd(w, pRe[k], pIm[k], 0, live);
+            d.fill(0.0, 0.0, 0, live);
+            for (int k = dpRe.length - 1; k >= 0; --k) d.multiplyAdd(w, dpRe[k], dpIm[k], 0, live);
+            d.normSquared(den, 0, live);
+            for (int i = 0; i < live; ) {
+                if (den[i] != 0.0) {
+                    ++i;
+                    continue;
+                }
+                // Stuck on a critical point
+                finish(z, i, -1, iters, results, iterations, rows);
+                rows.move(--live, i);
+            }
+            // step = p(z) / p'(z)
+            v.divide(d, 0, live);
+            w.subtract(v, 0, live);
+            for (int i = 0; i < live; ) {
+                final double re = w.re[i], im = w.im[i];
+                int root = rootIndex.find(re, im);
+                if (root < 0 && v.re[i] * v.re[i] + v.im[i] * v.im[i] <= minDeltaSquared) {
+                    root = roots.length == 0 ? 0 : rootIndex.nearest(re, im);
+                }
+                if (root < 0) {
+                    ++i;
+                    continue;
+                }
+                finish(z, i, (root << ITER_BITS) | Math.min(iters, ITER_MASK), iters, results, iterations, rows);
+                rows.move(--live, i);
+            }
+        }
+        for (int i = 0; i < live; ++i) finish(z, i, -1, iters, results, iterations, rows);
+    }
 
-        return root;
+    private static void finish(ComplexBuffer z, int slot, int result, int iters, int[] results, int[] iterations,
+                               Rows rows) {
+        final int i = rows.lane[slot];
+        z.set(i, rows.z.re[slot], rows.z.im[slot]);
+        results[i] = result;
+        iterations[i] = iters;
+    }
+
+    /**
+     * Find the root that {@code method} converges to from {@code (re, im)}. Newton's method
+     * stops on entering a trapping disk, as in {@link #findRoot(double, double, int)}. The
+     * higher order methods have no such certificate and instead stop once the next step is
+     * predicted to be below {@code tolerance}: the last two steps give the convergence
+     * rate, so with order q the next step is about {@code |s_k|^(q+1) / |s_(k-1)|^q}. This is
+     * all done on squared step sizes.
+     * @param tolerance the distance at which a root counts as found, such as the width of a
+     *                  pixel
+     * @param out if non-null, receives the final iterate, and then the number of iterations
+     *            run if there is room for it
+     * @return the packed root index and iteration count, or -1 if no root was reached
+     * within {@code maxIters}
+     */
+    int findRoot(double re, double im, final Method method, final double tolerance, final int maxIters,
+                 double[] out) {
+        if (method == Method.NEWTON) return findRoot(re, im, DEFAULT_MIN_DELTA, maxIters, out);
+        final double tolSquared = tolerance * tolerance;
+        final boolean halley = method == Method.HALLEY;
+        final int n = pRe.length, dn = dpRe.length, ddn = ddpRe.length;
+        int iters = 0;
+        int root = -1;
+        double last = 0.0;
+        while (iters < maxIters) {
+            ++iters;
+            // Horner evaluation of p(z), p'(z) and p''(z)
+            double vr = 0.0, vi = 0.0;
+            for (int d = n - 1; d >= 0; --d) {
+                final double t = vr * re - vi * im + pRe[d];
+                vi = vr * im + vi * re + pIm[d];
+                vr = t;
+            }
+            double wr = 0.0, wi = 0.0;
+            for (int d = dn - 1; d >= 0; --d) {
+                final double t = wr * re - wi * im + dpRe[d];
+                wi = wr * im + wi * re + dpIm[d];
+                wr = t;
+            }
+            double xr = 0.0, xi = 0.0;
+            for (int d = ddn - 1; d >= 0; --d) {
+                final double t = xr * re - xi * im + ddpRe[d];
+                xi = xr * im + xi * re + ddpIm[d];
+                xr = t;
+            }
+            final double den = wr * wr + wi * wi;
+            if (den == 0.0) break;
+            // u = p / p', t = p'' / p', L = u t
+            final double ur = (vr * wr + vi * wi) / den, ui = (vi * wr - vr * wi) / den;
+            final double tr = (xr * wr + xi * wi) / den, ti = (xi * wr - xr * wi) / den;
+            final double lr = 0.5 * (ur * tr - ui * ti), li = 0.5 * (ur * ti + ui * tr);
+            double sr, si;
+            if (halley) {
+                // u / (1 - L/2)
+                final double ar = 1 - lr, ai = -li;
+                final double a = ar * ar + ai * ai;
+                if (a == 0.0) break;
+                sr = (ur * ar + ui * ai) / a;
+                si = (ui * ar - ur * ai) / a;
+            } else {
+                // u (1 + L/2)
+                sr = ur * (1 + lr) - ui * li;
+                si = ur * li + ui * (1 + lr);
+            }
+            re -= sr;
+            im -= si;
+
+            // Squared size of this step, and of the next one going by the convergence so far
+            final double step = sr * sr + si * si;
+            double next = step;
+            if (iters > 1 && step < last) {
+                for (int k = 0; k < method.order; ++k) next *= step / last;
+            }
+            if (next <= tolSquared) {
+                root = roots.length == 0 ? 0 : rootIndex.nearest(re, im);
+                break;
+            }
+            last = step;
+        }
+        if (out != null) {
+            out[0] = re;
+            out[1] = im;
+            if (out.length > 2) out[2] = iters;
+        }
+        if (root < 0) return -1;
+        return (root << ITER_BITS) | Math.min(iters, ITER_MASK);
+    }
+
+    /**
+     * @return the index into {@link #getRoots()} of a packed {@code findRoot} result
+     */
+    public static int rootOf(int packed) {
+        return packed >>> ITER_BITS;
+    }
+
+    /**
+     * @return the number of Newton steps taken for a packed {@code findRoot} result
+     */
+    public static int iterationsOf(int packed) {
+        return packed & ITER_MASK;
+    }
 
+    public Complex[] getRoots() {
+        return roots.clone();
     }
 }
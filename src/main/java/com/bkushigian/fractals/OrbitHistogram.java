@@ -0,0 +1,127 @@
+package com.bkushigian.fractals;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Accumulated orbit density over a viewport: how much (weighted) orbit mass has landed on
+ * each pixel, and how many samples it took.
+ *
+ * Samplers accumulate into their own private buffers and {@link #merge(float[], long)} them
+ * in every so often, so the shared counts are only ever touched under this object's lock.
+ * Histograms can be saved and loaded so that long runs can be stopped and resumed.
+ */
+public class OrbitHistogram {
+
+    private static final int MAGIC = 0x4F524249;   // "ORBI"
+    private static final int VERSION = 1;
+
+    public final Viewport view;
+
+    /**
+     * Orbits shorter than this are not counted
+     */
+    public final int minIterations;
+
+    private final double[] counts;
+    private long samples;
+    private double max;
+
+    public OrbitHistogram(Viewport view, int minIterations) {
+        this.view = view;
+        this.minIterations = minIterations;
+        this.counts = new double[view.width * view.height];
+    }
+
+    /**
+     * Add a sampler's private buffer into this histogram and clear it
+     * @param samples the number of c values sampled to produce {@code local}
+     */
+    public synchronized void merge(float[] local, long samples) {
+        double m = max;
+        for (int i = 0; i < local.length; ++i) {
+            final float v = local[i];
+            if (v != 0f) {
+                final double c = counts[i] + v;
+                counts[i] = c;
+                if (c > m) m = c;
+                local[i] = 0f;
+            }
+        }
+        max = m;
+        this.samples += samples;
+    }
+
+    public synchronized double get(int x, int y) {
+        return counts[y * view.width + x];
+    }
+
+    public synchronized double max() {
+        return max;
+    }
+
+    public synchronized long samples() {
+        return samples;
+    }
+
+    /**
+     * Copy the counts of row {@code y} into {@code dst}
+     */
+    public synchronized void getRow(int y, double[] dst) {
+        System.arraycopy(counts, y * view.width, dst, 0, view.width);
+    }
+
+    /**
+     * Write this histogram to {@code file}, replacing it atomically so that a crash mid-write
+     * never destroys the previous checkpoint. The counts are copied under the lock and
+     * compressed outside it, so samplers only wait for the copy.
+     */
+    public void save(File file) throws IOException {
+        final long samples;
+        final double[] counts;
+        synchronized (this) {
+            samples = this.samples;
+            counts = this.counts.clone();
+        }
+        final File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(new FileOutputStream(tmp))))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeDouble(view.xMin);
+            out.writeDouble(view.yMax);
+            out.writeDouble(view.delta);
+            out.writeInt(view.width);
+            out.writeInt(view.height);
+            out.writeInt(view.maxIterations);
+            out.writeInt(minIterations);
+            out.writeLong(samples);
+            for (double c : counts) out.writeDouble(c);
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    public static OrbitHistogram load(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(new FileInputStream(file))))) {
+            if (in.readInt() != MAGIC) throw new IOException(file + " is not an orbit histogram");
+            final int version = in.readInt();
+            if (version != VERSION) throw new IOException("Unsupported histogram version " + version);
+            final double xMin = in.readDouble(), yMax = in.readDouble(), delta = in.readDouble();
+            final int width = in.readInt(), height = in.readInt(), maxIterations = in.readInt();
+            final int minIterations = in.readInt();
+            final OrbitHistogram h = new OrbitHistogram(
+                    new Viewport(xMin, yMax, delta, width, height, maxIterations, minIterations), minIterations);
+            h.samples = in.readLong();
+            for (int i = 0; i < h.counts.length; ++i) {
+                final double c = in.readDouble();
+                h.counts[i] = c;
+                if (c > h.max) h.max = c;
+            }
+            return h;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.bkushigian.fractals;
+
+import java.util.Arrays;
+
+/**
+ * A compact side buffer holding the orbit state of the pixels of a tile that had not
+ * resolved (escaped, or converged) when they hit the iteration limit. Only those pixels are
+ * stored, as parallel primitive arrays, so that raising the limit can continue them from
+ * where they stopped instead of starting over. Each orbit remembers how many iterations it
+ * has been followed for, since orbits stopped at different limits can share a store.
+ */
+public class OrbitStore {
+    private int size = 0;
+    private int[] pixels;
+    private double[] re;
+    private double[] im;
+    private int[] iterations;
+
+    public OrbitStore() {
+        this(16);
+    }
+
+    public OrbitStore(int capacity) {
+        pixels = new int[capacity];
+        re = new double[capacity];
+        im = new double[capacity];
+        iterations = new int[capacity];
+    }
+
+    /**
+     * @param pixel index of the pixel within its tile
+     * @param z the orbit's current value, {@code {re, im}}
+     * @param iterations the number of iterations performed to reach {@code z}
+     */
+    public void add(int pixel, double[] z, int iterations) {
+        if (size == pixels.length) {
+            final int capacity = Math.max(16, size * 2);
+            pixels = Arrays.copyOf(pixels, capacity);
+            re = Arrays.copyOf(re, capacity);
+            im = Arrays.copyOf(im, capacity);
+            this.iterations = Arrays.copyOf(this.iterations, capacity);
+        }
+        pixels[size] = pixel;
+        re[size] = z[0];
+        im[size] = z[1];
+        this.iterations[size] = iterations;
+        ++size;
+    }
+
+    /**
+     * Drop every stored orbit, keeping the arrays for reuse
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int pixel(int i) {
+        return pixels[i];
+    }
+
+    /**
+     * Orbits are always added in increasing pixel order, so we can binary search for them.
+     * @return the index of the orbit stored for {@code pixel}, or -1
+     */
+    public int indexOf(int pixel) {
+        final int i = Arrays.binarySearch(pixels, 0, size, pixel);
+        return i < 0 ? -1 : i;
+    }
+
+    /**
+     * Copy the state of the i-th stored orbit into {@code z}
+     */
+    public void get(int i, double[] z) {
+        z[0] = re[i];
+        z[1] = im[i];
+    }
+
+    /**
+     * @return the number of iterations the i-th stored orbit has been followed for
+     */
+    public int iterations(int i) {
+        return iterations[i];
+    }
+
+    /**
+     * @return bytes used by the stored orbits
+     */
+    public long sizeInBytes() {
+        return (long) pixels.length * (4 + 8 + 8 + 4);
+    }
+}
@@ -1,4 +1,385 @@
 package com.bkushigian.fractals;
 
-public class Pendulum {
+import java.awt.*;
+
+/**
+ * The magnetic pendulum: a bob swings over a plane with a few magnets on it, pulled back
+ * toward the middle by gravity and slowed down by friction, until it comes to rest over
+ * one of the magnets. Each pixel is a starting position (released at rest) and is colored
+ * by the magnet that captures it.
+ *
+ * The equations of motion are integrated with an adaptive Dormand-Prince RK45 scheme. The
+ * integration stops as soon as the bob provably can't leave a magnet's well: it is within
+ * a disk around the magnet and its energy is below the lowest potential on the disk's
+ * boundary. Friction only ever removes energy, so it can never climb back out.
+ */
+public class Pendulum extends ComplexFractal {
+
+    /**
+     * Values pack the capturing magnet above the number of integration steps taken, just
+     * like Newton basins
+     */
+    static final int STEP_BITS = 16;
+    static final int STEP_MASK = (1 << STEP_BITS) - 1;
+
+    /**
+     * Magnet positions
+     */
+    protected final double[] magnetX, magnetY;
+
+    /**
+     * Height of the bob above the plane of the magnets; this keeps the forces finite
+     */
+    protected final double bobHeight;
+    protected final double friction;
+    protected final double gravity;
+    protected final double strength;
+
+    private final Symmetry symmetry;
+    private final int[][] magnetPermutation;
+
+    /**
+     * Capture disks: radius around each magnet, and the lowest potential energy on its edge
+     */
+    private final double[] captureRadius, barrier;
+
+    /**
+     * Integrators hold their stage buffers, so each render worker gets its own
+     */
+    private final ThreadLocal<Integrator> integrators = ThreadLocal.withInitial(Integrator::new);
+
+    public Pendulum() {
+        this(1000, 700);
+    }
+
+    public Pendulum(int width, int height) {
+        this(width, height, 3);
+    }
+
+    /**
+     * A pendulum over {@code n} magnets evenly spaced on the unit circle
+     */
+    public Pendulum(int width, int height, int n) {
+        this(width, height, regularX(n), regularY(n), 0.25, 0.2, 0.5, 1.0);
+    }
+
+    public Pendulum(int width, int height, double[] magnetX, double[] magnetY,
+                    double bobHeight, double friction, double gravity, double strength) {
+        super(width, height, null, -2.0, 2.0, -2.0, 2.0);
+        maxIterations = 1000;
+        updateColors();
+        this.magnetX = magnetX.clone();
+        this.magnetY = magnetY.clone();
+        this.bobHeight = bobHeight;
+        this.friction = friction;
+        this.gravity = gravity;
+        this.strength = strength;
+        this.symmetry = findSymmetry(this.magnetX, this.magnetY);
+        this.magnetPermutation = permuteMagnets(symmetry, this.magnetX, this.magnetY);
+
+        final int n = magnetX.length;
+        captureRadius = new double[n];
+        barrier = new double[n];
+        for (int i = 0; i < n; ++i) {
+            double separation = 2.0;
+            for (int j = 0; j < n; ++j) {
+                if (j != i) separation = Math.min(separation, Math.hypot(magnetX[i] - magnetX[j], magnetY[i] - magnetY[j]));
+            }
+            captureRadius[i] = separation / 2;
+            double lowest = Double.POSITIVE_INFINITY;
+            for (int k = 0; k < 256; ++k) {
+                final double theta = 2 * Math.PI * k / 256;
+                lowest = Math.min(lowest, potential(magnetX[i] + captureRadius[i] * Math.cos(theta),
+                        magnetY[i] + captureRadius[i] * Math.sin(theta)));
+            }
+            // The edge is only sampled, so leave some room below the sampled minimum
+            barrier[i] = lowest - 1e-3 * Math.abs(lowest);
+        }
+        showKey = false;
+    }
+
+    private static double[] regularX(int n) {
+        final double[] x = new double[n];
+        for (int i = 0; i < n; ++i) x[i] = Math.cos(2 * Math.PI * i / n);
+        return x;
+    }
+
+    private static double[] regularY(int n) {
+        final double[] y = new double[n];
+        for (int i = 0; i < n; ++i) y[i] = Math.sin(2 * Math.PI * i / n);
+        return y;
+    }
+
+    @Override
+    public String getFractalName() {
+        return "pendulum";
+    }
+
+    /**
+     * Pixels are expensive and vary wildly in cost, so use small tiles to keep every worker busy
+     */
+    @Override
+    protected int tileSize() {
+        return 16;
+    }
+
+    /**
+     * @return potential energy of the bob at {@code (x, y)}
+     */
+    double potential(double x, double y) {
+        double v = 0.5 * gravity * (x * x + y * y);
+        for (int i = 0; i < magnetX.length; ++i) {
+            final double dx = magnetX[i] - x, dy = magnetY[i] - y;
+            v -= strength / Math.sqrt(dx * dx + dy * dy + bobHeight * bobHeight);
+        }
+        return v;
+    }
+
+    /**
+     * @return the packed magnet index and step count (see {@link #magnetOf(int)} and
+     * {@link #stepsOf(int)}), or -1 if the bob wasn't captured within {@code max} steps
+     */
+    @Override
+    public int calculateIterations(Complex z, int max) {
+        return integrators.get().capture(z.re, z.im, max);
+    }
+
+    @Override
+    protected int unresolvedValue(int max) {
+        return -1;
+    }
+
+    public static int magnetOf(int packed) {
+        return packed >>> STEP_BITS;
+    }
+
+    public static int stepsOf(int packed) {
+        return packed & STEP_MASK;
+    }
+
+    /**
+     * Dormand-Prince RK45 on the state {@code (x, y, vx, vy)}. Everything lives in
+     * preallocated arrays, so integrating a pixel never allocates.
+     */
+    final class Integrator {
+        private static final double ATOL = 1e-6, RTOL = 1e-6;
+        private static final double MIN_STEP = 1e-6, MAX_STEP = 0.5;
+
+        private final double[] y = new double[4], tmp = new double[4], err = new double[4];
+        private final double[] k1 = new double[4], k2 = new double[4], k3 = new double[4],
+                k4 = new double[4], k5 = new double[4], k6 = new double[4], k7 = new double[4];
+
+        /**
+         * Release the bob at rest at {@code (x0, y0)} and integrate until it is captured
+         */
+        int capture(double x0, double y0, int max) {
+            y[0] = x0;
+            y[1] = y0;
+            y[2] = 0.0;
+            y[3] = 0.0;
+            derivative(y, k1);
+            double h = 0.05;
+            int steps = 0;
+            int attempts = 0;
+            while (steps < max && attempts < 4 * max) {
+                ++attempts;
+                step(h);
+                double e = 0.0;
+                for (int i = 0; i < 4; ++i) {
+                    final double scale = ATOL + RTOL * Math.max(Math.abs(y[i]), Math.abs(tmp[i]));
+                    e = Math.max(e, Math.abs(err[i]) / scale);
+                }
+                if (e <= 1.0 || h <= MIN_STEP) {
+                    ++steps;
+                    System.arraycopy(tmp, 0, y, 0, 4);
+                    System.arraycopy(k7, 0, k1, 0, 4);     // first same as last
+                    final int magnet = captured();
+                    if (magnet >= 0) return (magnet << STEP_BITS) | Math.min(steps, STEP_MASK);
+                }
+                final double factor = e == 0.0 ? 5.0 : 0.9 * Math.pow(e, -0.2);
+                h = Math.max(MIN_STEP, Math.min(MAX_STEP, h * Math.max(0.2, Math.min(5.0, factor))));
+            }
+            return -1;
+        }
+
+        /**
+         * @return the magnet whose well the bob is trapped in, or -1
+         */
+        private int captured() {
+            final double x = y[0], yy = y[1];
+            int nearest = -1;
+            double nearestD2 = Double.POSITIVE_INFINITY;
+            for (int i = 0; i < magnetX.length; ++i) {
+                final double dx = magnetX[i] - x, dy = magnetY[i] - yy;
+                final double d2 = dx * dx + dy * dy;
+                if (d2 < nearestD2) {
+                    nearestD2 = d2;
+                    nearest = i;
+                }
+            }
+            if (nearest < 0 || nearestD2 >= captureRadius[nearest] * captureRadius[nearest]) return -1;
+            final double energy = 0.5 * (y[2] * y[2] + y[3] * y[3]) + potential(x, yy);
+            return energy < barrier[nearest] ? nearest : -1;
+        }
+
+        /**
+         * One trial step of size {@code h} from {@code y} (with {@code k1 = f(y)}) into
+         * {@code tmp}, with the error estimate in {@code err}
+         */
+        private void step(double h) {
+            for (int i = 0; i < 4; ++i) tmp[i] = y[i] + h * (k1[i] / 5);
+            derivative(tmp, k2);
+            for (int i = 0; i < 4; ++i) tmp[i] = y[i] + h * (3.0 / 40 * k1[i] + 9.0 / 40 * k2[i]);
+            derivative(tmp, k3);
+            for (int i = 0; i < 4; ++i) {
+                tmp[i] = y[i] + h * (44.0 / 45 * k1[i] - 56.0 / 15 * k2[i] + 32.0 / 9 * k3[i]);
+            }
+            derivative(tmp, k4);
+            for (int i = 0; i < 4; ++i) {
+                tmp[i] = y[i] + h * (19372.0 / 6561 * k1[i] - 25360.0 / 2187 * k2[i]
+                        + 64448.0 / 6561 * k3[i] - 212.0 / 729 * k4[i]);
+            }
+            derivative(tmp, k5);
+            for (int i = 0; i < 4; ++i) {
+                tmp[i] = y[i] + h * (9017.0 / 3168 * k1[i] - 355.0 / 33 * k2[i] + 46732.0 / 5247 * k3[i]
+                        + 49.0 / 176 * k4[i] - 5103.0 / 18656 * k5[i]);
+            }
+            derivative(tmp, k6);
+            for (int i = 0; i < 4; ++i) {
+                tmp[i] = y[i] + h * (35.0 / 384 * k1[i] + 500.0 / 1113 * k3[i] + 125.0 / 192 * k4[i]
+                        - 2187.0 / 6784 * k5[i] + 11.0 / 84 * k6[i]);
+            }
+            derivative(tmp, k7);
+            for (int i = 0; i < 4; ++i) {
+                err[i] = h * (71.0 / 57600 * k1[i] - 71.0 / 16695 * k3[i] + 71.0 / 1920 * k4[i]
+                        - 17253.0 / 339200 * k5[i] + 22.0 / 525 * k6[i] - 1.0 / 40 * k7[i]);
+            }
+        }
+
+        /**
+         * Equations of motion: {@code out := d/dt state}
+         */
+        private void derivative(double[] state, double[] out) {
+            final double x = state[0], yy = state[1], vx = state[2], vy = state[3];
+            double ax = -gravity * x - friction * vx;
+            double ay = -gravity * yy - friction * vy;
+            for (int i = 0; i < magnetX.length; ++i) {
+                final double dx = magnetX[i] - x, dy = magnetY[i] - yy;
+                final double r2 = dx * dx + dy * dy + bobHeight * bobHeight;
+                final double f = strength / (r2 * Math.sqrt(r2));
+                ax += f * dx;
+                ay += f * dy;
+            }
+            out[0] = vx;
+            out[1] = vy;
+            out[2] = ax;
+            out[3] = ay;
+        }
+    }
+
+    /**
+     * The dynamics commute with any rotation or reflection about the origin that maps the
+     * set of magnets onto itself. We check the dihedral group of order {@code 2n} for n
+     * magnets, and plain conjugation.
+     */
+    static Symmetry findSymmetry(double[] magnetX, double[] magnetY) {
+        final int n = magnetX.length;
+        if (preservesMagnets(Symmetry.dihedral(n), magnetX, magnetY)) return Symmetry.dihedral(n);
+        if (preservesMagnets(Symmetry.cyclic(n), magnetX, magnetY)) return Symmetry.cyclic(n);
+        if (preservesMagnets(Symmetry.CONJUGATE, magnetX, magnetY)) return Symmetry.CONJUGATE;
+        return Symmetry.NONE;
+    }
+
+    private static boolean preservesMagnets(Symmetry symmetry, double[] magnetX, double[] magnetY) {
+        final int[][] perm = permuteMagnets(symmetry, magnetX, magnetY);
+        final double[] image = new double[2];
+        for (int g = 0; g < perm.length; ++g) {
+            for (int m = 0; m < magnetX.length; ++m) {
+                symmetry.apply(symmetry.inverse(g), magnetX[m], magnetY[m], image);
+                final int to = perm[g][m];
+                if (Math.hypot(image[0] - magnetX[to], image[1] - magnetY[to]) > 1e-9) return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return for each group element g, {@code perm[g][m] := the magnet g^-1 maps magnet m onto}
+     */
+    private static int[][] permuteMagnets(Symmetry symmetry, double[] magnetX, double[] magnetY) {
+        final int[][] perm = new int[symmetry.order()][magnetX.length];
+        final double[] image = new double[2];
+        for (int g = 0; g < perm.length; ++g) {
+            final int inverse = symmetry.inverse(g);
+            for (int m = 0; m < magnetX.length; ++m) {
+                symmetry.apply(inverse, magnetX[m], magnetY[m], image);
+                int nearest = 0;
+                for (int j = 1; j < magnetX.length; ++j) {
+                    if (Math.hypot(image[0] - magnetX[j], image[1] - magnetY[j])
+                            < Math.hypot(image[0] - magnetX[nearest], image[1] - magnetY[nearest])) {
+                        nearest = j;
+                    }
+                }
+                perm[g][m] = nearest;
+            }
+        }
+        return perm;
+    }
+
+    @Override
+    protected Symmetry getSymmetry() {
+        return symmetry;
+    }
+
+    /**
+     * If g maps pixel p onto pixel q, then p is captured by g^-1 of q's magnet in the same
+     * number of steps.
+     */
+    @Override
+    protected int mapSymmetricValue(int value, Symmetry symmetry, int element) {
+        if (value < 0) return value;
+        return (magnetPermutation[element][magnetOf(value)] << STEP_BITS) | stepsOf(value);
+    }
+
+    /**
+     * Values pack a magnet index above the step count, so they need the full int range
+     */
+    @Override
+    protected int maxValue() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public Color getColor(int colorNumber) {
+        if (colorNumber < 0) {
+            return Color.BLACK;
+        }
+        final float hue = (float) magnetOf(colorNumber) / magnetX.length;
+        final float brightness = 1.0f - 0.7f * Math.min(stepsOf(colorNumber), 200) / 200.0f;
+        return Color.getHSBColor(hue, 0.8f, brightness);
+    }
+
+    @Override
+    protected int getColorInt(int colorNumber) {
+        return getColor(colorNumber).getRGB() & 0xFFFFFF;
+    }
+
+    @Override
+    protected void drawKey(Graphics g) {
+        String[] toDraw = new String[] {
+                "magnets:  " + magnetX.length,
+                "maxSteps: " + maxIterations,
+                String.format("x-range: %.6f, %.6f", xMin, xMax),
+                String.format("y-range: %.6f, %.6f", yMin, yMax),
+                budgetLine(),
+        };
+        drawKey(g, toDraw);
+    }
+
+    public static void main(String[] args) {
+        final int n = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        DisplayWindow window = new DisplayWindow();
+        window.addPanel(new Pendulum(1000, 1000, n));
+        window.showFrame();
+    }
 }
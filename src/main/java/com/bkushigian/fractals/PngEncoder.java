@@ -0,0 +1,438 @@
+package com.bkushigian.fractals;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import javax.imageio.ImageIO;
+import java.io.*;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes PNGs, compressing blocks of rows on several threads at once, the way pigz compresses
+ * gzip streams.
+ *
+ * Each block is filtered and deflated by its own {@link Deflater}, primed with the 32K of
+ * filtered data just before the block as its dictionary so that compression barely suffers
+ * for the split. Every block but the last ends with a sync flush, which pads it to a byte
+ * boundary without ending the stream, so the compressed blocks simply concatenate into one
+ * zlib stream. Each goes in its own IDAT chunk, and the Adler-32 checksums of the blocks are
+ * combined into the checksum of the whole stream, which goes in a last IDAT chunk of its own.
+ *
+ * The output is an ordinary 8 bit RGB PNG (RGBA if the image has alpha) which any decoder
+ * reads. Rows are stored unfiltered unless the encoder is asked to filter adaptively.
+ * Deflaters and buffers are kept from one image to the next.
+ */
+public class PngEncoder implements Closeable {
+
+    private static final byte[] SIGNATURE = {(byte) 137, 'P', 'N', 'G', '\r', '\n', 26, '\n'};
+    private static final byte[] IHDR = {'I', 'H', 'D', 'R'};
+    private static final byte[] IDAT = {'I', 'D', 'A', 'T'};
+    private static final byte[] IEND = {'I', 'E', 'N', 'D'};
+
+    private static final int WINDOW = 32 * 1024;
+    private static final int ADLER_BASE = 65521;
+
+    private static PngEncoder shared;
+
+    /**
+     * Compression level of the shared encoder; the level {@link ImageIO} uses, which gives
+     * the same size files
+     */
+    static final int EXPORT_LEVEL = 4;
+
+    /**
+     * @return an encoder with one thread per processor, for exports
+     */
+    public static synchronized PngEncoder shared() {
+        if (shared == null) shared = new PngEncoder(Runtime.getRuntime().availableProcessors(), EXPORT_LEVEL);
+        return shared;
+    }
+
+    private final ExecutorService pool;
+    private final int threads;
+    private final int level;
+    private final boolean adaptive;
+
+    /**
+     * Uncompressed bytes per block
+     */
+    int blockBytes = 1024 * 1024;
+
+    /**
+     * Idle compressors. Blocks are only handed out as compressors come free, which bounds the
+     * memory used by blocks waiting to be written.
+     */
+    private final ArrayDeque<Compressor> idle = new ArrayDeque<>();
+
+    public PngEncoder(int threads, int level) {
+        this(threads, level, false);
+    }
+
+    /**
+     * @param level the {@link Deflater} compression level
+     * @param adaptive pick a filter for each row, as libpng does, rather than store rows
+     *                 unfiltered. Filtering pays off on smooth gradients, but the flat bands of
+     *                 color of an escape time fractal compress as well or better without it.
+     */
+    public PngEncoder(int threads, int level, boolean adaptive) {
+        this.pool = Executors.newFixedThreadPool(threads, RenderPipeline.daemonThreads("png-encoder"));
+        this.threads = threads;
+        this.level = level;
+        this.adaptive = adaptive;
+        for (int i = 0; i < 2 * threads; ++i) idle.push(new Compressor());
+    }
+
+    /**
+     * A block of rows, and the state to compress it
+     */
+    private final class Compressor {
+        final Deflater deflater = new Deflater(level, true);
+        final Adler32 adler = new Adler32();
+        final CRC32 crc = new CRC32();
+
+        int[] pixels = new int[0];
+
+        /**
+         * The current and previous rows as RGB(A) bytes, after {@code bpp} zeros standing in
+         * for the pixel left of the first, so that filters needn't treat it specially
+         */
+        byte[] row = new byte[4], previous = new byte[4];
+        final byte[][] candidates = new byte[5][0];
+        byte[] filtered = new byte[0];
+        byte[] out = new byte[0];
+
+        /**
+         * The IDAT data of the last block compressed, its CRC, its Adler-32 and how many
+         * bytes it compressed
+         */
+        int length;
+        int chunkCrc;
+        long blockAdler;
+        int inputLength;
+
+        /**
+         * Filter (if adaptive) and deflate rows {@code [y0, y1)} of {@code image}
+         */
+        Compressor compress(BufferedImage image, boolean alpha, int y0, int y1) {
+            final int width = image.getWidth();
+            final int bpp = alpha ? 4 : 3;
+            final int stride = width * bpp + 1;
+            // Go over the rows before the block again, to recover the previous block's tail as
+            // the dictionary
+            final int dictRows = y0 == 0 ? 0 : Math.min(y0, (WINDOW + stride - 1) / stride);
+            final int from = y0 - dictRows;
+            ensure(width, stride, (y1 - from) * stride);
+            if (!adaptive) {
+                for (int y = from; y < y1; ++y) {
+                    filtered[(y - from) * stride] = 0;
+                    readRow(image, y, alpha, filtered, (y - from) * stride + 1);
+                }
+            } else {
+                Arrays.fill(row, 0, bpp, (byte) 0);
+                Arrays.fill(previous, 0, bpp, (byte) 0);
+                if (from > 0) readRow(image, from - 1, alpha, previous, bpp);
+                else Arrays.fill(previous, (byte) 0);
+                for (int y = from; y < y1; ++y) {
+                    readRow(image, y, alpha, row, bpp);
+                    filterRow(row, previous, stride - 1, bpp, filtered, (y - from) * stride);
+                    final byte[] swap = previous;
+                    previous = row;
+                    row = swap;
+                }
+            }
+
+            final int dictLength = Math.min(WINDOW, dictRows * stride);
+            final int offset = dictRows * stride;
+            inputLength = (y1 - y0) * stride;
+            deflater.reset();
+            if (dictLength > 0) deflater.setDictionary(filtered, offset - dictLength, dictLength);
+            deflater.setInput(filtered, offset, inputLength);
+            adler.reset();
+            adler.update(filtered, offset, inputLength);
+            blockAdler = adler.getValue();
+
+            length = 0;
+            if (y0 == 0) {
+                // zlib header: deflate, 32K window, no preset dictionary
+                out[length++] = 0x78;
+                out[length++] = (byte) 0x9C;
+            }
+            final boolean last = y1 == image.getHeight();
+            if (last) deflater.finish();
+            while (true) {
+                if (length == out.length) out = Arrays.copyOf(out, 2 * out.length);
+                final int n = deflater.deflate(out, length, out.length - length, last ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH);
+                length += n;
+                // A sync flush is complete once it leaves room to spare
+                if (last ? deflater.finished() : length < out.length) break;
+            }
+            crc.reset();
+            crc.update(IDAT);
+            crc.update(out, 0, length);
+            chunkCrc = (int) crc.getValue();
+            return this;
+        }
+
+        private void ensure(int width, int stride, int filteredBytes) {
+            if (pixels.length < width) pixels = new int[width];
+            if (row.length < stride + 3) {
+                row = new byte[stride + 3];
+                previous = new byte[stride + 3];
+                for (int f = 0; f < candidates.length; ++f) candidates[f] = new byte[stride - 1];
+            }
+            if (filtered.length < filteredBytes) filtered = new byte[filteredBytes];
+            if (out.length < filteredBytes / 2 + 1024) out = new byte[filteredBytes / 2 + 1024];
+        }
+
+        /**
+         * Read row {@code y} of {@code image} into {@code b} from {@code i} on as RGB(A) bytes
+         */
+        private void readRow(BufferedImage image, int y, boolean alpha, byte[] b, int i) {
+            final int width = image.getWidth();
+            final int[] argb = rowPixels(image, y);
+            final int base = argb == pixels ? 0 : y * scanlineStride(image);
+            for (int x = 0; x < width; ++x) {
+                final int p = argb[base + x];
+                b[i++] = (byte) (p >> 16);
+                b[i++] = (byte) (p >> 8);
+                b[i++] = (byte) p;
+                if (alpha) b[i++] = (byte) (p >>> 24);
+            }
+        }
+
+        /**
+         * @return the packed pixels of row {@code y}: the image's own array if it stores them
+         * that way, otherwise {@code pixels} filled in through {@link BufferedImage#getRGB}
+         */
+        private int[] rowPixels(BufferedImage image, int y) {
+            if (isPacked(image)) return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+            image.getRGB(0, y, image.getWidth(), 1, pixels, 0, image.getWidth());
+            return pixels;
+        }
+
+        /**
+         * Write the filter type byte and the filtered row to {@code dst}, picking whichever
+         * filter gives the smallest sum of absolute differences, as libpng does
+         */
+        private void filterRow(byte[] cur, byte[] prev, int n, int bpp, byte[] dst, int at) {
+            // One plain loop per filter, which the JIT compiles far better than one loop
+            // doing all five
+            final byte[] sub = candidates[1], up = candidates[2], avg = candidates[3], pae = candidates[4];
+            long sumNone = 0, sumSub = 0, sumUp = 0, sumAvg = 0, sumPaeth = 0;
+            for (int i = 0; i < n; ++i) {
+                sumNone += Math.abs(cur[bpp + i]);
+            }
+            for (int i = 0; i < n; ++i) {
+                final byte v = (byte) (cur[bpp + i] - cur[i]);
+                sub[i] = v;
+                sumSub += Math.abs(v);
+            }
+            for (int i = 0; i < n; ++i) {
+                final byte v = (byte) (cur[bpp + i] - prev[bpp + i]);
+                up[i] = v;
+                sumUp += Math.abs(v);
+            }
+            for (int i = 0; i < n; ++i) {
+                final byte v = (byte) (cur[bpp + i] - (((cur[i] & 0xFF) + (prev[bpp + i] & 0xFF)) >>> 1));
+                avg[i] = v;
+                sumAvg += Math.abs(v);
+            }
+            for (int i = 0; i < n; ++i) {
+                final byte v = (byte) (cur[bpp + i] - paeth(cur[i] & 0xFF, prev[bpp + i] & 0xFF, prev[i] & 0xFF));
+                pae[i] = v;
+                sumPaeth += Math.abs(v);
+            }
+            int best = 0;
+            long bestSum = sumNone;
+            if (sumSub < bestSum) { best = 1; bestSum = sumSub; }
+            if (sumUp < bestSum) { best = 2; bestSum = sumUp; }
+            if (sumAvg < bestSum) { best = 3; bestSum = sumAvg; }
+            if (sumPaeth < bestSum) best = 4;
+            dst[at] = (byte) best;
+            if (best == 0) System.arraycopy(cur, bpp, dst, at + 1, n);
+            else System.arraycopy(candidates[best], 0, dst, at + 1, n);
+        }
+    }
+
+    private static boolean isPacked(BufferedImage image) {
+        final int type = image.getType();
+        return (type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB)
+                && image.getRaster().getDataBuffer() instanceof DataBufferInt
+                && image.getRaster().getSampleModel() instanceof SinglePixelPackedSampleModel
+                && image.getRaster().getSampleModelTranslateX() == 0
+                && image.getRaster().getSampleModelTranslateY() == 0;
+    }
+
+    private static int scanlineStride(BufferedImage image) {
+        return ((SinglePixelPackedSampleModel) image.getRaster().getSampleModel()).getScanlineStride();
+    }
+
+    /**
+     * The Paeth predictor: whichever of {@code a}, {@code b} and {@code c} is nearest
+     * {@code a + b - c}, preferring them in that order
+     */
+    static int paeth(int a, int b, int c) {
+        final int pa = Math.abs(b - c), pb = Math.abs(a - c), pc = Math.abs(a + b - 2 * c);
+        final int ab = pb < pa ? b : a;
+        return pc < Math.min(pa, pb) ? c : ab;
+    }
+
+    /**
+     * @return the Adler-32 of two strings given their checksums and the length of the second,
+     * as zlib's {@code adler32_combine}
+     */
+    static long combineAdler(long adler1, long adler2, long length2) {
+        final long rem = length2 % ADLER_BASE;
+        long sum1 = adler1 & 0xFFFF;
+        long sum2 = rem * sum1 % ADLER_BASE;
+        sum1 += (adler2 & 0xFFFF) + ADLER_BASE - 1;
+        sum2 += ((adler1 >> 16) & 0xFFFF) + ((adler2 >> 16) & 0xFFFF) + ADLER_BASE - rem;
+        if (sum1 >= ADLER_BASE) sum1 -= ADLER_BASE;
+        if (sum1 >= ADLER_BASE) sum1 -= ADLER_BASE;
+        if (sum2 >= 2L * ADLER_BASE) sum2 -= 2L * ADLER_BASE;
+        if (sum2 >= ADLER_BASE) sum2 -= ADLER_BASE;
+        return sum1 | (sum2 << 16);
+    }
+
+    private Compressor take() throws InterruptedException {
+        synchronized (idle) {
+            while (idle.isEmpty()) idle.wait();
+            return idle.pop();
+        }
+    }
+
+    /**
+     * @return an idle compressor, or null if none are
+     */
+    private Compressor poll() {
+        synchronized (idle) {
+            return idle.poll();
+        }
+    }
+
+    private void give(Compressor c) {
+        synchronized (idle) {
+            idle.push(c);
+            idle.notify();
+        }
+    }
+
+    public void write(BufferedImage image, File file) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16)) {
+            write(image, out);
+        }
+    }
+
+    /**
+     * Write {@code image} to {@code out} as a PNG. Several images may be written at once;
+     * they share the encoder's threads and compressors.
+     */
+    public void write(BufferedImage image, OutputStream out) throws IOException {
+        final int width = image.getWidth(), height = image.getHeight();
+        final boolean alpha = image.getColorModel().hasAlpha();
+        final int stride = width * (alpha ? 4 : 3) + 1;
+        final int rowsPerBlock = Math.max(1, blockBytes / stride);
+        final DataOutputStream data = new DataOutputStream(out);
+        data.write(SIGNATURE);
+        final ByteArrayOutputStream header = new ByteArrayOutputStream();
+        final DataOutputStream h = new DataOutputStream(header);
+        h.writeInt(width);
+        h.writeInt(height);
+        h.writeByte(8);                 // bit depth
+        h.writeByte(alpha ? 6 : 2);     // truecolor, with or without alpha
+        h.writeByte(0);                 // deflate
+        h.writeByte(0);                 // adaptive filtering
+        h.writeByte(0);                 // no interlace
+        writeChunk(data, IHDR, header.toByteArray(), header.size());
+
+        // Keep up to `threads` blocks compressing ahead of the one being written
+        final ArrayDeque<Future<Compressor>> inFlight = new ArrayDeque<>();
+        long adler = 1;
+        int next = 0;
+        try {
+            while (next < height || !inFlight.isEmpty()) {
+                while (next < height && inFlight.size() < threads) {
+                    final int y0 = next, y1 = Math.min(height, next + rowsPerBlock);
+                    // Only wait for a compressor while holding none. Other writers may have
+                    // taken the rest, and be waiting in turn for the ones we hold.
+                    final Compressor c = inFlight.isEmpty() ? take() : poll();
+                    if (c == null) break;
+                    inFlight.add(pool.submit(() -> {
+                        try {
+                            return c.compress(image, alpha, y0, y1);
+                        } catch (RuntimeException e) {
+                            give(c);
+                            throw e;
+                        }
+                    }));
+                    next = y1;
+                }
+                final Compressor c = inFlight.remove().get();
+                try {
+                    data.writeInt(c.length);
+                    data.write(IDAT);
+                    data.write(c.out, 0, c.length);
+                    data.writeInt(c.chunkCrc);
+                    adler = combineAdler(adler, c.blockAdler, c.inputLength);
+                } finally {
+                    give(c);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted writing PNG");
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to compress PNG", e.getCause());
+        } finally {
+            // Give back the compressors of blocks we are abandoning
+            for (Future<Compressor> f : inFlight) {
+                try {
+                    give(f.get());
+                } catch (ExecutionException e) {
+                    // Already given back
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+        final byte[] trailer = {(byte) (adler >>> 24), (byte) (adler >>> 16), (byte) (adler >>> 8), (byte) adler};
+        writeChunk(data, IDAT, trailer, trailer.length);
+        writeChunk(data, IEND, new byte[0], 0);
+        data.flush();
+    }
+
+    private static void writeChunk(DataOutputStream out, byte[] type, byte[] data, int length) throws IOException {
+        final CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(data, 0, length);
+        out.writeInt(length);
+        out.write(type);
+        out.write(data, 0, length);
+        out.writeInt((int) crc.getValue());
+    }
+
+    /**
+     * Write {@code image} as a PNG with the shared encoder if {@code format} is png, and
+     * through {@link ImageIO} otherwise
+     */
+    public static void write(BufferedImage image, String format, File file) throws IOException {
+        if ("png".equalsIgnoreCase(format)) {
+            shared().write(image, file);
+        } else if (!ImageIO.write(image, format, file)) {
+            throw new IOException("No writer for format " + format);
+        }
+    }
+
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,443 @@
+package com.bkushigian.fractals;
+
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.*;
+
+/**
+ * Splits a render into tiles and farms them out to {@link RenderWorker}s in other
+ * processes, for renders too big for one JVM.
+ *
+ * Tiles are handed out most expensive first, going by a coarse preview of a few samples per
+ * tile, so the long tiles don't end up last. Each worker gets a few tiles ahead so it never
+ * waits on the network. If a worker fails its tiles go back in the queue, and once the
+ * queue is empty, idle workers also take on copies of tiles that are running well over
+ * their expected time on another worker; whichever copy finishes first wins.
+ */
+public class RenderCoordinator {
+
+    /**
+     * Samples per side of each tile in the cost preview
+     */
+    private static final int PREVIEW_SAMPLES = 4;
+
+    /**
+     * A tile is run again elsewhere once it has taken this many times its expected time
+     */
+    private static final double SPECULATE_FACTOR = 2.0;
+    private static final long SPECULATE_MIN_NANOS = 50_000_000L;
+
+    public final String scene;
+    public final Viewport view;
+    public final int tileSize;
+
+    private final ComplexFractal fractal;
+    private final List<Job> jobs = new ArrayList<>();
+
+    /**
+     * Tiles yet to be handed out, most expensive first. Guarded by {@code this}, like all
+     * of the scheduling state below.
+     */
+    private final PriorityQueue<Job> queue = new PriorityQueue<>((a, b) -> Long.compare(b.cost, a.cost));
+    private int remaining;
+    private long costDone, nanosDone;
+    private IterationBuffer result;
+
+    private static final class Job {
+        final int id, x, y, width, height;
+        final long cost;
+        boolean done;
+
+        /**
+         * The nodes working on this tile, and since when
+         */
+        final Map<Node, Long> running = new HashMap<>();
+
+        Job(int id, int x, int y, int width, int height, long cost) {
+            this.id = id;
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+            this.cost = Math.max(1, cost);
+        }
+    }
+
+    /**
+     * A worker, and how it did
+     */
+    public static final class Node {
+        public final InetSocketAddress address;
+        public int tiles, duplicates, requeued;
+
+        /**
+         * Tiles this node took on while they were still running on another
+         */
+        public int speculated;
+        public long pixels, busyNanos;
+        public boolean failed;
+        private final Map<Integer, Job> inFlight = new HashMap<>();
+
+        Node(InetSocketAddress address) {
+            this.address = address;
+        }
+
+        public double pixelsPerSecond() {
+            return busyNanos == 0 ? 0 : pixels * 1e9 / busyNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d tiles, %d pixels, %.4g pixels/s%s%s%s%s", address, tiles, pixels,
+                    pixelsPerSecond(), speculated == 0 ? "" : ", " + speculated + " speculated",
+                    duplicates == 0 ? "" : ", " + duplicates + " duplicate",
+                    requeued == 0 ? "" : ", " + requeued + " requeued", failed ? ", failed" : "");
+        }
+    }
+
+    private final List<Node> nodes = new ArrayList<>();
+
+    /**
+     * @param scene the scene to render, as understood by {@link RenderWorker#createFractal(String)}
+     */
+    public RenderCoordinator(String scene, Viewport view, int tileSize) {
+        this.scene = scene;
+        this.view = view;
+        this.tileSize = tileSize;
+        this.fractal = RenderWorker.createFractal(scene);
+    }
+
+    /**
+     * Render the whole view on {@code workers}, blocking until every tile is in
+     * @throws IOException if every worker failed before the render was done
+     */
+    public IterationBuffer render(List<InetSocketAddress> workers) throws IOException {
+        plan();
+        final List<Thread> threads = new ArrayList<>();
+        final List<Socket> sockets = Collections.synchronizedList(new ArrayList<>());
+        synchronized (this) {
+            nodes.clear();
+        }
+        for (InetSocketAddress address : workers) {
+            final Node node = new Node(address);
+            synchronized (this) {
+                nodes.add(node);
+            }
+            final Thread t = RenderPipeline.daemonThreads("coordinator").newThread(() -> drive(node, sockets));
+            threads.add(t);
+            t.start();
+        }
+        try {
+            synchronized (this) {
+                while (remaining > 0 && nodes.stream().anyMatch(n -> !n.failed)) wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // Unblocks any node still stuck on a slow tile
+            synchronized (sockets) {
+                for (Socket s : sockets) {
+                    try {
+                        s.close();
+                    } catch (IOException ignored) {
+                    }
+                }
+            }
+        }
+        for (Thread t : threads) {
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        fractal.pipeline.shutdown();
+        synchronized (this) {
+            if (remaining > 0) throw new IOException("All workers failed with " + remaining + " tiles left");
+            return result;
+        }
+    }
+
+    /**
+     * Split the view into tiles and estimate their cost from a coarse preview
+     */
+    private synchronized void plan() {
+        jobs.clear();
+        queue.clear();
+        result = IterationBuffer.allocate(view.width, view.height, fractal.maxValue());
+        for (int y = 0; y < view.height; y += tileSize) {
+            for (int x = 0; x < view.width; x += tileSize) {
+                final int w = Math.min(tileSize, view.width - x), h = Math.min(tileSize, view.height - y);
+                long cost = 0;
+                for (int sy = 0; sy < PREVIEW_SAMPLES; ++sy) {
+                    for (int sx = 0; sx < PREVIEW_SAMPLES; ++sx) {
+                        final int px = x + (2 * sx + 1) * w / (2 * PREVIEW_SAMPLES);
+                        final int py = y + (2 * sy + 1) * h / (2 * PREVIEW_SAMPLES);
+                        final int[] v = RenderWorker.renderTile(fractal, view, px, py, 1, 1);
+                        cost += iterations(v[0]);
+                    }
+                }
+                final Job job = new Job(jobs.size(), x, y, w, h, cost * w * h);
+                jobs.add(job);
+                queue.add(job);
+            }
+        }
+        remaining = jobs.size();
+    }
+
+    /**
+     * @return the number of iterations behind a pixel value
+     */
+    private long iterations(int value) {
+        if (value < 0) return view.maxIterations;
+        if (fractal instanceof Newton) return NewtonApproximator.iterationsOf(value);
+        return Math.min(value, view.maxIterations);
+    }
+
+    /**
+     * Feed tiles to one worker until the render is done or the worker fails
+     */
+    private void drive(Node node, List<Socket> sockets) {
+        final Socket socket = new Socket();
+        try {
+            sockets.add(socket);
+            socket.connect(node.address);
+            socket.setTcpNoDelay(true);
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            out.writeInt(RenderWorker.MAGIC);
+            out.writeInt(RenderWorker.VERSION);
+            out.writeUTF(scene);
+            out.writeDouble(view.xMin);
+            out.writeDouble(view.yMax);
+            out.writeDouble(view.delta);
+            out.writeInt(view.width);
+            out.writeInt(view.height);
+            out.writeInt(view.maxIterations);
+            out.flush();
+            // Keep one tile queued up behind the ones being rendered
+            final int depth = in.readInt() + 1;
+
+            while (true) {
+                Job job;
+                while (node.inFlight.size() < depth && (job = next(node)) != null) {
+                    out.writeInt(job.id);
+                    out.writeInt(job.x);
+                    out.writeInt(job.y);
+                    out.writeInt(job.width);
+                    out.writeInt(job.height);
+                }
+                out.flush();
+                if (node.inFlight.isEmpty()) {
+                    synchronized (this) {
+                        if (remaining == 0) break;
+                        // Nothing to do for now; wait for a tile to come back into the queue
+                        wait(SPECULATE_MIN_NANOS / 1_000_000);
+                    }
+                    continue;
+                }
+                final int id = in.readInt();
+                final long nanos = in.readLong();
+                final Job done = node.inFlight.remove(id);
+                if (done == null) throw new IOException("Unexpected tile " + id);
+                final int[] values = new int[done.width * done.height];
+                for (int i = 0; i < values.length; ++i) values[i] = in.readInt();
+                finish(node, done, values, nanos);
+            }
+            out.writeInt(RenderWorker.HANG_UP);
+            out.flush();
+        } catch (IOException e) {
+            fail(node, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * @return the next tile for {@code node}: the most expensive one still waiting, or
+     * failing that a straggler running on another node, or null
+     */
+    private synchronized Job next(Node node) {
+        final long now = System.nanoTime();
+        Job job;
+        while ((job = queue.poll()) != null && job.done) {
+            // Finished by a duplicate while it was waiting
+        }
+        if (job == null) {
+            Job oldest = null;
+            long oldestSince = Long.MAX_VALUE;
+            for (Job j : jobs) {
+                if (j.done || j.running.isEmpty() || j.running.containsKey(node) || j.running.size() > 1) continue;
+                final long since = j.running.values().iterator().next();
+                if (now - since > expectedNanos(j) && since < oldestSince) {
+                    oldest = j;
+                    oldestSince = since;
+                }
+            }
+            job = oldest;
+        }
+        if (job != null) {
+            if (!job.running.isEmpty()) ++node.speculated;
+            job.running.put(node, now);
+            node.inFlight.put(job.id, job);
+        }
+        return job;
+    }
+
+    /**
+     * @return how long {@code job} may run before it is worth running it again elsewhere
+     */
+    private long expectedNanos(Job job) {
+        final double perCost = costDone == 0 ? 0 : (double) nanosDone / costDone;
+        return Math.max(SPECULATE_MIN_NANOS, (long) (SPECULATE_FACTOR * perCost * job.cost));
+    }
+
+    private synchronized void finish(Node node, Job job, int[] values, long nanos) {
+        job.running.remove(node);
+        node.busyNanos += nanos;
+        if (job.done) {
+            ++node.duplicates;
+            return;
+        }
+        job.done = true;
+        ++node.tiles;
+        node.pixels += values.length;
+        costDone += job.cost;
+        nanosDone += nanos;
+        for (int row = 0; row < job.height; ++row) result.setRow(job.y + row, job.x, values, row * job.width, job.width);
+        --remaining;
+        notifyAll();
+    }
+
+    private synchronized void fail(Node node, IOException e) {
+        // Once the render is done this is just us hanging up on a straggler
+        if (remaining == 0) return;
+        System.err.println("Worker " + node.address + " failed: " + e);
+        node.failed = true;
+        for (Job job : node.inFlight.values()) {
+            job.running.remove(node);
+            if (!job.done) {
+                queue.add(job);
+                ++node.requeued;
+            }
+        }
+        node.inFlight.clear();
+        notifyAll();
+    }
+
+    /**
+     * @return how each worker did in the last render
+     */
+    public synchronized List<Node> nodes() {
+        return new ArrayList<>(nodes);
+    }
+
+    public BufferedImage createBufferedImage(IterationBuffer values) {
+        final BufferedImage image = new BufferedImage(values.width, values.height, BufferedImage.TYPE_INT_RGB);
+        final int[] line = new int[values.width];
+        for (int y = 0; y < values.height; ++y) {
+            values.getRow(y, 0, line, 0, line.length);
+            for (int x = 0; x < line.length; ++x) line[x] = fractal.getColorInt(line[x]);
+            image.setRGB(0, y, line.length, 1, line, 0, line.length);
+        }
+        return image;
+    }
+
+    /**
+     * Start {@code count} worker processes on this machine, running this same classpath
+     * @return the processes, each of which is listening by the time this returns
+     */
+    static List<Process> startLocalWorkers(int count, int threads, List<InetSocketAddress> addresses) throws IOException {
+        final String java = new File(new File(System.getProperty("java.home"), "bin"), "java").getPath();
+        final List<Process> processes = new ArrayList<>();
+        for (int i = 0; i < count; ++i) {
+            final Process p = new ProcessBuilder(java, "-Djava.awt.headless=true",
+                    "-cp", System.getProperty("java.class.path"), RenderWorker.class.getName(),
+                    "--threads", Integer.toString(threads))
+                    .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+            processes.add(p);
+            final BufferedReader lines = new BufferedReader(new InputStreamReader(p.getInputStream()));
+            String line;
+            while ((line = lines.readLine()) != null && !line.startsWith("Listening on ")) {
+                // Skip anything else the worker prints while starting up
+            }
+            if (line == null) throw new IOException("Worker " + i + " exited before listening");
+            addresses.add(new InetSocketAddress("localhost", Integer.parseInt(line.substring("Listening on ".length()))));
+        }
+        return processes;
+    }
+
+    /**
+     * Usage: {@code RenderCoordinator [--scene s] [--center re,im] [--span s] [--size w,h]
+     * [--iterations n] [--tile px] [--workers host:port,...] [--local n] [--threads n]
+     * [--out file.png]}. With {@code --local n}, n worker processes are started on this
+     * machine with {@code --threads} threads each.
+     */
+    public static void main(String[] args) throws IOException {
+        String scene = "mandelbrot";
+        double centerRe = -0.75, centerIm = 0, span = 3;
+        int width = 2000, height = 2000, iterations = 1000, tile = 128, local = 0, threads = 1;
+        final List<InetSocketAddress> workers = new ArrayList<>();
+        File out = null;
+        for (int i = 0; i < args.length; ++i) {
+            switch (args[i]) {
+                case "--scene": scene = args[++i]; break;
+                case "--center": {
+                    final String[] parts = args[++i].split(",");
+                    centerRe = Double.parseDouble(parts[0]);
+                    centerIm = Double.parseDouble(parts[1]);
+                    break;
+                }
+                case "--span": span = Double.parseDouble(args[++i]); break;
+                case "--size": {
+                    final String[] parts = args[++i].split(",");
+                    width = Integer.parseInt(parts[0]);
+                    height = Integer.parseInt(parts[1]);
+                    break;
+                }
+                case "--iterations": iterations = Integer.parseInt(args[++i]); break;
+                case "--tile": tile = Integer.parseInt(args[++i]); break;
+                case "--workers":
+                    for (String w : args[++i].split(",")) {
+                        final int colon = w.lastIndexOf(':');
+                        workers.add(new InetSocketAddress(w.substring(0, colon), Integer.parseInt(w.substring(colon + 1))));
+                    }
+                    break;
+                case "--local": local = Integer.parseInt(args[++i]); break;
+                case "--threads": threads = Integer.parseInt(args[++i]); break;
+                case "--out": out = new File(args[++i]); break;
+                default:
+                    System.err.println("Unknown argument " + args[i]);
+                    System.exit(2);
+            }
+        }
+        final List<Process> processes = startLocalWorkers(local, threads, workers);
+        if (workers.isEmpty()) {
+            System.err.println("No workers; pass --workers or --local");
+            System.exit(2);
+        }
+        try {
+            final Viewport view = Viewport.centered(centerRe, centerIm, span, width, height, iterations, null);
+            final RenderCoordinator coordinator = new RenderCoordinator(scene, view, tile);
+            final long start = System.nanoTime();
+            final IterationBuffer values = coordinator.render(workers);
+            System.out.printf("Rendered %d x %d on %d workers in %d ms%n", width, height, workers.size(),
+                    (System.nanoTime() - start) / 1_000_000);
+            for (Node node : coordinator.nodes()) System.out.println("  " + node);
+            if (out != null) {
+                PngEncoder.shared().write(coordinator.createBufferedImage(values), out);
+                System.out.println("Wrote " + out);
+            }
+        } finally {
+            for (Process p : processes) p.destroy();
+        }
+        System.exit(0);
+    }
+}
@@ -0,0 +1,266 @@
+package com.bkushigian.fractals;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A checkpoint of a render in progress, kept in a memory-mapped file so that a long render
+ * can pick up where it left off after a crash or restart.
+ *
+ * The file starts with a header describing the render, followed by one status byte per tile
+ * and then the values of every tile at a fixed offset. Render workers only ever hand finished
+ * tiles to {@link #record(Tile)}, which queues them without blocking. A background thread
+ * copies queued tiles into the mapping, and every {@code interval} forces them to disk
+ * before marking them complete, so a crash loses at most the tiles since the last checkpoint
+ * and never leaves a tile marked complete whose values didn't make it to disk.
+ */
+public class RenderJournal implements Closeable {
+
+    private static final int MAGIC = 0x4A524E4C;   // "JRNL"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 256;
+    private static final int MAX_SCENE_LENGTH = 192;
+    private static final byte COMPLETE = 1;
+
+    /**
+     * Tiles are mapped in segments of at most this many bytes, since a single mapping can't
+     * exceed 2GB
+     */
+    private static final long SEGMENT_SIZE = 1L << 30;
+
+    public static final long DEFAULT_INTERVAL_MILLIS = 5000;
+
+    public final Viewport view;
+    public final int tileSize;
+    private final int cols;
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer status;
+    private final MappedByteBuffer[] segments;
+    private final long dataStart;
+    private final int tileBytes, tilesPerSegment;
+
+    /**
+     * The tiles that were already complete when the journal was opened. Never changes, so
+     * workers can read it freely.
+     */
+    private final BitSet resumed;
+
+    /**
+     * Finished tiles waiting to be written, then {@link #STOP} once the journal is closed
+     */
+    private final BlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+    private static final Object STOP = new Object();
+    private final long intervalMillis;
+    private final Thread writer;
+    private volatile IOException failure;
+
+    /**
+     * Tiles marked complete on disk; only touched by the writer
+     */
+    private final BitSet complete;
+    private volatile int completeCount;
+
+    private RenderJournal(File path, String scene, Viewport view, int tileSize, long intervalMillis)
+            throws IOException {
+        this.view = view;
+        this.tileSize = tileSize;
+        this.intervalMillis = intervalMillis;
+        this.cols = (view.width + tileSize - 1) / tileSize;
+        final int tiles = cols * ((view.height + tileSize - 1) / tileSize);
+        this.tileBytes = 4 * tileSize * tileSize;
+        this.tilesPerSegment = (int) Math.max(1, SEGMENT_SIZE / tileBytes);
+        // Keep tile data page aligned
+        this.dataStart = (HEADER_SIZE + tiles + 4095L) & ~4095L;
+        final long length = dataStart + (long) tiles * tileBytes;
+
+        final byte[] header = header(scene, view, tileSize);
+        this.file = new RandomAccessFile(path, "rw");
+        final FileChannel channel = file.getChannel();
+        final byte[] existing = new byte[HEADER_SIZE];
+        final boolean matches = file.length() == length && readFully(existing) && Arrays.equals(existing, header);
+        if (!matches) {
+            // A different render, or none at all: start from scratch
+            file.setLength(0);
+            file.setLength(length);
+            file.seek(0);
+            file.write(header);
+        }
+
+        status = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + tiles);
+        segments = new MappedByteBuffer[(tiles + tilesPerSegment - 1) / tilesPerSegment];
+        for (int s = 0; s < segments.length; ++s) {
+            final int count = Math.min(tilesPerSegment, tiles - s * tilesPerSegment);
+            segments[s] = channel.map(FileChannel.MapMode.READ_WRITE,
+                    dataStart + (long) s * tilesPerSegment * tileBytes, (long) count * tileBytes);
+        }
+        if (!matches) status.force();
+
+        resumed = new BitSet(tiles);
+        for (int i = 0; i < tiles; ++i) {
+            if (status.get(HEADER_SIZE + i) == COMPLETE) resumed.set(i);
+        }
+        complete = (BitSet) resumed.clone();
+        completeCount = resumed.cardinality();
+
+        writer = RenderPipeline.daemonThreads("journal-writer").newThread(this::write);
+        writer.start();
+    }
+
+    /**
+     * Open the journal of a render, creating it if it doesn't exist. If {@code path} holds a
+     * journal of some other render it is started over.
+     * @param scene identifies what is being rendered beyond the viewport, such as the class
+     *              of the fractal
+     */
+    public static RenderJournal open(File path, String scene, Viewport view, int tileSize) throws IOException {
+        return open(path, scene, view, tileSize, DEFAULT_INTERVAL_MILLIS);
+    }
+
+    public static RenderJournal open(File path, String scene, Viewport view, int tileSize, long intervalMillis)
+            throws IOException {
+        return new RenderJournal(path, scene, view, tileSize, intervalMillis);
+    }
+
+    private static byte[] header(String scene, Viewport view, int tileSize) {
+        final byte[] name = scene.getBytes(StandardCharsets.UTF_8);
+        final ByteBuffer b = ByteBuffer.allocate(HEADER_SIZE);
+        b.putInt(MAGIC).putInt(VERSION);
+        b.putInt(view.width).putInt(view.height).putInt(tileSize).putInt(view.maxIterations);
+        b.putDouble(view.xMin).putDouble(view.yMax).putDouble(view.delta);
+        b.putInt(view.parameters == null ? 0 : view.parameters.hashCode());
+        b.putInt(name.length);
+        b.put(name, 0, Math.min(name.length, MAX_SCENE_LENGTH));
+        return b.array();
+    }
+
+    private boolean readFully(byte[] into) throws IOException {
+        if (file.length() < into.length) return false;
+        file.seek(0);
+        file.readFully(into);
+        return true;
+    }
+
+    private int index(Tile tile) {
+        return (tile.y / tileSize) * cols + tile.x / tileSize;
+    }
+
+    /**
+     * @return a view of the values of tile {@code i}
+     */
+    private ByteBuffer slot(int i) {
+        final ByteBuffer b = segments[i / tilesPerSegment].duplicate();
+        b.position((i % tilesPerSegment) * tileBytes);
+        return b;
+    }
+
+    /**
+     * Fill in {@code tile} from the journal, if it was complete when the journal was opened.
+     * This is safe to call from any thread.
+     * @return false if the tile has to be rendered
+     */
+    public boolean restore(Tile tile) {
+        final int i = index(tile);
+        if (!resumed.get(i)) return false;
+        final int[] values = new int[tile.size()];
+        slot(i).asIntBuffer().get(values);
+        tile.setValues(values);
+        return true;
+    }
+
+    /**
+     * @return the number of tiles that were complete when the journal was opened
+     */
+    public int resumedTiles() {
+        return resumed.cardinality();
+    }
+
+    /**
+     * Queue a finished tile to be written at the next checkpoint. This never blocks.
+     */
+    public void record(Tile tile) {
+        if (!resumed.get(index(tile))) queue.offer(tile);
+    }
+
+    private void write() {
+        long next = System.currentTimeMillis() + intervalMillis;
+        final BitSet dirty = new BitSet();
+        try {
+            while (true) {
+                final Object o = queue.poll(Math.max(1, next - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                if (o == STOP) break;
+                if (o != null) {
+                    final Tile t = (Tile) o;
+                    final int i = index(t);
+                    if (!complete.get(i)) {
+                        final int[] values = new int[t.size()];
+                        t.getValues(values);
+                        slot(i).asIntBuffer().put(values);
+                        dirty.set(i);
+                    }
+                }
+                if (System.currentTimeMillis() >= next) {
+                    checkpoint(dirty);
+                    next = System.currentTimeMillis() + intervalMillis;
+                }
+            }
+            checkpoint(dirty);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            failure = new IOException("Could not write render journal", e);
+        }
+    }
+
+    /**
+     * Force the values of {@code dirty} tiles to disk and then mark them complete
+     */
+    private void checkpoint(BitSet dirty) {
+        if (dirty.isEmpty()) return;
+        for (int s = 0; s < segments.length; ++s) {
+            final int next = dirty.nextSetBit(s * tilesPerSegment);
+            if (next >= 0 && next < (s + 1) * tilesPerSegment) segments[s].force();
+        }
+        for (int i = dirty.nextSetBit(0); i >= 0; i = dirty.nextSetBit(i + 1)) {
+            status.put(HEADER_SIZE + i, COMPLETE);
+            complete.set(i);
+            ++completeCount;
+        }
+        status.force();
+        dirty.clear();
+    }
+
+    /**
+     * @return the number of tiles marked complete on disk
+     */
+    public int completeTiles() {
+        return completeCount;
+    }
+
+    /**
+     * Write out everything recorded so far and close the file
+     * @throws IOException if any checkpoint failed
+     */
+    @Override
+    public void close() throws IOException {
+        queue.offer(STOP);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        file.close();
+        if (failure != null) throw failure;
+    }
+}
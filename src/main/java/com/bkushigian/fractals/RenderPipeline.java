@@ -0,0 +1,341 @@
+package com.bkushigian.fractals;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Renders viewports in the background, off of the Swing Event Dispatch Thread.
+ *
+ * Requests are coalesced: {@link #submit(Viewport)} only records the latest viewport and
+ * bumps the render generation, so tiles belonging to an older request are skipped (or
+ * abandoned part way through) instead of being rendered to completion. Finished tiles are
+ * handed back through a lock-free queue which the GUI drains with {@link #poll()}.
+ *
+ * Workers take tiles from a priority queue. Tiles of the requested view come first, nearest
+ * the center of the view first. Once a view is complete, any idle capacity goes to
+ * speculative frames: views the user is likely to move to next, passed along with the
+ * request. A speculative tile gives up its worker as soon as a real tile is waiting, and
+ * finished speculative frames are handed to {@link Listener#prefetched(TileGrid)} so their
+ * pixels can be reused.
+ *
+ * The workers may belong to a {@link RenderScheduler} shared with other pipelines, which
+ * divides them fairly between the pipelines with work queued.
+ */
+public class RenderPipeline {
+
+    /**
+     * Computes the values of a single tile
+     */
+    public interface Kernel {
+        /**
+         * Fill in the values of {@code tile}. Long running kernels should check
+         * {@link Tile#isStale()} every row or so and bail out early.
+         * @param pass which pass over the frame this is; every tile finishes pass {@code p}
+         *             before any tile starts pass {@code p + 1}
+         */
+        void render(Viewport view, Tile tile, int pass);
+
+        /**
+         * @return how many passes over the frame are needed to render {@code view}
+         */
+        default int passes(Viewport view) {
+            return 1;
+        }
+
+        /**
+         * @return the largest value a pixel of {@code view} can take, which picks how many
+         * bytes per pixel the frame is stored in
+         */
+        default int maxValue(Viewport view) {
+            return Integer.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Notified from worker threads as rendering progresses
+     */
+    public interface Listener {
+        void tileReady(Tile tile);
+
+        default void frameComplete(TileGrid frame) {}
+
+        /**
+         * A speculative frame finished rendering
+         */
+        default void prefetched(TileGrid frame) {}
+    }
+
+    public static final int DEFAULT_TILE_SIZE = 64;
+
+    /**
+     * Added to the priority of speculative tiles so they always sort after real ones
+     */
+    private static final long SPECULATIVE = Long.MAX_VALUE / 2;
+
+    private final Kernel kernel;
+    private final Listener listener;
+    private final RenderScheduler scheduler;
+    private final RenderScheduler.Queue queue;
+    private final boolean ownScheduler;
+    private final int tileSize;
+
+    private final AtomicReference<Request> pending = new AtomicReference<>();
+    private final AtomicInteger generation = new AtomicInteger();
+    private final Queue<Tile> finished = new ConcurrentLinkedQueue<>();
+    private final Thread driver;
+
+    public RenderPipeline(int numWorkers, Kernel kernel, Listener listener) {
+        this(numWorkers, DEFAULT_TILE_SIZE, kernel, listener);
+    }
+
+    /**
+     * Render on a pool of {@code numWorkers} threads of our own
+     */
+    public RenderPipeline(int numWorkers, int tileSize, Kernel kernel, Listener listener) {
+        this(new RenderScheduler(numWorkers), true, tileSize, kernel, listener);
+    }
+
+    /**
+     * Render on {@code scheduler}'s workers, alongside any other pipelines using it
+     */
+    public RenderPipeline(RenderScheduler scheduler, int tileSize, Kernel kernel, Listener listener) {
+        this(scheduler, false, tileSize, kernel, listener);
+    }
+
+    private RenderPipeline(RenderScheduler scheduler, boolean ownScheduler, int tileSize, Kernel kernel,
+                           Listener listener) {
+        this.kernel = kernel;
+        this.listener = listener;
+        this.tileSize = tileSize;
+        this.scheduler = scheduler;
+        this.ownScheduler = ownScheduler;
+        this.queue = scheduler.newQueue();
+        this.driver = daemonThreads("render-driver").newThread(this::drive);
+        driver.start();
+    }
+
+    static ThreadFactory daemonThreads(final String name) {
+        final AtomicInteger count = new AtomicInteger();
+        return r -> {
+            final Thread t = new Thread(r, name + "-" + count.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    /**
+     * A view to render, and the views to render speculatively once it is done. The
+     * generation is taken when the request is made, so that it always travels with its view.
+     */
+    private static final class Request {
+        final Viewport view;
+        final List<Viewport> speculative;
+        final int generation;
+
+        Request(Viewport view, List<Viewport> speculative, int generation) {
+            this.view = view;
+            this.speculative = speculative;
+            this.generation = generation;
+        }
+    }
+
+    /**
+     * A unit of work on {@code tile}, run in order of increasing priority and then submission
+     */
+    private static final class Job extends RenderScheduler.Task {
+        final Tile tile;
+        final Runnable work;
+
+        Job(long priority, Tile tile, Runnable work) {
+            super(priority, priority >= SPECULATIVE);
+            this.tile = tile;
+            this.work = work;
+        }
+
+        @Override
+        public void run() {
+            work.run();
+        }
+
+        @Override
+        protected boolean isCancelled() {
+            return tile.isCancelled();
+        }
+    }
+
+    private void execute(long priority, Tile tile, Runnable work) {
+        // Once shut down the job is dropped; nobody is waiting for it any more
+        queue.execute(new Job(priority, tile, work));
+    }
+
+    /**
+     * @return the number of workers rendering tiles, shared or not
+     */
+    public int threads() {
+        return scheduler.threads();
+    }
+
+    /**
+     * @param weight this pipeline's share of a shared scheduler's workers, relative to the
+     *               other pipelines with work queued
+     */
+    public void setWeight(double weight) {
+        queue.setWeight(weight);
+    }
+
+    /**
+     * @return the priority of {@code tile}: its squared distance, in pixels, from the
+     * center of the view
+     */
+    private static long priority(Tile tile) {
+        final long dx = 2L * tile.x + tile.width - tile.grid.width;
+        final long dy = 2L * tile.y + tile.height - tile.grid.height;
+        return (dx * dx + dy * dy) / 4;
+    }
+
+    /**
+     * Request a render of {@code view}. Any render still in flight becomes stale
+     * immediately. This never blocks, so it is safe to call from the EDT.
+     */
+    public void submit(Viewport view) {
+        submit(view, Collections.emptyList());
+    }
+
+    /**
+     * Request a render of {@code view}, and once that is complete, speculative renders of
+     * {@code speculative}
+     */
+    public void submit(Viewport view, List<Viewport> speculative) {
+        final int gen = generation.incrementAndGet();
+        queue.purge();
+        pending.set(new Request(view, speculative, gen));
+        LockSupport.unpark(driver);
+    }
+
+    /**
+     * Abandon whatever is being rendered without starting anything new
+     */
+    public void cancel() {
+        generation.incrementAndGet();
+        pending.set(null);
+        queue.purge();
+    }
+
+    /**
+     * @return the next finished tile, or null if none are waiting
+     */
+    public Tile poll() {
+        return finished.poll();
+    }
+
+    /**
+     * Render {@code view} on the worker pool and wait for every tile to finish. This does not
+     * interact with (or get cancelled by) background renders.
+     */
+    public TileGrid renderNow(final Viewport view) {
+        final TileGrid grid = split(view, 0, new AtomicInteger());
+        final Tile[] tiles = grid.tiles();
+        final int passes = kernel.passes(view);
+        for (int p = 0; p < passes; ++p) {
+            final int pass = p;
+            final CountDownLatch done = new CountDownLatch(tiles.length);
+            for (final Tile t : tiles) {
+                execute(priority(t), t, () -> {
+                    try {
+                        kernel.render(view, t, pass);
+                    } finally {
+                        done.countDown();
+                    }
+                });
+            }
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return grid;
+    }
+
+    private void drive() {
+        while (true) {
+            final Request request = pending.getAndSet(null);
+            if (request == null) {
+                // park() returns straight away once interrupted, so check or we spin forever
+                if (Thread.currentThread().isInterrupted()) return;
+                LockSupport.park(this);
+                continue;
+            }
+            // Superseded while it was waiting; whatever superseded it is pending or cancelled
+            if (request.generation != generation.get()) continue;
+            startPass(split(request.view, request.generation, generation), 0, kernel.passes(request.view),
+                    request.speculative);
+        }
+    }
+
+    private void startPass(TileGrid grid, int pass, int passes, List<Viewport> next) {
+        final AtomicInteger remaining = new AtomicInteger(grid.tiles().length);
+        final long base = grid.speculative ? SPECULATIVE : 0;
+        for (final Tile t : grid.tiles()) {
+            execute(base + priority(t), t, () -> renderTile(grid, t, pass, passes, remaining, next));
+        }
+    }
+
+    private void renderTile(TileGrid grid, Tile t, int pass, int passes, AtomicInteger remaining,
+                            List<Viewport> next) {
+        final Viewport view = grid.view;
+        if (t.isCancelled()) return;
+        if (!t.isStale()) {
+            try {
+                kernel.render(view, t, pass);
+            } catch (RuntimeException e) {
+                System.err.println("Failed to render " + t);
+                e.printStackTrace();
+                return;
+            }
+        }
+        if (t.isCancelled()) return;
+        if (t.isStale()) {
+            // Preempted by real work; try again once that has been picked up
+            execute(SPECULATIVE + priority(t), t, () -> renderTile(grid, t, pass, passes, remaining, next));
+            return;
+        }
+        if (!grid.speculative) {
+            finished.offer(t);
+            listener.tileReady(t);
+        }
+        if (remaining.decrementAndGet() == 0) {
+            if (pass + 1 < passes) {
+                startPass(grid, pass + 1, passes, next);
+            } else if (grid.speculative) {
+                listener.prefetched(grid);
+            } else {
+                listener.frameComplete(grid);
+                for (Viewport v : next) {
+                    startPass(new TileGrid(v, tileSize, kernel.maxValue(v), t.generation, generation,
+                                    scheduler.waiting()),
+                            0, kernel.passes(v), Collections.emptyList());
+                }
+            }
+        }
+    }
+
+    private TileGrid split(Viewport view, int gen, AtomicInteger current) {
+        return new TileGrid(view, tileSize, kernel.maxValue(view), gen, current);
+    }
+
+    public void shutdown() {
+        generation.incrementAndGet();
+        queue.close();
+        driver.interrupt();
+        if (ownScheduler) scheduler.shutdown();
+    }
+}
@@ -0,0 +1,264 @@
+package com.bkushigian.fractals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * A pool of render threads which any number of {@link RenderPipeline}s share, so that several
+ * views in one window split the machine between them rather than each starting a pool of its
+ * own.
+ *
+ * Every pipeline queues its work on its own {@link Queue}, in its own priority order. An idle
+ * worker serves the queue which has had the least CPU time for its weight, so two views
+ * rendering at once progress at the same rate however many tiles either has queued, and the
+ * view with the keyboard focus can be given a bigger share. A queue which runs dry doesn't bank
+ * time to spend later; it rejoins at the pace of the busiest queue. Real work in any queue
+ * comes before background (speculative) work in every queue.
+ */
+public class RenderScheduler {
+
+    /**
+     * A unit of work, run after every task of its queue with a lower priority or an earlier
+     * submission
+     */
+    public abstract static class Task implements Runnable, Comparable<Task> {
+        final long priority;
+        final boolean background;
+        private long order;
+
+        protected Task(long priority, boolean background) {
+            this.priority = priority;
+            this.background = background;
+        }
+
+        /**
+         * @return true if this task no longer needs running, so {@link Queue#purge()} can
+         * drop it
+         */
+        protected boolean isCancelled() {
+            return false;
+        }
+
+        @Override
+        public int compareTo(Task o) {
+            if (priority != o.priority) return priority < o.priority ? -1 : 1;
+            return Long.compare(order, o.order);
+        }
+    }
+
+    /**
+     * The tasks of one view
+     */
+    public final class Queue {
+        private final PriorityQueue<Task> tasks = new PriorityQueue<>();
+        private int foreground;
+        private double weight = 1;
+
+        /**
+         * Nanoseconds of work run for this queue, divided by its weight
+         */
+        private double pass;
+        private boolean closed;
+
+        private Queue() {}
+
+        public void execute(Task task) {
+            synchronized (RenderScheduler.this) {
+                if (closed || stopped) return;
+                task.order = sequence.getAndIncrement();
+                if (tasks.isEmpty()) pass = Math.max(pass, clock);
+                tasks.add(task);
+                if (!task.background) {
+                    ++foreground;
+                    waiting.incrementAndGet();
+                }
+                RenderScheduler.this.notify();
+            }
+        }
+
+        /**
+         * Drop the queued tasks which have been cancelled
+         */
+        public void purge() {
+            synchronized (RenderScheduler.this) {
+                tasks.removeIf(t -> {
+                    if (!t.isCancelled()) return false;
+                    if (!t.background) {
+                        --foreground;
+                        waiting.decrementAndGet();
+                    }
+                    return true;
+                });
+            }
+        }
+
+        /**
+         * @param weight this queue's share of the workers relative to the other queues
+         */
+        public void setWeight(double weight) {
+            if (!(weight > 0)) throw new IllegalArgumentException("weight must be positive: " + weight);
+            synchronized (RenderScheduler.this) {
+                this.weight = weight;
+            }
+        }
+
+        public double getWeight() {
+            synchronized (RenderScheduler.this) {
+                return weight;
+            }
+        }
+
+        /**
+         * Drop every queued task and stop accepting more. Tasks already running finish.
+         */
+        public void close() {
+            synchronized (RenderScheduler.this) {
+                closed = true;
+                waiting.addAndGet(-foreground);
+                foreground = 0;
+                tasks.clear();
+                queues.remove(this);
+            }
+        }
+
+        private Task poll() {
+            final Task task = tasks.poll();
+            if (!task.background) {
+                --foreground;
+                waiting.decrementAndGet();
+            }
+            return task;
+        }
+    }
+
+    private static RenderScheduler shared;
+
+    /**
+     * @return the scheduler for on-screen views, with one worker per processor
+     */
+    public static synchronized RenderScheduler shared() {
+        if (shared == null) shared = new RenderScheduler(Runtime.getRuntime().availableProcessors());
+        return shared;
+    }
+
+    private final List<Queue> queues = new ArrayList<>();
+    private final List<Thread> workers = new ArrayList<>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * What task run times are measured with
+     */
+    private final LongSupplier nanoTime;
+
+    /**
+     * Real tasks queued across every queue, waiting for a worker
+     */
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    /**
+     * The pass of the queue served most recently, which queues start from when they wake up
+     */
+    private double clock;
+    private boolean stopped;
+
+    public RenderScheduler(int threads) {
+        this(threads, System::nanoTime);
+    }
+
+    /**
+     * @param nanoTime the time source tasks are charged by; tests substitute a clock of their own
+     */
+    RenderScheduler(int threads, LongSupplier nanoTime) {
+        this.nanoTime = nanoTime;
+        final ThreadFactory factory = RenderPipeline.daemonThreads("render-worker");
+        for (int i = 0; i < threads; ++i) {
+            final Thread t = factory.newThread(this::work);
+            workers.add(t);
+            t.start();
+        }
+    }
+
+    public synchronized Queue newQueue() {
+        final Queue q = new Queue();
+        queues.add(q);
+        return q;
+    }
+
+    /**
+     * @return the number of real tasks waiting for a worker; background work should give way
+     * while this is non-zero
+     */
+    AtomicInteger waiting() {
+        return waiting;
+    }
+
+    public int threads() {
+        return workers.size();
+    }
+
+    /**
+     * @return the queue to serve next: of the queues with real work (or failing that, any
+     * work), the one with the least weighted time. Called holding the lock.
+     */
+    private Queue next() {
+        Queue best = null;
+        for (Queue q : queues) {
+            if (q.tasks.isEmpty()) continue;
+            if (best == null
+                    || q.foreground > 0 && best.foreground == 0
+                    || (q.foreground > 0) == (best.foreground > 0) && q.pass < best.pass) {
+                best = q;
+            }
+        }
+        return best;
+    }
+
+    private void work() {
+        while (true) {
+            final Queue q;
+            final Task task;
+            synchronized (this) {
+                Queue next;
+                while ((next = next()) == null) {
+                    if (stopped) return;
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                q = next;
+                task = q.poll();
+                clock = Math.max(clock, q.pass);
+            }
+            final long start = nanoTime.getAsLong();
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            } finally {
+                final long nanos = nanoTime.getAsLong() - start;
+                synchronized (this) {
+                    q.pass += nanos / q.weight;
+                }
+            }
+        }
+    }
+
+    /**
+     * Drop every queued task and stop the workers once they finish what they are running
+     */
+    public void shutdown() {
+        synchronized (this) {
+            stopped = true;
+            for (Queue q : new ArrayList<>(queues)) q.close();
+            notifyAll();
+        }
+        for (Thread t : workers) t.interrupt();
+    }
+}
@@ -0,0 +1,221 @@
+package com.bkushigian.fractals;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Renders tiles for a {@link RenderCoordinator} in another process (or on another machine).
+ *
+ * The protocol is plain binary over TCP, big-endian as written by {@link DataOutputStream}.
+ * The coordinator opens with {@code MAGIC, VERSION}, the scene (see {@link #createFractal(String)})
+ * and the view: {@code xMin, yMax, delta} as doubles and {@code width, height, maxIterations}
+ * as ints. The worker answers with the number of tiles it renders at once. After that the
+ * coordinator sends tiles as {@code id, x, y, width, height}, and an id of -1 to hang up,
+ * and the worker sends back each finished tile as {@code id}, the nanoseconds it took as a
+ * long, and then its {@code width * height} values in rows.
+ */
+public class RenderWorker implements Closeable {
+
+    static final int MAGIC = 0x4A524E44;   // "JRND"
+    static final int VERSION = 1;
+    static final int HANG_UP = -1;
+
+    private final ServerSocket server;
+    private final int threads;
+    private final Thread acceptor;
+    private volatile boolean closed;
+
+    /**
+     * Drop each connection after rendering this many tiles, to test recovering from failed
+     * workers; negative to never fail
+     */
+    volatile int failAfter = -1;
+
+    /**
+     * After rendering this many tiles, send back only part of the next one and then drop the
+     * connection; negative to never fail
+     */
+    volatile int truncateAfter = -1;
+
+    /**
+     * Keep taking tiles after rendering this many, but never answer again, like a worker
+     * that has locked up; negative to never hang
+     */
+    volatile int hangAfter = -1;
+
+    /**
+     * Listen on the loopback interface only
+     * @param port the port to listen on, or 0 for any free port
+     * @param threads tiles rendered at once for each coordinator
+     */
+    public RenderWorker(int port, int threads) throws IOException {
+        this(InetAddress.getLoopbackAddress(), port, threads);
+    }
+
+    /**
+     * @param bind the address to listen on, or null for all of them. The protocol has no
+     *             authentication, so only listen where untrusted machines can't connect.
+     * @param port the port to listen on, or 0 for any free port
+     * @param threads tiles rendered at once for each coordinator
+     */
+    public RenderWorker(InetAddress bind, int port, int threads) throws IOException {
+        this.server = new ServerSocket(port, 16, bind);
+        this.threads = threads;
+        this.acceptor = RenderPipeline.daemonThreads("render-worker-accept").newThread(this::accept);
+        acceptor.start();
+    }
+
+    public int port() {
+        return server.getLocalPort();
+    }
+
+    private void accept() {
+        while (!closed) {
+            try {
+                final Socket socket = server.accept();
+                RenderPipeline.daemonThreads("render-worker-connection").newThread(() -> serve(socket)).start();
+            } catch (IOException e) {
+                if (!closed) e.printStackTrace();
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        ComplexFractal fractal = null;
+        final ExecutorService pool = Executors.newFixedThreadPool(threads, RenderPipeline.daemonThreads("render-worker-tile"));
+        try (Socket s = socket) {
+            s.setTcpNoDelay(true);
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+            if (in.readInt() != MAGIC) throw new IOException("Not a render coordinator");
+            final int version = in.readInt();
+            if (version != VERSION) throw new IOException("Unsupported protocol version " + version);
+            final String scene = in.readUTF();
+            final Viewport view = new Viewport(in.readDouble(), in.readDouble(), in.readDouble(),
+                    in.readInt(), in.readInt(), in.readInt());
+            final ComplexFractal f = fractal = createFractal(scene);
+            out.writeInt(threads);
+            out.flush();
+
+            int rendered = 0;
+            while (true) {
+                final int id = in.readInt();
+                if (id == HANG_UP) break;
+                final int x = in.readInt(), y = in.readInt(), w = in.readInt(), h = in.readInt();
+                if (failAfter >= 0 && rendered >= failAfter) return;
+                if (hangAfter >= 0 && rendered >= hangAfter) continue;
+                // Only this many values go out, short of the whole tile if we are to fail
+                final int send = truncateAfter >= 0 && rendered >= truncateAfter ? w * h / 2 : w * h;
+                ++rendered;
+                pool.execute(() -> {
+                    final long start = System.nanoTime();
+                    final int[] values = renderTile(f, view, x, y, w, h);
+                    final long nanos = System.nanoTime() - start;
+                    try {
+                        synchronized (out) {
+                            out.writeInt(id);
+                            out.writeLong(nanos);
+                            for (int i = 0; i < send; ++i) out.writeInt(values[i]);
+                            out.flush();
+                            if (send < values.length) socket.close();
+                        }
+                    } catch (IOException e) {
+                        // The coordinator hung up; it will have given the tile to someone else
+                    }
+                });
+            }
+        } catch (EOFException e) {
+            // The coordinator went away
+        } catch (IOException | IllegalArgumentException e) {
+            // A closed socket is us hanging up on purpose
+            if (!closed && !socket.isClosed()) e.printStackTrace();
+        } finally {
+            pool.shutdownNow();
+            if (fractal != null) fractal.pipeline.shutdown();
+        }
+    }
+
+    /**
+     * @param scene {@code mandelbrot}, {@code julia:<re>,<im>} or
+     *              {@code newton:<n>[:<method>]} for the {@code n}th roots of unity
+     * @return a fractal to compute the values of {@code scene}. It is only used through its
+     * kernel, so it is kept tiny.
+     */
+    static ComplexFractal createFractal(String scene) {
+        final String[] parts = scene.split(":");
+        switch (parts[0]) {
+            case "mandelbrot":
+                return new Mandelbrot(16, 16);
+            case "julia": {
+                final String[] c = parts[1].split(",");
+                return new Julia(16, 16, null, new Complex(Double.parseDouble(c[0]), Double.parseDouble(c[1])));
+            }
+            case "newton": {
+                final Newton newton = new Newton(16, 16, null, ComplexPolynomial.nthRootsOfUnity(Integer.parseInt(parts[1])));
+                if (parts.length > 2) newton.method = NewtonApproximator.Method.valueOf(parts[2].toUpperCase());
+                return newton;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown scene " + scene);
+        }
+    }
+
+    /**
+     * @return the values of the pixels of {@code view} in the given rectangle, computed the
+     * same way as the first pass of {@link ComplexFractal#renderTile(Viewport, Tile, int)}
+     */
+    static int[] renderTile(ComplexFractal fractal, Viewport view, int x0, int y0, int w, int h) {
+        final int[] values = new int[w * h];
+        final boolean resumable = fractal.isResumable();
+        final double[] z = new double[2];
+        for (int row = 0; row < h; ++row) {
+            final double im = view.im(y0 + row);
+            for (int col = 0; col < w; ++col) {
+                final double re = view.re(x0 + col);
+                if (resumable) {
+                    z[0] = re;
+                    z[1] = im;
+                    values[row * w + col] = fractal.continueOrbit(view, re, im, z, 0, view.maxIterations);
+                } else {
+                    values[row * w + col] = fractal.calculateIterations(new Complex(re, im), view.maxIterations);
+                }
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        server.close();
+    }
+
+    /**
+     * Usage: {@code RenderWorker [--bind address] [--port p] [--threads n]}. Prints the port
+     * it listens on, then serves coordinators until killed. It listens on the loopback
+     * interface unless given another address to bind, such as {@code 0.0.0.0} for all of them.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        InetAddress bind = InetAddress.getLoopbackAddress();
+        int port = 0;
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 0; i < args.length; ++i) {
+            switch (args[i]) {
+                case "--bind": bind = InetAddress.getByName(args[++i]); break;
+                case "--port": port = Integer.parseInt(args[++i]); break;
+                case "--threads": threads = Integer.parseInt(args[++i]); break;
+                default:
+                    System.err.println("Unknown argument " + args[i]);
+                    System.exit(2);
+            }
+        }
+        final RenderWorker worker = new RenderWorker(bind, port, threads);
+        System.out.println("Listening on " + worker.port());
+        System.out.flush();
+        worker.acceptor.join();
+    }
+}
@@ -0,0 +1,144 @@
+package com.bkushigian.fractals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A small uniform-grid spatial index over the roots of a polynomial. Each root owns a
+ * disk of some radius inside of which Newton's method is guaranteed to converge to it;
+ * {@link #find(double, double)} reports which disk (if any) a point lies in using only
+ * squared distances.
+ */
+public class RootIndex {
+
+    /**
+     * The most cells along either side of the grid
+     */
+    private static final int MAX_CELLS = 64;
+
+    private final double[] re;
+    private final double[] im;
+    private final double[] radiusSquared;
+
+    private final double gridXMin, gridYMin, cellSize;
+    private final int cols, rows;
+    /** cells[row * cols + col] := indices of the roots whose disk touches this cell */
+    private final int[][] cells;
+
+    /**
+     * @param roots the root locations
+     * @param radii the radius of the trapping disk around each root; non-positive radii
+     *              mean the root can never be entered
+     */
+    public RootIndex(Complex[] roots, double[] radii) {
+        final int n = roots.length;
+        re = new double[n];
+        im = new double[n];
+        radiusSquared = new double[n];
+
+        double xmin = Double.POSITIVE_INFINITY, xmax = Double.NEGATIVE_INFINITY;
+        double ymin = Double.POSITIVE_INFINITY, ymax = Double.NEGATIVE_INFINITY;
+        double maxRadius = 0.0;
+        for (int i = 0; i < n; ++i) {
+            re[i] = roots[i].re;
+            im[i] = roots[i].im;
+            final double r = Math.max(0.0, radii[i]);
+            radiusSquared[i] = r * r;
+            if (r <= 0.0) continue;
+            xmin = Math.min(xmin, re[i] - r);
+            xmax = Math.max(xmax, re[i] + r);
+            ymin = Math.min(ymin, im[i] - r);
+            ymax = Math.max(ymax, im[i] + r);
+            maxRadius = Math.max(maxRadius, r);
+        }
+
+        if (maxRadius == 0.0) {
+            gridXMin = gridYMin = 0.0;
+            cellSize = 1.0;
+            cols = rows = 0;
+            cells = new int[0][];
+            return;
+        }
+
+        // Cells are at least twice the largest radius so that a disk touches at most four
+        // cells, and grow past that when the roots are spread too far for MAX_CELLS a side
+        cellSize = Math.max(2 * maxRadius, Math.max(xmax - xmin, ymax - ymin) / MAX_CELLS);
+        gridXMin = xmin;
+        gridYMin = ymin;
+        cols = Math.max(1, Math.min(MAX_CELLS, (int) Math.ceil((xmax - xmin) / cellSize)));
+        rows = Math.max(1, Math.min(MAX_CELLS, (int) Math.ceil((ymax - ymin) / cellSize)));
+
+        final List<List<Integer>> buckets = new ArrayList<>(rows * cols);
+        for (int i = 0; i < rows * cols; ++i) buckets.add(new ArrayList<>(2));
+        for (int i = 0; i < n; ++i) {
+            if (radiusSquared[i] == 0.0) continue;
+            final double r = Math.sqrt(radiusSquared[i]);
+            final int c0 = col(re[i] - r), c1 = col(re[i] + r);
+            final int r0 = row(im[i] - r), r1 = row(im[i] + r);
+            for (int row = r0; row <= r1; ++row) {
+                for (int col = c0; col <= c1; ++col) {
+                    buckets.get(row * cols + col).add(i);
+                }
+            }
+        }
+        cells = new int[rows * cols][];
+        for (int i = 0; i < cells.length; ++i) {
+            final List<Integer> b = buckets.get(i);
+            cells[i] = new int[b.size()];
+            for (int j = 0; j < b.size(); ++j) cells[i][j] = b.get(j);
+        }
+    }
+
+    private int col(double x) {
+        return Math.max(0, Math.min(cols - 1, (int) ((x - gridXMin) / cellSize)));
+    }
+
+    private int row(double y) {
+        return Math.max(0, Math.min(rows - 1, (int) ((y - gridYMin) / cellSize)));
+    }
+
+    /**
+     * @return the index of the root whose trapping disk contains {@code (x, y)}, or -1
+     */
+    public int find(double x, double y) {
+        final double gx = (x - gridXMin) / cellSize;
+        final double gy = (y - gridYMin) / cellSize;
+        if (!(gx >= 0 && gx < cols && gy >= 0 && gy < rows)) return -1;
+        for (int i : cells[(int) gy * cols + (int) gx]) {
+            final double dx = x - re[i], dy = y - im[i];
+            if (dx * dx + dy * dy < radiusSquared[i]) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the index of the root nearest to {@code (x, y)}, regardless of trapping disks
+     */
+    public int nearest(double x, double y) {
+        int best = -1;
+        double bestSq = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < re.length; ++i) {
+            final double dx = x - re[i], dy = y - im[i];
+            final double d = dx * dx + dy * dy;
+            if (d < bestSq) {
+                bestSq = d;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    public int size() {
+        return re.length;
+    }
+
+    @Override
+    public String toString() {
+        return "RootIndex{" +
+                "roots=" + re.length +
+                ", grid=" + cols + "x" + rows +
+                ", radiusSquared=" + Arrays.toString(radiusSquared) +
+                '}';
+    }
+}
@@ -0,0 +1,289 @@
+package com.bkushigian.fractals;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * End-to-end benchmark over a fixed corpus of scenes. Each scene is rendered headless
+ * through the same pipeline the GUI uses, so this catches regressions in tiling,
+ * scheduling and reuse as well as in the kernels themselves.
+ *
+ * For every scene we check the SHA-256 of the rendered iteration buffer against a golden
+ * checksum, and measure wall time and iterations per second. Throughput is compared against
+ * a baseline recorded on the same machine, and the run fails if any scene got slower by
+ * more than the threshold.
+ *
+ * Usage: {@code SceneBenchmark [--golden file] [--baseline file] [--report file]
+ * [--threshold fraction] [--repeats n] [--scene name] [--update] [--no-baseline]}. With
+ * {@code --update} the golden checksums and baseline are rewritten from this run instead of
+ * being checked. A missing baseline is an error unless {@code --no-baseline} says to check
+ * only the checksums.
+ */
+public class SceneBenchmark {
+
+    public static final class Scene {
+        public final String name;
+        final Supplier<ComplexFractal> fractal;
+        final double centerRe, centerIm, span;
+        final int maxIterations;
+
+        Scene(String name, Supplier<ComplexFractal> fractal, double centerRe, double centerIm, double span,
+              int maxIterations) {
+            this.name = name;
+            this.fractal = fractal;
+            this.centerRe = centerRe;
+            this.centerIm = centerIm;
+            this.span = span;
+            this.maxIterations = maxIterations;
+        }
+
+        /**
+         * @return a fractal showing this scene, ready to {@link ComplexFractal#compute()}
+         */
+        ComplexFractal create() {
+            final ComplexFractal f = fractal.get();
+            f.xMin = centerRe - span / 2;
+            f.xMax = centerRe + span / 2;
+            f.yCenter = centerIm;
+            f.maxIterations = maxIterations;
+            f.updateColors();
+            f.calculateDeltas();
+            f.updated = true;
+            return f;
+        }
+    }
+
+    public static final int SIZE = 600;
+
+    public static List<Scene> corpus() {
+        final List<Scene> scenes = new ArrayList<>();
+        scenes.add(new Scene("mandelbrot-full", () -> new Mandelbrot(SIZE, SIZE), -0.75, 0.0, 3.0, 256));
+        scenes.add(new Scene("mandelbrot-seahorse-deep", () -> new Mandelbrot(SIZE, SIZE),
+                -0.743643887037151, 0.131825904205330, 1e-7, 3000));
+        scenes.add(new Scene("julia-dense", () -> new Julia(SIZE, SIZE, null, new Complex(-0.8, 0.156)),
+                0.0, 0.0, 3.2, 1000));
+        scenes.add(new Scene("julia-sparse", () -> new Julia(SIZE, SIZE, null, new Complex(0.4, 0.3)),
+                0.0, 0.0, 3.2, 1000));
+        scenes.add(new Scene("julia-interior", () -> new Julia(SIZE, SIZE, null, new Complex(-0.123, 0.745)),
+                0.0, 0.0, 3.2, 20000));
+        for (NewtonApproximator.Method method : NewtonApproximator.Method.values()) {
+            for (int n = 3; n <= 12; ++n) {
+                final ComplexPolynomial p = ComplexPolynomial.nthRootsOfUnity(n);
+                scenes.add(new Scene(method.name().toLowerCase() + "-roots-of-unity-" + n, () -> {
+                    final Newton newton = new Newton(SIZE, SIZE, null, p);
+                    newton.method = method;
+                    return newton;
+                }, 0.0, 0.0, 4.0, 256));
+            }
+        }
+        // Newton's method a pixel at a time, to compare with the row at a time scenes above
+        for (int n : new int[]{3, 7, 12}) {
+            final ComplexPolynomial p = ComplexPolynomial.nthRootsOfUnity(n);
+            scenes.add(new Scene("newton-pixelwise-roots-of-unity-" + n, () -> {
+                final Newton newton = new Newton(SIZE, SIZE, null, p);
+                newton.batchRows = false;
+                return newton;
+            }, 0.0, 0.0, 4.0, 256));
+        }
+        return scenes;
+    }
+
+    public static final class Result {
+        public final String name;
+        public final String checksum;
+        public final long millis;
+        public final long iterations;
+
+        Result(String name, String checksum, long millis, long iterations) {
+            this.name = name;
+            this.checksum = checksum;
+            this.millis = millis;
+            this.iterations = iterations;
+        }
+
+        public double iterationsPerSecond() {
+            return iterations * 1000.0 / Math.max(1, millis);
+        }
+    }
+
+    /**
+     * Render {@code scene} on fresh fractals: once untimed to warm up the JIT, then
+     * {@code repeats} times keeping the median time. The iterations are counted in one more
+     * untimed render, as the iterations actually run rather than read off of the values: a
+     * trapped orbit stops well short of its value, and pixels copied by symmetry take none.
+     */
+    static Result run(Scene scene, int repeats) {
+        final long[] millis = new long[repeats];
+        ComplexFractal f = null;
+        for (int r = -1; r < repeats; ++r) {
+            f = scene.create();
+            final long start = System.nanoTime();
+            f.compute();
+            if (r >= 0) millis[r] = (System.nanoTime() - start) / 1_000_000;
+            f.pipeline.shutdown();
+        }
+        Arrays.sort(millis);
+        final ComplexFractal counted = scene.create();
+        final long iterations = counted.profile(counted.viewport(), counted.tileSize()).totalWork();
+        counted.pipeline.shutdown();
+
+        final IterationBuffer buffer = f.getIterations();
+        final MessageDigest sha;
+        try {
+            sha = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        final int[] row = new int[buffer.width];
+        final byte[] bytes = new byte[4 * buffer.width];
+        for (int y = 0; y < buffer.height; ++y) {
+            buffer.getRow(y, 0, row, 0, buffer.width);
+            for (int x = 0; x < buffer.width; ++x) {
+                final int v = row[x];
+                bytes[4 * x] = (byte) (v >>> 24);
+                bytes[4 * x + 1] = (byte) (v >>> 16);
+                bytes[4 * x + 2] = (byte) (v >>> 8);
+                bytes[4 * x + 3] = (byte) v;
+            }
+            sha.update(bytes);
+        }
+        final StringBuilder hex = new StringBuilder();
+        for (byte b : sha.digest()) hex.append(String.format("%02x", b));
+        return new Result(scene.name, hex.toString(), millis[repeats / 2], iterations);
+    }
+
+    /**
+     * @return the relative change in throughput from {@code baseline} to {@code current};
+     * negative means slower
+     */
+    static double change(double baseline, double current) {
+        return (current - baseline) / baseline;
+    }
+
+    /**
+     * Read a flat JSON object of numbers, as written by {@link #writeBaseline(File, List)}
+     */
+    static Map<String, Double> readBaseline(String json) {
+        final Map<String, Double> result = new LinkedHashMap<>();
+        final Matcher m = Pattern.compile("\"([^\"]+)\"\\s*:\\s*([-+0-9.eE]+)").matcher(json);
+        while (m.find()) result.put(m.group(1), Double.parseDouble(m.group(2)));
+        return result;
+    }
+
+    static void writeBaseline(File file, List<Result> results) throws IOException {
+        final StringBuilder sb = new StringBuilder("{\n");
+        for (int i = 0; i < results.size(); ++i) {
+            final Result r = results.get(i);
+            sb.append(String.format(Locale.ROOT, "  \"%s\": %.1f%s%n",
+                    r.name, r.iterationsPerSecond(), i + 1 < results.size() ? "," : ""));
+        }
+        write(file, sb.append("}\n").toString());
+    }
+
+    private static void write(File file, String contents) throws IOException {
+        final File dir = file.getAbsoluteFile().getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) throw new IOException("Could not create " + dir);
+        Files.write(file.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static void main(String[] args) throws IOException {
+        File golden = new File("bench/golden.properties");
+        File baseline = new File("bench/baseline.json");
+        File report = new File("build/reports/scenes.json");
+        double threshold = 0.15;
+        int repeats = 3;
+        boolean update = false;
+        boolean checkBaseline = true;
+        String only = null;
+        for (int i = 0; i < args.length; ++i) {
+            switch (args[i]) {
+                case "--golden": golden = new File(args[++i]); break;
+                case "--baseline": baseline = new File(args[++i]); break;
+                case "--report": report = new File(args[++i]); break;
+                case "--threshold": threshold = Double.parseDouble(args[++i]); break;
+                case "--repeats": repeats = Integer.parseInt(args[++i]); break;
+                case "--scene": only = args[++i]; break;
+                case "--update": update = true; break;
+                case "--no-baseline": checkBaseline = false; break;
+                default:
+                    System.err.println("Unknown argument " + args[i]);
+                    System.exit(2);
+            }
+        }
+
+        final Properties goldenSums = new Properties();
+        if (golden.exists()) {
+            try (Reader in = new InputStreamReader(new FileInputStream(golden), StandardCharsets.UTF_8)) {
+                goldenSums.load(in);
+            }
+        }
+        // A missing baseline would otherwise let any slowdown through unnoticed
+        if (!update && checkBaseline && !baseline.exists()) {
+            System.err.println("No baseline at " + baseline + ". Baselines are machine specific, so record one "
+                    + "with --update (gradle benchmarkScenes -PupdateScenes) on a build without the change under "
+                    + "test, or pass --no-baseline (-PnoBaseline) to check only the checksums.");
+            System.exit(1);
+        }
+        final Map<String, Double> base = checkBaseline && baseline.exists()
+                ? readBaseline(new String(Files.readAllBytes(baseline.toPath()), StandardCharsets.UTF_8))
+                : Collections.emptyMap();
+        if (!checkBaseline) System.out.println("Throughput is recorded but not checked against a baseline");
+
+        final List<Result> results = new ArrayList<>();
+        final List<String> failures = new ArrayList<>();
+        final StringBuilder json = new StringBuilder("{\n  \"threshold\": ").append(threshold).append(",\n  \"scenes\": [\n");
+        for (Scene scene : corpus()) {
+            if (only != null && !scene.name.equals(only)) continue;
+            final Result r = run(scene, repeats);
+            results.add(r);
+
+            final String expected = goldenSums.getProperty(scene.name);
+            final String checksum = expected == null ? "missing" : expected.equals(r.checksum) ? "ok" : "mismatch";
+            final Double before = base.get(scene.name);
+            final double change = before == null ? Double.NaN : change(before, r.iterationsPerSecond());
+            if (!update && "mismatch".equals(checksum)) {
+                failures.add(scene.name + ": checksum " + r.checksum + " does not match golden " + expected);
+            }
+            if (!update && checkBaseline && before == null) {
+                failures.add(scene.name + ": not in baseline " + baseline + "; rerun with --update to record it");
+            }
+            if (!update && change < -threshold) {
+                failures.add(String.format("%s: throughput dropped %.1f%% (%.3g -> %.3g iterations/s)",
+                        scene.name, -100 * change, before, r.iterationsPerSecond()));
+            }
+            System.out.printf("%-32s %6d ms %12.4g it/s %s%s%n", scene.name, r.millis, r.iterationsPerSecond(),
+                    checksum, Double.isNaN(change) ? "" : String.format(" %+.1f%%", 100 * change));
+
+            if (results.size() > 1) json.append(",\n");
+            json.append(String.format(Locale.ROOT, "    {\"name\": \"%s\", \"checksum\": \"%s\", \"golden\": \"%s\", "
+                            + "\"millis\": %d, \"iterations\": %d, \"iterationsPerSecond\": %.1f, \"change\": %s}",
+                    r.name, r.checksum, checksum, r.millis, r.iterations, r.iterationsPerSecond(),
+                    Double.isNaN(change) ? "null" : String.format(Locale.ROOT, "%.4f", change)));
+        }
+        json.append("\n  ],\n  \"passed\": ").append(failures.isEmpty()).append("\n}\n");
+        write(report, json.toString());
+        System.out.println("Wrote " + report);
+
+        if (update) {
+            for (Result r : results) goldenSums.setProperty(r.name, r.checksum);
+            final StringBuilder sb = new StringBuilder("# SHA-256 of each scene's iteration buffer, see SceneBenchmark\n");
+            for (String name : new TreeSet<>(goldenSums.stringPropertyNames())) {
+                sb.append(name).append('=').append(goldenSums.getProperty(name)).append('\n');
+            }
+            write(golden, sb.toString());
+            writeBaseline(baseline, results);
+            System.out.println("Updated " + golden + " and " + baseline);
+        } else if (!failures.isEmpty()) {
+            for (String f : failures) System.err.println("FAILED " + f);
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+}
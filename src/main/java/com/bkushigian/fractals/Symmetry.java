@@ -0,0 +1,154 @@
+package com.bkushigian.fractals;
+
+/**
+ * A finite symmetry group of the complex plane about the origin: the cyclic group of
+ * rotations by multiples of {@code 2 pi / n}, optionally extended by complex conjugation
+ * to the dihedral group.
+ *
+ * Group elements are encoded as ints: element {@code k} for {@code 0 <= k < n} is the
+ * rotation by {@code 2 pi k / n}, and element {@code n + k} is conjugation followed by that
+ * rotation. Element 0 is always the identity.
+ *
+ * The fundamental region is the sector of angles {@code [0, 2 pi / n)} for cyclic groups and
+ * {@code [0, pi / n]} for dihedral groups. Every point can be mapped into it by exactly one
+ * element, found with {@link #reduce(double, double, double[])}.
+ */
+public class Symmetry {
+
+    public static final Symmetry NONE = new Symmetry(1, false);
+
+    /**
+     * Mirror symmetry about the real axis, as in the Mandelbrot set
+     */
+    public static final Symmetry CONJUGATE = new Symmetry(1, true);
+
+    /**
+     * @return the n-fold rotational symmetry group
+     */
+    public static Symmetry cyclic(int n) {
+        return n <= 1 ? NONE : new Symmetry(n, false);
+    }
+
+    /**
+     * @return the n-fold rotational symmetry group extended by conjugation
+     */
+    public static Symmetry dihedral(int n) {
+        return n <= 1 ? CONJUGATE : new Symmetry(n, true);
+    }
+
+    /**
+     * Number of rotations
+     */
+    public final int n;
+
+    /**
+     * Does this group contain complex conjugation?
+     */
+    public final boolean reflection;
+
+    private final double sector;
+    private final double[] cos, sin;
+
+    /**
+     * The rays at multiples of half a sector, {@code 2n + 1} of them going once around
+     */
+    private final double[] rayCos, raySin;
+
+    /**
+     * How far from a ray, relative to its size, a point has to be for {@link #reduce} to
+     * place it by the rays; nearer than that, it uses the angle of the point
+     */
+    private static final double RAY_MARGIN = 1e-9;
+
+    private Symmetry(int n, boolean reflection) {
+        this.n = n;
+        this.reflection = reflection;
+        this.sector = 2 * Math.PI / n;
+        cos = new double[n];
+        sin = new double[n];
+        for (int k = 0; k < n; ++k) {
+            cos[k] = Math.cos(sector * k);
+            sin[k] = Math.sin(sector * k);
+        }
+        rayCos = new double[2 * n + 1];
+        raySin = new double[2 * n + 1];
+        for (int m = 0; m <= 2 * n; ++m) {
+            rayCos[m] = Math.cos(sector / 2 * m);
+            raySin[m] = Math.sin(sector / 2 * m);
+        }
+    }
+
+    /**
+     * @return the number of elements in this group
+     */
+    public int order() {
+        return reflection ? 2 * n : n;
+    }
+
+    public boolean isTrivial() {
+        return order() == 1;
+    }
+
+    /**
+     * Apply group element {@code element} to {@code (re, im)}, writing the result to {@code out}
+     */
+    public void apply(int element, double re, double im, double[] out) {
+        if (element >= n) {
+            im = -im;
+            element -= n;
+        }
+        out[0] = re * cos[element] - im * sin[element];
+        out[1] = re * sin[element] + im * cos[element];
+    }
+
+    public int inverse(int element) {
+        if (element >= n) return element;   // reflections are involutions
+        return (n - element) % n;
+    }
+
+    /**
+     * Map {@code (re, im)} into the fundamental region, writing the image to {@code out}.
+     * @return the element that does the mapping; 0 iff the point is already in the region
+     */
+    public int reduce(double re, double im, double[] out) {
+        if (isTrivial()) {
+            out[0] = re;
+            out[1] = im;
+            return 0;
+        }
+        // Find the half sector the point is in by which side of each ray it lies on, which is
+        // much cheaper than its angle. Points too near a ray to be sure of agree with the
+        // angle only approximately, so those fall back on it.
+        final double margin = RAY_MARGIN * (Math.abs(re) + Math.abs(im));
+        for (int m = 0; m < 2 * n; ++m) {
+            if (rayCos[m] * im - raySin[m] * re > margin && re * raySin[m + 1] - im * rayCos[m + 1] > margin) {
+                final int k = m / 2;
+                final int element = reflection && m % 2 == 1 ? n + (k + 1) % n : (n - k) % n;
+                apply(element, re, im, out);
+                return element;
+            }
+        }
+        return reduceByAngle(re, im, out);
+    }
+
+    /**
+     * {@link #reduce(double, double, double[])}, going by the angle of the point
+     */
+    int reduceByAngle(double re, double im, double[] out) {
+        double theta = Math.atan2(im, re);
+        if (theta < 0) theta += 2 * Math.PI;
+        final int k = Math.min(n - 1, (int) (theta / sector));
+        final double phi = theta - k * sector;
+        final int element = reflection && phi > sector / 2
+                ? n + (k + 1) % n
+                : (n - k) % n;
+        apply(element, re, im, out);
+        return element;
+    }
+
+    @Override
+    public String toString() {
+        if (isTrivial()) return "Symmetry{none}";
+        return "Symmetry{" + (reflection ? "D" : "C") + n + '}';
+    }
+}
@@ -0,0 +1,122 @@
+package com.bkushigian.fractals;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A rectangular block of pixels rendered as one unit of work. Workers fill in its values,
+ * which live in the {@link IterationBuffer} of the whole frame, and hand the finished tile
+ * back to the GUI thread.
+ */
+public class Tile {
+    public final int x, y, width, height;
+
+    /**
+     * Marks a pixel whose value is not known yet; these are not drawn. Every
+     * {@link IterationBuffer} can hold it.
+     */
+    public static final int EMPTY = Integer.MIN_VALUE;
+
+    /**
+     * The frame this tile is a part of
+     */
+    public final TileGrid grid;
+
+    /**
+     * Orbit state of the pixels that hit the iteration limit, if the fractal supports
+     * resuming them. Written only by the worker rendering this tile.
+     */
+    OrbitStore orbits;
+
+    /**
+     * The pixels of this tile that are copied from a symmetric pixel elsewhere in the frame,
+     * as triples of pixel index, frame position {@code y * width + x} of the source, and
+     * symmetry element. Worked out by the first copying pass, and reused by later stages.
+     */
+    int[] mirrors;
+
+    /**
+     * The render generation this tile belongs to; once {@code current} moves past it the
+     * tile is stale and any work on it is wasted.
+     */
+    final int generation;
+    private final AtomicInteger current;
+
+    Tile(int x, int y, int width, int height, int generation, AtomicInteger current, TileGrid grid) {
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+        this.generation = generation;
+        this.current = current;
+        this.grid = grid;
+    }
+
+    /**
+     * @return the value of the pixel in column {@code col} and row {@code row} of this tile
+     */
+    public int get(int col, int row) {
+        return grid.values.get(x + col, y + row);
+    }
+
+    public void set(int col, int row, int value) {
+        grid.values.set(x + col, y + row, value);
+    }
+
+    /**
+     * @param pixel a pixel index within this tile, {@code row * width + col}
+     */
+    public int get(int pixel) {
+        return get(pixel % width, pixel / width);
+    }
+
+    public void set(int pixel, int value) {
+        set(pixel % width, pixel / width, value);
+    }
+
+    /**
+     * @return the number of pixels in this tile
+     */
+    public int size() {
+        return width * height;
+    }
+
+    /**
+     * Copy the values of this tile into {@code dst}, row-major
+     */
+    public void getValues(int[] dst) {
+        for (int row = 0; row < height; ++row) grid.values.getRow(y + row, x, dst, row * width, width);
+    }
+
+    /**
+     * Set the values of this tile from {@code src}, row-major
+     */
+    public void setValues(int[] src) {
+        for (int row = 0; row < height; ++row) grid.values.setRow(y + row, x, src, row * width, width);
+    }
+
+    /**
+     * @return true if a newer render has been requested since this tile was created
+     */
+    public boolean isCancelled() {
+        return current.get() != generation;
+    }
+
+    /**
+     * @return true if work on this tile should stop: either it was cancelled, or it is
+     * speculative and real work is waiting for a worker
+     */
+    public boolean isStale() {
+        return isCancelled() || grid.speculative && grid.preempt.get() > 0;
+    }
+
+    @Override
+    public String toString() {
+        return "Tile{" +
+                "x=" + x +
+                ", y=" + y +
+                ", width=" + width +
+                ", height=" + height +
+                ", generation=" + generation +
+                '}';
+    }
+}
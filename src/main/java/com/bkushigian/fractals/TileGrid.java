@@ -0,0 +1,80 @@
+package com.bkushigian.fractals;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * All of the tiles making up one frame, so that a tile can read pixels rendered by its
+ * neighbours in an earlier pass.
+ */
+public class TileGrid {
+    final int tileSize;
+
+    /**
+     * The view this frame renders
+     */
+    public final Viewport view;
+    final int width, height;
+    private final int cols;
+    private final Tile[] tiles;
+
+    /**
+     * The values of every pixel of the frame, which the tiles are views of
+     */
+    final IterationBuffer values;
+
+    /**
+     * Speculative frames are rendered ahead of time in case the user moves to them. Their
+     * tiles give way whenever {@code preempt} is non-zero, which is while real tiles are
+     * waiting for a worker.
+     */
+    final boolean speculative;
+    final AtomicInteger preempt;
+
+    TileGrid(Viewport view, int tileSize, int maxValue, int generation, AtomicInteger current) {
+        this(view, tileSize, maxValue, generation, current, null);
+    }
+
+    /**
+     * @param maxValue the largest value a pixel can take, which picks the width of the buffer
+     */
+    TileGrid(Viewport view, int tileSize, int maxValue, int generation, AtomicInteger current,
+             AtomicInteger preempt) {
+        this.view = view;
+        this.speculative = preempt != null;
+        this.preempt = preempt;
+        this.width = view.width;
+        this.height = view.height;
+        this.tileSize = tileSize;
+        this.cols = (width + tileSize - 1) / tileSize;
+        this.values = IterationBuffer.allocate(width, height, maxValue);
+        final int rows = (height + tileSize - 1) / tileSize;
+        tiles = new Tile[rows * cols];
+        for (int r = 0; r < rows; ++r) {
+            for (int c = 0; c < cols; ++c) {
+                final int x = c * tileSize, y = r * tileSize;
+                tiles[r * cols + c] = new Tile(x, y,
+                        Math.min(tileSize, width - x),
+                        Math.min(tileSize, height - y),
+                        generation, current, this);
+            }
+        }
+    }
+
+    public Tile[] tiles() {
+        return tiles;
+    }
+
+    /**
+     * @return the tile containing pixel {@code (x, y)}
+     */
+    public Tile tileAt(int x, int y) {
+        return tiles[(y / tileSize) * cols + x / tileSize];
+    }
+
+    /**
+     * @return the current value of pixel {@code (x, y)}
+     */
+    public int get(int x, int y) {
+        return values.get(x, y);
+    }
+}
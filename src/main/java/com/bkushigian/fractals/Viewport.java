@@ -0,0 +1,106 @@
+package com.bkushigian.fractals;
+
+import java.util.Objects;
+
+/**
+ * An immutable snapshot of the region of the complex plane being rendered. Render workers
+ * only ever read from a viewport, so the GUI is free to keep changing the fractal's own
+ * fields while a render is in flight.
+ */
+public class Viewport {
+    /**
+     * Left-most real value and top-most imaginary value
+     */
+    public final double xMin, yMax;
+
+    /**
+     * The difference in x/y values between adjacent pixels
+     */
+    public final double delta;
+
+    public final int width, height;
+
+    public final int maxIterations;
+
+    /**
+     * Fractal specific parameters besides the viewport that determine pixel values, or null
+     */
+    public final Object parameters;
+
+    public Viewport(double xMin, double yMax, double delta, int width, int height, int maxIterations) {
+        this(xMin, yMax, delta, width, height, maxIterations, null);
+    }
+
+    public Viewport(double xMin, double yMax, double delta, int width, int height, int maxIterations,
+                    Object parameters) {
+        this.xMin = xMin;
+        this.yMax = yMax;
+        this.delta = delta;
+        this.width = width;
+        this.height = height;
+        this.maxIterations = maxIterations;
+        this.parameters = parameters;
+    }
+
+    /**
+     * @return the view {@code span} wide centered on {@code (centerRe, centerIm)}, in the same
+     * way as a fractal's own view: the center falls on the corner of the pixels at
+     * {@code (width / 2, height / 2)}
+     */
+    public static Viewport centered(double centerRe, double centerIm, double span, int width, int height,
+                                    int maxIterations, Object parameters) {
+        final double delta = span / width;
+        return new Viewport(centerRe - delta * width / 2, centerIm + delta * height / 2, delta,
+                width, height, maxIterations, parameters);
+    }
+
+    /**
+     * @return the real part of the points in pixel column {@code x}
+     */
+    public double re(int x) {
+        return xMin + delta * x;
+    }
+
+    /**
+     * @return the imaginary part of the points in pixel row {@code y}
+     */
+    public double im(int y) {
+        return yMax - delta * y;
+    }
+
+    public double xMax() {
+        return xMin + delta * width;
+    }
+
+    public double yMin() {
+        return yMax - delta * height;
+    }
+
+    /**
+     * @return true if {@code o} covers exactly the same pixels as this, ignoring maxIterations
+     */
+    public boolean sameRegion(Viewport o) {
+        return o != null && xMin == o.xMin && yMax == o.yMax && delta == o.delta
+                && width == o.width && height == o.height;
+    }
+
+    /**
+     * @return true if {@code o} renders the same pixels of the same fractal as this,
+     * ignoring maxIterations
+     */
+    public boolean sameScene(Viewport o) {
+        return sameRegion(o) && Objects.equals(parameters, o.parameters);
+    }
+
+    @Override
+    public String toString() {
+        return "Viewport{" +
+                "xMin=" + xMin +
+                ", yMax=" + yMax +
+                ", delta=" + delta +
+                ", width=" + width +
+                ", height=" + height +
+                ", maxIterations=" + maxIterations +
+                '}';
+    }
+}
@@ -0,0 +1,121 @@
+package com.bkushigian.fractals;
+
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BatchRendererTest {
+
+    @Test
+    public void test_parse() {
+        final BatchRenderer.Job job = BatchRenderer.parse(
+                "fractal=julia:-0.8,0.156 center=0,0.5 span=2 size=40,30 iterations=500 colors=bw out=a/b.png", 7);
+        assertEquals(7, job.line);
+        assertEquals("julia:-0.8,0.156", job.scene);
+        assertEquals(40, job.width);
+        assertEquals(30, job.height);
+        assertEquals(500, job.maxIterations);
+        assertEquals(new File("a/b.png"), job.out);
+        final Viewport view = job.view();
+        // Centered the same way as the GUI's views
+        assertEquals(0.0, view.re(20), 1e-12);
+        assertEquals(0.5, view.im(15), 1e-12);
+        assertEquals(2.0 / 40, view.delta, 1e-15);
+
+        // Same view in other colors shares a render
+        assertEquals(job.renderKey(), BatchRenderer.parse(
+                "out=c.png size=40,30 iterations=500 span=2 center=0,0.5 fractal=julia:-0.8,0.156", 8).renderKey());
+        assertNotEquals(job.renderKey(), BatchRenderer.parse(
+                "fractal=julia:-0.8,0.156 center=0,0.5 span=2 size=40,30 iterations=501 out=a/b.png", 9).renderKey());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_parseRejectsMissingOutput() {
+        BatchRenderer.parse("fractal=mandelbrot size=10,10", 1);
+    }
+
+    @Test
+    public void test_run() throws IOException, InterruptedException {
+        final File dir = Files.createTempDirectory("batch").toFile();
+        final List<BatchRenderer.Job> jobs = new ArrayList<>();
+        jobs.add(BatchRenderer.parse("size=60,40 iterations=100 out=" + new File(dir, "a.png"), 1));
+        jobs.add(BatchRenderer.parse("size=60,40 iterations=100 colors=bw out=" + new File(dir, "b.png"), 2));
+        jobs.add(BatchRenderer.parse("fractal=newton:5 span=4 center=0,0 size=50,50 iterations=64 out="
+                + new File(dir, "c.png"), 3));
+        jobs.add(BatchRenderer.parse("fractal=nonsense size=5,5 out=" + new File(dir, "d.png"), 4));
+
+        // Too little memory for two renders at once; they have to take turns
+        final BatchRenderer batch = new BatchRenderer(2, 8 * 60 * 40);
+        assertEquals(3, batch.run(jobs));
+        assertTrue(jobs.get(0).shared);
+        assertTrue(jobs.get(1).shared);
+        assertFalse(jobs.get(2).shared);
+        assertNotNull(jobs.get(3).error());
+
+        final ComplexFractal mandel = RenderWorker.createFractal("mandelbrot");
+        final Viewport view = jobs.get(0).view();
+        final int[] values = RenderWorker.renderTile(mandel, view, 0, 0, 60, 40);
+        final BufferedImage a = ImageIO.read(jobs.get(0).out), b = ImageIO.read(jobs.get(1).out);
+        assertEquals(60, a.getWidth());
+        assertEquals(40, a.getHeight());
+        final ColorScheme bw = new ColorScheme.BWColorScheme();
+        for (int y = 0; y < 40; ++y) {
+            for (int x = 0; x < 60; ++x) {
+                final int v = values[y * 60 + x];
+                assertEquals(v == 100 ? 0 : bw.getColorInt(v), b.getRGB(x, y) & 0xFFFFFF);
+                if (v == 100) assertEquals(0, a.getRGB(x, y) & 0xFFFFFF);
+            }
+        }
+        assertNotNull(ImageIO.read(jobs.get(2).out));
+        mandel.pipeline.shutdown();
+
+        final File summary = new File(dir, "summary.json");
+        BatchRenderer.writeSummary(summary, jobs, 3, 1_000_000);
+        final String json = new String(Files.readAllBytes(summary.toPath()), "UTF-8");
+        assertTrue(json.contains("\"renders\": 3"));
+        assertTrue(json.contains("\"shared\": true"));
+    }
+
+    @Test
+    public void test_resumesFromJournal() throws IOException, InterruptedException {
+        final File dir = Files.createTempDirectory("batch").toFile();
+        final BatchRenderer.Job full = BatchRenderer.parse("fractal=julia:-0.8,0.156 span=3 center=0,0 size=70,50 "
+                + "iterations=300 out=" + new File(dir, "full.png"), 1);
+        final BatchRenderer.Job resumed = BatchRenderer.parse("fractal=julia:-0.8,0.156 span=3 center=0,0 size=70,50 "
+                + "iterations=300 out=" + new File(dir, "resumed.png"), 1);
+        new BatchRenderer(2, 1 << 20).run(Collections.singletonList(full));
+        assertFalse(BatchRenderer.journalFile(full).exists());
+
+        // A run that was stopped after checkpointing every other tile
+        final Viewport view = resumed.view();
+        final ComplexFractal julia = RenderWorker.createFractal(resumed.scene);
+        final TileGrid grid = julia.pipeline.renderNow(view);
+        int journaled = 0;
+        try (RenderJournal j = RenderJournal.open(BatchRenderer.journalFile(resumed), resumed.scene, view,
+                julia.tileSize())) {
+            for (int i = 0; i < grid.tiles().length; i += 2) {
+                j.record(grid.tiles()[i]);
+                ++journaled;
+            }
+        }
+        julia.pipeline.shutdown();
+
+        new BatchRenderer(2, 1 << 20).run(Collections.singletonList(resumed));
+        assertNull(resumed.error());
+        assertEquals(journaled, resumed.resumedTiles);
+        assertFalse(BatchRenderer.journalFile(resumed).exists());
+        final BufferedImage a = ImageIO.read(full.out), b = ImageIO.read(resumed.out);
+        for (int y = 0; y < 50; ++y) {
+            for (int x = 0; x < 70; ++x) assertEquals(a.getRGB(x, y), b.getRGB(x, y));
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.bkushigian.fractals;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class BuddhabrotTest {
+
+    @Test
+    public void test_inMainBulbs() {
+        assertTrue(Buddhabrot.inMainBulbs(0, 0));
+        assertTrue(Buddhabrot.inMainBulbs(0.2, 0.1));
+        assertTrue(Buddhabrot.inMainBulbs(-1, 0));
+        assertFalse(Buddhabrot.inMainBulbs(0.3, 0));
+        assertFalse(Buddhabrot.inMainBulbs(-1.3, 0));
+        assertFalse(Buddhabrot.inMainBulbs(-0.75, 0.3));
+
+        // Nothing rejected may escape
+        double[] orbit = new double[2000];
+        for (int i = 0; i < 200; ++i) {
+            for (int j = 0; j < 200; ++j) {
+                double re = -2 + i * 0.015, im = -1.5 + j * 0.015;
+                if (Buddhabrot.inMainBulbs(re, im)) {
+                    assertEquals(-1, Buddhabrot.escapingOrbit(re, im, 1000, orbit));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void test_escapingOrbit() {
+        double[] orbit = new double[20];
+        assertEquals(-1, Buddhabrot.escapingOrbit(0, 0, 10, orbit));
+        // 0 -> 1 -> 2 -> 5
+        assertEquals(3, Buddhabrot.escapingOrbit(1, 0, 10, orbit));
+        assertEquals(2.0, orbit[2], 0.0);
+        assertEquals(5.0, orbit[4], 0.0);
+    }
+
+    @Test
+    public void test_checkpoint() throws IOException {
+        Viewport view = new Viewport(-2, 1.5, 0.5, 6, 6, 100, 5);
+        OrbitHistogram h = new OrbitHistogram(view, 5);
+        float[] local = new float[36];
+        local[7] = 2.5f;
+        local[35] = 1f;
+        h.merge(local, 1000);
+        assertEquals(0f, local[7], 0f);
+        local[7] = 1f;
+        h.merge(local, 500);
+
+        File file = File.createTempFile("histogram", ".bin");
+        file.deleteOnExit();
+        h.save(file);
+        OrbitHistogram loaded = OrbitHistogram.load(file);
+        assertEquals(1500, loaded.samples());
+        assertEquals(5, loaded.minIterations);
+        assertEquals(3.5, loaded.get(1, 1), 0.0);
+        assertEquals(1.0, loaded.get(5, 5), 0.0);
+        assertEquals(3.5, loaded.max(), 0.0);
+        assertTrue(loaded.view.sameScene(view));
+
+        // Later checkpoints replace the earlier one
+        local[0] = 4f;
+        h.merge(local, 250);
+        h.save(file);
+        loaded = OrbitHistogram.load(file);
+        assertEquals(1750, loaded.samples());
+        assertEquals(4.0, loaded.max(), 0.0);
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+    }
+}
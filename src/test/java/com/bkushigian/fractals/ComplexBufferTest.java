@@ -0,0 +1,54 @@
+package com.bkushigian.fractals;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ComplexBufferTest {
+
+    private static ComplexBuffer of(Complex... zs) {
+        ComplexBuffer b = new ComplexBuffer(zs.length);
+        for (int i = 0; i < zs.length; ++i) b.set(i, zs[i]);
+        return b;
+    }
+
+    private static void assertClose(Complex expected, Complex actual) {
+        assertEquals(expected.re, actual.re, 1e-12);
+        assertEquals(expected.im, actual.im, 1e-12);
+    }
+
+    @Test
+    public void test_arithmetic() {
+        Complex[] a = {Complex.of(1, 2), Complex.of(-3, 0.5), Complex.of(0, -1)};
+        Complex[] b = {Complex.of(2, -1), Complex.of(0.25, 4), Complex.of(-1, -1)};
+        ComplexBuffer x = of(a), y = of(b);
+
+        x.multiply(y, 0, 3);
+        for (int i = 0; i < 3; ++i) assertClose(a[i].times(b[i]), x.get(i));
+
+        x.divide(y, 0, 3);
+        for (int i = 0; i < 3; ++i) assertClose(a[i], x.get(i));
+
+        x.multiplyAdd(y, y, 0, 3);
+        for (int i = 0; i < 3; ++i) assertClose(a[i].times(b[i]).plus(b[i]), x.get(i));
+
+        x = of(a);
+        x.square(0, 3);
+        for (int i = 0; i < 3; ++i) assertClose(a[i].times(a[i]), x.get(i));
+
+        double[] norms = new double[3];
+        of(a).normSquared(norms, 0, 3);
+        for (int i = 0; i < 3; ++i) assertEquals(a[i].argSquared(), norms[i], 0.0);
+    }
+
+    @Test
+    public void test_range() {
+        ComplexBuffer x = new ComplexBuffer(4);
+        x.fill(1, 1, 0, 4);
+        x.add(2, -1, 1, 3);
+        assertEquals(Complex.of(1, 1), x.get(0));
+        assertEquals(Complex.of(3, 0), x.get(1));
+        assertEquals(Complex.of(3, 0), x.get(2));
+        assertEquals(Complex.of(1, 1), x.get(3));
+    }
+}
@@ -0,0 +1,148 @@
+package com.bkushigian.fractals;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.*;
+
+public class ComplexFractalTest {
+
+    /**
+     * Render at {@code from} iterations, raise the cap to {@code to} so that the render
+     * resumes, and check every pixel against a render at {@code to} from scratch
+     */
+    private static void assertResumeMatchesFreshRender(Supplier<ComplexFractal> create, int from, int to) {
+        final ComplexFractal resumed = create.get();
+        resumed.maxIterations = from;
+        resumed.updated = true;
+        resumed.compute();
+        resumed.maxIterations = to;
+        resumed.updated = true;
+        resumed.compute();
+
+        final ComplexFractal fresh = create.get();
+        fresh.maxIterations = to;
+        fresh.updated = true;
+        fresh.compute();
+
+        final IterationBuffer expected = fresh.getIterations(), actual = resumed.getIterations();
+        int wrong = 0;
+        for (int y = 0; y < expected.height; ++y) {
+            for (int x = 0; x < expected.width; ++x) {
+                if (expected.get(x, y) != actual.get(x, y)) ++wrong;
+            }
+        }
+        assertEquals(resumed.getFractalName() + " pixels differing from a fresh render", 0, wrong);
+        resumed.pipeline.shutdown();
+        fresh.pipeline.shutdown();
+    }
+
+    @Test
+    public void test_resumeView() {
+        // Wholly above the real axis, so no pixel is copied from another
+        assertResumeMatchesFreshRender(() -> {
+            final Mandelbrot m = new Mandelbrot(160, 120);
+            m.yCenter = 1.5;
+            m.calculateDeltas();
+            return m;
+        }, 30, 500);
+    }
+
+    @Test
+    public void test_resumeSymmetricView() {
+        // Straddles the real axis, so half the frame is copied from the other half
+        assertResumeMatchesFreshRender(() -> new Mandelbrot(201, 201), 40, 300);
+        assertResumeMatchesFreshRender(() -> new Julia(201, 201, null, new Complex(-0.75, 0)), 40, 300);
+    }
+
+    @Test
+    public void test_resumeNewton() {
+        // Dihedral symmetry, and none at all
+        assertResumeMatchesFreshRender(() -> new Newton(121, 121, null, ComplexPolynomial.nthRootsOfUnity(3)), 5, 60);
+        assertResumeMatchesFreshRender(() -> new Newton(121, 121, null,
+                ComplexPolynomial.of(Complex.i, Complex.one, Complex.one)), 5, 60);
+    }
+
+    @Test
+    public void test_reusedOrbitsInPixelOrder() {
+        final Mandelbrot m = new Mandelbrot(100, 80);
+        // Inside the main cardioid at the left edge, so the pixels traced there don't resolve
+        m.xMin = -0.5;
+        m.xMax = 0.5;
+        m.calculateDeltas();
+        m.compute();
+        final Viewport from = m.viewport();
+        // Panned left, so each row traces its first pixels and reuses the rest
+        final TileGrid grid = m.pipeline.renderNow(new Viewport(from.re(-5), from.yMax, from.delta, from.width,
+                from.height, from.maxIterations, from.parameters));
+        int orbits = 0;
+        for (Tile t : grid.tiles()) {
+            for (int i = 0; i < t.orbits.size(); ++i) {
+                if (i > 0) assertTrue(t.toString(), t.orbits.pixel(i - 1) < t.orbits.pixel(i));
+                assertEquals(i, t.orbits.indexOf(t.orbits.pixel(i)));
+                ++orbits;
+            }
+        }
+        assertTrue(orbits > 0);
+        m.pipeline.shutdown();
+    }
+
+    /**
+     * A Mandelbrot set rendered and shown, ready to reproject
+     */
+    private static Mandelbrot shownMandelbrot() {
+        final Mandelbrot m = new Mandelbrot(100, 80);
+        m.compute();
+        // The first paint creates the on-screen frame
+        m.paintComponent(new BufferedImage(100, 80, BufferedImage.TYPE_INT_RGB).getGraphics());
+        return m;
+    }
+
+    @Test
+    public void test_reprojectWholePixelPan() {
+        final Mandelbrot m = shownMandelbrot();
+        final Viewport from = m.viewport();
+        final IterationBuffer old = m.getIterations().copy(0);
+        m.reproject(new Viewport(from.re(7), from.im(3), from.delta, from.width, from.height,
+                from.maxIterations, from.parameters));
+        for (int y = 0; y < from.height; ++y) {
+            for (int x = 0; x < from.width; ++x) {
+                final boolean inside = x + 7 < from.width && y + 3 < from.height;
+                assertEquals("(" + x + ", " + y + ")", !inside, m.isProvisional(x, y));
+                if (inside) assertEquals(old.get(x + 7, y + 3), m.getIterations().get(x, y));
+            }
+        }
+        m.pipeline.shutdown();
+    }
+
+    @Test
+    public void test_reprojectBetweenPixels() {
+        final Mandelbrot m = shownMandelbrot();
+        final Viewport from = m.viewport();
+        // Half a pixel across, so no pixel lands on an old one
+        m.reproject(new Viewport(from.xMin + from.delta * 2.5, from.yMax, from.delta, from.width, from.height,
+                from.maxIterations, from.parameters));
+        assertEquals(1.0, m.provisionalFraction(), 0.0);
+        m.pipeline.shutdown();
+    }
+
+    @Test
+    public void test_reprojectNewValues() {
+        Mandelbrot m = shownMandelbrot();
+        Viewport from = m.viewport();
+        m.reproject(new Viewport(from.xMin, from.yMax, from.delta, from.width, from.height,
+                from.maxIterations + 100, from.parameters));
+        assertEquals(1.0, m.provisionalFraction(), 0.0);
+        m.pipeline.shutdown();
+
+        // Panned by whole pixels, but the values may all have changed
+        m = shownMandelbrot();
+        from = m.viewport();
+        m.reproject(new Viewport(from.re(4), from.yMax, from.delta, from.width, from.height,
+                from.maxIterations, "other parameters"));
+        assertEquals(1.0, m.provisionalFraction(), 0.0);
+        m.pipeline.shutdown();
+    }
+}
@@ -89,4 +89,59 @@ public class ComplexPolynomialTest {
         assertEquals(dp, p.computeDerivative());
     }
 
-}
\ No newline at end of file
+    @Test
+    public void test_findRoots() {
+        // p = (z - 1)(z - 2) = 2 - 3z + z^2
+        Complex[] roots = ComplexPolynomial.of(Complex.of(2, 0), Complex.of(-3, 0), Complex.one).findRoots();
+        assertEquals(2, roots.length);
+        assertEquals(3.0, roots[0].re + roots[1].re, 0.0001);
+        assertEquals(2.0, roots[0].times(roots[1]).re, 0.0001);
+        assertEquals(0.0, roots[0].im, 0.0001);
+        assertEquals(0.0, roots[1].im, 0.0001);
+    }
+
+    @Test
+    public void test_findRootsOfUnity() {
+        for (int n = 1; n <= 12; ++n) {
+            ComplexPolynomial p = ComplexPolynomial.nthRootsOfUnity(n);
+            Complex[] roots = p.findRoots();
+            assertEquals(n, roots.length);
+            for (Complex r : roots) {
+                assertEquals(1.0, r.arg(), 0.0001);
+                assertEquals(0.0, p.at(r).arg(), 0.0001);
+            }
+        }
+    }
+
+    @Test
+    public void test_taylorCoefficients() {
+        // p = 1 + z + z^2 around z = 1: 3 + 3(z - 1) + (z - 1)^2
+        ComplexPolynomial p = ComplexPolynomial.of(Complex.one, Complex.one, Complex.one);
+        Complex[] t = p.taylorCoefficients(Complex.one);
+        assertEquals(Complex.of(3, 0), t[0]);
+        assertEquals(Complex.of(3, 0), t[1]);
+        assertEquals(Complex.of(1, 0), t[2]);
+    }
+
+
+    @Test
+    public void test_atBatch() {
+        // p = 2 - iz + z^3
+        ComplexPolynomial p = ComplexPolynomial.of(Complex.of(2, 0), Complex.negI, Complex.zero, Complex.one);
+        ComplexPolynomial dp = p.computeDerivative();
+        ComplexBuffer z = new ComplexBuffer(16);
+        for (int i = 0; i < 16; ++i) z.set(i, Math.cos(i), 0.5 * i - 4);
+        ComplexBuffer value = new ComplexBuffer(16), derivative = new ComplexBuffer(16), only = new ComplexBuffer(16);
+        p.at(z, value, derivative, 0, 16);
+        p.at(z, only, 2, 16);
+        for (int i = 0; i < 16; ++i) {
+            Complex expected = p.at(z.get(i));
+            double tolerance = 1e-12 * Math.max(1, expected.arg());
+            assertEquals(expected.re, value.re[i], tolerance);
+            assertEquals(expected.im, value.im[i], tolerance);
+            assertEquals(dp.at(z.get(i)).re, derivative.re[i], tolerance);
+            assertEquals(dp.at(z.get(i)).im, derivative.im[i], tolerance);
+            if (i >= 2) assertEquals(value.get(i), only.get(i));
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.bkushigian.fractals;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class CostMapTest {
+
+    @Test
+    public void test_mandelbrotWorkIsEscapeTime() {
+        final Mandelbrot mandel = new Mandelbrot(10, 10);
+        // Straddles the real axis, so the pixels below it are copied from the ones above
+        final Viewport view = new Viewport(-2.1, 0.9, 0.02, 150, 70, 500);
+        final CostMap costs = mandel.profile(view, 32);
+        int computed = 0, copied = 0;
+        for (int y = 0; y < view.height; ++y) {
+            for (int x = 0; x < view.width; ++x) {
+                final int work = costs.work(x, y);
+                if (work == 0) {
+                    ++copied;
+                    continue;
+                }
+                // Deferred stages add up to the whole orbit
+                assertEquals(mandel.calculateIterations(new Complex(view.re(x), view.im(y)), 500), work);
+                ++computed;
+            }
+        }
+        assertTrue(computed > copied && copied > 0);
+        assertEquals(5, costs.tileColumns());
+        assertEquals(3, costs.tileRows());
+        for (int r = 0; r < costs.tileRows(); ++r) {
+            for (int c = 0; c < costs.tileColumns(); ++c) assertTrue(costs.tileNanos(c, r) > 0);
+        }
+        assertTrue(costs.wallNanos() >= costs.tileNanosQuantile(1));
+        mandel.pipeline.shutdown();
+    }
+
+    @Test
+    public void test_trappedOrbitsCountIterationsRun() {
+        final Julia julia = new Julia(10, 10, null, new Complex(-0.123, 0.745));
+        final Viewport view = new Viewport(-1.5, 1.2, 0.03, 100, 80, 2000, julia.renderParameters());
+        final CostMap costs = julia.profile(view, 64);
+        int interior = 0;
+        for (int y = 0; y < view.height; ++y) {
+            for (int x = 0; x < view.width; ++x) {
+                if (julia.calculateIterations(new Complex(view.re(x), view.im(y)), 2000) != 2000) continue;
+                // Interior pixels fall into the trap long before the limit
+                assertTrue(costs.work(x, y) < 2000);
+                ++interior;
+            }
+        }
+        assertTrue(interior > 100);
+        julia.pipeline.shutdown();
+    }
+
+    @Test
+    public void test_newtonIterations() throws IOException {
+        final Newton newton = new Newton(10, 10, null, ComplexPolynomial.nthRootsOfUnity(5));
+        final Viewport view = new Viewport(-2, 2, 0.05, 80, 80, 256, newton.renderParameters());
+        final CostMap costs = newton.profile(view, 64);
+        int computed = 0;
+        for (int y = 0; y < view.height; ++y) {
+            for (int x = 0; x < view.width; ++x) {
+                final int work = costs.work(x, y);
+                if (work == 0) continue;
+                final int value = newton.calculateIterations(new Complex(view.re(x), view.im(y)), 256);
+                if (value >= 0) assertEquals(NewtonApproximator.iterationsOf(value), work);
+                ++computed;
+            }
+        }
+        assertTrue(computed > 0);
+
+        final File base = new File(Files.createTempDirectory("costs").toFile(), "newton");
+        costs.write(base);
+        assertTrue(new File(base.getPath() + ".png").length() > 0);
+        final String json = new String(Files.readAllBytes(new File(base.getPath() + ".json").toPath()), StandardCharsets.UTF_8);
+        assertTrue(json.contains("\"fractal\": \"newton\""));
+        assertTrue(json.contains("\"totalIterations\": " + costs.totalWork()));
+        newton.pipeline.shutdown();
+    }
+}
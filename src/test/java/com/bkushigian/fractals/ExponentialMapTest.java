@@ -0,0 +1,54 @@
+package com.bkushigian.fractals;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ExponentialMapTest {
+
+    @Test
+    public void test_stripSamples() {
+        final Mandelbrot mandel = new Mandelbrot(10, 10);
+        mandel.maxIterations = 200;
+        final ExponentialMap map = new ExponentialMap(mandel, -0.75, 0.1, 2, 0.01, 64);
+        assertEquals(2, map.radius(0), 1e-12);
+        assertTrue(map.radius(map.rows - 1) <= 0.01);
+        // Square samples: a row step matches a column step
+        assertEquals(2 * Math.PI / 64, Math.log(map.radius(0) / map.radius(1)), 1e-12);
+
+        map.render(2);
+        for (int row = 0; row < map.rows; row += 7) {
+            for (int col = 0; col < map.columns; ++col) {
+                assertEquals(mandel.calculateIterations(map.point(col, row), 200), map.strip().get(col, row));
+            }
+        }
+        mandel.pipeline.shutdown();
+    }
+
+    @Test
+    public void test_framesMatchDirectRender() {
+        final Mandelbrot mandel = new Mandelbrot(10, 10);
+        mandel.maxIterations = 200;
+        final int width = 80, height = 60;
+        final ExponentialMap map = ExponentialMap.forZoom(mandel, -0.7436, 0.1318, 3, 100, width, height);
+        map.render(2);
+        final ExponentialMap.Resampler resampler = map.resampler(width, height);
+        final int[] values = new int[width * height];
+        for (int f = 0; f < 5; ++f) {
+            final double radius = map.frameRadius(f, 5, map.outerRadius / 100);
+            resampler.frame(radius, values);
+            final Viewport view = map.frameView(radius, width, height);
+            int same = 0;
+            for (int y = 0; y < height; ++y) {
+                for (int x = 0; x < width; ++x) {
+                    final int expected = mandel.calculateIterations(new Complex(view.re(x), view.im(y)), 200);
+                    if (values[y * width + x] == expected) ++same;
+                }
+            }
+            // Samples are within a pixel of the pixels they stand in for, so only pixels on
+            // sharp edges should differ
+            assertTrue("frame " + f + ": " + same, same > 0.8 * width * height);
+        }
+        mandel.pipeline.shutdown();
+    }
+}
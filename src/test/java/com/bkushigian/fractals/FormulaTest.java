@@ -0,0 +1,81 @@
+package com.bkushigian.fractals;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FormulaTest {
+
+    private static int iterate(Formula.Kernel k, double cRe, double cIm, int max) {
+        return k.iterate(cRe, cIm, new double[]{cRe, cIm}, 0, max);
+    }
+
+    /**
+     * Check that two kernels agree on a grid of points around the origin
+     */
+    private static void assertSameOrbits(Formula.Kernel expected, Formula.Kernel actual) {
+        for (int i = 0; i < 40; ++i) {
+            for (int j = 0; j < 40; ++j) {
+                double re = -2.0 + i * 0.1, im = -2.0 + j * 0.1;
+                assertEquals(re + "+" + im + "i", iterate(expected, re, im, 200), iterate(actual, re, im, 200));
+            }
+        }
+    }
+
+    @Test
+    public void test_specializedKernels() {
+        assertTrue(Formula.parse("z^2 + c").compile() instanceof Formula.Quadratic);
+        assertTrue(Formula.parse("z*z + c").compile() instanceof Formula.Quadratic);
+        assertTrue(Formula.parse("c + z^2").compile() instanceof Formula.Quadratic);
+        assertTrue(Formula.parse("conj(z)^2 + c").compile() instanceof Formula.Tricorn);
+        assertTrue(Formula.parse("z^5 + c").compile() instanceof Formula.Multibrot);
+        assertTrue(Formula.parse("(|re(z)| + i|im(z)|)^2 + c").compile() instanceof Formula.BurningShip);
+        assertTrue(Formula.parse("z^3 - z + c").compile() instanceof Formula.Polynomial);
+        assertTrue(Formula.parse("z^2 / z + c").compile() instanceof Formula.Compiled);
+    }
+
+    @Test
+    public void test_mandelbrot() {
+        Formula.Kernel k = Formula.parse("z^2 + c").compile();
+        assertEquals(200, iterate(k, 0, 0, 200));
+        assertEquals(200, iterate(k, -1, 0, 200));
+        assertEquals(0, iterate(k, 2, 2, 200));
+        assertEquals(1, iterate(k, 1, 1, 200));
+    }
+
+    @Test
+    public void test_kernelsAgree() {
+        assertSameOrbits(Formula.parse("z^2 + c").compile(), new Formula.Compiled(Formula.parse("z^2 + c").expr, 4.0));
+        assertSameOrbits(Formula.parse("z^3 + c").compile(), new Formula.Compiled(Formula.parse("z*z*z + c").expr, 4.0));
+        assertSameOrbits(Formula.parse("conj(z)^2 + c").compile(),
+                new Formula.Compiled(Formula.parse("conj(z)^2 + c").expr, 4.0));
+    }
+
+    @Test
+    public void test_polynomialKernel() {
+        // Horner's rule rounds differently from the register code, so only compare points
+        // well away from the boundary
+        Formula.Kernel poly = Formula.parse("z^3 - z + c").compile();
+        Formula.Kernel compiled = new Formula.Compiled(Formula.parse("z^3 - z + c").expr, 4.0);
+        assertEquals(iterate(compiled, 0, 0, 100), iterate(poly, 0, 0, 100));
+        assertEquals(iterate(compiled, 1.5, 1.5, 100), iterate(poly, 1.5, 1.5, 100));
+        assertEquals(iterate(compiled, 0.2, 0.1, 100), iterate(poly, 0.2, 0.1, 100));
+    }
+
+    @Test
+    public void test_conjugation() {
+        assertTrue(Formula.parse("z^2 + c").commutesWithConjugation());
+        assertTrue(Formula.tricorn().commutesWithConjugation());
+        assertFalse(Formula.parse("z^2 + i*c").commutesWithConjugation());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_parseError() {
+        Formula.parse("z^2 + ");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_unknownVariable() {
+        Formula.parse("z^2 + q");
+    }
+}
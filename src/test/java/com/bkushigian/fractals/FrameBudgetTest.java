@@ -0,0 +1,45 @@
+package com.bkushigian.fractals;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FrameBudgetTest {
+
+    @Test
+    public void test_reduce() {
+        final FrameBudget budget = new FrameBudget();
+        final Viewport view = new Viewport(-2, 1.5, 0.005, 600, 600, 256);
+        // Nothing to go by before the first frame
+        assertSame(view, budget.reduce(view));
+
+        // 200ms for the full frame: a quarter of the pixels fits in 50ms
+        budget.setTargetMillis(50);
+        budget.record(view, 200_000_000L);
+        Viewport reduced = budget.reduce(view);
+        assertEquals(2, budget.scale());
+        assertEquals(300, reduced.width);
+        assertEquals(256, reduced.maxIterations);
+
+        // Out of pixels to drop, the iteration cap comes down instead
+        budget.setTargetMillis(1);
+        reduced = budget.reduce(view);
+        assertEquals(FrameBudget.MAX_SCALE, budget.scale());
+        assertTrue(reduced.maxIterations < 256);
+        assertTrue(reduced.maxIterations >= FrameBudget.MIN_ITERATIONS);
+
+        budget.setTargetMillis(1000);
+        assertSame(view, budget.reduce(view));
+        assertEquals(1, budget.scale());
+    }
+
+    @Test
+    public void test_scaledPixelsLineUp() {
+        final Viewport view = new Viewport(-2, 1.5, 0.005, 601, 599, 256);
+        final Viewport scaled = FrameBudget.scaled(view, 4, 256);
+        assertEquals(151, scaled.width);
+        assertEquals(150, scaled.height);
+        for (int x = 0; x < scaled.width; ++x) assertEquals(view.re(4 * x), scaled.re(x), 1e-12);
+        for (int y = 0; y < scaled.height; ++y) assertEquals(view.im(4 * y), scaled.im(y), 1e-12);
+    }
+}
@@ -0,0 +1,97 @@
+package com.bkushigian.fractals;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class IterationBufferTest {
+
+    @Test
+    public void test_allocateNarrowest() {
+        assertEquals(1, IterationBuffer.allocate(4, 4, 128).bytesPerPixel());
+        assertEquals(1, IterationBuffer.allocate(4, 4, 253).bytesPerPixel());
+        assertEquals(2, IterationBuffer.allocate(4, 4, 254).bytesPerPixel());
+        assertEquals(2, IterationBuffer.allocate(4, 4, 256).bytesPerPixel());
+        assertEquals(4, IterationBuffer.allocate(4, 4, 70000).bytesPerPixel());
+        assertEquals(2, IterationBuffer.allocateDirect(4, 4, 256).bytesPerPixel());
+        assertTrue(IterationBuffer.allocateDirect(4, 4, 256).isDirect());
+    }
+
+    @Test
+    public void test_getSet() {
+        IterationBuffer[] buffers = {
+                IterationBuffer.allocate(7, 5, 100),
+                IterationBuffer.allocate(7, 5, 1000),
+                IterationBuffer.allocate(7, 5, Integer.MAX_VALUE),
+                IterationBuffer.allocateDirect(7, 5, 100),
+                IterationBuffer.allocateDirect(7, 5, 1000),
+                IterationBuffer.allocateDirect(7, 5, Integer.MAX_VALUE),
+        };
+        for (IterationBuffer b : buffers) {
+            for (int y = 0; y < b.height; ++y) {
+                for (int x = 0; x < b.width; ++x) {
+                    b.set(x, y, (x * 13 + y * 7) % b.maxValue());
+                }
+            }
+            b.set(3, 2, -1);
+            b.set(0, 0, b.maxValue());
+            b.set(6, 4, Tile.EMPTY);
+            for (int y = 0; y < b.height; ++y) {
+                for (int x = 0; x < b.width; ++x) {
+                    int expected = x == 3 && y == 2 ? -1 : x == 0 && y == 0 ? b.maxValue()
+                            : x == 6 && y == 4 ? Tile.EMPTY : (x * 13 + y * 7) % b.maxValue();
+                    assertEquals(b.toString(), expected, b.get(x, y));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void test_widen() {
+        IterationBuffer b = IterationBuffer.allocate(3, 2, 200);
+        b.set(1, 1, 200);
+        b.set(2, 0, -1);
+        assertSame(b, b.widen(100));
+
+        IterationBuffer wider = b.widen(5000);
+        assertEquals(2, wider.bytesPerPixel());
+        assertEquals(200, wider.get(1, 1));
+        assertEquals(-1, wider.get(2, 0));
+        assertEquals(0, wider.get(0, 0));
+    }
+
+    @Test
+    public void test_rows() {
+        IterationBuffer b = IterationBuffer.allocate(4, 2, 300);
+        b.setRow(1, 1, new int[]{9, 10, 11, 12}, 1, 3);
+        int[] row = new int[4];
+        b.getRow(1, 0, row, 0, 4);
+        assertArrayEquals(new int[]{0, 10, 11, 12}, row);
+    }
+
+    private static long usedHeap() {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; ++i) System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    @Test
+    public void test_headlessRenderHoldsOneNarrowFrame() {
+        final int size = 4096;
+        final long before = usedHeap();
+        final Mandelbrot mandel = new Mandelbrot(size, size);
+        // Entirely outside the set, so there are no unresolved orbits to keep
+        mandel.xMin = 1;
+        mandel.xMax = 3;
+        mandel.yCenter = 1.5;
+        mandel.maxIterations = 200;
+        mandel.updateColors();
+        mandel.calculateDeltas();
+        mandel.compute();
+        final double perPixel = (double) (usedHeap() - before) / ((long) size * size);
+        assertEquals(1, mandel.getIterations().bytesPerPixel());
+        // The frame is held once, a byte per pixel, rather than as int tiles plus a copy
+        assertTrue("holding " + perPixel + " bytes/pixel", perPixel < 1.5);
+        mandel.pipeline.shutdown();
+    }
+}
@@ -0,0 +1,40 @@
+package com.bkushigian.fractals;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class JuliaAtlasTest {
+
+    @Test
+    public void test_cellsMatchJulia() {
+        for (int batch : new int[]{1, 3}) {
+            final JuliaAtlas atlas = new JuliaAtlas(-1, 0.8, 0.4, -0.8, 4, 3, 24, 100);
+            atlas.batch = batch;
+            atlas.render(2);
+            for (int row = 0; row < atlas.rows; ++row) {
+                for (int col = 0; col < atlas.cols; ++col) {
+                    final Viewport view = atlas.cellView(col, row);
+                    final Julia julia = new Julia(10, 10, null, (Complex) view.parameters);
+                    final IterationBuffer cell = atlas.cell(col, row);
+                    for (int y = 0; y < atlas.cellSize; ++y) {
+                        for (int x = 0; x < atlas.cellSize; ++x) {
+                            final int expected = julia.calculateIterations(new Complex(view.re(x), view.im(y)), 100);
+                            assertEquals(expected, cell.get(x, y));
+                            assertEquals(expected, atlas.composite().get(col * 24 + x, row * 24 + y));
+                        }
+                    }
+                    julia.pipeline.shutdown();
+                }
+            }
+        }
+    }
+
+    @Test
+    public void test_lattice() {
+        final JuliaAtlas atlas = new JuliaAtlas(-2, 1, 1, -1, 4, 3, 8, 10);
+        assertEquals(new Complex(-2, 1), atlas.c(0, 0));
+        assertEquals(new Complex(1, -1), atlas.c(3, 2));
+        assertEquals(new Complex(-1, 0), atlas.c(1, 1));
+    }
+}
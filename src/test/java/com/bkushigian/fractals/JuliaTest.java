@@ -0,0 +1,125 @@
+package com.bkushigian.fractals;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class JuliaTest {
+
+    /**
+     * @return whether pixels within {@code r} of (x, y) both escape and stay bounded
+     */
+    private static boolean nearBoundary(int[] iters, int size, int x, int y, int r, int max) {
+        boolean escapes = false, bounded = false;
+        for (int j = Math.max(0, y - r); j <= Math.min(size - 1, y + r); ++j) {
+            for (int i = Math.max(0, x - r); i <= Math.min(size - 1, x + r); ++i) {
+                if (iters[j * size + i] >= max) bounded = true;
+                else escapes = true;
+            }
+        }
+        return escapes && bounded;
+    }
+
+    @Test
+    public void test_inverseIteration() {
+        final int size = 200, max = 500;
+        final Complex c = new Complex(-1, 0);
+        final Julia julia = new Julia(size, size, null, c);
+        final Viewport view = new Viewport(-2, 2, 4.0 / size, size, size, max);
+
+        final int[] iters = new int[size * size];
+        for (int y = 0; y < size; ++y) {
+            for (int x = 0; x < size; ++x) {
+                iters[y * size + x] = julia.calculateIterations(new Complex(view.re(x), view.im(y)), max);
+            }
+        }
+        final int[] hits = new int[size * size];
+        Julia.inverseIteration(view, c.re, c.im, Julia.MAX_HITS, hits);
+
+        // Every point drawn lies on the boundary between escaping and bounded points, and
+        // every boundary pixel is drawn
+        int drawn = 0, missed = 0, boundary = 0;
+        for (int y = 0; y < size; ++y) {
+            for (int x = 0; x < size; ++x) {
+                if (hits[y * size + x] > 0) {
+                    ++drawn;
+                    assertTrue(nearBoundary(iters, size, x, y, 2, max));
+                }
+                if (!nearBoundary(iters, size, x, y, 1, max)) continue;
+                ++boundary;
+                boolean found = false;
+                for (int j = Math.max(0, y - 2); j <= Math.min(size - 1, y + 2) && !found; ++j) {
+                    for (int i = Math.max(0, x - 2); i <= Math.min(size - 1, x + 2) && !found; ++i) {
+                        found = hits[j * size + i] > 0;
+                    }
+                }
+                if (!found) ++missed;
+            }
+        }
+        assertTrue(drawn > 0);
+        assertTrue(missed + " of " + boundary, missed < boundary / 50);
+    }
+
+    @Test
+    public void test_attractor() {
+        // z^2 - 1 has the superattracting cycle 0 -> -1 -> 0
+        Julia.Attractor a = Julia.Attractor.find(new Complex(-1, 0));
+        assertNotNull(a);
+        assertEquals(2, a.period);
+        assertEquals(0.0, Math.abs(a.re[0] * a.re[1]), 1e-12);
+        assertEquals(-1.0, a.re[0] + a.re[1], 1e-12);
+        assertEquals(0.0, a.multiplierRe, 1e-12);
+        assertTrue(a.trapRadius > 0);
+
+        // c outside of the Mandelbrot set has no attracting cycle
+        assertNull(Julia.Attractor.find(new Complex(0.5, 0)));
+    }
+
+    @Test
+    public void test_trapMatchesFullIteration() {
+        final int max = 500;
+        for (Complex c : new Complex[]{new Complex(-0.123, 0.745), new Complex(-1, 0), new Complex(0.3, 0.5)}) {
+            final Julia julia = new Julia(10, 10, null, c);
+            for (int y = 0; y < 60; ++y) {
+                for (int x = 0; x < 60; ++x) {
+                    double re = -1.5 + 0.05 * x, im = 1.5 - 0.05 * y;
+                    final int actual = julia.calculateIterations(new Complex(re, im), max);
+                    int expected = 0;
+                    while (re * re + im * im < 4 && expected < max) {
+                        final double t = re * re - im * im + c.re;
+                        im = 2 * re * im + c.im;
+                        re = t;
+                        ++expected;
+                    }
+                    assertEquals(expected, actual);
+                }
+            }
+            julia.pipeline.shutdown();
+        }
+    }
+
+    @Test
+    public void test_deferredStagesMatchSinglePass() {
+        final IterationBuffer[] renders = new IterationBuffer[2];
+        for (int k = 0; k < 2; ++k) {
+            final Julia julia = new Julia(120, 120, null, new Complex(-0.8, 0.156));
+            julia.maxIterations = 1000;
+            julia.deferExpensivePixels = k == 1;
+            julia.updateColors();
+            julia.calculateDeltas();
+            assertEquals(k == 1 ? 3 : 1, julia.iterationCaps(julia.viewport()).length);
+            julia.updated = true;
+            julia.compute();
+            renders[k] = julia.getIterations();
+            julia.pipeline.shutdown();
+        }
+        int interior = 0;
+        for (int y = 0; y < 120; ++y) {
+            for (int x = 0; x < 120; ++x) {
+                assertEquals(renders[0].get(x, y), renders[1].get(x, y));
+                if (renders[1].get(x, y) == 1000) ++interior;
+            }
+        }
+        assertTrue(interior > 0);
+    }
+}
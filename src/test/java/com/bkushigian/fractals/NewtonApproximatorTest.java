@@ -17,4 +17,116 @@ public class NewtonApproximatorTest {
 
     }
 
-}
\ No newline at end of file
+    @Test
+    public void test_findRoot1() {
+        // p = z^3 - 1
+        NewtonApproximator na = new NewtonApproximator(ComplexPolynomial.nthRootsOfUnity(3));
+        Complex[] roots = na.getRoots();
+        assertEquals(3, roots.length);
+
+        // Starting right on a root needs no iterations at all
+        for (int r = 0; r < roots.length; ++r) {
+            int result = na.findRoot(roots[r].re, roots[r].im, 100);
+            assertEquals(r, NewtonApproximator.rootOf(result));
+            assertEquals(0, NewtonApproximator.iterationsOf(result));
+        }
+
+        int result = na.findRoot(2.0, 0.1, 100);
+        assertTrue(result >= 0);
+        Complex root = roots[NewtonApproximator.rootOf(result)];
+        assertEquals(1.0, root.re, 0.0001);
+        assertEquals(0.0, root.im, 0.0001);
+    }
+
+    @Test
+    public void test_findRootNoConvergence() {
+        // p'(0) = 0, so Newton's method can't take a single step from the origin
+        NewtonApproximator na = new NewtonApproximator(ComplexPolynomial.nthRootsOfUnity(3));
+        assertEquals(-1, na.findRoot(0.0, 0.0, 100));
+    }
+
+    @Test
+    public void test_findRootHigherOrder() {
+        NewtonApproximator na = new NewtonApproximator(ComplexPolynomial.nthRootsOfUnity(5));
+        Complex[] roots = na.getRoots();
+        double[] z = new double[2];
+        for (NewtonApproximator.Method method : NewtonApproximator.Method.values()) {
+            for (int r = 0; r < roots.length; ++r) {
+                // Start a little way off of each root
+                int result = na.findRoot(roots[r].re * 1.3 + 0.05, roots[r].im * 1.3, method, 1e-6, 100, z);
+                assertEquals(method.name(), r, NewtonApproximator.rootOf(result));
+                if (method != NewtonApproximator.Method.NEWTON) {
+                    assertEquals(roots[r].re, z[0], 1e-6);
+                    assertEquals(roots[r].im, z[1], 1e-6);
+                }
+            }
+        }
+        // Converging cubically, a few steps are enough to pin the root down to 1e-9
+        int halley = na.findRoot(2.0, 0.3, NewtonApproximator.Method.HALLEY, 1e-9, 100, null);
+        assertEquals(0, NewtonApproximator.rootOf(halley));
+        assertTrue(NewtonApproximator.iterationsOf(halley) <= 5);
+        assertEquals(-1, na.findRoot(0.0, 0.0, NewtonApproximator.Method.HALLEY, 1e-6, 100, null));
+    }
+
+    @Test
+    public void test_findRootsMatchesFindRoot() {
+        NewtonApproximator na = new NewtonApproximator(ComplexPolynomial.nthRootsOfUnity(7));
+        final int count = 97;
+        int[] results = new int[count], iterations = new int[count];
+        double[] one = new double[3];
+        NewtonApproximator.Rows rows = new NewtonApproximator.Rows(count);
+        for (int row = 0; row < 40; ++row) {
+            ComplexBuffer z = new ComplexBuffer(count);
+            for (int i = 0; i < count; ++i) z.set(i, -2.0 + i * 0.04, -2.0 + row * 0.1);
+            // The origin is a critical point, and a root is trapped before any steps
+            if (row == 20) z.set(50, 0.0, 0.0);
+            if (row == 21) z.set(10, 1.0, 0.0);
+            ComplexBuffer start = new ComplexBuffer(count);
+            start.copy(z, 0, count);
+            // Few enough iterations that some points run out
+            na.findRoots(z, count, 12, results, iterations, rows);
+            for (int i = 0; i < count; ++i) {
+                int expected = na.findRoot(start.re[i], start.im[i], NewtonApproximator.DEFAULT_MIN_DELTA, 12, one);
+                assertEquals(expected, results[i]);
+                assertEquals((int) one[2], iterations[i]);
+                assertEquals(one[0], z.re[i], 0.0);
+                assertEquals(one[1], z.im[i], 0.0);
+            }
+        }
+    }
+
+    @Test
+    public void test_convergenceOrder() {
+        // p = z^3 - 1, converging onto the simple root 1
+        NewtonApproximator na = new NewtonApproximator(ComplexPolynomial.nthRootsOfUnity(3));
+        for (NewtonApproximator.Method method : new NewtonApproximator.Method[]{
+                NewtonApproximator.Method.HALLEY, NewtonApproximator.Method.CHEBYSHEV}) {
+            // Distance from the root after each number of steps, taking one more each time
+            double[] error = new double[8];
+            double[] z = new double[2];
+            for (int k = 0; k < error.length; ++k) {
+                na.findRoot(1.4, 0.3, method, 0.0, k, z);
+                error[k] = Math.hypot(z[0] - 1, z[1]);
+            }
+            // e_(k+1) ~ C e_k^q, so the order is the ratio of successive log error ratios,
+            // taken from the last steps before rounding error takes over
+            int k = 1;
+            while (k + 2 < error.length && error[k + 2] > 1e-14) ++k;
+            double order = Math.log(error[k + 1] / error[k]) / Math.log(error[k] / error[k - 1]);
+            assertEquals(method.name(), method.order, order, 0.2);
+        }
+    }
+
+    @Test
+    public void test_rootIndexSpreadRoots() {
+        // Far more than 64 of the smallest cells apart, so the grid has to coarsen
+        final Complex[] roots = {Complex.zero, Complex.re(1000), new Complex(1000, 1000), new Complex(-3, 500)};
+        final RootIndex index = new RootIndex(roots, new double[]{1, 1, 0.5, 2});
+        for (int i = 0; i < roots.length; ++i) {
+            assertEquals(i, index.find(roots[i].re, roots[i].im));
+            assertEquals(i, index.find(roots[i].re + 0.3, roots[i].im - 0.3));
+        }
+        assertEquals(-1, index.find(500, 500));
+        assertEquals(-1, index.find(1001, 1000));
+    }
+}
@@ -0,0 +1,29 @@
+package com.bkushigian.fractals;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PendulumTest {
+
+    @Test
+    public void test_symmetry() {
+        double[] x = {1, -0.5, -0.5};
+        double[] y = {0, Math.sqrt(3) / 2, -Math.sqrt(3) / 2};
+        assertEquals(6, Pendulum.findSymmetry(x, y).order());
+        assertEquals(Symmetry.CONJUGATE, Pendulum.findSymmetry(new double[]{1, 1}, new double[]{0.5, -0.5}));
+        assertTrue(Pendulum.findSymmetry(new double[]{1, 0.3}, new double[]{0.5, -0.5}).isTrivial());
+    }
+
+    @Test
+    public void test_capture() {
+        Pendulum p = new Pendulum(10, 10, 4);
+        // Released right over a magnet, the bob is captured immediately
+        for (int m = 0; m < 4; ++m) {
+            int result = p.calculateIterations(new Complex(p.magnetX[m], p.magnetY[m]), 100);
+            assertEquals(m, Pendulum.magnetOf(result));
+            assertEquals(1, Pendulum.stepsOf(result));
+        }
+        assertEquals(-1, p.calculateIterations(new Complex(1.9, 1.9), 2));
+    }
+}
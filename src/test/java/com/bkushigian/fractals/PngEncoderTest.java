@@ -0,0 +1,129 @@
+package com.bkushigian.fractals;
+
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Adler32;
+import java.util.zip.Deflater;
+
+import static org.junit.Assert.*;
+
+public class PngEncoderTest {
+
+    private static BufferedImage fractalImage(int type) {
+        final Mandelbrot mandel = new Mandelbrot(10, 10);
+        final BufferedImage image = new BufferedImage(301, 207, type);
+        final Random random = new Random(7);
+        for (int y = 0; y < image.getHeight(); ++y) {
+            for (int x = 0; x < image.getWidth(); ++x) {
+                final int it = mandel.calculateIterations(new Complex(-2.1 + x * 0.011, 1.1 - y * 0.011), 100);
+                // Smooth regions, plus a noisy band so some blocks don't compress much
+                final int rgb = y > 150 && y < 160 ? random.nextInt() : it * 0x010305;
+                image.setRGB(x, y, rgb);
+            }
+        }
+        mandel.pipeline.shutdown();
+        return image;
+    }
+
+    private static byte[] encode(PngEncoder encoder, BufferedImage image) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encoder.write(image, out);
+        return out.toByteArray();
+    }
+
+    private static void assertSamePixels(BufferedImage expected, BufferedImage actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        for (int y = 0; y < expected.getHeight(); ++y) {
+            for (int x = 0; x < expected.getWidth(); ++x) {
+                assertEquals("(" + x + ", " + y + ")", expected.getRGB(x, y), actual.getRGB(x, y));
+            }
+        }
+    }
+
+    @Test
+    public void test_decodesToSameImage() throws IOException {
+        for (boolean adaptive : new boolean[]{false, true}) {
+            final PngEncoder encoder = new PngEncoder(3, Deflater.DEFAULT_COMPRESSION, adaptive);
+            // Many small blocks, including ones shorter than the dictionary window
+            encoder.blockBytes = 10_000;
+            for (int type : new int[]{BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_3BYTE_BGR}) {
+                final BufferedImage image = fractalImage(type);
+                final byte[] png = encode(encoder, image);
+                assertSamePixels(image, ImageIO.read(new ByteArrayInputStream(png)));
+                // Buffers carried over from the last image don't change the output
+                assertArrayEquals(png, encode(encoder, image));
+            }
+            encoder.close();
+        }
+    }
+
+    @Test
+    public void test_singleBlock() throws IOException {
+        final PngEncoder encoder = new PngEncoder(1, Deflater.BEST_SPEED, true);
+        final BufferedImage image = fractalImage(BufferedImage.TYPE_INT_RGB);
+        assertSamePixels(image, ImageIO.read(new ByteArrayInputStream(encode(encoder, image))));
+        final BufferedImage dot = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+        dot.setRGB(0, 0, 0x123456);
+        assertSamePixels(dot, ImageIO.read(new ByteArrayInputStream(encode(encoder, dot))));
+        encoder.close();
+    }
+
+    @Test
+    public void test_concurrentWrites() throws Exception {
+        final PngEncoder encoder = new PngEncoder(2, Deflater.BEST_SPEED);
+        // Far more blocks than compressors, so the writers compete for them
+        encoder.blockBytes = 5_000;
+        final BufferedImage image = fractalImage(BufferedImage.TYPE_INT_RGB);
+        final byte[] expected = encode(encoder, image);
+        final ExecutorService writers = Executors.newFixedThreadPool(8, RenderPipeline.daemonThreads("png-writer"));
+        final List<Future<byte[]>> written = new ArrayList<>();
+        for (int i = 0; i < 8; ++i) {
+            written.add(writers.submit(() -> {
+                byte[] png = null;
+                for (int n = 0; n < 20; ++n) png = encode(encoder, image);
+                return png;
+            }));
+        }
+        for (Future<byte[]> f : written) assertArrayEquals(expected, f.get(60, TimeUnit.SECONDS));
+        writers.shutdown();
+        encoder.close();
+    }
+
+    @Test
+    public void test_paeth() {
+        for (int a = 0; a < 256; a += 3) {
+            for (int b = 0; b < 256; b += 5) {
+                for (int c = 0; c < 256; c += 7) {
+                    final int p = a + b - c;
+                    final int pa = Math.abs(p - a), pb = Math.abs(p - b), pc = Math.abs(p - c);
+                    final int expected = pa <= pb && pa <= pc ? a : pb <= pc ? b : c;
+                    assertEquals(expected, PngEncoder.paeth(a, b, c));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void test_combineAdler() {
+        final byte[] data = new byte[100_000];
+        new Random(3).nextBytes(data);
+        final Adler32 whole = new Adler32(), first = new Adler32(), second = new Adler32();
+        whole.update(data);
+        first.update(data, 0, 31_337);
+        second.update(data, 31_337, data.length - 31_337);
+        assertEquals(whole.getValue(), PngEncoder.combineAdler(first.getValue(), second.getValue(), data.length - 31_337));
+    }
+}
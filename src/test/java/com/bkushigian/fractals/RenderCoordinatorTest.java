@@ -0,0 +1,133 @@
+package com.bkushigian.fractals;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RenderCoordinatorTest {
+
+    /**
+     * Check {@code values} against rendering {@code view} in this process, the way the GUI does
+     */
+    private static void assertMatchesDirectRender(String scene, Viewport view, IterationBuffer values) {
+        final ComplexFractal fractal = RenderWorker.createFractal(scene);
+        final TileGrid expected = fractal.pipeline.renderNow(view);
+        for (int y = 0; y < view.height; ++y) {
+            for (int x = 0; x < view.width; ++x) assertEquals(x + "," + y, expected.get(x, y), values.get(x, y));
+        }
+        fractal.pipeline.shutdown();
+    }
+
+    @Test
+    public void test_renderOnLocalWorkers() throws IOException {
+        final List<RenderWorker> workers = new ArrayList<>();
+        final List<InetSocketAddress> addresses = new ArrayList<>();
+        try {
+            for (int i = 0; i < 3; ++i) {
+                final RenderWorker w = new RenderWorker(0, 1 + i % 2);
+                workers.add(w);
+                addresses.add(new InetSocketAddress("localhost", w.port()));
+            }
+            final Viewport view = new Viewport(-2, 1.2, 0.015, 200, 160, 300);
+            final RenderCoordinator coordinator = new RenderCoordinator("mandelbrot", view, 32);
+            assertMatchesDirectRender("mandelbrot", view, coordinator.render(addresses));
+
+            int tiles = 0;
+            for (RenderCoordinator.Node node : coordinator.nodes()) {
+                assertFalse(node.failed);
+                tiles += node.tiles;
+            }
+            assertEquals(7 * 5, tiles);
+        } finally {
+            for (RenderWorker w : workers) w.close();
+        }
+    }
+
+    @Test
+    public void test_retryFailedWorker() throws IOException {
+        final RenderWorker good = new RenderWorker(0, 1), bad = new RenderWorker(0, 2);
+        bad.failAfter = 3;
+        try {
+            final List<InetSocketAddress> addresses = new ArrayList<>();
+            addresses.add(new InetSocketAddress("localhost", bad.port()));
+            addresses.add(new InetSocketAddress("localhost", good.port()));
+            final Viewport view = new Viewport(-1.6, 1.6, 0.02, 160, 160, 200);
+            final String scene = "julia:-0.8,0.156";
+            final RenderCoordinator coordinator = new RenderCoordinator(scene, view, 32);
+            assertMatchesDirectRender(scene, view, coordinator.render(addresses));
+
+            final RenderCoordinator.Node failed = coordinator.nodes().get(0);
+            assertTrue(failed.failed);
+            assertTrue(failed.requeued > 0);
+            assertEquals(25, failed.tiles + coordinator.nodes().get(1).tiles);
+        } finally {
+            good.close();
+            bad.close();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void test_allWorkersFail() throws IOException {
+        try (RenderWorker bad = new RenderWorker(0, 1)) {
+            bad.failAfter = 0;
+            final List<InetSocketAddress> addresses = new ArrayList<>();
+            addresses.add(new InetSocketAddress("localhost", bad.port()));
+            new RenderCoordinator("mandelbrot", new Viewport(-2, 1.2, 0.05, 64, 64, 50), 32).render(addresses);
+        }
+    }
+
+    @Test
+    public void test_workerDiesMidTile() throws IOException {
+        final RenderWorker good = new RenderWorker(0, 1), bad = new RenderWorker(0, 2);
+        bad.truncateAfter = 2;
+        try {
+            final List<InetSocketAddress> addresses = new ArrayList<>();
+            addresses.add(new InetSocketAddress("localhost", bad.port()));
+            addresses.add(new InetSocketAddress("localhost", good.port()));
+            final Viewport view = new Viewport(-2, 1.2, 0.015, 200, 160, 300);
+            final RenderCoordinator coordinator = new RenderCoordinator("mandelbrot", view, 32);
+            assertMatchesDirectRender("mandelbrot", view, coordinator.render(addresses));
+
+            final RenderCoordinator.Node failed = coordinator.nodes().get(0);
+            assertTrue(failed.failed);
+            assertTrue(failed.requeued > 0);
+            assertTrue(failed.tiles <= 2);
+            assertEquals(7 * 5, failed.tiles + coordinator.nodes().get(1).tiles);
+        } finally {
+            good.close();
+            bad.close();
+        }
+    }
+
+    @Test
+    public void test_hungWorkerIsWorkedAround() throws IOException {
+        // Listening on every interface, as a worker on another machine would
+        final RenderWorker good = new RenderWorker(null, 0, 1), hung = new RenderWorker(0, 2);
+        hung.hangAfter = 1;
+        try {
+            final List<InetSocketAddress> addresses = new ArrayList<>();
+            addresses.add(new InetSocketAddress("localhost", hung.port()));
+            addresses.add(new InetSocketAddress("localhost", good.port()));
+            final Viewport view = new Viewport(-1.6, 1.6, 0.02, 160, 160, 200);
+            final String scene = "julia:-0.8,0.156";
+            final RenderCoordinator coordinator = new RenderCoordinator(scene, view, 32);
+            assertMatchesDirectRender(scene, view, coordinator.render(addresses));
+
+            // The hung worker never drops its connection, so only running its tiles again
+            // elsewhere gets them done
+            final RenderCoordinator.Node stuck = coordinator.nodes().get(0), other = coordinator.nodes().get(1);
+            assertFalse(stuck.failed);
+            assertTrue(stuck.tiles <= 1);
+            assertTrue(other.speculated > 0);
+            assertEquals(25, stuck.tiles + other.tiles);
+        } finally {
+            good.close();
+            hung.close();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.bkushigian.fractals;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class RenderJournalTest {
+
+    @Test
+    public void test_resume() throws IOException {
+        final File file = File.createTempFile("journal", ".jrnl");
+        file.deleteOnExit();
+        final Viewport view = new Viewport(-2, 1, 0.01, 100, 70, 64, new Complex(1, 2));
+        final TileGrid grid = new TileGrid(view, 32, Integer.MAX_VALUE, 0, new AtomicInteger());
+        final Tile[] tiles = grid.tiles();
+
+        try (RenderJournal j = RenderJournal.open(file, "scene", view, 32)) {
+            assertEquals(0, j.resumedTiles());
+            for (int i = 0; i < tiles.length; i += 2) {
+                for (int k = 0; k < tiles[i].size(); ++k) tiles[i].set(k, i * 1000 + k);
+                j.record(tiles[i]);
+            }
+        }
+
+        final TileGrid fresh = new TileGrid(view, 32, Integer.MAX_VALUE, 0, new AtomicInteger());
+        try (RenderJournal j = RenderJournal.open(file, "scene", view, 32)) {
+            assertEquals((tiles.length + 1) / 2, j.resumedTiles());
+            for (int i = 0; i < tiles.length; ++i) {
+                final Tile t = fresh.tiles()[i];
+                assertEquals(i % 2 == 0, j.restore(t));
+                if (i % 2 == 0) {
+                    for (int k = 0; k < t.size(); ++k) assertEquals(tiles[i].get(k), t.get(k));
+                }
+            }
+        }
+
+        // A journal of any other render starts over
+        final Viewport other = new Viewport(-2, 1, 0.01, 100, 70, 64, new Complex(1, 3));
+        try (RenderJournal j = RenderJournal.open(file, "scene", other, 32)) {
+            assertEquals(0, j.resumedTiles());
+        }
+    }
+
+    @Test
+    public void test_computeResumes() throws IOException {
+        final File file = File.createTempFile("journal", ".jrnl");
+        file.deleteOnExit();
+        final Mandelbrot expected = new Mandelbrot(150, 100);
+        expected.compute();
+
+        final Mandelbrot first = new Mandelbrot(150, 100);
+        first.compute(file);
+        final Mandelbrot second = new Mandelbrot(150, 100);
+        second.compute(file);
+        for (int y = 0; y < 100; ++y) {
+            for (int x = 0; x < 150; ++x) {
+                assertEquals(expected.getIterations().get(x, y), second.getIterations().get(x, y));
+            }
+        }
+        expected.pipeline.shutdown();
+        first.pipeline.shutdown();
+        second.pipeline.shutdown();
+    }
+
+    @Test
+    public void test_computeOnlyRendersUnfinishedTiles() throws IOException {
+        final File file = File.createTempFile("journal", ".jrnl");
+        file.deleteOnExit();
+        final Mandelbrot expected = new Mandelbrot(150, 100);
+        final Viewport view = expected.viewport();
+        final TileGrid done = expected.pipeline.renderNow(view);
+        final int tileSize = done.tileSize;
+        final int cols = (view.width + tileSize - 1) / tileSize;
+
+        // Interrupted after checkpointing every other tile
+        final Set<Integer> journaled = new HashSet<>();
+        try (RenderJournal j = RenderJournal.open(file, CountingMandelbrot.class.getName(), view, tileSize)) {
+            for (int i = 0; i < done.tiles().length; i += 2) {
+                j.record(done.tiles()[i]);
+                journaled.add(i);
+            }
+        }
+
+        final CountingMandelbrot resumed = new CountingMandelbrot(150, 100);
+        resumed.compute(file);
+        assertFalse(resumed.traced.isEmpty());
+        for (double[] point : resumed.traced) {
+            final int x = (int) Math.round((point[0] - view.xMin) / view.delta);
+            final int y = (int) Math.round((view.yMax - point[1]) / view.delta);
+            assertFalse(x + "," + y, journaled.contains((y / tileSize) * cols + x / tileSize));
+        }
+        for (int y = 0; y < view.height; ++y) {
+            for (int x = 0; x < view.width; ++x) assertEquals(done.get(x, y), resumed.getIterations().get(x, y));
+        }
+        expected.pipeline.shutdown();
+        resumed.pipeline.shutdown();
+    }
+
+    /**
+     * Remembers every point whose orbit it traces
+     */
+    static class CountingMandelbrot extends Mandelbrot {
+        final List<double[]> traced = Collections.synchronizedList(new ArrayList<>());
+
+        CountingMandelbrot(int width, int height) {
+            super(width, height);
+        }
+
+        @Override
+        protected int continueOrbit(double cRe, double cIm, double[] z, int from, int max) {
+            traced.add(new double[]{cRe, cIm});
+            return super.continueOrbit(cRe, cIm, z, from, max);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.bkushigian.fractals;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class RenderPipelineTest {
+
+    @Test
+    public void test_publishedTilesBelongToTheirRequest() throws InterruptedException {
+        final List<Tile> published = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch last = new CountDownLatch(1);
+        final List<Viewport> views = new ArrayList<>();
+        final int requests = 3000;
+        final RenderPipeline pipeline = new RenderPipeline(2, 8, (view, tile, pass) -> {
+            for (int i = 0; i < tile.size(); ++i) tile.set(i, view.width);
+        }, new RenderPipeline.Listener() {
+            @Override
+            public void tileReady(Tile tile) {
+                if (!tile.isStale()) published.add(tile);
+            }
+
+            @Override
+            public void frameComplete(TileGrid frame) {
+                if (frame.view.width == requests) last.countDown();
+            }
+        });
+        // Each request renders a different width, so a tile knows which request it came from
+        for (int i = 1; i <= requests; ++i) {
+            final Viewport view = new Viewport(-2, 1.5, 0.01, i, 16, 10);
+            views.add(view);
+            pipeline.submit(view);
+            if (i % 7 == 0) Thread.yield();
+        }
+        assertTrue(last.await(30, TimeUnit.SECONDS));
+        pipeline.shutdown();
+
+        // Only submit() moves the generation on, so request i (from 0) has generation i + 1
+        synchronized (published) {
+            assertFalse(published.isEmpty());
+            for (Tile t : published) {
+                assertSame(t.toString(), views.get(t.generation - 1), t.grid.view);
+                for (int i = 0; i < t.size(); ++i) assertEquals(t.grid.view.width, t.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void test_prefetchedFramesChangingDuringRender() throws InterruptedException {
+        final Mandelbrot mandel = new Mandelbrot(10, 10);
+        // Pixel coordinates are exact in binary, so reused pixels match computed ones exactly
+        // even on the boundary of the set
+        final double delta = 1.0 / 128;
+        final Viewport view = new Viewport(-1.5, 1.25, delta, 160, 100, 300);
+        // Frames a few pixels over from the view, so each of their pixels lands on one of its
+        final List<TileGrid> frames = new ArrayList<>();
+        for (int k = 1; k <= 4; ++k) {
+            frames.add(mandel.pipeline.renderNow(new Viewport(-1.5 + 7 * k * delta, 1.25 - 3 * k * delta, delta,
+                    160, 100, 300)));
+        }
+
+        final AtomicBoolean done = new AtomicBoolean();
+        final List<Thread> prefetchers = new ArrayList<>();
+        for (int t = 0; t < 3; ++t) {
+            final int offset = t;
+            prefetchers.add(new Thread(() -> {
+                // Keep the list churning past its limit so frames are dropped as well as added
+                for (int i = offset; !done.get(); ++i) mandel.addPrefetched(frames.get(i % frames.size()));
+            }));
+        }
+        for (Thread t : prefetchers) t.start();
+        try {
+            for (int round = 0; round < 5; ++round) {
+                final TileGrid grid = mandel.pipeline.renderNow(view);
+                for (int y = 0; y < view.height; ++y) {
+                    for (int x = 0; x < view.width; ++x) {
+                        assertEquals(mandel.calculateIterations(new Complex(view.re(x), view.im(y)), 300), grid.get(x, y));
+                    }
+                }
+            }
+        } finally {
+            done.set(true);
+            for (Thread t : prefetchers) t.join();
+            mandel.pipeline.shutdown();
+        }
+        assertTrue(mandel.prefetchedFrames().length > 0);
+    }
+}
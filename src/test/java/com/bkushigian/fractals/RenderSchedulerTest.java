@@ -0,0 +1,138 @@
+package com.bkushigian.fractals;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class RenderSchedulerTest {
+
+    private static final class Spin extends RenderScheduler.Task {
+        final String name;
+        final List<String> log;
+        final CountDownLatch done;
+        volatile boolean cancelled;
+
+        Spin(String name, boolean background, List<String> log, CountDownLatch done) {
+            super(0, background);
+            this.name = name;
+            this.log = log;
+            this.done = done;
+        }
+
+        @Override
+        public void run() {
+            final long end = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(500);
+            while (System.nanoTime() < end) {
+                Thread.yield();
+            }
+            log.add(name);
+            done.countDown();
+        }
+
+        @Override
+        protected boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    /**
+     * Takes no real time, but moves {@code clock} on by 3us
+     */
+    private static final class Tick extends RenderScheduler.Task {
+        final String name;
+        final AtomicLong clock;
+        final List<String> log;
+        final CountDownLatch done;
+
+        Tick(String name, AtomicLong clock, List<String> log, CountDownLatch done) {
+            super(0, false);
+            this.name = name;
+            this.clock = clock;
+            this.log = log;
+            this.done = done;
+        }
+
+        @Override
+        public void run() {
+            clock.addAndGet(3000);
+            log.add(name);
+            done.countDown();
+        }
+    }
+
+    /**
+     * Hold the single worker until {@code gate} opens, so that tasks queue up behind it
+     */
+    private static CountDownLatch block(RenderScheduler.Queue q) throws InterruptedException {
+        final CountDownLatch gate = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(1);
+        q.execute(new RenderScheduler.Task(0, false) {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        started.await();
+        return gate;
+    }
+
+    @Test
+    public void test_weightedShares() throws InterruptedException {
+        // Every task takes exactly 3us by this clock, so the order they run in is fixed
+        final AtomicLong clock = new AtomicLong();
+        final RenderScheduler scheduler = new RenderScheduler(1, clock::get);
+        final RenderScheduler.Queue a = scheduler.newQueue(), b = scheduler.newQueue(), c = scheduler.newQueue();
+        c.setWeight(1000);
+        final CountDownLatch gate = block(c);
+        a.setWeight(3);
+        final List<String> log = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch done = new CountDownLatch(200);
+        for (int i = 0; i < 100; ++i) {
+            a.execute(new Tick("a", clock, log, done));
+            b.execute(new Tick("b", clock, log, done));
+        }
+        gate.countDown();
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        // a goes first on the tie, then b, then a catches up: a, (b, a, a, a)...
+        assertEquals("a", log.get(0));
+        assertEquals(Arrays.asList("b", "a", "a", "a"), log.subList(1, 5));
+        assertEquals(60, Collections.frequency(log.subList(0, 80), "a"));
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void test_realWorkBeforeBackground() throws InterruptedException {
+        final RenderScheduler scheduler = new RenderScheduler(1);
+        final RenderScheduler.Queue a = scheduler.newQueue(), b = scheduler.newQueue();
+        final CountDownLatch gate = block(a);
+        final List<String> log = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch done = new CountDownLatch(3);
+        final Spin dropped = new Spin("dropped", false, log, new CountDownLatch(1));
+        a.execute(new Spin("speculative", true, log, done));
+        a.execute(dropped);
+        b.execute(new Spin("real", false, log, done));
+        b.execute(new Spin("real", false, log, done));
+        assertEquals(3, scheduler.waiting().get());
+        dropped.cancelled = true;
+        a.purge();
+        assertEquals(2, scheduler.waiting().get());
+        gate.countDown();
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("real", "real", "speculative"), log);
+        assertEquals(0, scheduler.waiting().get());
+        scheduler.shutdown();
+    }
+}
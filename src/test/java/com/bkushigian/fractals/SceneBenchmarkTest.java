@@ -0,0 +1,31 @@
+package com.bkushigian.fractals;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class SceneBenchmarkTest {
+
+    @Test
+    public void test_readBaseline() {
+        Map<String, Double> base = SceneBenchmark.readBaseline(
+                "{\n  \"mandelbrot-full\": 4.2e7,\n  \"newton-roots-of-unity-3\": 1234.5\n}\n");
+        assertEquals(2, base.size());
+        assertEquals(4.2e7, base.get("mandelbrot-full"), 0.0);
+        assertEquals(1234.5, base.get("newton-roots-of-unity-3"), 0.0);
+    }
+
+    @Test
+    public void test_change() {
+        assertEquals(-0.25, SceneBenchmark.change(100, 75), 1e-12);
+        assertEquals(0.5, SceneBenchmark.change(100, 150), 1e-12);
+    }
+
+    @Test
+    public void test_corpusNamesUnique() {
+        long distinct = SceneBenchmark.corpus().stream().map(s -> s.name).distinct().count();
+        assertEquals(SceneBenchmark.corpus().size(), distinct);
+    }
+}
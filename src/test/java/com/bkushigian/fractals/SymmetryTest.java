@@ -0,0 +1,75 @@
+package com.bkushigian.fractals;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SymmetryTest {
+
+    @Test
+    public void test_conjugate() {
+        double[] out = new double[2];
+        assertEquals(0, Symmetry.CONJUGATE.reduce(0.5, 0.25, out));
+        assertEquals(1, Symmetry.CONJUGATE.reduce(0.5, -0.25, out));
+        assertEquals(0.5, out[0], 0.0);
+        assertEquals(0.25, out[1], 0.0);
+    }
+
+    @Test
+    public void test_reduceInverse() {
+        Symmetry[] groups = {Symmetry.cyclic(2), Symmetry.dihedral(2), Symmetry.cyclic(5), Symmetry.dihedral(7)};
+        double[] reduced = new double[2];
+        double[] back = new double[2];
+        for (Symmetry s : groups) {
+            for (int i = 0; i < 100; ++i) {
+                double re = Math.cos(i * 0.37) * (1 + i % 3);
+                double im = Math.sin(i * 0.37) * (1 + i % 3);
+                int g = s.reduce(re, im, reduced);
+
+                // The image is in the fundamental region...
+                double[] again = new double[2];
+                assertEquals(s.toString(), 0, s.reduce(reduced[0], reduced[1], again));
+
+                // ...and undoing the element gets us back to where we started
+                s.apply(s.inverse(g), reduced[0], reduced[1], back);
+                assertEquals(re, back[0], 1e-9);
+                assertEquals(im, back[1], 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void test_reduceAgreesWithAngle() {
+        final Symmetry[] groups = {Symmetry.CONJUGATE, Symmetry.cyclic(2), Symmetry.dihedral(2), Symmetry.cyclic(3),
+                Symmetry.dihedral(4), Symmetry.cyclic(5), Symmetry.dihedral(7)};
+        final double[] fast = new double[2], slow = new double[2];
+        final Random random = new Random(11);
+        for (Symmetry s : groups) {
+            for (int i = 0; i < 20_000; ++i) {
+                // Pixel-like grids, which put points right on the axes and diagonals, and
+                // points on and around the boundaries of the sectors
+                final double re, im;
+                if (i % 2 == 0) {
+                    re = -2 + 0.01 * random.nextInt(401);
+                    im = -2 + 0.01 * random.nextInt(401);
+                } else {
+                    final double theta = Math.PI / s.n * random.nextInt(4 * s.n) + (random.nextInt(3) - 1) * 1e-12;
+                    re = Math.cos(theta);
+                    im = Math.sin(theta);
+                }
+                assertEquals(s + " at " + re + ", " + im, s.reduceByAngle(re, im, slow), s.reduce(re, im, fast));
+                assertEquals(slow[0], fast[0], 0.0);
+                assertEquals(slow[1], fast[1], 0.0);
+            }
+        }
+    }
+
+    @Test
+    public void test_newtonSymmetry() {
+        assertEquals(Symmetry.dihedral(7).toString(), Newton.findSymmetry(ComplexPolynomial.nthRootsOfUnity(7)).toString());
+        assertSame(Symmetry.CONJUGATE, Newton.findSymmetry(ComplexPolynomial.of(Complex.one, Complex.one, Complex.one)));
+        assertSame(Symmetry.NONE, Newton.findSymmetry(ComplexPolynomial.of(Complex.i, Complex.one, Complex.one)));
+    }
+}